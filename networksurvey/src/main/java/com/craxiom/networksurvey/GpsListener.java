@@ -4,6 +4,7 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 
@@ -24,9 +25,23 @@ import timber.log.Timber;
  */
 public class GpsListener implements LocationListener
 {
+    /**
+     * The speed is no longer reported once this much time has passed without a location update, since the device
+     * could have stopped (or sped up) since then.
+     */
+    private static final long SPEED_TIMEOUT_MS = 10_000;
+
+    /**
+     * How much weight each new speed sample gets in the smoothed speed. The smoothing keeps the GPS jitter from
+     * swinging the adaptive scan rate back and forth.
+     */
+    private static final float SPEED_SMOOTHING_FACTOR = 0.5f;
+
     private final Set<LocationListener> listeners = new CopyOnWriteArraySet<>();
 
     private Location latestLocation;
+    private volatile float speedMetersPerSecond = Float.NaN;
+    private volatile long speedUpdateTimeMs;
     private Runnable gnssTimeoutCallback;
 
     /**
@@ -144,6 +159,18 @@ public class GpsListener implements LocationListener
         return latestLocation;
     }
 
+    /**
+     * @return The smoothed speed of the device in meters per second, or {@link Float#NaN} if the speed is not known
+     * because there has not been a recent location update.
+     * @since 1.10.0
+     */
+    public float getSpeedMetersPerSecond()
+    {
+        if (SystemClock.elapsedRealtime() - speedUpdateTimeMs > SPEED_TIMEOUT_MS) return Float.NaN;
+
+        return speedMetersPerSecond;
+    }
+
     /**
      * Updates the cached location with the newly provided location.
      *
@@ -151,10 +178,13 @@ public class GpsListener implements LocationListener
      */
     private void updateLocation(Location newLocation)
     {
+        final Location previousLocation = latestLocation;
         latestLocation = newLocation;
 
         if (newLocation != null)
         {
+            updateSpeed(previousLocation, newLocation);
+
             if (gnssTimeoutCallback != null)
             {
                 gnssTimeoutCallback.run();
@@ -172,4 +202,30 @@ public class GpsListener implements LocationListener
             }
         }
     }
+
+    /**
+     * Updates the smoothed speed using the speed reported with the new location. If the location provider does not
+     * report a speed, then it is calculated from the distance and time between the previous and new locations.
+     */
+    private void updateSpeed(Location previousLocation, Location newLocation)
+    {
+        final float speed;
+        if (newLocation.hasSpeed())
+        {
+            speed = newLocation.getSpeed();
+        } else if (previousLocation != null)
+        {
+            final long elapsedNanos = newLocation.getElapsedRealtimeNanos() - previousLocation.getElapsedRealtimeNanos();
+            if (elapsedNanos <= 0) return;
+
+            speed = previousLocation.distanceTo(newLocation) / (elapsedNanos / 1_000_000_000f);
+        } else
+        {
+            return;
+        }
+
+        final float lastSpeed = getSpeedMetersPerSecond();
+        speedMetersPerSecond = Float.isNaN(lastSpeed) ? speed : lastSpeed + SPEED_SMOOTHING_FACTOR * (speed - lastSpeed);
+        speedUpdateTimeMs = SystemClock.elapsedRealtime();
+    }
 }
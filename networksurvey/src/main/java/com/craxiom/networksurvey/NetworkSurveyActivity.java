@@ -18,11 +18,14 @@ import android.os.Bundle;
 import android.os.IBinder;
 import android.provider.Settings;
 import android.text.method.LinkMovementMethod;
+import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.CheckBox;
+import android.widget.FrameLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -45,7 +48,9 @@ import com.craxiom.networksurvey.constants.NetworkSurveyConstants;
 import com.craxiom.networksurvey.listeners.IGnssFailureListener;
 import com.craxiom.networksurvey.services.GrpcConnectionService;
 import com.craxiom.networksurvey.services.NetworkSurveyService;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
 import com.craxiom.networksurvey.util.PreferenceUtils;
+import com.craxiom.networksurvey.view.UiUpdateStatsOverlay;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.navigation.NavigationView;
 
@@ -138,6 +143,12 @@ public class NetworkSurveyActivity extends AppCompatActivity
         // Set the version number at the bottom of the navigation drawer
         setAppVersionNumber();
 
+        if (BuildConfig.DEBUG)
+        {
+            addContentView(new UiUpdateStatsOverlay(this), new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                    ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.END));
+        }
+
         surveyServiceConnection = new SurveyServiceConnection();
 
         Application.createNotificationChannel(this);
@@ -660,7 +671,7 @@ public class NetworkSurveyActivity extends AppCompatActivity
             if (enabled == null) return getString(R.string.cellular_logging_toggle_failed);
             updateCellularLoggingButton(enabled);
             return getString(enabled ? R.string.cellular_logging_start_toast : R.string.cellular_logging_stop_toast);
-        }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }).executeOnExecutor(ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.DISK));
     }
 
     /**
@@ -678,7 +689,7 @@ public class NetworkSurveyActivity extends AppCompatActivity
             if (enabled == null) return getString(R.string.wifi_logging_toggle_failed);
             updateWifiLoggingButton(enabled);
             return getString(enabled ? R.string.wifi_logging_start_toast : R.string.wifi_logging_stop_toast);
-        }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }).executeOnExecutor(ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.DISK));
     }
 
     /**
@@ -699,7 +710,7 @@ public class NetworkSurveyActivity extends AppCompatActivity
             if (enabled == null) return getString(R.string.bluetooth_logging_toggle_failed);
             updateBluetoothLoggingButton(enabled);
             return getString(enabled ? R.string.bluetooth_logging_start_toast : R.string.bluetooth_logging_stop_toast);
-        }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }).executeOnExecutor(ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.DISK));
     }
 
     /**
@@ -717,7 +728,7 @@ public class NetworkSurveyActivity extends AppCompatActivity
             if (enabled == null) return getString(R.string.gnss_logging_toggle_failed);
             updateGnssLoggingButton(enabled);
             return getString(enabled ? R.string.gnss_logging_start_toast : R.string.gnss_logging_stop_toast);
-        }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }).executeOnExecutor(ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.DISK));
     }
 
     /**
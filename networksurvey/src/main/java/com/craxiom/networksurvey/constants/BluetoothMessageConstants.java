@@ -23,6 +23,9 @@ public class BluetoothMessageConstants extends MessageConstants
 
     public static final String SOURCE_ADDRESS_COLUMN = "Source Address";
     public static final String SIGNAL_STRENGTH_COLUMN = "Signal Strength";
+    public static final String SIGNAL_STRENGTH_MEAN_COLUMN = "Signal Strength Mean";
+    public static final String SAMPLE_COUNT_COLUMN = "Sample Count";
+    public static final String SCAN_SUPPRESSED_COUNT_COLUMN = "Scan Suppressed Count";
     public static final String TX_POWER_COLUMN = "Tx Power";
     public static final String TECHNOLOGY_COLUMN = "Technology";
     public static final String SUPPORTED_TECHNOLOGIES_COLUMN = "Supported Technologies";
@@ -20,6 +20,11 @@ public class NetworkSurveyConstants
     public static final boolean DEFAULT_MQTT_BLUETOOTH_STREAM_SETTING = false;
     public static final boolean DEFAULT_MQTT_GNSS_STREAM_SETTING = false;
     public static final boolean DEFAULT_MQTT_DEVICE_STATUS_STREAM_SETTING = true;
+    public static final boolean DEFAULT_MQTT_BATCH_PUBLISH_SETTING = false;
+    public static final int DEFAULT_MQTT_BATCH_WINDOW_MS = 0;
+    public static final String DEFAULT_MQTT_PAYLOAD_FORMAT = "json";
+    public static final String DEFAULT_MQTT_TOPIC_RATE_LIMITS = "";
+    public static final String DEFAULT_MQTT_ADDITIONAL_BROKERS = "";
 
     public static final String NOTIFICATION_CHANNEL_ID = "network_survey_notification";
     public static final int GRPC_CONNECTION_NOTIFICATION_ID = 3;
@@ -74,8 +79,15 @@ public class NetworkSurveyConstants
     public static final int DEFAULT_BLUETOOTH_SCAN_INTERVAL_SECONDS = 30;
     public static final int DEFAULT_GNSS_SCAN_INTERVAL_SECONDS = 10;
     public static final int DEFAULT_DEVICE_STATUS_SCAN_INTERVAL_SECONDS = 120;
+    public static final int DEFAULT_ADAPTIVE_SCAN_SPACING_METERS = 0;
+    public static final int DEFAULT_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS = 2;
+    public static final int DEFAULT_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS = 60;
 
     public static final String DEFAULT_ROLLOVER_SIZE_MB = "5";
+    public static final int DEFAULT_BLUETOOTH_MAX_RECORDS_PER_SCAN = 0;
+
+    public static final boolean DEFAULT_GRPC_COMPRESSION_ENABLED = false;
+    public static final int DEFAULT_GRPC_BATCH_WINDOW_MS = 0;
 
     public static final String PROPERTY_MDM_OVERRIDE_KEY = "mdm_override";
 
@@ -89,7 +101,11 @@ public class NetworkSurveyConstants
     public static final String PROPERTY_BLUETOOTH_SCAN_INTERVAL_SECONDS = "bluetooth_scan_interval_seconds";
     public static final String PROPERTY_GNSS_SCAN_INTERVAL_SECONDS = "gnss_scan_interval_seconds";
     public static final String PROPERTY_DEVICE_STATUS_SCAN_INTERVAL_SECONDS = "device_status_scan_interval_seconds";
+    public static final String PROPERTY_ADAPTIVE_SCAN_SPACING_METERS = "adaptive_scan_spacing_meters";
+    public static final String PROPERTY_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS = "adaptive_scan_min_interval_seconds";
+    public static final String PROPERTY_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS = "adaptive_scan_max_interval_seconds";
     public static final String PROPERTY_LOG_ROLLOVER_SIZE_MB = "log_rollover_size_mb";
+    public static final String PROPERTY_BLUETOOTH_MAX_RECORDS_PER_SCAN = "bluetooth_max_records_per_scan";
 
     // The following key is used in the app_restrictions.xml file and in the app's shared preferences
     public static final String PROPERTY_MQTT_START_ON_BOOT = "mqtt_start_on_boot";
@@ -99,6 +115,14 @@ public class NetworkSurveyConstants
     public static final String PROPERTY_MQTT_BLUETOOTH_STREAM_ENABLED = "bluetooth_stream_enabled";
     public static final String PROPERTY_MQTT_GNSS_STREAM_ENABLED = "gnss_stream_enabled";
     public static final String PROPERTY_MQTT_DEVICE_STATUS_STREAM_ENABLED = "device_status_stream_enabled";
+    public static final String PROPERTY_MQTT_BATCH_PUBLISH_ENABLED = "mqtt_batch_publish_enabled";
+    public static final String PROPERTY_MQTT_BATCH_WINDOW_MS = "mqtt_batch_window_ms";
+    public static final String PROPERTY_MQTT_PAYLOAD_FORMAT = "mqtt_payload_format";
+    public static final String PROPERTY_MQTT_TOPIC_RATE_LIMITS = "mqtt_topic_rate_limits";
+    public static final String PROPERTY_MQTT_ADDITIONAL_BROKERS = "mqtt_additional_brokers";
+
+    public static final String PROPERTY_GRPC_COMPRESSION_ENABLED = "grpc_compression_enabled";
+    public static final String PROPERTY_GRPC_BATCH_WINDOW_MS = "grpc_batch_window_ms";
 
     // Stored Preferences not exposed via the Settings UI
     public static final String PROPERTY_NETWORK_SURVEY_CONNECTION_HOST = "connection_host";
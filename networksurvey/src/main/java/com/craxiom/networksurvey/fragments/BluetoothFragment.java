@@ -41,11 +41,12 @@ import com.craxiom.networksurvey.model.SortedSet;
 import com.craxiom.networksurvey.services.NetworkSurveyService;
 import com.craxiom.networksurvey.util.IOUtils;
 import com.craxiom.networksurvey.util.PreferenceUtils;
+import com.craxiom.networksurvey.util.UiUpdateDispatcher;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.PriorityQueue;
 
 import timber.log.Timber;
 
@@ -57,9 +58,23 @@ import timber.log.Timber;
 public class BluetoothFragment extends Fragment implements IBluetoothSurveyRecordListener
 {
     private static final int ACCESS_SCAN_PERMISSION_REQUEST_ID = 11;
+    private static final long STALE_RECORD_CHECK_INTERVAL_MS = 1_000;
+    /**
+     * BLE advertisements can arrive in bursts, so cap how often the list is updated with the new records.
+     */
+    private static final long UI_UPDATE_INTERVAL_MS = 250;
 
-    private final SortedSet<BluetoothRecord> bluetoothRecordSortedSet = new SortedSet<>(BluetoothRecord.class, new RecordSortedListCallback());
+    private final SortedSet<BluetoothRecord> bluetoothRecordSortedSet = new SortedSet<>(BluetoothRecord.class, new RecordSortedListCallback(),
+            record -> record.getData().getSourceAddress());
+    /**
+     * The records in the order they were last seen, so that the stale records can be found without checking every
+     * record in the list. A record that has been replaced by a newer one for the same device is left in the queue and
+     * skipped when it comes to the front.
+     */
+    private final PriorityQueue<LastSeenEntry> lastSeenQueue = new PriorityQueue<>();
+    private final Runnable staleRecordCheck = this::onStaleRecordCheck;
     private Handler uiThreadHandler;
+    private UiUpdateDispatcher.Channel<List<BluetoothRecord>> recordUpdateChannel;
 
     private Context applicationContext;
     private NetworkSurveyService surveyService;
@@ -93,6 +108,13 @@ public class BluetoothFragment extends Fragment implements IBluetoothSurveyRecor
         applicationContext = requireActivity().getApplicationContext();
         super.onCreate(savedInstanceState);
 
+        // The records from all the callbacks between UI updates are added to the list together
+        recordUpdateChannel = UiUpdateDispatcher.getInstance().createChannel("Bluetooth", UI_UPDATE_INTERVAL_MS,
+                (pending, update) -> {
+                    pending.addAll(update);
+                    return pending;
+                }, this::onBluetoothRecordsUpdate);
+
         final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(applicationContext);
         sortByIndex = preferences.getInt(NetworkSurveyConstants.PROPERTY_BLUETOOTH_DEVICES_SORT_ORDER, 0);
     }
@@ -153,11 +175,16 @@ public class BluetoothFragment extends Fragment implements IBluetoothSurveyRecor
         checkBluetoothEnabled();
 
         startAndBindToNetworkSurveyService();
+
+        uiThreadHandler.removeCallbacks(staleRecordCheck);
+        uiThreadHandler.postDelayed(staleRecordCheck, STALE_RECORD_CHECK_INTERVAL_MS);
     }
 
     @Override
     public void onPause()
     {
+        uiThreadHandler.removeCallbacks(staleRecordCheck);
+
         unregisterBluetoothBroadcastReceiver();
 
         if (surveyService != null) surveyService.unregisterBluetoothSurveyRecordListener(this);
@@ -166,25 +193,22 @@ public class BluetoothFragment extends Fragment implements IBluetoothSurveyRecor
     }
 
     @Override
-    public void onBluetoothSurveyRecord(BluetoothRecord bluetoothRecord)
+    public void onDestroy()
     {
-        if (updatesPaused) return;
+        UiUpdateDispatcher.getInstance().removeChannel(recordUpdateChannel);
 
-        uiThreadHandler.post(() -> {
-            synchronized (bluetoothRecordSortedSet)
-            {
-                bluetoothRecordSortedSet.add(bluetoothRecord);
-
-                checkAndRemoveStaleRecords();
+        super.onDestroy();
+    }
 
-                if (bluetoothRecyclerViewAdapter != null)
-                {
-                    bluetoothRecyclerViewAdapter.notifyDataSetChanged();
-                }
+    @Override
+    public void onBluetoothSurveyRecord(BluetoothRecord bluetoothRecord)
+    {
+        if (updatesPaused) return;
 
-                devicesInScanView.setText(getString(R.string.bluetooth_devices_in_scan, bluetoothRecordSortedSet.size()));
-            }
-        });
+        // The pending list is added to by the channel's merger, so it needs to be a list this fragment owns
+        final List<BluetoothRecord> update = new ArrayList<>();
+        update.add(bluetoothRecord);
+        recordUpdateChannel.submit(update);
     }
 
     @Override
@@ -192,24 +216,31 @@ public class BluetoothFragment extends Fragment implements IBluetoothSurveyRecor
     {
         if (updatesPaused) return;
 
-        // Move this back to the UI thread since we are updating the UI
-        uiThreadHandler.post(() -> {
-            synchronized (bluetoothRecordSortedSet)
-            {
-                // We can't use the SortedList#addAll method because we have not overridden that method in our custom
-                // SortedSet implementation of SortedList.
-                bluetoothRecords.forEach(bluetoothRecordSortedSet::add);
+        recordUpdateChannel.submit(new ArrayList<>(bluetoothRecords));
+    }
 
-                checkAndRemoveStaleRecords();
+    /**
+     * Adds the records received since the last UI update to the list. Called on the UI thread by the
+     * {@link UiUpdateDispatcher}.
+     *
+     * @since 1.10.0
+     */
+    private void onBluetoothRecordsUpdate(List<BluetoothRecord> bluetoothRecords)
+    {
+        if (devicesInScanView == null) return;
 
-                if (bluetoothRecyclerViewAdapter != null)
-                {
-                    bluetoothRecyclerViewAdapter.notifyDataSetChanged();
-                }
+        synchronized (bluetoothRecordSortedSet)
+        {
+            bluetoothRecordSortedSet.addAll(bluetoothRecords);
+            bluetoothRecords.forEach(this::addToLastSeenQueue);
 
-                devicesInScanView.setText(requireContext().getString(R.string.bluetooth_devices_in_scan, bluetoothRecordSortedSet.size()));
+            if (bluetoothRecyclerViewAdapter != null)
+            {
+                bluetoothRecyclerViewAdapter.notifyDataSetChanged();
             }
-        });
+
+            devicesInScanView.setText(devicesInScanView.getContext().getString(R.string.bluetooth_devices_in_scan, bluetoothRecordSortedSet.size()));
+        }
     }
 
     /**
@@ -256,35 +287,63 @@ public class BluetoothFragment extends Fragment implements IBluetoothSurveyRecor
     }
 
     /**
-     * Runs through the records in the current view, and removes any that have timestamps that are older than n seconds.
+     * Notes when a record was seen so that it can be removed once it is stale. The record's timestamp is parsed once
+     * here instead of every time the list is checked for stale records.
+     */
+    private void addToLastSeenQueue(BluetoothRecord bluetoothRecord)
+    {
+        lastSeenQueue.add(new LastSeenEntry(IOUtils.getEpochFromRfc3339(bluetoothRecord.getData().getDeviceTime()), bluetoothRecord));
+    }
+
+    /**
+     * Removes the stale records and updates the UI if any were removed, and then schedules the next check. This runs on
+     * a fixed interval instead of after each record so that the cost does not grow with the number of advertisers.
+     */
+    private void onStaleRecordCheck()
+    {
+        try
+        {
+            if (!updatesPaused && checkAndRemoveStaleRecords() && bluetoothRecyclerViewAdapter != null)
+            {
+                bluetoothRecyclerViewAdapter.notifyDataSetChanged();
+                devicesInScanView.setText(requireContext().getString(R.string.bluetooth_devices_in_scan, bluetoothRecordSortedSet.size()));
+            }
+        } catch (Exception e)
+        {
+            Timber.e(e, "Could not remove the stale Bluetooth records");
+        }
+
+        uiThreadHandler.postDelayed(staleRecordCheck, STALE_RECORD_CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * Removes any records from the current view that have timestamps that are older than n seconds. Only the records
+     * that have expired are looked at.
      * <p>
      * This method does NOT call a notify method to trigger an update to the UI. The caller must handle that on its own.
+     *
+     * @return True if any records were removed.
      */
-    private void checkAndRemoveStaleRecords()
+    private boolean checkAndRemoveStaleRecords()
     {
-        Timber.d("Removing any stale Bluetooth records");
-
         synchronized (bluetoothRecordSortedSet)
         {
-            final long currentTimeMillis = System.currentTimeMillis();
+            // Adding 5_000 ms so that we have plenty of time for the next scan to return its results
+            final long staleTimeMillis = System.currentTimeMillis() - bluetoothScanRateMs - 5_000;
 
-            final LinkedList<BluetoothRecord> itemsToRemove = new LinkedList<>();
-
-            final int sortedListSize = bluetoothRecordSortedSet.size();
-            for (int i = 0; i < sortedListSize; ++i)
+            boolean removedRecords = false;
+            while (!lastSeenQueue.isEmpty() && lastSeenQueue.peek().lastSeenMillis < staleTimeMillis)
             {
-                final BluetoothRecord bluetoothRecord = bluetoothRecordSortedSet.get(i);
-                // Adding 5_000 ms so that we have plenty of time for the next scan to return its results
-                if (IOUtils.getEpochFromRfc3339(bluetoothRecord.getData().getDeviceTime()) + bluetoothScanRateMs + 5_000 < currentTimeMillis)
+                final BluetoothRecord bluetoothRecord = lastSeenQueue.poll().bluetoothRecord;
+
+                // Skip the entries for records that have already been replaced by a newer one
+                if (bluetoothRecordSortedSet.getItemByKey(bluetoothRecord.getData().getSourceAddress()) == bluetoothRecord)
                 {
-                    itemsToRemove.add(bluetoothRecord);
+                    removedRecords |= bluetoothRecordSortedSet.remove(bluetoothRecord);
                 }
             }
 
-            if (!itemsToRemove.isEmpty())
-            {
-                itemsToRemove.forEach(bluetoothRecordSortedSet::remove);
-            }
+            return removedRecords;
         }
     }
 
@@ -584,4 +643,25 @@ public class BluetoothFragment extends Fragment implements IBluetoothSurveyRecor
             surveyService = null;
         }
     }
+
+    /**
+     * A record and the time it was last seen, ordered so that the oldest record is at the front of the queue.
+     */
+    private static final class LastSeenEntry implements Comparable<LastSeenEntry>
+    {
+        private final long lastSeenMillis;
+        private final BluetoothRecord bluetoothRecord;
+
+        private LastSeenEntry(long lastSeenMillis, BluetoothRecord bluetoothRecord)
+        {
+            this.lastSeenMillis = lastSeenMillis;
+            this.bluetoothRecord = bluetoothRecord;
+        }
+
+        @Override
+        public int compareTo(LastSeenEntry other)
+        {
+            return Long.compare(lastSeenMillis, other.lastSeenMillis);
+        }
+    }
 }
@@ -20,7 +20,6 @@ package com.craxiom.networksurvey.fragments;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.LayerDrawable;
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
@@ -41,6 +40,7 @@ import androidx.interpolator.view.animation.FastOutSlowInInterpolator;
 import com.craxiom.networksurvey.Application;
 import com.craxiom.networksurvey.R;
 import com.craxiom.networksurvey.listeners.IGnssListener;
+import com.craxiom.networksurvey.model.GnssStatusSnapshot;
 import com.craxiom.networksurvey.util.MathUtils;
 import com.craxiom.networksurvey.util.UIUtils;
 import com.craxiom.networksurvey.view.GnssSkyView;
@@ -160,11 +160,10 @@ public class GnssSkyFragment extends Fragment implements IGnssListener
     {
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void onSatelliteStatusChanged(GnssStatus status)
+    public void onSatelliteStatusChanged(GnssStatusSnapshot snapshot)
     {
-        skyView.setGnssStatus(status);
+        skyView.setGnssStatus(snapshot);
         useLegacyGnssApi = false;
         updateSnrCn0AvgMeterText();
         updateSnrCn0Avgs();
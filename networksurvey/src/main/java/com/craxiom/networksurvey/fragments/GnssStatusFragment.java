@@ -22,12 +22,13 @@ import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.location.GnssMeasurement;
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.format.DateFormat;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -53,23 +54,21 @@ import com.craxiom.networksurvey.listeners.IGnssListener;
 import com.craxiom.networksurvey.model.ConstellationType;
 import com.craxiom.networksurvey.model.DilutionOfPrecision;
 import com.craxiom.networksurvey.model.GnssMeasurementWrapper;
+import com.craxiom.networksurvey.model.GnssStatusSnapshot;
 import com.craxiom.networksurvey.model.GnssType;
 import com.craxiom.networksurvey.model.SatelliteStatus;
+import com.craxiom.networksurvey.model.SbasType;
 import com.craxiom.networksurvey.util.CarrierFreqUtils;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
 import com.craxiom.networksurvey.util.GpsTestUtil;
 import com.craxiom.networksurvey.util.IOUtils;
 import com.craxiom.networksurvey.util.MathUtils;
 import com.craxiom.networksurvey.util.NmeaUtils;
 import com.craxiom.networksurvey.util.PreferenceUtils;
-import com.craxiom.networksurvey.util.SortUtil;
 import com.craxiom.networksurvey.util.UIUtils;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -106,9 +105,9 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
     private static final String KILOMETERS_PER_HOUR = "2";
     private static final double EPSILON = 0.000001d; // for double comparisons
 
-    // key comes from the wrapper's getId()
-    private final Map<String, GnssMeasurementWrapper> gnssMeasurements = new ConcurrentHashMap<>();
-    private final ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1);
+    // key comes from the wrapper's getKey(), and all access must be synchronized on the map
+    private final LongSparseArray<GnssMeasurementWrapper> gnssMeasurements = new LongSparseArray<>();
+    private final ScheduledThreadPoolExecutor pool = ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.UI_PREPROCESSING);
     private ScheduledFuture<?> timeoutChecker;
 
     private SimpleDateFormat dateFormat;
@@ -131,9 +130,19 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
     private SatelliteStatusAdapter gnssAdapter;
     private SatelliteStatusAdapter sbasAdapter;
 
-    private List<SatelliteStatus> gnssStatus = new ArrayList<>();
+    /**
+     * The latest satellite values, which are shared with the other GNSS views and only read on the main thread.
+     */
+    private GnssStatusSnapshot gnssStatusSnapshot;
+
+    // The snapshot indices of the satellites in each list, in the order they are displayed
+    private final int[] gnssStatusOrder = new int[GnssStatusSnapshot.MAX_SATELLITES];
+    private int gnssStatusCount;
+    private final int[] sbasStatusOrder = new int[GnssStatusSnapshot.MAX_SATELLITES];
+    private int sbasStatusCount;
 
-    private List<SatelliteStatus> sbasStatus = new ArrayList<>();
+    // The AGC for each satellite in the snapshot, indexed the same as the snapshot
+    private final double[] agcValues = new double[GnssStatusSnapshot.MAX_SATELLITES];
 
     private int svCount;
 
@@ -347,11 +356,10 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
         }
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void onSatelliteStatusChanged(GnssStatus status)
+    public void onSatelliteStatusChanged(GnssStatusSnapshot snapshot)
     {
-        updateGnssStatus(status);
+        updateGnssStatus(snapshot);
     }
 
     @Override
@@ -370,15 +378,26 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
     @Override
     public void onGnssMeasurementsReceived(GnssMeasurementsEvent event)
     {
+        final long receivedTimeNanos = System.nanoTime();
+
         // update our gnssMeasurements
-        event.getMeasurements().forEach(m -> {
-            int svid = m.getSvid();
-            GnssType gnssType = GpsTestUtil.getGnssConstellationType(m.getConstellationType());
-            float carrierFreqHz = m.getCarrierFrequencyHz();
-            String id = GnssMeasurementWrapper.getId(svid, gnssType, carrierFreqHz);
-            GnssMeasurementWrapper measureWrap = gnssMeasurements.computeIfAbsent(id, v -> new GnssMeasurementWrapper(svid, gnssType, carrierFreqHz));
-            measureWrap.updateMeasurement(m);
-        });
+        synchronized (gnssMeasurements)
+        {
+            for (GnssMeasurement m : event.getMeasurements())
+            {
+                int svid = m.getSvid();
+                GnssType gnssType = GpsTestUtil.getGnssConstellationType(m.getConstellationType());
+                float carrierFreqHz = m.getCarrierFrequencyHz();
+                long key = GnssMeasurementWrapper.getKey(svid, gnssType, carrierFreqHz);
+                GnssMeasurementWrapper measureWrap = gnssMeasurements.get(key);
+                if (measureWrap == null)
+                {
+                    measureWrap = new GnssMeasurementWrapper(svid, gnssType, carrierFreqHz);
+                    gnssMeasurements.put(key, measureWrap);
+                }
+                measureWrap.updateMeasurement(m, receivedTimeNanos);
+            }
+        }
     }
 
     @Override
@@ -536,8 +555,8 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
                 hvdopView.setText("");
 
                 svCount = 0;
-                gnssStatus.clear();
-                sbasStatus.clear();
+                gnssStatusCount = 0;
+                sbasStatusCount = 0;
                 gnssAdapter.notifyDataSetChanged();
                 sbasAdapter.notifyDataSetChanged();
             }
@@ -639,8 +658,7 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
         hvdopView.setVisibility(View.VISIBLE);
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void updateGnssStatus(GnssStatus status)
+    private void updateGnssStatus(GnssStatusSnapshot snapshot)
     {
         setStarted(true);
         updateFixTime();
@@ -651,54 +669,17 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
             return;
         }
 
-        final int length = status.getSatelliteCount();
-        svCount = 0;
-        int usedInFixCount = 0;
+        gnssStatusSnapshot = snapshot;
+        svCount = snapshot.getSatelliteCount();
 
-        gnssStatus.clear();
-        sbasStatus.clear();
-        while (svCount < length)
+        for (int i = 0; i < svCount; i++)
         {
-            GnssType gnssType = GpsTestUtil.getGnssConstellationType(status.getConstellationType(svCount));
-            SatelliteStatus satStatus = new SatelliteStatus(status.getSvid(svCount), gnssType,
-                    status.getCn0DbHz(svCount),
-                    status.hasAlmanacData(svCount),
-                    status.hasEphemerisData(svCount),
-                    status.usedInFix(svCount),
-                    status.getElevationDegrees(svCount),
-                    status.getAzimuthDegrees(svCount));
-
-            if (GpsTestUtil.isGnssCarrierFrequenciesSupported())
-            {
-                if (status.hasCarrierFrequencyHz(svCount))
-                {
-                    satStatus.setHasCarrierFrequency(true);
-                    satStatus.setCarrierFrequencyHz(status.getCarrierFrequencyHz(svCount));
-                }
-            }
-
             // update agc if we have it and it's not timed out
-            GnssMeasurementWrapper measurement = getGnssMeasurement(satStatus.getSvid(), gnssType, satStatus.getCarrierFrequencyHz());
-            satStatus.setAgc(hasValidAgc(measurement) ? measurement.getAgc() : SatelliteStatus.NO_DATA_DOUBLE);
-
-            if (satStatus.getGnssType() == GnssType.SBAS)
-            {
-                satStatus.setSbasType(GpsTestUtil.getSbasConstellationType(satStatus.getSvid()));
-                sbasStatus.add(satStatus);
-            } else
-            {
-                gnssStatus.add(satStatus);
-            }
-
-            if (satStatus.getUsedInFix())
-            {
-                usedInFixCount++;
-            }
-
-            svCount++;
+            GnssMeasurementWrapper measurement = getGnssMeasurement(snapshot.getSvid(i), snapshot.getGnssType(i), snapshot.getCarrierFrequencyHz(i));
+            agcValues[i] = hasValidAgc(measurement) ? measurement.getAgc() : SatelliteStatus.NO_DATA_DOUBLE;
         }
 
-        numSats.setText(resources.getString(R.string.gps_num_sats_value, usedInFixCount, svCount));
+        numSats.setText(resources.getString(R.string.gps_num_sats_value, snapshot.getUsedInFixCount(), svCount));
 
         refreshViews();
     }
@@ -714,46 +695,12 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
 
     private void sortLists()
     {
+        if (gnssStatusSnapshot == null) return;
+
+        // The sort order from the preferences matches the GnssStatusSnapshot SORT_BY constants
         final int sortBy = PreferenceUtils.getSatSortOrderFromPreferences();
-        // Below switch statement order must match arrays.xml sort_sats order
-        switch (sortBy)
-        {
-            case 0:
-                // Sort by Constellation
-                gnssStatus = SortUtil.Companion.sortByGnssThenId(gnssStatus);
-                sbasStatus = SortUtil.Companion.sortBySbasThenId(sbasStatus);
-                break;
-            case 1:
-                // Sort by Carrier Frequency
-                gnssStatus = SortUtil.Companion.sortByCarrierFrequencyThenId(gnssStatus);
-                sbasStatus = SortUtil.Companion.sortByCarrierFrequencyThenId(sbasStatus);
-                break;
-            case 2:
-                // Sort by Signal Strength
-                gnssStatus = SortUtil.Companion.sortByCn0(gnssStatus);
-                sbasStatus = SortUtil.Companion.sortByCn0(sbasStatus);
-                break;
-            case 3:
-                // Sort by Used in Fix
-                gnssStatus = SortUtil.Companion.sortByUsedThenId(gnssStatus);
-                sbasStatus = SortUtil.Companion.sortByUsedThenId(sbasStatus);
-                break;
-            case 4:
-                // Sort by Constellation, Carrier Frequency
-                gnssStatus = SortUtil.Companion.sortByGnssThenCarrierFrequencyThenId(gnssStatus);
-                sbasStatus = SortUtil.Companion.sortBySbasThenCarrierFrequencyThenId(sbasStatus);
-                break;
-            case 5:
-                // Sort by Constellation, Signal Strength
-                gnssStatus = SortUtil.Companion.sortByGnssThenCn0ThenId(gnssStatus);
-                sbasStatus = SortUtil.Companion.sortBySbasThenCn0ThenId(sbasStatus);
-                break;
-            case 6:
-                // Sort by Constellation, Used in Fix
-                gnssStatus = SortUtil.Companion.sortByGnssThenUsedThenId(gnssStatus);
-                sbasStatus = SortUtil.Companion.sortBySbasThenUsedThenId(sbasStatus);
-                break;
-        }
+        gnssStatusCount = gnssStatusSnapshot.getSortedIndices(gnssStatusOrder, false, sortBy);
+        sbasStatusCount = gnssStatusSnapshot.getSortedIndices(sbasStatusOrder, true, sortBy);
     }
 
     private void setupUnitPreferences()
@@ -772,7 +719,7 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
      */
     private void updateListVisibility()
     {
-        if (!gnssStatus.isEmpty())
+        if (gnssStatusCount != 0)
         {
             gnssNotAvailableView.setVisibility(View.GONE);
             gnssStatusList.setVisibility(View.VISIBLE);
@@ -781,7 +728,7 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
             gnssNotAvailableView.setVisibility(View.VISIBLE);
             gnssStatusList.setVisibility(View.GONE);
         }
-        if (!sbasStatus.isEmpty())
+        if (sbasStatusCount != 0)
         {
             sbasNotAvailableView.setVisibility(View.GONE);
             sbasStatusList.setVisibility(View.VISIBLE);
@@ -833,16 +780,26 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
     }
 
     /**
-     * Checks if our {@link GnssMeasurementWrapper} are outdated based on {@link GnssMeasurementWrapper#TIMEOUT_VALUE_NANOS}
+     * Removes any {@link GnssMeasurementWrapper} that is outdated based on
+     * {@link GnssMeasurementWrapper#TIMEOUT_VALUE_NANOS}. A satellite that is no longer being measured would otherwise
+     * stay in the map for as long as this fragment is around.
      *
      * @since 1.5.0
      */
     private void checkGnssMeasurementAge()
     {
         final long currentTimeout = System.nanoTime() - GnssMeasurementWrapper.TIMEOUT_VALUE_NANOS;
-        gnssMeasurements.values().stream()
-                .filter(measurement -> currentTimeout > measurement.getReceivedTimeNanos())
-                .forEach(GnssMeasurementWrapper::onTimeout);
+        synchronized (gnssMeasurements)
+        {
+            // Iterate backwards so that removing an entry does not shift the entries that have yet to be checked
+            for (int i = gnssMeasurements.size() - 1; i >= 0; i--)
+            {
+                if (currentTimeout > gnssMeasurements.valueAt(i).getReceivedTimeNanos())
+                {
+                    gnssMeasurements.removeAt(i);
+                }
+            }
+        }
     }
 
     /**
@@ -856,8 +813,11 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
      */
     GnssMeasurementWrapper getGnssMeasurement(int svid, GnssType gnssType, float carrierFrequencyHz)
     {
-        String id = GnssMeasurementWrapper.getId(svid, gnssType, carrierFrequencyHz);
-        return gnssMeasurements.get(id);
+        final long key = GnssMeasurementWrapper.getKey(svid, gnssType, carrierFrequencyHz);
+        synchronized (gnssMeasurements)
+        {
+            return gnssMeasurements.get(key);
+        }
     }
 
     /**
@@ -975,10 +935,10 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
             // Add 1 for header row
             if (mConstellationType == GNSS)
             {
-                return gnssStatus.size() + 1;
+                return gnssStatusCount + 1;
             } else
             {
-                return sbasStatus.size() + 1;
+                return sbasStatusCount + 1;
             }
         }
 
@@ -1022,13 +982,13 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
                 // There is a header at 0, so the first data row will be at position - 1, etc.
                 int dataRow = position - 1;
 
-                List<SatelliteStatus> sats;
+                int[] sats;
                 if (mConstellationType == GNSS)
                 {
-                    sats = gnssStatus;
+                    sats = gnssStatusOrder;
                 } else
                 {
-                    sats = sbasStatus;
+                    sats = sbasStatusOrder;
                 }
 
                 // Show the row field for the GNSS flag mImage and hide the header
@@ -1038,12 +998,14 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
 
                 final Locale defaultLocale = Locale.getDefault();
 
-                SatelliteStatus status = sats.get(dataRow);
+                final GnssStatusSnapshot status = gnssStatusSnapshot;
+                final int index = sats[dataRow];
+                final int svid = status.getSvid(index);
                 // Populate status data for this row
-                v.getSvId().setText(String.format(defaultLocale, "%d", status.getSvid()));
+                v.getSvId().setText(String.format(defaultLocale, "%d", svid));
                 v.getFlag().setScaleType(ImageView.ScaleType.FIT_START);
 
-                GnssType type = status.getGnssType();
+                GnssType type = status.getGnssType(index);
                 switch (type)
                 {
                     case NAVSTAR:
@@ -1071,7 +1033,7 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
                         v.getFlag().setImageDrawable(flagIndia);
                         break;
                     case SBAS:
-                        setSbasFlag(status, v.getFlag());
+                        setSbasFlag(status.getSbasType(index), v.getFlag());
                         break;
                     case UNKNOWN:
                         v.getFlag().setVisibility(View.INVISIBLE);
@@ -1080,13 +1042,11 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
 
                 if (GpsTestUtil.isGnssCarrierFrequenciesSupported())
                 {
-                    if (status.getCarrierFrequencyHz() != SatelliteStatus.NO_DATA)
+                    if (status.getCarrierFrequencyHz(index) != SatelliteStatus.NO_DATA)
                     {
                         // Convert Hz to MHz
-                        float carrierMhz = MathUtils.toMhz(status.getCarrierFrequencyHz());
-                        String carrierLabel = CarrierFreqUtils.getCarrierFrequencyLabel(status.getGnssType(),
-                                status.getSvid(),
-                                carrierMhz);
+                        float carrierMhz = MathUtils.toMhz(status.getCarrierFrequencyHz(index));
+                        String carrierLabel = CarrierFreqUtils.getCarrierFrequencyLabel(type, svid, carrierMhz);
                         if (!CarrierFreqUtils.CF_UNKNOWN.equals(carrierLabel))
                         {
                             // Make sure it's the normal text size (in case it's previously been
@@ -1109,27 +1069,27 @@ public class GnssStatusFragment extends Fragment implements IGnssListener
                 {
                     v.getCarrierFrequency().setVisibility(View.GONE);
                 }
-                if (status.getCn0DbHz() != SatelliteStatus.NO_DATA)
+                if (status.getCn0DbHz(index) != SatelliteStatus.NO_DATA)
                 {
-                    v.getSignal().setText(String.format(defaultLocale, "%.1f", status.getCn0DbHz()));
+                    v.getSignal().setText(String.format(defaultLocale, "%.1f", status.getCn0DbHz(index)));
                 } else
                 {
                     v.getSignal().setText("");
                 }
 
-                v.setAgcTv(defaultLocale, status.getAgc());
+                v.setAgcTv(defaultLocale, agcValues[index]);
 
                 char[] flags = new char[3];
-                flags[0] = !status.getHasAlmanac() ? ' ' : 'A';
-                flags[1] = !status.getHasEphemeris() ? ' ' : 'E';
-                flags[2] = !status.getUsedInFix() ? ' ' : 'U';
+                flags[0] = !status.hasAlmanacData(index) ? ' ' : 'A';
+                flags[1] = !status.hasEphemerisData(index) ? ' ' : 'E';
+                flags[2] = !status.usedInFix(index) ? ' ' : 'U';
                 v.getStatusFlags().setText(new String(flags));
             }
         }
 
-        private void setSbasFlag(SatelliteStatus status, ImageView flag)
+        private void setSbasFlag(SbasType sbasType, ImageView flag)
         {
-            switch (status.getSbasType())
+            switch (sbasType)
             {
                 case WAAS:
                     flag.setVisibility(View.VISIBLE);
@@ -10,6 +10,9 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -24,6 +27,10 @@ import androidx.viewpager2.widget.ViewPager2;
 
 import com.craxiom.networksurvey.R;
 import com.craxiom.networksurvey.listeners.IGnssListener;
+import com.craxiom.networksurvey.model.GnssStatusSnapshot;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
+import com.craxiom.networksurvey.util.TripleBuffer;
+import com.craxiom.networksurvey.util.UiUpdateDispatcher;
 import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.tabs.TabLayoutMediator;
 
@@ -44,6 +51,17 @@ public class MainGnssFragment extends Fragment
 
     private final Set<IGnssListener> gnssListeners = new CopyOnWriteArraySet<>();
 
+    /**
+     * The GNSS status is copied into a snapshot on the GNSS status thread, and then the latest snapshot is handed to the
+     * listeners on the main thread. Reusing the three snapshots means no objects are created for a status update.
+     */
+    private final TripleBuffer<GnssStatusSnapshot> gnssStatusSnapshots = new TripleBuffer<>(
+            new GnssStatusSnapshot(), new GnssStatusSnapshot(), new GnssStatusSnapshot());
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private UiUpdateDispatcher.Channel<TripleBuffer<GnssStatusSnapshot>> snapshotUpdateChannel;
+    private HandlerThread gnssStatusThread;
+    private Handler gnssStatusHandler;
+
     private LocationListener locationListener;
     private GnssStatus.Callback gnssStatusListener;
     private GnssMeasurementsEvent.Callback gnssMeasurementCallback;
@@ -68,6 +86,23 @@ public class MainGnssFragment extends Fragment
         {
             Timber.e("The Location Manager is null. Unable to get GNSS information");
         }
+
+        snapshotUpdateChannel = UiUpdateDispatcher.getInstance().createLatestValueChannel("GNSS", 0,
+                snapshots -> dispatchGnssStatusSnapshot());
+
+        gnssStatusThread = ExecutorRegistry.getInstance().newHandlerThread("GnssStatus", ExecutorRegistry.Role.UI_PREPROCESSING);
+        gnssStatusThread.start();
+        gnssStatusHandler = new Handler(gnssStatusThread.getLooper());
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        gnssStatusThread.quitSafely();
+        mainHandler.removeCallbacksAndMessages(null);
+        UiUpdateDispatcher.getInstance().removeChannel(snapshotUpdateChannel);
+
+        super.onDestroy();
     }
 
     @Nullable
@@ -209,6 +244,9 @@ public class MainGnssFragment extends Fragment
     /**
      * Registers the GNSS Status Listener with the Android System.  Registration occurs in this {@link MainGnssFragment}
      * so that each child fragment in the various tabs don't have to register directly with the Android system.
+     * <p>
+     * The GNSS status callback runs on a background thread so that copying the satellite values is done off of the main
+     * thread. The listeners are still notified on the main thread.
      */
     @SuppressLint("MissingPermission")
     private void addGnssStatusListener()
@@ -226,37 +264,46 @@ public class MainGnssFragment extends Fragment
                 @Override
                 public void onStarted()
                 {
-                    for (IGnssListener listener : gnssListeners)
-                    {
-                        listener.onGnssStarted();
-                    }
+                    mainHandler.post(() -> {
+                        for (IGnssListener listener : gnssListeners)
+                        {
+                            listener.onGnssStarted();
+                        }
+                    });
                 }
 
                 @Override
                 public void onStopped()
                 {
-                    for (IGnssListener listener : gnssListeners)
-                    {
-                        listener.onGnssStopped();
-                    }
+                    // Don't let a status update from before the stop be applied after it
+                    snapshotUpdateChannel.clearPending();
+                    mainHandler.post(() -> {
+                        for (IGnssListener listener : gnssListeners)
+                        {
+                            listener.onGnssStopped();
+                        }
+                    });
                 }
 
                 @Override
                 public void onFirstFix(int ttffMillis)
                 {
-                    for (IGnssListener listener : gnssListeners)
-                    {
-                        listener.onGnssFirstFix(ttffMillis);
-                    }
+                    mainHandler.post(() -> {
+                        for (IGnssListener listener : gnssListeners)
+                        {
+                            listener.onGnssFirstFix(ttffMillis);
+                        }
+                    });
                 }
 
                 @Override
                 public void onSatelliteStatusChanged(GnssStatus status)
                 {
-                    for (IGnssListener listener : gnssListeners)
-                    {
-                        listener.onSatelliteStatusChanged(status);
-                    }
+                    gnssStatusSnapshots.getWriteBuffer().update(status);
+                    gnssStatusSnapshots.publish();
+
+                    // If the main thread has yet to handle the last update, it will pick up this newer snapshot
+                    snapshotUpdateChannel.submit(gnssStatusSnapshots);
                 }
             };
         }
@@ -272,10 +319,24 @@ public class MainGnssFragment extends Fragment
             };
         }
 
-        locationManager.registerGnssStatusCallback(gnssStatusListener);
+        locationManager.registerGnssStatusCallback(gnssStatusListener, gnssStatusHandler);
         locationManager.registerGnssMeasurementsCallback(gnssMeasurementCallback);
     }
 
+    /**
+     * Notifies the listeners of the latest GNSS status snapshot. Runs on the main thread.
+     *
+     * @since 1.10.0
+     */
+    private void dispatchGnssStatusSnapshot()
+    {
+        final GnssStatusSnapshot snapshot = gnssStatusSnapshots.acquireLatest();
+        for (IGnssListener listener : gnssListeners)
+        {
+            listener.onSatelliteStatusChanged(snapshot);
+        }
+    }
+
     /**
      * Unregisters the GNSS Status Listener with the Android system.
      */
@@ -13,11 +13,15 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewStub;
 import android.widget.Button;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -31,9 +35,18 @@ import com.craxiom.mqttlibrary.ui.AConnectionFragment;
 import com.craxiom.networksurvey.R;
 import com.craxiom.networksurvey.constants.NetworkSurveyConstants;
 import com.craxiom.networksurvey.fragments.model.MqttConnectionSettings;
+import com.craxiom.networksurvey.mqtt.MqttConnection;
 import com.craxiom.networksurvey.mqtt.MqttConnectionInfo;
+import com.craxiom.networksurvey.mqtt.MqttOutbox;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
 import com.craxiom.networksurvey.services.NetworkSurveyService;
 import com.craxiom.networksurvey.util.AnalyticsUtils;
+import com.craxiom.networksurvey.util.PreferenceUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import timber.log.Timber;
 
@@ -45,17 +58,40 @@ import timber.log.Timber;
  */
 public class MqttFragment extends AConnectionFragment<NetworkSurveyService.SurveyServiceBinder>
 {
+    private static final long OUTBOX_STATUS_UPDATE_INTERVAL_MS = 1_000;
+
     private SwitchCompat cellularStreamToggleSwitch;
     private SwitchCompat wifiStreamToggleSwitch;
     private SwitchCompat bluetoothStreamToggleSwitch;
     private SwitchCompat gnssStreamToggleSwitch;
     private SwitchCompat deviceStatusStreamToggleSwitch;
+    private SwitchCompat batchPublishToggleSwitch;
+    private SwitchCompat protobufPayloadToggleSwitch;
+    private TextView outboxStatusText;
+    private TextView brokerThroughputText;
 
     private boolean cellularStreamEnabled = true;
     private boolean wifiStreamEnabled = true;
     private boolean bluetoothStreamEnabled = true;
     private boolean gnssStreamEnabled = true;
     private boolean deviceStatusStreamEnabled = true;
+    private boolean batchPublishEnabled = false;
+    private MqttPayloadFormat payloadFormat = MqttPayloadFormat.JSON;
+
+    private final Map<MqttConnection, Long> lastPublishedCounts = new HashMap<>();
+    private long lastThroughputUpdateNanos;
+
+    private final Handler outboxStatusHandler = new Handler(Looper.getMainLooper());
+    private final Runnable outboxStatusUpdater = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            updateOutboxStatus();
+            updateBrokerThroughput();
+            outboxStatusHandler.postDelayed(this, OUTBOX_STATUS_UPDATE_INTERVAL_MS);
+        }
+    };
 
     private final ActivityResultLauncher<String> cameraPermissionRequestLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
@@ -95,6 +131,10 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         bluetoothStreamToggleSwitch = inflatedStub.findViewById(R.id.streamBluetoothToggleSwitch);
         gnssStreamToggleSwitch = inflatedStub.findViewById(R.id.streamGnssToggleSwitch);
         deviceStatusStreamToggleSwitch = inflatedStub.findViewById(R.id.streamDeviceStatusToggleSwitch);
+        batchPublishToggleSwitch = inflatedStub.findViewById(R.id.batchPublishToggleSwitch);
+        protobufPayloadToggleSwitch = inflatedStub.findViewById(R.id.protobufPayloadToggleSwitch);
+        outboxStatusText = inflatedStub.findViewById(R.id.mqttOutboxStatus);
+        brokerThroughputText = inflatedStub.findViewById(R.id.mqttBrokerThroughput);
 
         Button scanCodeButton = inflatedStub.findViewById(R.id.code_scan_button);
         scanCodeButton.setOnClickListener(v -> {
@@ -110,6 +150,22 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         });
     }
 
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+
+        outboxStatusHandler.post(outboxStatusUpdater);
+    }
+
+    @Override
+    public void onPause()
+    {
+        outboxStatusHandler.removeCallbacks(outboxStatusUpdater);
+
+        super.onPause();
+    }
+
     @Override
     protected Context getApplicationContext()
     {
@@ -130,6 +186,8 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         bluetoothStreamEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BLUETOOTH_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BLUETOOTH_STREAM_SETTING);
         gnssStreamEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_GNSS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_GNSS_STREAM_SETTING);
         deviceStatusStreamEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_DEVICE_STATUS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_DEVICE_STATUS_STREAM_SETTING);
+        batchPublishEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BATCH_PUBLISH_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BATCH_PUBLISH_SETTING);
+        payloadFormat = MqttPayloadFormat.fromPreferenceValue(mdmProperties.getString(NetworkSurveyConstants.PROPERTY_MQTT_PAYLOAD_FORMAT, NetworkSurveyConstants.DEFAULT_MQTT_PAYLOAD_FORMAT));
     }
 
     /**
@@ -147,6 +205,8 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         bluetoothStreamToggleSwitch.setChecked(bluetoothStreamEnabled);
         gnssStreamToggleSwitch.setChecked(gnssStreamEnabled);
         deviceStatusStreamToggleSwitch.setChecked(deviceStatusStreamEnabled);
+        batchPublishToggleSwitch.setChecked(batchPublishEnabled);
+        protobufPayloadToggleSwitch.setChecked(payloadFormat == MqttPayloadFormat.PROTOBUF);
     }
 
     @Override
@@ -157,6 +217,8 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         bluetoothStreamEnabled = bluetoothStreamToggleSwitch.isChecked();
         gnssStreamEnabled = gnssStreamToggleSwitch.isChecked();
         deviceStatusStreamEnabled = deviceStatusStreamToggleSwitch.isChecked();
+        batchPublishEnabled = batchPublishToggleSwitch.isChecked();
+        payloadFormat = protobufPayloadToggleSwitch.isChecked() ? MqttPayloadFormat.PROTOBUF : MqttPayloadFormat.JSON;
     }
 
     @Override
@@ -167,6 +229,8 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         editor.putBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BLUETOOTH_STREAM_ENABLED, bluetoothStreamEnabled);
         editor.putBoolean(NetworkSurveyConstants.PROPERTY_MQTT_GNSS_STREAM_ENABLED, gnssStreamEnabled);
         editor.putBoolean(NetworkSurveyConstants.PROPERTY_MQTT_DEVICE_STATUS_STREAM_ENABLED, deviceStatusStreamEnabled);
+        editor.putBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BATCH_PUBLISH_ENABLED, batchPublishEnabled);
+        editor.putString(NetworkSurveyConstants.PROPERTY_MQTT_PAYLOAD_FORMAT, payloadFormat.getPreferenceValue());
     }
 
     @Override
@@ -177,6 +241,8 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         bluetoothStreamEnabled = sharedPreferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BLUETOOTH_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BLUETOOTH_STREAM_SETTING);
         gnssStreamEnabled = sharedPreferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_GNSS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_GNSS_STREAM_SETTING);
         deviceStatusStreamEnabled = sharedPreferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_DEVICE_STATUS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_DEVICE_STATUS_STREAM_SETTING);
+        batchPublishEnabled = sharedPreferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BATCH_PUBLISH_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BATCH_PUBLISH_SETTING);
+        payloadFormat = MqttPayloadFormat.fromPreferenceValue(sharedPreferences.getString(NetworkSurveyConstants.PROPERTY_MQTT_PAYLOAD_FORMAT, NetworkSurveyConstants.DEFAULT_MQTT_PAYLOAD_FORMAT));
     }
 
     @Override
@@ -189,6 +255,8 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
         bluetoothStreamToggleSwitch.setEnabled(editable);
         gnssStreamToggleSwitch.setEnabled(editable);
         deviceStatusStreamToggleSwitch.setEnabled(editable);
+        batchPublishToggleSwitch.setEnabled(editable);
+        protobufPayloadToggleSwitch.setEnabled(editable);
     }
 
     @Override
@@ -204,7 +272,10 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
                 wifiStreamEnabled,
                 bluetoothStreamEnabled,
                 gnssStreamEnabled,
-                deviceStatusStreamEnabled);
+                deviceStatusStreamEnabled,
+                batchPublishEnabled,
+                PreferenceUtils.getMqttBatchWindowPreferenceMs(getApplicationContext()),
+                payloadFormat);
     }
 
     @Override
@@ -231,9 +302,79 @@ public class MqttFragment extends AConnectionFragment<NetworkSurveyService.Surve
                 .deviceName(deviceNameEdit.getText().toString())
                 .mqttUsername(usernameEdit.getText().toString())
                 .mqttPassword(passwordEdit.getText().toString())
+                .payloadFormat((protobufPayloadToggleSwitch.isChecked() ? MqttPayloadFormat.PROTOBUF : MqttPayloadFormat.JSON).getPreferenceValue())
                 .build();
     }
 
+    /**
+     * Shows how many messages are waiting in the MQTT offline outbox, and the progress of the replay if one is running.
+     *
+     * @since 1.10.0
+     */
+    private void updateOutboxStatus()
+    {
+        if (outboxStatusText == null) return;
+
+        final MqttOutbox outbox = service instanceof NetworkSurveyService ? ((NetworkSurveyService) service).getMqttOutbox() : null;
+        if (outbox == null || (outbox.getQueuedCount() == 0 && !outbox.isReplaying()))
+        {
+            outboxStatusText.setText(R.string.mqtt_outbox_empty);
+            return;
+        }
+
+        final String queuedSize = Formatter.formatShortFileSize(getApplicationContext(), outbox.getQueuedBytes());
+        if (outbox.isReplaying())
+        {
+            outboxStatusText.setText(getString(R.string.mqtt_outbox_replaying, outbox.getReplayedCount(),
+                    outbox.getReplayTotal(), outbox.getQueuedCount(), queuedSize));
+        } else
+        {
+            outboxStatusText.setText(getString(R.string.mqtt_outbox_queued, outbox.getQueuedCount(), queuedSize,
+                    outbox.getDroppedCount()));
+        }
+    }
+
+    /**
+     * Shows the state and the publish rate of each MQTT broker connection (the main connection and any additional
+     * brokers), with the rate calculated from the change in the published message count since the last update.
+     *
+     * @since 1.10.0
+     */
+    private void updateBrokerThroughput()
+    {
+        if (brokerThroughputText == null) return;
+
+        final List<MqttConnection> connections = service instanceof NetworkSurveyService ?
+                ((NetworkSurveyService) service).getMqttConnections() : Collections.emptyList();
+
+        final long nowNanos = System.nanoTime();
+        final double elapsedSeconds = lastThroughputUpdateNanos == 0 ? 0 : (nowNanos - lastThroughputUpdateNanos) / 1_000_000_000d;
+        lastThroughputUpdateNanos = nowNanos;
+
+        final StringBuilder throughput = new StringBuilder();
+        final Map<MqttConnection, Long> publishedCounts = new HashMap<>();
+        for (MqttConnection connection : connections)
+        {
+            // Skip the connections that have never been used
+            if (connection.getBrokerName().isEmpty()) continue;
+
+            final long publishedCount = connection.getPublishedCount();
+            publishedCounts.put(connection, publishedCount);
+
+            final Long lastCount = lastPublishedCounts.get(connection);
+            final double messagesPerSecond = lastCount == null || elapsedSeconds <= 0 ? 0 : (publishedCount - lastCount) / elapsedSeconds;
+
+            if (throughput.length() > 0) throughput.append('\n');
+            throughput.append(getString(R.string.mqtt_broker_throughput, connection.getBrokerName(),
+                    connection.getConnectionState(), messagesPerSecond, publishedCount));
+        }
+        lastPublishedCounts.clear();
+        lastPublishedCounts.putAll(publishedCounts);
+
+        brokerThroughputText.setText(throughput);
+        brokerThroughputText.setVisibility(throughput.length() == 0 ? View.GONE : View.VISIBLE);
+    }
+
     /**
      * @return True if the {@link Manifest.permission#CAMERA} permission has been granted. False otherwise.
      * @since 1.7.0
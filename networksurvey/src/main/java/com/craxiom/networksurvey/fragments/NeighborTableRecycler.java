@@ -0,0 +1,118 @@
+package com.craxiom.networksurvey.fragments;
+
+import android.content.Context;
+import android.widget.TableLayout;
+import android.widget.TableRow;
+import android.widget.TextView;
+
+import com.craxiom.networksurvey.R;
+import com.craxiom.networksurvey.constants.NetworkSurveyConstants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the rows of a neighbor cell table around between cellular scans instead of removing and inflating them every
+ * time. Each row is keyed on the neighbor's channel and identity (e.g. EARFCN and PCI), so the row for a neighbor that
+ * is still present is reused and only the cells whose values changed have their text set. If a scan has the same
+ * neighbors in the same order with the same values, then the table is not touched at all, which means no views are
+ * allocated and no layout pass is requested.
+ *
+ * @since 1.10.0
+ */
+final class NeighborTableRecycler
+{
+    private final TableLayout table;
+    private final Map<Long, TableRow> rowsByKey = new HashMap<>();
+    private final Deque<TableRow> unusedRows = new ArrayDeque<>();
+    private final List<TableRow> currentRows = new ArrayList<>();
+
+    NeighborTableRecycler(TableLayout table)
+    {
+        this.table = table;
+    }
+
+    /**
+     * Creates the key for a neighbor row.
+     *
+     * @param channel  The channel number of the neighbor (e.g. the ARFCN, UARFCN, EARFCN, or NARFCN).
+     * @param identity The identity of the neighbor on that channel (e.g. the BSIC, PSC, or PCI).
+     * @return The key that identifies the neighbor's row between scans.
+     */
+    static long rowKey(int channel, int identity)
+    {
+        return ((long) channel << 32) | (identity & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Updates the table so that it shows the provided neighbors in the provided order.
+     *
+     * @param context The context to use if a new row has to be created.
+     * @param keys    The key for each neighbor, created with {@link #rowKey(int, int)}.
+     * @param values  The cell values for each neighbor, in the same order as the keys. A value of
+     *                {@link NetworkSurveyConstants#UNSET_VALUE} is shown as an empty cell.
+     */
+    void update(Context context, long[] keys, List<int[]> values)
+    {
+        final Map<Long, TableRow> previousRowsByKey = new HashMap<>(rowsByKey);
+        rowsByKey.clear();
+
+        final List<TableRow> newRows = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++)
+        {
+            TableRow row = previousRowsByKey.remove(keys[i]);
+            if (row == null)
+            {
+                // Either a new neighbor, or two neighbors in this scan have the same key
+                row = unusedRows.isEmpty() ? createRow(context, values.get(i).length) : unusedRows.pop();
+            }
+
+            bindRow(row, values.get(i));
+            rowsByKey.putIfAbsent(keys[i], row);
+            newRows.add(row);
+        }
+
+        unusedRows.addAll(previousRowsByKey.values());
+
+        if (newRows.equals(currentRows)) return;
+
+        // The rows were added, removed, or reordered, so lay the table out again with the same row instances
+        table.removeAllViews();
+        for (TableRow row : newRows)
+        {
+            table.addView(row);
+        }
+        currentRows.clear();
+        currentRows.addAll(newRows);
+    }
+
+    private static TableRow createRow(Context context, int columnCount)
+    {
+        final TableRow row = new TableRow(context);
+        for (int i = 0; i < columnCount; i++)
+        {
+            row.addView(new TextView(context, null, 0, R.style.TableText));
+        }
+        return row;
+    }
+
+    /**
+     * Sets the cell values on the row. The text is only set for the cells that changed since setting the text on a
+     * TextView requests a new layout even if the text is the same.
+     */
+    private static void bindRow(TableRow row, int[] values)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            // We need to keep an empty text view for unset values to make sure the columns align correctly
+            final String cellText = values[i] == NetworkSurveyConstants.UNSET_VALUE ? "" : String.valueOf(values[i]);
+
+            final TextView cell = (TextView) row.getChildAt(i);
+            if (!cellText.contentEquals(cell.getText())) cell.setText(cellText);
+        }
+    }
+}
@@ -12,8 +12,6 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TableLayout;
-import android.widget.TableRow;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -36,7 +34,6 @@ import com.craxiom.messaging.UmtsRecordData;
 import com.craxiom.networksurvey.CalculationUtils;
 import com.craxiom.networksurvey.R;
 import com.craxiom.networksurvey.constants.LteMessageConstants;
-import com.craxiom.networksurvey.constants.NetworkSurveyConstants;
 import com.craxiom.networksurvey.databinding.FragmentNetworkDetailsBinding;
 import com.craxiom.networksurvey.fragments.model.CellularViewModel;
 import com.craxiom.networksurvey.fragments.model.GsmNeighbor;
@@ -54,6 +51,7 @@ import com.craxiom.networksurvey.util.ParserUtils;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -85,6 +83,11 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
     private FragmentNetworkDetailsBinding binding;
     private CellularViewModel viewModel;
 
+    private NeighborTableRecycler nrNeighborsTable;
+    private NeighborTableRecycler lteNeighborsTable;
+    private NeighborTableRecycler umtsNeighborsTable;
+    private NeighborTableRecycler gsmNeighborsTable;
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState)
@@ -95,6 +98,11 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
         final ViewModelProvider viewModelProvider = new ViewModelProvider(viewModelStoreOwner);
         viewModel = viewModelProvider.get(getClass().getName(), CellularViewModel.class);
 
+        nrNeighborsTable = new NeighborTableRecycler(binding.nrNeighborsTable);
+        lteNeighborsTable = new NeighborTableRecycler(binding.lteNeighborsTable);
+        umtsNeighborsTable = new NeighborTableRecycler(binding.umtsNeighborsTable);
+        gsmNeighborsTable = new NeighborTableRecycler(binding.gsmNeighborsTable);
+
         initializeLocationTextView();
 
         initializeObservers();
@@ -685,7 +693,7 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
             return builder.build();
         }).sorted().collect(Collectors.toCollection(TreeSet::new));
 
-        viewModel.setGsmNeighbors(gsmNeighbors);
+        if (!isSameNeighbors(viewModel.getGsmNeighbors().getValue(), gsmNeighbors)) viewModel.setGsmNeighbors(gsmNeighbors);
     }
 
     /**
@@ -704,7 +712,7 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
             return builder.build();
         }).sorted().collect(Collectors.toCollection(TreeSet::new));
 
-        viewModel.setUmtsNeighbors(umtsNeighbors);
+        if (!isSameNeighbors(viewModel.getUmtsNeighbors().getValue(), umtsNeighbors)) viewModel.setUmtsNeighbors(umtsNeighbors);
     }
 
     /**
@@ -725,7 +733,7 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
             return builder.build();
         }).sorted().collect(Collectors.toCollection(TreeSet::new));
 
-        viewModel.setLteNeighbors(lteNeighbors);
+        if (!isSameNeighbors(viewModel.getLteNeighbors().getValue(), lteNeighbors)) viewModel.setLteNeighbors(lteNeighbors);
     }
 
     /**
@@ -745,7 +753,7 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
             return builder.build();
         }).sorted().collect(Collectors.toCollection(TreeSet::new));
 
-        viewModel.setNrNeighbors(nrNeighbors);
+        if (!isSameNeighbors(viewModel.getNrNeighbors().getValue(), nrNeighbors)) viewModel.setNrNeighbors(nrNeighbors);
     }
 
     /**
@@ -843,7 +851,7 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
     }
 
     /**
-     * Given the newest set of  r neighbors, update the neighbors table view.
+     * Given the newest set of NR neighbors, update the neighbors table view.
      *
      * @param neighbors The latest batch of NR neighbors.
      */
@@ -860,21 +868,15 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
 
         binding.nrNeighborsGroup.setVisibility(View.VISIBLE);
 
-        final TableLayout neighborsTable = binding.nrNeighborsTable;
-
-        neighborsTable.removeAllViews();
-
+        final long[] keys = new long[neighbors.size()];
+        final List<int[]> values = new ArrayList<>(neighbors.size());
         for (NrNeighbor neighbor : neighbors)
         {
-            final TableRow row = new TableRow(context);
-
-            addValueToRow(context, row, neighbor.narfcn);
-            addValueToRow(context, row, neighbor.pci);
-            addValueToRow(context, row, neighbor.ssRsrp);
-            addValueToRow(context, row, neighbor.ssRsrq);
-
-            neighborsTable.addView(row);
+            keys[values.size()] = NeighborTableRecycler.rowKey(neighbor.narfcn, neighbor.pci);
+            values.add(new int[]{neighbor.narfcn, neighbor.pci, neighbor.ssRsrp, neighbor.ssRsrq});
         }
+
+        nrNeighborsTable.update(context, keys, values);
     }
 
     /**
@@ -895,22 +897,15 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
 
         binding.lteNeighborsGroup.setVisibility(View.VISIBLE);
 
-        final TableLayout lteNeighborsTable = binding.lteNeighborsTable;
-
-        lteNeighborsTable.removeAllViews();
-
+        final long[] keys = new long[neighbors.size()];
+        final List<int[]> values = new ArrayList<>(neighbors.size());
         for (LteNeighbor neighbor : neighbors)
         {
-            final TableRow row = new TableRow(context);
-
-            addValueToRow(context, row, neighbor.earfcn);
-            addValueToRow(context, row, neighbor.pci);
-            addValueToRow(context, row, neighbor.rsrp);
-            addValueToRow(context, row, neighbor.rsrq);
-            addValueToRow(context, row, neighbor.ta);
-
-            lteNeighborsTable.addView(row);
+            keys[values.size()] = NeighborTableRecycler.rowKey(neighbor.earfcn, neighbor.pci);
+            values.add(new int[]{neighbor.earfcn, neighbor.pci, neighbor.rsrp, neighbor.rsrq, neighbor.ta});
         }
+
+        lteNeighborsTable.update(context, keys, values);
     }
 
     /**
@@ -923,8 +918,6 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
         final Context context = getContext();
         if (context == null) return;
 
-        final TableLayout umtsNeighborsTable = binding.umtsNeighborsTable;
-
         if (neighbors.isEmpty())
         {
             binding.umtsNeighborsGroup.setVisibility(View.GONE);
@@ -933,18 +926,15 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
 
         binding.umtsNeighborsGroup.setVisibility(View.VISIBLE);
 
-        umtsNeighborsTable.removeAllViews();
-
+        final long[] keys = new long[neighbors.size()];
+        final List<int[]> values = new ArrayList<>(neighbors.size());
         for (UmtsNeighbor neighbor : neighbors)
         {
-            final TableRow row = new TableRow(context);
-
-            addValueToRow(context, row, neighbor.uarfcn);
-            addValueToRow(context, row, neighbor.psc);
-            addValueToRow(context, row, neighbor.rscp);
-
-            umtsNeighborsTable.addView(row);
+            keys[values.size()] = NeighborTableRecycler.rowKey(neighbor.uarfcn, neighbor.psc);
+            values.add(new int[]{neighbor.uarfcn, neighbor.psc, neighbor.rscp});
         }
+
+        umtsNeighborsTable.update(context, keys, values);
     }
 
     /**
@@ -957,8 +947,6 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
         final Context context = getContext();
         if (context == null) return;
 
-        final TableLayout gsmNeighborsTable = binding.gsmNeighborsTable;
-
         if (neighbors.isEmpty())
         {
             binding.gsmNeighborsGroup.setVisibility(View.GONE);
@@ -967,43 +955,33 @@ public class NetworkDetailsFragment extends AServiceDataFragment implements ICel
 
         binding.gsmNeighborsGroup.setVisibility(View.VISIBLE);
 
-        gsmNeighborsTable.removeAllViews();
-
+        final long[] keys = new long[neighbors.size()];
+        final List<int[]> values = new ArrayList<>(neighbors.size());
         for (GsmNeighbor neighbor : neighbors)
         {
-            final TableRow row = new TableRow(context);
-
-            addValueToRow(context, row, neighbor.arfcn);
-            addValueToRow(context, row, neighbor.bsic);
-            addValueToRow(context, row, neighbor.rssi);
-
-            gsmNeighborsTable.addView(row);
+            keys[values.size()] = NeighborTableRecycler.rowKey(neighbor.arfcn, neighbor.bsic);
+            values.add(new int[]{neighbor.arfcn, neighbor.bsic, neighbor.rssi});
         }
+
+        gsmNeighborsTable.update(context, keys, values);
     }
 
     /**
-     * Set the provided value in a TextView and then add it to the row.
+     * Checks if the neighbors from the latest scan are the same as the neighbors that are already being displayed, so
+     * that the view model is only updated when something changed.
      *
-     * @param context The context to use for creating the TextView.
-     * @param row     The row to add the cell to.
-     * @param value   The value to place in the cell. If the value is
-     *                {@link com.craxiom.networksurvey.constants.NetworkSurveyConstants#UNSET_VALUE},
-     *                then an empty strinig is placed in the cell.
+     * @return True if both sets contain equal neighbors in the same order.
      */
-    private void addValueToRow(Context context, TableRow row, int value)
+    private static <T> boolean isSameNeighbors(SortedSet<T> currentNeighbors, SortedSet<T> newNeighbors)
     {
-        final String cellText;
-        if (value == NetworkSurveyConstants.UNSET_VALUE)
-        {
-            // We need to add an empty text view to make sure the columns align correctly
-            cellText = "";
-        } else
+        if (currentNeighbors == null || currentNeighbors.size() != newNeighbors.size()) return false;
+
+        final Iterator<T> currentIterator = currentNeighbors.iterator();
+        for (T neighbor : newNeighbors)
         {
-            cellText = String.valueOf(value);
+            if (!neighbor.equals(currentIterator.next())) return false;
         }
 
-        final TextView view = new TextView(context, null, 0, R.style.TableText);
-        view.setText(cellText);
-        row.addView(view);
+        return true;
     }
 }
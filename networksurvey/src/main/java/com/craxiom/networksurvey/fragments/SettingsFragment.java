@@ -36,12 +36,21 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
             NetworkSurveyConstants.PROPERTY_AUTO_START_BLUETOOTH_LOGGING,
             NetworkSurveyConstants.PROPERTY_AUTO_START_GNSS_LOGGING,
             NetworkSurveyConstants.PROPERTY_LOG_ROLLOVER_SIZE_MB,
+            NetworkSurveyConstants.PROPERTY_BLUETOOTH_MAX_RECORDS_PER_SCAN,
             NetworkSurveyConstants.PROPERTY_CELLULAR_SCAN_INTERVAL_SECONDS,
             NetworkSurveyConstants.PROPERTY_WIFI_SCAN_INTERVAL_SECONDS,
             NetworkSurveyConstants.PROPERTY_BLUETOOTH_SCAN_INTERVAL_SECONDS,
             NetworkSurveyConstants.PROPERTY_GNSS_SCAN_INTERVAL_SECONDS,
             NetworkSurveyConstants.PROPERTY_DEVICE_STATUS_SCAN_INTERVAL_SECONDS,
-            NetworkSurveyConstants.PROPERTY_MQTT_START_ON_BOOT};
+            NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_SPACING_METERS,
+            NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS,
+            NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS,
+            NetworkSurveyConstants.PROPERTY_MQTT_START_ON_BOOT,
+            NetworkSurveyConstants.PROPERTY_MQTT_BATCH_WINDOW_MS,
+            NetworkSurveyConstants.PROPERTY_MQTT_TOPIC_RATE_LIMITS,
+            NetworkSurveyConstants.PROPERTY_MQTT_ADDITIONAL_BROKERS,
+            NetworkSurveyConstants.PROPERTY_GRPC_COMPRESSION_ENABLED,
+            NetworkSurveyConstants.PROPERTY_GRPC_BATCH_WINDOW_MS};
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey)
@@ -50,11 +59,17 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
         setPreferencesFromResource(R.xml.preferences, rootKey);
         getPreferenceManager().getSharedPreferences().registerOnSharedPreferenceChangeListener(this);
 
+        setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_BLUETOOTH_MAX_RECORDS_PER_SCAN));
         setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_CELLULAR_SCAN_INTERVAL_SECONDS));
         setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_WIFI_SCAN_INTERVAL_SECONDS));
         setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_BLUETOOTH_SCAN_INTERVAL_SECONDS));
         setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_GNSS_SCAN_INTERVAL_SECONDS));
         setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_DEVICE_STATUS_SCAN_INTERVAL_SECONDS));
+        setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_SPACING_METERS));
+        setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS));
+        setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS));
+        setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_MQTT_BATCH_WINDOW_MS));
+        setPreferenceAsIntegerOnly(findPreference(NetworkSurveyConstants.PROPERTY_GRPC_BATCH_WINDOW_MS));
 
         updateUiForMdmIfNecessary();
     }
@@ -85,6 +100,10 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
                 }
                 break;
 
+            case NetworkSurveyConstants.PROPERTY_BLUETOOTH_MAX_RECORDS_PER_SCAN:
+                defaultValue = NetworkSurveyConstants.DEFAULT_BLUETOOTH_MAX_RECORDS_PER_SCAN;
+                break;
+
             case NetworkSurveyConstants.PROPERTY_CELLULAR_SCAN_INTERVAL_SECONDS:
                 defaultValue = NetworkSurveyConstants.DEFAULT_CELLULAR_SCAN_INTERVAL_SECONDS;
                 break;
@@ -104,6 +123,26 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
             case NetworkSurveyConstants.PROPERTY_DEVICE_STATUS_SCAN_INTERVAL_SECONDS:
                 defaultValue = NetworkSurveyConstants.DEFAULT_DEVICE_STATUS_SCAN_INTERVAL_SECONDS;
                 break;
+
+            case NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_SPACING_METERS:
+                defaultValue = NetworkSurveyConstants.DEFAULT_ADAPTIVE_SCAN_SPACING_METERS;
+                break;
+
+            case NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS:
+                defaultValue = NetworkSurveyConstants.DEFAULT_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS;
+                break;
+
+            case NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS:
+                defaultValue = NetworkSurveyConstants.DEFAULT_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS;
+                break;
+
+            case NetworkSurveyConstants.PROPERTY_MQTT_BATCH_WINDOW_MS:
+                defaultValue = NetworkSurveyConstants.DEFAULT_MQTT_BATCH_WINDOW_MS;
+                break;
+
+            case NetworkSurveyConstants.PROPERTY_GRPC_BATCH_WINDOW_MS:
+                defaultValue = NetworkSurveyConstants.DEFAULT_GRPC_BATCH_WINDOW_MS;
+                break;
         }
 
         if (defaultValue != -1)
@@ -200,12 +239,21 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
         updateBooleanPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_AUTO_START_BLUETOOTH_LOGGING);
         updateBooleanPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_AUTO_START_GNSS_LOGGING);
         updateLogRolloverSizeForMdm(preferenceScreen, mdmProperties);
+        updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_BLUETOOTH_MAX_RECORDS_PER_SCAN);
         updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_CELLULAR_SCAN_INTERVAL_SECONDS);
         updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_WIFI_SCAN_INTERVAL_SECONDS);
         updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_BLUETOOTH_SCAN_INTERVAL_SECONDS);
         updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_GNSS_SCAN_INTERVAL_SECONDS);
         updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_DEVICE_STATUS_SCAN_INTERVAL_SECONDS);
+        updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_SPACING_METERS);
+        updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS);
+        updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS);
         updateBooleanPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_MQTT_START_ON_BOOT);
+        updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_MQTT_BATCH_WINDOW_MS);
+        updateStringPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_MQTT_TOPIC_RATE_LIMITS);
+        updateStringPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_MQTT_ADDITIONAL_BROKERS);
+        updateBooleanPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_GRPC_COMPRESSION_ENABLED);
+        updateIntPreferenceForMdm(preferenceScreen, mdmProperties, NetworkSurveyConstants.PROPERTY_GRPC_BATCH_WINDOW_MS);
     }
 
     /**
@@ -280,6 +328,42 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
         }
     }
 
+    /**
+     * Updates a string preference with an MDM value, if it exists. The shared preferences are
+     * also updated, so that values are retained when MDM control is off.
+     *
+     * @param preferenceScreen The preference screen
+     * @param mdmProperties    The map of mdm provided properties.
+     * @param preferenceKey    The preference key
+     * @since 1.10.0
+     */
+    private void updateStringPreferenceForMdm(PreferenceScreen preferenceScreen, Bundle mdmProperties, String preferenceKey)
+    {
+        try
+        {
+            final EditTextPreference preference = preferenceScreen.findPreference(preferenceKey);
+
+            if (preference != null && mdmProperties.containsKey(preferenceKey))
+            {
+                final String mdmValue = mdmProperties.getString(preferenceKey);
+
+                if (mdmValue != null)
+                {
+                    preference.setEnabled(false);
+                    preference.setSummaryProvider(pref -> mdmValue);
+
+                    getPreferenceManager().getSharedPreferences()
+                            .edit()
+                            .putString(preferenceKey, mdmValue)
+                            .apply();
+                }
+            }
+        } catch (Exception e)
+        {
+            Timber.wtf(e, "Could not find the string preference or update the UI component for %s", preferenceKey);
+        }
+    }
+
     /**
      * Updates the log rollover preference with an MDM value, if it exists. The shared preferences
      * is also updated, so that values are retained when MDM control is off.
@@ -12,7 +12,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
-import android.os.Looper;
 import android.provider.Settings;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -38,10 +37,12 @@ import com.craxiom.networksurvey.fragments.model.WifiViewModel;
 import com.craxiom.networksurvey.listeners.IWifiSurveyRecordListener;
 import com.craxiom.networksurvey.model.WifiRecordWrapper;
 import com.craxiom.networksurvey.services.NetworkSurveyService;
+import com.craxiom.networksurvey.util.UiUpdateDispatcher;
 import com.google.android.material.snackbar.Snackbar;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import timber.log.Timber;
 
@@ -54,7 +55,7 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
 {
     private FragmentWifiNetworksListBinding binding;
     private SortedList<WifiRecordWrapper> wifiRecordSortedList;
-    private final Handler uiThreadHandler;
+    private UiUpdateDispatcher.Channel<ScanUpdate> scanUpdateChannel;
 
     private WifiViewModel viewModel;
 
@@ -62,7 +63,8 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
     private NetworkSurveyService surveyService;
     private MyWifiNetworkRecyclerViewAdapter wifiNetworkRecyclerViewAdapter;
 
-    private long lastScanTime = 0;
+    private final AtomicLong latestScanSequence = new AtomicLong();
+    private long appliedScanSequence = 0;
     private boolean throttlingNotificationShown = false;
 
     /**
@@ -77,7 +79,6 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
      */
     public WifiNetworksFragment()
     {
-        uiThreadHandler = new Handler(Looper.getMainLooper());
     }
 
     @Override
@@ -85,6 +86,19 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
     {
         applicationContext = requireActivity().getApplicationContext();
         super.onCreate(savedInstanceState);
+
+        // The scans are processed on a thread pool, so keep the newest scan if two arrive before the next frame
+        scanUpdateChannel = UiUpdateDispatcher.getInstance().createChannel("Wi-Fi", 0,
+                (pending, update) -> update.scanSequence > pending.scanSequence ? update : pending,
+                this::onScanUpdate);
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        UiUpdateDispatcher.getInstance().removeChannel(scanUpdateChannel);
+
+        super.onDestroy();
     }
 
     @Override
@@ -105,6 +119,7 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
 
         wifiNetworkRecyclerViewAdapter = new MyWifiNetworkRecyclerViewAdapter(wifiRecordSortedList, getContext());
         binding.wifiNetworkList.setAdapter(wifiNetworkRecyclerViewAdapter);
+        viewModel.setListAdapter(wifiNetworkRecyclerViewAdapter);
 
         binding.pauseButton.setOnClickListener(v -> viewModel.toggleUpdatesPaused(getContext()));
         binding.sortButton.setOnClickListener(v -> showSortByDialog());
@@ -124,13 +139,7 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
                 scanNumber -> binding.scanNumber.setText(context.getString(R.string.scan_number, scanNumber)));
 
         viewModel.areUpdatesPaused().observe(viewLifecycleOwner,
-                paused -> {
-                    binding.pauseButton.setBackgroundResource(paused ? R.drawable.ic_play : R.drawable.ic_pause);
-
-                    // If we are transitioning to un-pause scan updates, then artificially reset the last scan time so that we don't
-                    // think that scans are being throttled by the Android OS.
-                    if (paused) lastScanTime = System.currentTimeMillis();
-                });
+                paused -> binding.pauseButton.setBackgroundResource(paused ? R.drawable.ic_play : R.drawable.ic_pause));
 
         return binding.getRoot();
     }
@@ -167,6 +176,7 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
         viewModel.getApsInLastScan().removeObservers(viewLifecycleOwner);
         viewModel.getScanNumber().removeObservers(viewLifecycleOwner);
         viewModel.areUpdatesPaused().removeObservers(viewLifecycleOwner);
+        viewModel.setListAdapter(null);
 
         super.onDestroyView();
     }
@@ -177,33 +187,46 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
         //noinspection ConstantConditions
         if (viewModel.areUpdatesPaused().getValue()) return;
 
+        final long scanSequence = latestScanSequence.incrementAndGet();
+
+        // This is called from one of the survey service's worker threads, so sort the records here to keep that work
+        // off the UI thread
+        final WifiRecordWrapper[] sortedRecords = viewModel.prepareScanResults(wifiBeaconRecords);
+
         // Move this back to the UI thread since we are updating the UI
-        uiThreadHandler.post(() -> {
-            try
-            {
-                checkForScanThrottling();
+        scanUpdateChannel.submit(new ScanUpdate(scanSequence, sortedRecords, wifiBeaconRecords.size()));
+    }
 
-                final Context context = requireContext();
-                viewModel.incrementScanNumber();
-                viewModel.setApsInLastScan(wifiBeaconRecords.size());
+    /**
+     * Updates the UI with the latest scan results. Called on the UI thread by the {@link UiUpdateDispatcher}.
+     *
+     * @since 1.10.0
+     */
+    private void onScanUpdate(ScanUpdate scanUpdate)
+    {
+        try
+        {
+            // The scans are processed on a thread pool, so don't let an older scan replace a newer one
+            if (scanUpdate.scanSequence < appliedScanSequence) return;
+            appliedScanSequence = scanUpdate.scanSequence;
 
-                synchronized (wifiRecordSortedList)
-                {
-                    wifiRecordSortedList.clear();
-                    wifiRecordSortedList.addAll(wifiBeaconRecords);
-                    if (wifiNetworkRecyclerViewAdapter != null)
-                    {
-                        wifiNetworkRecyclerViewAdapter.notifyDataSetChanged();
-                    }
-                }
-            } catch (Exception e)
+            checkForScanThrottling();
+
+            final Context context = requireContext();
+            viewModel.incrementScanNumber();
+            viewModel.setApsInLastScan(scanUpdate.apCount);
+
+            synchronized (wifiRecordSortedList)
             {
-                // IllegalStateExceptions are happening because of the requireContext call. I am guessing this is due
-                // to the fact that the wifi results are coming back after the user has switched away from the fragment
-                // but the listener has not been removed yet. Basically a race condition. We can ignore these.
-                Timber.e(e, "Could not update the Wi-Fi Fragment UI due to an exception");
+                viewModel.replaceWifiList(scanUpdate.sortedRecords);
             }
-        });
+        } catch (Exception e)
+        {
+            // IllegalStateExceptions are happening because of the requireContext call. I am guessing this is due
+            // to the fact that the wifi results are coming back after the user has switched away from the fragment
+            // but the listener has not been removed yet. Basically a race condition. We can ignore these.
+            Timber.e(e, "Could not update the Wi-Fi Fragment UI due to an exception");
+        }
     }
 
     /**
@@ -242,9 +265,6 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
      */
     private void startAndBindToNetworkSurveyService()
     {
-        // Update the last scan time so that we don't trigger a false positive alert on the scan time interval.
-        lastScanTime = System.currentTimeMillis();
-
         // Start the service
         Timber.i("Binding to the Network Survey Service");
         final Intent serviceIntent = new Intent(applicationContext, NetworkSurveyService.class);
@@ -284,8 +304,8 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
     }
 
     /**
-     * Saves the new sort by index in the shared preferences, triggers a resort of the Wi-Fi networks sorted list, and
-     * then notifies the recycler view that the data has changed.
+     * Saves the new sort by index in the shared preferences and triggers a resort of the Wi-Fi networks sorted list,
+     * which notifies the recycler view of the changes.
      *
      * @param preferences   The SharedPreferences to store the sort by index in.
      * @param selectedIndex The newly selected sort by index (from arrays.xml).
@@ -311,11 +331,6 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
             tempWifiNetworkList.clear();
 
             wifiRecordSortedList.endBatchedUpdates();
-
-            if (wifiNetworkRecyclerViewAdapter != null)
-            {
-                wifiNetworkRecyclerViewAdapter.notifyDataSetChanged();
-            }
         }
     }
 
@@ -441,14 +456,11 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
     }
 
     /**
-     * Check to see if we can notice that scan throttling is enabled.  I wish we could grab this straight from the
-     * OS settings, but it seems that the Android API does not exposes this OS setting.  Therefore, we check to see if
-     * the scan interval is significantly longer than what we are requesting it to be.
+     * Check to see if scan throttling is enabled. The survey service budgets the Wi-Fi scans when the Android OS is
+     * throttling them, so the gaps between scans no longer show if throttling is enabled. Instead, ask the service.
      * <p>
      * If we do determine that scan throttling is enabled, then alert the user.  Note that the alert should be
      * different for Android 9 vs 10.
-     * <p>
-     * We have to make sure to handle pausing the UI updates so we don't artificially trigger this alert.
      */
     private void checkForScanThrottling()
     {
@@ -458,27 +470,15 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
         // There is a better way to check for scan throttling as of API level 30 (see the other method)
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) return;
 
-        if (lastScanTime == 0)
-        {
-            // First time scanning, so initialize the last scan time.
-            lastScanTime = System.currentTimeMillis();
-            return;
-        }
-
         // Don't keep annoying the user with the prompts. Notify them once.
-        if (throttlingNotificationShown) return;
+        if (throttlingNotificationShown || surveyService == null) return;
 
-        final long newScanTime = System.currentTimeMillis();
-        final boolean devOptionsEnabled = areDeveloperOptionsEnabled();
-
-        if (!devOptionsEnabled || newScanTime - lastScanTime > surveyService.getWifiScanRateMs() * 3L)
+        if (surveyService.isWifiScanThrottled())
         {
             showScanThrottlingSnackbar();
 
             throttlingNotificationShown = true;
         }
-
-        lastScanTime = newScanTime;
     }
 
     /**
@@ -553,4 +553,21 @@ public class WifiNetworksFragment extends Fragment implements IWifiSurveyRecordL
             surveyService = null;
         }
     }
+
+    /**
+     * The results of one scan, ready to be shown in the UI.
+     */
+    private static final class ScanUpdate
+    {
+        private final long scanSequence;
+        private final WifiRecordWrapper[] sortedRecords;
+        private final int apCount;
+
+        private ScanUpdate(long scanSequence, WifiRecordWrapper[] sortedRecords, int apCount)
+        {
+            this.scanSequence = scanSequence;
+            this.sortedRecords = sortedRecords;
+            this.apCount = apCount;
+        }
+    }
 }
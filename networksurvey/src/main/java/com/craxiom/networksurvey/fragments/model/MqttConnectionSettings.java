@@ -36,6 +36,9 @@ public class MqttConnectionSettings implements Serializable
     @SerializedName("mqtt_password")
     private String mqttPassword;
 
+    @SerializedName("mqtt_payload_format")
+    private String payloadFormat;
+
     public String getHost()
     {
         return host;
@@ -95,4 +98,14 @@ public class MqttConnectionSettings implements Serializable
     {
         this.mqttPassword = mqttPassword;
     }
+
+    public String getPayloadFormat()
+    {
+        return payloadFormat;
+    }
+
+    public void setPayloadFormat(String payloadFormat)
+    {
+        this.payloadFormat = payloadFormat;
+    }
 }
@@ -6,12 +6,20 @@ import android.net.wifi.WifiManager;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
+import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.SortedList;
 
+import com.craxiom.messaging.WifiBeaconRecordData;
 import com.craxiom.networksurvey.R;
 import com.craxiom.networksurvey.constants.WifiBeaconMessageConstants;
 import com.craxiom.networksurvey.model.WifiRecordWrapper;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * The view model for the wifi scan results fragment. Storing the list here allows the list to live beyond the
  * fragment lifecycle. This view model can be scoped to various levels, but at the time of this writing it is being
@@ -33,16 +41,23 @@ import com.craxiom.networksurvey.model.WifiRecordWrapper;
 public class WifiViewModel extends ViewModel
 {
     private final SortedList<WifiRecordWrapper> wifiSortedList;
+    private final WifiRecordSortedListCallback sortedListCallback = new WifiRecordSortedListCallback();
     private final MutableLiveData<Integer> scanStatusId = new MutableLiveData<>(R.string.scan_status_scanning);
     private final MutableLiveData<Integer> apsInLastScan = new MutableLiveData<>(0);
     private final MutableLiveData<Integer> scanNumber = new MutableLiveData<>(0);
     private final MutableLiveData<Boolean> updatesPaused = new MutableLiveData<>(false);
 
-    private int sortByIndex = 0;
+    private volatile int sortByIndex = 0;
+
+    /**
+     * The adapter that is notified of the changes to the sorted list. It is only set while the fragment's view exists
+     * because this view model outlives the fragment's views.
+     */
+    private RecyclerView.Adapter<?> listAdapter;
 
     public WifiViewModel()
     {
-        wifiSortedList = new SortedList<>(WifiRecordWrapper.class, new WifiRecordSortedListCallback());
+        wifiSortedList = new SortedList<>(WifiRecordWrapper.class, sortedListCallback);
     }
 
     public SortedList<WifiRecordWrapper> getWifiList()
@@ -50,6 +65,57 @@ public class WifiViewModel extends ViewModel
         return wifiSortedList;
     }
 
+    /**
+     * Sets the adapter that should be notified of each item that is inserted, removed, moved, or changed in the Wi-Fi
+     * list.
+     *
+     * @param listAdapter The adapter for the Wi-Fi list, or null to stop notifying an adapter.
+     * @since 1.10.0
+     */
+    public void setListAdapter(RecyclerView.Adapter<?> listAdapter)
+    {
+        this.listAdapter = listAdapter;
+    }
+
+    /**
+     * Prepares the records from a Wi-Fi scan so that they can be swapped into the Wi-Fi list with
+     * {@link #replaceWifiList(WifiRecordWrapper[])}. The records are de-duplicated by BSSID and sorted with the current
+     * sort order, which is the expensive part of the update, so this should be called from a background thread.
+     *
+     * @param wifiBeaconRecords The records from the latest Wi-Fi scan.
+     * @return The sorted records with one record per BSSID.
+     * @since 1.10.0
+     */
+    public WifiRecordWrapper[] prepareScanResults(List<WifiRecordWrapper> wifiBeaconRecords)
+    {
+        final Map<String, WifiRecordWrapper> recordsByBssid = new LinkedHashMap<>();
+        for (WifiRecordWrapper wifiRecord : wifiBeaconRecords)
+        {
+            recordsByBssid.put(wifiRecord.getWifiBeaconRecord().getData().getBssid(), wifiRecord);
+        }
+
+        final WifiRecordWrapper[] sortedRecords = recordsByBssid.values().toArray(new WifiRecordWrapper[0]);
+        Arrays.sort(sortedRecords, sortedListCallback);
+        return sortedRecords;
+    }
+
+    /**
+     * Replaces the contents of the Wi-Fi list with the records from the latest scan. The sorted list matches the new
+     * records to the existing ones by BSSID, so the adapter is only notified for the access points that were added,
+     * removed, moved, or had a change in the values that are displayed.
+     * <p>
+     * This must be called from the UI thread.
+     *
+     * @param sortedRecords The records returned from {@link #prepareScanResults(List)}. The array is used as the new
+     *                      backing array for the list so it must not be modified after calling this method.
+     * @since 1.10.0
+     */
+    public void replaceWifiList(WifiRecordWrapper[] sortedRecords)
+    {
+        // The records are already sorted, so sorting them again in the sorted list is a single linear pass
+        wifiSortedList.replaceAll(sortedRecords, true);
+    }
+
     public void setSortByIndex(int newSortByIndex)
     {
         sortByIndex = newSortByIndex;
@@ -154,37 +220,49 @@ public class WifiViewModel extends ViewModel
         @Override
         public void onChanged(int position, int count)
         {
-
+            if (listAdapter != null) listAdapter.notifyItemRangeChanged(position, count);
         }
 
+        /**
+         * Only the values shown in the Wi-Fi list are compared. The record number and device time change with every
+         * scan, so comparing the whole record would rebind every row.
+         */
         @Override
         public boolean areContentsTheSame(WifiRecordWrapper oldRecord, WifiRecordWrapper newRecord)
         {
-            return false;
+            final WifiBeaconRecordData oldData = oldRecord.getWifiBeaconRecord().getData();
+            final WifiBeaconRecordData newData = newRecord.getWifiBeaconRecord().getData();
+
+            return oldData.getSsid().equals(newData.getSsid())
+                    && oldData.getSignalStrength().equals(newData.getSignalStrength())
+                    && oldData.getEncryptionType() == newData.getEncryptionType()
+                    && oldData.getFrequencyMhz().equals(newData.getFrequencyMhz())
+                    && oldData.getChannel().equals(newData.getChannel())
+                    && Objects.equals(oldRecord.getCapabilitiesString(), newRecord.getCapabilitiesString());
         }
 
         @Override
         public boolean areItemsTheSame(WifiRecordWrapper record1, WifiRecordWrapper record2)
         {
-            return false;
+            return record1.getWifiBeaconRecord().getData().getBssid().equals(record2.getWifiBeaconRecord().getData().getBssid());
         }
 
         @Override
         public void onInserted(int position, int count)
         {
-
+            if (listAdapter != null) listAdapter.notifyItemRangeInserted(position, count);
         }
 
         @Override
         public void onRemoved(int position, int count)
         {
-
+            if (listAdapter != null) listAdapter.notifyItemRangeRemoved(position, count);
         }
 
         @Override
         public void onMoved(int fromPosition, int toPosition)
         {
-
+            if (listAdapter != null) listAdapter.notifyItemMoved(fromPosition, toPosition);
         }
     }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package com.craxiom.networksurvey.listeners;
 
 import com.craxiom.messaging.BluetoothRecord;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -24,4 +26,34 @@ public interface IBluetoothSurveyRecordListener
      * @param bluetoothRecords the list of Bluetooth records.
      */
     void onBluetoothSurveyRecords(List<BluetoothRecord> bluetoothRecords);
+
+    /**
+     * Called when a new Bluetooth survey record is ready, with the envelope that holds its serialized bytes. The survey
+     * service calls this method instead of {@link #onBluetoothSurveyRecord(BluetoothRecord)}, so listeners that send the
+     * records somewhere (e.g. MQTT) should override this method and keep the envelope so the bytes can be shared. By
+     * default it passes the record to {@link #onBluetoothSurveyRecord(BluetoothRecord)}.
+     *
+     * @param envelope The envelope for the Bluetooth record.
+     * @since 1.10.0
+     */
+    default void onBluetoothSurveyRecordEnvelope(SurveyRecordEnvelope<BluetoothRecord> envelope)
+    {
+        onBluetoothSurveyRecord(envelope.getRecord());
+    }
+
+    /**
+     * Called when a new collection of Bluetooth survey records are ready, with the envelopes that hold their serialized
+     * bytes and the {@link com.craxiom.networksurvey.model.BluetoothSignalStats} of the merged records. The survey
+     * service calls this method instead of {@link #onBluetoothSurveyRecords(List)}. By default it passes the records to
+     * {@link #onBluetoothSurveyRecords(List)}.
+     *
+     * @param envelopes The envelopes for the Bluetooth records.
+     * @since 1.10.0
+     */
+    default void onBluetoothSurveyRecordEnvelopes(List<SurveyRecordEnvelope<BluetoothRecord>> envelopes)
+    {
+        final List<BluetoothRecord> bluetoothRecords = new ArrayList<>(envelopes.size());
+        for (SurveyRecordEnvelope<BluetoothRecord> envelope : envelopes) bluetoothRecords.add(envelope.getRecord());
+        onBluetoothSurveyRecords(bluetoothRecords);
+    }
 }
@@ -6,6 +6,7 @@ import com.craxiom.messaging.LteRecord;
 import com.craxiom.messaging.NrRecord;
 import com.craxiom.messaging.UmtsRecord;
 import com.craxiom.networksurvey.model.CellularRecordWrapper;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 
 import java.util.List;
 
@@ -55,6 +56,64 @@ public interface ICellularSurveyRecordListener
      */
     void onNrSurveyRecord(NrRecord nrRecord);
 
+    /**
+     * Called when a new GSM Survey Record is ready, with the envelope that holds its serialized bytes. The survey
+     * service calls this method instead of {@link #onGsmSurveyRecord(GsmRecord)}, so listeners that send the records
+     * somewhere (e.g. MQTT or gRPC) should override this method and keep the envelope so the bytes can be shared. By
+     * default it passes the record to {@link #onGsmSurveyRecord(GsmRecord)}.
+     *
+     * @param envelope The envelope for the GSM Record.
+     * @since 1.10.0
+     */
+    default void onGsmSurveyRecordEnvelope(SurveyRecordEnvelope<GsmRecord> envelope)
+    {
+        onGsmSurveyRecord(envelope.getRecord());
+    }
+
+    /**
+     * The CDMA version of {@link #onGsmSurveyRecordEnvelope(SurveyRecordEnvelope)}.
+     *
+     * @param envelope The envelope for the CDMA Record.
+     * @since 1.10.0
+     */
+    default void onCdmaSurveyRecordEnvelope(SurveyRecordEnvelope<CdmaRecord> envelope)
+    {
+        onCdmaSurveyRecord(envelope.getRecord());
+    }
+
+    /**
+     * The UMTS version of {@link #onGsmSurveyRecordEnvelope(SurveyRecordEnvelope)}.
+     *
+     * @param envelope The envelope for the UMTS Record.
+     * @since 1.10.0
+     */
+    default void onUmtsSurveyRecordEnvelope(SurveyRecordEnvelope<UmtsRecord> envelope)
+    {
+        onUmtsSurveyRecord(envelope.getRecord());
+    }
+
+    /**
+     * The LTE version of {@link #onGsmSurveyRecordEnvelope(SurveyRecordEnvelope)}.
+     *
+     * @param envelope The envelope for the LTE Record.
+     * @since 1.10.0
+     */
+    default void onLteSurveyRecordEnvelope(SurveyRecordEnvelope<LteRecord> envelope)
+    {
+        onLteSurveyRecord(envelope.getRecord());
+    }
+
+    /**
+     * The NR version of {@link #onGsmSurveyRecordEnvelope(SurveyRecordEnvelope)}.
+     *
+     * @param envelope The envelope for the NR Record.
+     * @since 1.10.0
+     */
+    default void onNrSurveyRecordEnvelope(SurveyRecordEnvelope<NrRecord> envelope)
+    {
+        onNrSurveyRecord(envelope.getRecord());
+    }
+
     /**
      * Called when a new batch of cellular survey records are ready.
      * <p>
@@ -2,6 +2,7 @@ package com.craxiom.networksurvey.listeners;
 
 import com.craxiom.messaging.DeviceStatus;
 import com.craxiom.messaging.PhoneState;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 
 /**
  * Listener interface for those interested in being notified whenever a new Device Status message is ready.
@@ -25,4 +26,29 @@ public interface IDeviceStatusListener
      * @since 1.4.0
      */
     void onPhoneState(PhoneState phoneState);
+
+    /**
+     * Notification that a new Device Status message is ready, with the envelope that holds its serialized bytes. The
+     * survey service calls this method instead of {@link #onDeviceStatus(DeviceStatus)}, so listeners that send the
+     * messages somewhere (e.g. MQTT) should override this method and keep the envelope so the bytes can be shared. By
+     * default it passes the message to {@link #onDeviceStatus(DeviceStatus)}.
+     *
+     * @param envelope The envelope for the Device Status message.
+     * @since 1.10.0
+     */
+    default void onDeviceStatusEnvelope(SurveyRecordEnvelope<DeviceStatus> envelope)
+    {
+        onDeviceStatus(envelope.getRecord());
+    }
+
+    /**
+     * The Phone State version of {@link #onDeviceStatusEnvelope(SurveyRecordEnvelope)}.
+     *
+     * @param envelope The envelope for the Phone State message.
+     * @since 1.10.0
+     */
+    default void onPhoneStateEnvelope(SurveyRecordEnvelope<PhoneState> envelope)
+    {
+        onPhoneState(envelope.getRecord());
+    }
 }
@@ -1,9 +1,10 @@
 package com.craxiom.networksurvey.listeners;
 
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
 import android.location.LocationListener;
 
+import com.craxiom.networksurvey.model.GnssStatusSnapshot;
+
 /**
  * Defines the GPS events that listeners will be notified about.
  * <p>
@@ -25,7 +26,14 @@ public interface IGnssListener extends LocationListener
     {
     }
 
-    default void onSatelliteStatusChanged(GnssStatus status)
+    /**
+     * Called on the main thread with the latest satellite values. The snapshot is shared with the other listeners and
+     * it is reused, so it must not be modified, and it is only valid until the next call to this method.
+     *
+     * @param snapshot The satellite values from the latest GNSS status update.
+     * @since 1.10.0
+     */
+    default void onSatelliteStatusChanged(GnssStatusSnapshot snapshot)
     {
     }
 
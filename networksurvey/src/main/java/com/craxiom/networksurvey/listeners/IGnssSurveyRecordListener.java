@@ -1,6 +1,7 @@
 package com.craxiom.networksurvey.listeners;
 
 import com.craxiom.messaging.GnssRecord;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 
 /**
  * Listener interface for those interested in being notified when a new GNSS Survey Record is ready.
@@ -15,4 +16,18 @@ public interface IGnssSurveyRecordListener
      * @param gnssRecord the GNSS Record.
      */
     void onGnssSurveyRecord(GnssRecord gnssRecord);
+
+    /**
+     * Called when a new GNSS Survey Record is ready, with the envelope that holds its serialized bytes. The survey
+     * service calls this method instead of {@link #onGnssSurveyRecord(GnssRecord)}, so listeners that send the records
+     * somewhere (e.g. MQTT) should override this method and keep the envelope so the bytes can be shared. By default it
+     * passes the record to {@link #onGnssSurveyRecord(GnssRecord)}.
+     *
+     * @param envelope The envelope for the GNSS Record.
+     * @since 1.10.0
+     */
+    default void onGnssSurveyRecordEnvelope(SurveyRecordEnvelope<GnssRecord> envelope)
+    {
+        onGnssSurveyRecord(envelope.getRecord());
+    }
 }
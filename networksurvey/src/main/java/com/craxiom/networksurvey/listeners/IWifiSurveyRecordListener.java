@@ -17,4 +17,20 @@ public interface IWifiSurveyRecordListener
      * @param wifiBeaconRecords the list of 802.11 Beacon Records.
      */
     void onWifiBeaconSurveyRecords(List<WifiRecordWrapper> wifiBeaconRecords);
+
+    /**
+     * The Android Wi-Fi scan results hold every AP that was seen recently, so most of the APs in a scan were already
+     * sent in an earlier scan. By default the listener gets the records for every AP in each scan, the same as before.
+     * A listener that records or uploads the records can opt in to only getting the records for the APs that were seen
+     * again since the last scan, so that the same record is not logged or uploaded more than once. Such a listener is
+     * not called for a scan that has no new records.
+     *
+     * @return True if the listener should only get the records for the APs that were seen again, false to get the
+     * records for every AP in each scan.
+     * @since 1.10.0
+     */
+    default boolean isOnlyNewAccessPointsWanted()
+    {
+        return false;
+    }
 }
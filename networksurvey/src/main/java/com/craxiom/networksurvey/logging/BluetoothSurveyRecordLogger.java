@@ -9,6 +9,8 @@ import com.craxiom.messaging.bluetooth.Technology;
 import com.craxiom.networksurvey.constants.BluetoothMessageConstants;
 import com.craxiom.networksurvey.constants.NetworkSurveyConstants;
 import com.craxiom.networksurvey.listeners.IBluetoothSurveyRecordListener;
+import com.craxiom.networksurvey.model.BluetoothSignalStats;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 import com.craxiom.networksurvey.services.NetworkSurveyService;
 import com.craxiom.networksurvey.util.IOUtils;
 import com.craxiom.networksurvey.util.MathUtils;
@@ -47,13 +49,19 @@ public class BluetoothSurveyRecordLogger extends SurveyRecordLogger implements I
     @Override
     public void onBluetoothSurveyRecord(BluetoothRecord bluetoothRecord)
     {
-        writeBluetoothRecordToLogFile(bluetoothRecord);
+        writeBluetoothRecordToLogFile(bluetoothRecord, null);
     }
 
     @Override
     public void onBluetoothSurveyRecords(List<BluetoothRecord> bluetoothRecords)
     {
-        bluetoothRecords.forEach(this::writeBluetoothRecordToLogFile);
+        bluetoothRecords.forEach(bluetoothRecord -> writeBluetoothRecordToLogFile(bluetoothRecord, null));
+    }
+
+    @Override
+    public void onBluetoothSurveyRecordEnvelopes(List<SurveyRecordEnvelope<BluetoothRecord>> envelopes)
+    {
+        envelopes.forEach(envelope -> writeBluetoothRecordToLogFile(envelope.getRecord(), envelope.getBluetoothSignalStats()));
     }
 
     @Override
@@ -77,8 +85,11 @@ public class BluetoothSurveyRecordLogger extends SurveyRecordLogger implements I
             tableColumns.add(FeatureColumn.createColumn(columnNumber++, BluetoothMessageConstants.TECHNOLOGY_COLUMN, GeoPackageDataType.TEXT, false, null));
             tableColumns.add(FeatureColumn.createColumn(columnNumber++, BluetoothMessageConstants.SUPPORTED_TECHNOLOGIES_COLUMN, GeoPackageDataType.TEXT, false, null));
             tableColumns.add(FeatureColumn.createColumn(columnNumber++, BluetoothMessageConstants.TX_POWER_COLUMN, GeoPackageDataType.FLOAT, false, null));
-            //noinspection UnusedAssignment
             tableColumns.add(FeatureColumn.createColumn(columnNumber++, BluetoothMessageConstants.SIGNAL_STRENGTH_COLUMN, GeoPackageDataType.FLOAT, false, null));
+            tableColumns.add(FeatureColumn.createColumn(columnNumber++, BluetoothMessageConstants.SIGNAL_STRENGTH_MEAN_COLUMN, GeoPackageDataType.FLOAT, false, null));
+            tableColumns.add(FeatureColumn.createColumn(columnNumber++, BluetoothMessageConstants.SAMPLE_COUNT_COLUMN, GeoPackageDataType.MEDIUMINT, false, null));
+            //noinspection UnusedAssignment
+            tableColumns.add(FeatureColumn.createColumn(columnNumber++, BluetoothMessageConstants.SCAN_SUPPRESSED_COUNT_COLUMN, GeoPackageDataType.MEDIUMINT, false, null));
         });
     }
 
@@ -86,8 +97,10 @@ public class BluetoothSurveyRecordLogger extends SurveyRecordLogger implements I
      * Given a Bluetooth Record, write it to the GeoPackage log file.
      *
      * @param bluetoothRecord The Bluetooth Record to write to the log file.
+     * @param signalStats     The signal values of the sightings that were merged into the record, or null if it was not
+     *                        merged.
      */
-    private void writeBluetoothRecordToLogFile(final BluetoothRecord bluetoothRecord)
+    private void writeBluetoothRecordToLogFile(final BluetoothRecord bluetoothRecord, final BluetoothSignalStats signalStats)
     {
         if (!loggingEnabled) return;
 
@@ -130,6 +143,14 @@ public class BluetoothSurveyRecordLogger extends SurveyRecordLogger implements I
                             row.setValue(BluetoothMessageConstants.TX_POWER_COLUMN, data.getTxPower().getValue());
                         }
 
+                        // The signal strength of a record merged from several sightings is the max, so also log the mean
+                        if (signalStats != null)
+                        {
+                            row.setValue(BluetoothMessageConstants.SIGNAL_STRENGTH_MEAN_COLUMN, signalStats.getMeanRssi());
+                            row.setValue(BluetoothMessageConstants.SAMPLE_COUNT_COLUMN, signalStats.getSampleCount());
+                            row.setValue(BluetoothMessageConstants.SCAN_SUPPRESSED_COUNT_COLUMN, signalStats.getScanSuppressedCount());
+                        }
+
                         final Technology technology = data.getTechnology();
                         if (technology != Technology.UNKNOWN)
                         {
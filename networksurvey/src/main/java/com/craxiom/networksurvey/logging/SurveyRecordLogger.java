@@ -58,7 +58,7 @@ public abstract class SurveyRecordLogger
     final Handler handler;
     private final String logDirectoryName;
     private final String fileNamePrefix;
-    private final GeoPackageManager geoPackageManager;
+    private GeoPackageManager geoPackageManager; // Guarded by geoPackageLock
     private final RolloverWorker rolloverWorker = new RolloverWorker();
 
     GeoPackage geoPackage;
@@ -86,8 +86,6 @@ public abstract class SurveyRecordLogger
         handler = new Handler(serviceLooper);
         this.logDirectoryName = logDirectoryName;
         this.fileNamePrefix = fileNamePrefix;
-
-        geoPackageManager = GeoPackageFactory.getManager(networkSurveyService.getApplicationContext());
     }
 
     /**
@@ -121,6 +119,7 @@ public abstract class SurveyRecordLogger
                         loggingEnabled = false;
                         geoPackage.close();
                         geoPackage = null;
+                        geoPackageManager = null;
                         removeTempFiles();
                         rolloverWorker.reset();
                         return true;
@@ -164,8 +163,10 @@ public abstract class SurveyRecordLogger
 
         Timber.i("Creating the log file: %s", loggingFile);
 
+        // The manager is only created when a log file is needed, and released when logging is turned off
+        if (geoPackageManager == null) geoPackageManager = GeoPackageFactory.getManager(applicationContext);
+
         final boolean created = geoPackageManager.create(loggingFile);
-        final Context applicationContext = networkSurveyService.getApplicationContext();
 
         if (!created)
         {
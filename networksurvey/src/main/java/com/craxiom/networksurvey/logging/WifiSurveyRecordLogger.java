@@ -45,6 +45,16 @@ public class WifiSurveyRecordLogger extends SurveyRecordLogger implements IWifiS
         super(networkSurveyService, serviceLooper, NetworkSurveyConstants.LOG_DIRECTORY_NAME, NetworkSurveyConstants.WIFI_FILE_NAME_PREFIX);
     }
 
+    /**
+     * @return True so that each AP is only logged again when it was seen again, instead of once for every scan that
+     * still lists it.
+     */
+    @Override
+    public boolean isOnlyNewAccessPointsWanted()
+    {
+        return true;
+    }
+
     @Override
     public void onWifiBeaconSurveyRecords(List<WifiRecordWrapper> wifiBeaconRecords)
     {
@@ -0,0 +1,88 @@
+package com.craxiom.networksurvey.model;
+
+/**
+ * The signal values from all the times a Bluetooth device was seen in one scan report. A batched BLE scan report can
+ * hold dozens of advertisements from the same device, so they are merged into a single record per device and this
+ * keeps the signal information from all of them.
+ * <p>
+ * The Bluetooth record only has a single signal strength field, which is set to the max RSSI. The mean and sample
+ * count are attached to the record's {@link SurveyRecordEnvelope} so that the sinks can get to them.
+ *
+ * @since 1.10.0
+ */
+public class BluetoothSignalStats
+{
+    private int sampleCount;
+    private long rssiSum;
+    private int maxRssi = Integer.MIN_VALUE;
+    private int txPower;
+    private boolean hasTxPower;
+    private int scanSuppressedCount;
+
+    /**
+     * Adds the RSSI from one sighting of the device.
+     */
+    public void addRssi(int rssi)
+    {
+        sampleCount++;
+        rssiSum += rssi;
+        if (rssi > maxRssi) maxRssi = rssi;
+    }
+
+    /**
+     * Sets the TX power, replacing any value from an earlier sighting. Only call this if the TX power was reported.
+     */
+    public void setTxPower(int txPower)
+    {
+        this.txPower = txPower;
+        hasTxPower = true;
+    }
+
+    public int getSampleCount()
+    {
+        return sampleCount;
+    }
+
+    /**
+     * @return The strongest RSSI, or {@link Integer#MIN_VALUE} if no RSSI was added.
+     */
+    public int getMaxRssi()
+    {
+        return maxRssi;
+    }
+
+    /**
+     * @return The mean RSSI, or {@link Float#NaN} if no RSSI was added.
+     */
+    public float getMeanRssi()
+    {
+        return sampleCount == 0 ? Float.NaN : (float) rssiSum / sampleCount;
+    }
+
+    public boolean hasTxPower()
+    {
+        return hasTxPower;
+    }
+
+    /**
+     * @return The most recently reported TX power. Only valid if {@link #hasTxPower()} is true.
+     */
+    public int getTxPower()
+    {
+        return txPower;
+    }
+
+    /**
+     * Sets the number of other devices from the same scan that were left out because the scan had more devices than
+     * the Bluetooth records per scan limit.
+     */
+    public void setScanSuppressedCount(int scanSuppressedCount)
+    {
+        this.scanSuppressedCount = scanSuppressedCount;
+    }
+
+    public int getScanSuppressedCount()
+    {
+        return scanSuppressedCount;
+    }
+}
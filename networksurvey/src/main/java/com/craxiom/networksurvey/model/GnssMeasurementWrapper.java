@@ -59,11 +59,13 @@ public class GnssMeasurementWrapper
     /**
      * Updates this measurement with new received time and agc values
      *
-     * @param measurement Source of our updated data
+     * @param measurement       Source of our updated data
+     * @param receivedTimeNanos The {@link System#nanoTime()} when the measurement was received. The local clock is
+     *                          used instead of the measurement's GNSS time so that the age of this record can be checked.
      */
-    public void updateMeasurement(GnssMeasurement measurement)
+    public void updateMeasurement(GnssMeasurement measurement, long receivedTimeNanos)
     {
-        receivedTimeNanos = measurement.getReceivedSvTimeNanos();
+        this.receivedTimeNanos = receivedTimeNanos;
         hasAgc = measurement.hasAutomaticGainControlLevelDb();
 
         if (hasAgc)
@@ -108,15 +110,18 @@ public class GnssMeasurementWrapper
     }
 
     /**
-     * Generates an id for a hashmap allowing us to treat this class as an updatable record.
+     * Generates a key for a map allowing us to treat this class as an updatable record. The constellation, svid, and
+     * carrier frequency band are packed into a long so that looking up a measurement does not allocate anything.
      *
      * @param svId               SvId from a GNSS record
      * @param type               Constellation value converted to GnssType
      * @param carrierFrequencyHz Carrier frequency from a GNSS record in Hz
-     * @return Concatenation of svId and type
+     * @return The constellation ordinal, the carrier frequency band index, and the svId packed into a long
+     * @since 1.10.0
      */
-    public static String getId(int svId, GnssType type, float carrierFrequencyHz)
+    public static long getKey(int svId, GnssType type, float carrierFrequencyHz)
     {
-        return svId + type.toString() + CarrierFreqUtils.getCarrierFrequencyLabel(type, svId, MathUtils.toMhz(carrierFrequencyHz));
+        final long band = CarrierFreqUtils.getCarrierFrequencyBand(type, carrierFrequencyHz);
+        return ((long) type.ordinal() << 40) | (band << 32) | (svId & 0xFFFFFFFFL);
     }
 }
@@ -0,0 +1,257 @@
+package com.craxiom.networksurvey.model;
+
+import android.location.GnssStatus;
+
+import com.craxiom.networksurvey.util.GpsTestUtil;
+
+/**
+ * A copy of the satellite values from a {@link GnssStatus} that is stored in primitive arrays so that the same instance
+ * can be filled again for every GNSS status update. It is filled once per update and then shared by all the GNSS views
+ * so that each view does not have to copy the status or create an object for every satellite.
+ * <p>
+ * The getters mirror the ones on {@link GnssStatus}, but use the internal {@link GnssType} and {@link SbasType} values
+ * like {@link SatelliteStatus} does.
+ *
+ * @since 1.10.0
+ */
+public class GnssStatusSnapshot
+{
+    /**
+     * Per https://developer.android.com/reference/android/location/GnssStatus.html#getSvid(int) 255 should be enough to
+     * contain all known satellites world-wide.
+     */
+    public static final int MAX_SATELLITES = 255;
+
+    // The sort options, which must match the arrays.xml sort_sats order
+    public static final int SORT_BY_CONSTELLATION = 0;
+    public static final int SORT_BY_CARRIER_FREQUENCY = 1;
+    public static final int SORT_BY_SIGNAL_STRENGTH = 2;
+    public static final int SORT_BY_USED_IN_FIX = 3;
+    public static final int SORT_BY_CONSTELLATION_CARRIER_FREQUENCY = 4;
+    public static final int SORT_BY_CONSTELLATION_SIGNAL_STRENGTH = 5;
+    public static final int SORT_BY_CONSTELLATION_USED_IN_FIX = 6;
+
+    private final int[] svids = new int[MAX_SATELLITES];
+    private final int[] constellationTypes = new int[MAX_SATELLITES];
+    private final GnssType[] gnssTypes = new GnssType[MAX_SATELLITES];
+    private final SbasType[] sbasTypes = new SbasType[MAX_SATELLITES];
+    private final float[] cn0DbHz = new float[MAX_SATELLITES];
+    private final float[] elevationDegrees = new float[MAX_SATELLITES];
+    private final float[] azimuthDegrees = new float[MAX_SATELLITES];
+    private final float[] carrierFrequencyHz = new float[MAX_SATELLITES];
+    private final boolean[] hasAlmanac = new boolean[MAX_SATELLITES];
+    private final boolean[] hasEphemeris = new boolean[MAX_SATELLITES];
+    private final boolean[] usedInFix = new boolean[MAX_SATELLITES];
+
+    private int satelliteCount;
+    private int usedInFixCount;
+    private float cn0InViewAvg;
+    private float cn0UsedAvg;
+
+    /**
+     * Replaces the values in this snapshot with the values from the provided status.
+     *
+     * @param status The latest GNSS status from the Android system.
+     */
+    public void update(GnssStatus status)
+    {
+        final boolean carrierFrequenciesSupported = GpsTestUtil.isGnssCarrierFrequenciesSupported();
+
+        satelliteCount = Math.min(status.getSatelliteCount(), MAX_SATELLITES);
+        usedInFixCount = 0;
+        int svInViewCount = 0;
+        float cn0InViewSum = 0.0f;
+        float cn0UsedSum = 0.0f;
+
+        for (int i = 0; i < satelliteCount; i++)
+        {
+            svids[i] = status.getSvid(i);
+            constellationTypes[i] = status.getConstellationType(i);
+            gnssTypes[i] = GpsTestUtil.getGnssConstellationType(constellationTypes[i]);
+            sbasTypes[i] = gnssTypes[i] == GnssType.SBAS ? GpsTestUtil.getSbasConstellationType(svids[i]) : SbasType.UNKNOWN;
+            cn0DbHz[i] = status.getCn0DbHz(i);
+            elevationDegrees[i] = status.getElevationDegrees(i);
+            azimuthDegrees[i] = status.getAzimuthDegrees(i);
+            carrierFrequencyHz[i] = carrierFrequenciesSupported && status.hasCarrierFrequencyHz(i)
+                    ? status.getCarrierFrequencyHz(i) : SatelliteStatus.NO_DATA;
+            hasAlmanac[i] = status.hasAlmanacData(i);
+            hasEphemeris[i] = status.hasEphemerisData(i);
+            usedInFix[i] = status.usedInFix(i);
+
+            // If satellite is in view, add signal to calculate avg
+            if (cn0DbHz[i] != 0.0f)
+            {
+                svInViewCount++;
+                cn0InViewSum += cn0DbHz[i];
+            }
+            if (usedInFix[i])
+            {
+                usedInFixCount++;
+                cn0UsedSum += cn0DbHz[i];
+            }
+        }
+
+        cn0InViewAvg = svInViewCount > 0 ? cn0InViewSum / svInViewCount : 0.0f;
+        cn0UsedAvg = usedInFixCount > 0 ? cn0UsedSum / usedInFixCount : 0.0f;
+    }
+
+    /**
+     * Fills the provided array with the indices of the SBAS satellites, or of all the other satellites, in the
+     * requested sort order. No objects are allocated, so this can be called for every status update.
+     *
+     * @param indices The array to fill, which must have room for {@link #MAX_SATELLITES} indices.
+     * @param sbas    True to get the SBAS satellites, false to get all the other satellites.
+     * @param sortBy  One of the SORT_BY constants in this class.
+     * @return The number of indices that were placed in the array.
+     */
+    public int getSortedIndices(int[] indices, boolean sbas, int sortBy)
+    {
+        int count = 0;
+        for (int i = 0; i < satelliteCount; i++)
+        {
+            if ((gnssTypes[i] == GnssType.SBAS) == sbas) indices[count++] = i;
+        }
+
+        // An insertion sort is stable like the list sort it replaces, and is fast for the few dozen satellites in view
+        for (int i = 1; i < count; i++)
+        {
+            final int index = indices[i];
+            int j = i - 1;
+            while (j >= 0 && compare(indices[j], index, sbas, sortBy) > 0)
+            {
+                indices[j + 1] = indices[j];
+                j--;
+            }
+            indices[j + 1] = index;
+        }
+
+        return count;
+    }
+
+    private int compare(int a, int b, boolean sbas, int sortBy)
+    {
+        int result;
+        switch (sortBy)
+        {
+            case SORT_BY_CONSTELLATION:
+                result = compareConstellation(a, b, sbas);
+                return result != 0 ? result : Integer.compare(svids[a], svids[b]);
+            case SORT_BY_CARRIER_FREQUENCY:
+                result = Float.compare(carrierFrequencyHz[a], carrierFrequencyHz[b]);
+                return result != 0 ? result : Integer.compare(svids[a], svids[b]);
+            case SORT_BY_SIGNAL_STRENGTH:
+                return Float.compare(cn0DbHz[b], cn0DbHz[a]);
+            case SORT_BY_USED_IN_FIX:
+                result = Boolean.compare(usedInFix[b], usedInFix[a]);
+                return result != 0 ? result : Integer.compare(svids[a], svids[b]);
+            case SORT_BY_CONSTELLATION_CARRIER_FREQUENCY:
+                result = compareConstellation(a, b, sbas);
+                if (result == 0) result = Float.compare(carrierFrequencyHz[a], carrierFrequencyHz[b]);
+                return result != 0 ? result : Integer.compare(svids[a], svids[b]);
+            case SORT_BY_CONSTELLATION_SIGNAL_STRENGTH:
+                result = compareConstellation(a, b, sbas);
+                return result != 0 ? result : Float.compare(cn0DbHz[b], cn0DbHz[a]);
+            case SORT_BY_CONSTELLATION_USED_IN_FIX:
+                result = compareConstellation(a, b, sbas);
+                if (result == 0) result = Boolean.compare(usedInFix[b], usedInFix[a]);
+                return result != 0 ? result : Integer.compare(svids[a], svids[b]);
+            default:
+                return 0;
+        }
+    }
+
+    private int compareConstellation(int a, int b, boolean sbas)
+    {
+        return sbas ? sbasTypes[a].compareTo(sbasTypes[b]) : gnssTypes[a].compareTo(gnssTypes[b]);
+    }
+
+    public int getSatelliteCount()
+    {
+        return satelliteCount;
+    }
+
+    public int getUsedInFixCount()
+    {
+        return usedInFixCount;
+    }
+
+    /**
+     * @return The average C/N0 of the satellites that have a signal, or 0 if there are none.
+     */
+    public float getCn0InViewAvg()
+    {
+        return cn0InViewAvg;
+    }
+
+    /**
+     * @return The average C/N0 of the satellites used in the fix, or 0 if there are none.
+     */
+    public float getCn0UsedAvg()
+    {
+        return cn0UsedAvg;
+    }
+
+    public int getSvid(int index)
+    {
+        return svids[index];
+    }
+
+    /**
+     * @return The constellation type as defined by the GnssStatus CONSTELLATION constants.
+     */
+    public int getConstellationType(int index)
+    {
+        return constellationTypes[index];
+    }
+
+    public GnssType getGnssType(int index)
+    {
+        return gnssTypes[index];
+    }
+
+    /**
+     * @return The SBAS system, or {@link SbasType#UNKNOWN} if the satellite is not an SBAS satellite.
+     */
+    public SbasType getSbasType(int index)
+    {
+        return sbasTypes[index];
+    }
+
+    public float getCn0DbHz(int index)
+    {
+        return cn0DbHz[index];
+    }
+
+    public float getElevationDegrees(int index)
+    {
+        return elevationDegrees[index];
+    }
+
+    public float getAzimuthDegrees(int index)
+    {
+        return azimuthDegrees[index];
+    }
+
+    /**
+     * @return The carrier frequency, or {@link SatelliteStatus#NO_DATA} if it is not available.
+     */
+    public float getCarrierFrequencyHz(int index)
+    {
+        return carrierFrequencyHz[index];
+    }
+
+    public boolean hasAlmanacData(int index)
+    {
+        return hasAlmanac[index];
+    }
+
+    public boolean hasEphemerisData(int index)
+    {
+        return hasEphemeris[index];
+    }
+
+    public boolean usedInFix(int index)
+    {
+        return usedInFix[index];
+    }
+}
@@ -3,12 +3,21 @@ package com.craxiom.networksurvey.model;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.SortedList;
 
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
 /**
  * Creating our own implementation for the {@link SortedList} because while the SortedList acts sort of like a set, it
  * depends on the current sort order on how it evicts old items (it uses the compare method too which means that the
- * current sorting option will change which records get added). Note that we have only implemented the {@link #add(Object)}
- * method, so don't use the addAll or any other add methods. from the parent class if you want to make sure to evict
- * old duplicate records.
+ * current sorting option will change which records get added). The {@link #add(Object)} and addAll methods evict the
+ * old duplicate records, but the replaceAll and updateItemAt methods from the parent class do not, so don't use them.
+ * <p>
+ * A hash index from each item's key to the item currently in the list is kept alongside the sorted list. This allows
+ * the old duplicate of an item to be found with a binary search instead of walking the entire list for every add.
  *
  * @since 1.0.0
  */
@@ -16,11 +25,25 @@ public class SortedSet<T> extends SortedList<T>
 {
     @NonNull
     private final Callback<T> callback;
+    @NonNull
+    private final Class<T> klass;
+    @NonNull
+    private final Function<T, Object> keyFunction;
+    private final Map<Object, T> itemsByKey = new HashMap<>();
 
-    public SortedSet(@NonNull Class<T> klass, @NonNull Callback<T> callback)
+    /**
+     * @param klass       The class of the items in this set.
+     * @param callback    The callback that controls the sort order and that is notified of changes.
+     * @param keyFunction Returns the key that identifies an item. It must be consistent with the callback's
+     *                    {@link androidx.recyclerview.widget.SortedList.Callback#areItemsTheSame(Object, Object)}.
+     * @since 1.10.0
+     */
+    public SortedSet(@NonNull Class<T> klass, @NonNull Callback<T> callback, @NonNull Function<T, Object> keyFunction)
     {
         super(klass, callback);
+        this.klass = klass;
         this.callback = callback;
+        this.keyFunction = keyFunction;
     }
 
     /**
@@ -34,18 +57,117 @@ public class SortedSet<T> extends SortedList<T>
     @Override
     public int add(T item)
     {
-        final int sortedListSize = size();
-        for (int i = 0; i < sortedListSize; ++i)
+        removeExistingItem(keyFunction.apply(item));
+
+        final int index = super.add(item);
+        itemsByKey.put(keyFunction.apply(item), item);
+        return index;
+    }
+
+    /**
+     * Adds all the items in a single batch so that the callback is only notified once. Any items in this set that match
+     * one of the new items are removed first, and if the new items contain duplicates then the last one wins.
+     *
+     * @param items          The items to add.
+     * @param mayModifyInput True if the array can be modified and used as is.
+     * @since 1.10.0
+     */
+    @Override
+    public void addAll(@NonNull T[] items, boolean mayModifyInput)
+    {
+        if (items.length == 0) return;
+
+        final Map<Object, T> newItemsByKey = new LinkedHashMap<>(items.length * 2);
+        for (T item : items)
+        {
+            newItemsByKey.put(keyFunction.apply(item), item);
+        }
+
+        beginBatchedUpdates();
+        try
+        {
+            newItemsByKey.keySet().forEach(this::removeExistingItem);
+
+            @SuppressWarnings("unchecked") final T[] uniqueItems = newItemsByKey.values()
+                    .toArray((T[]) Array.newInstance(klass, newItemsByKey.size()));
+            super.addAll(uniqueItems, true);
+            itemsByKey.putAll(newItemsByKey);
+        } finally
         {
-            final T existingItem = get(i);
+            endBatchedUpdates();
+        }
+    }
+
+    @Override
+    public void addAll(@NonNull Collection<T> items)
+    {
+        @SuppressWarnings("unchecked") final T[] copy = items.toArray((T[]) Array.newInstance(klass, items.size()));
+        addAll(copy, true);
+    }
 
-            if (callback.areItemsTheSame(existingItem, item))
+    /**
+     * @param key The key of the item to look up.
+     * @return The item in this set with the specified key, or null if there is not one.
+     * @since 1.10.0
+     */
+    public T getItemByKey(Object key)
+    {
+        return itemsByKey.get(key);
+    }
+
+    @Override
+    public boolean remove(T item)
+    {
+        final boolean removed = super.remove(item);
+        if (removed) itemsByKey.remove(keyFunction.apply(item));
+        return removed;
+    }
+
+    @Override
+    public T removeItemAt(int index)
+    {
+        final T removedItem = super.removeItemAt(index);
+        itemsByKey.remove(keyFunction.apply(removedItem));
+        return removedItem;
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        itemsByKey.clear();
+    }
+
+    /**
+     * Removes the item with the specified key if one is in this set.
+     */
+    private void removeExistingItem(Object key)
+    {
+        final T existingItem = itemsByKey.get(key);
+        if (existingItem == null) return;
+
+        // The binary search only works if the item has not moved since it was added (e.g. the sort order was changed
+        // without resorting), so fall back to a scan of the whole list if it is not found
+        int index = indexOf(existingItem);
+        if (index == INVALID_POSITION)
+        {
+            final int sortedListSize = size();
+            for (int i = 0; i < sortedListSize; ++i)
             {
-                removeItemAt(i);
-                break;
+                if (callback.areItemsTheSame(get(i), existingItem))
+                {
+                    index = i;
+                    break;
+                }
             }
         }
 
-        return super.add(item);
+        if (index == INVALID_POSITION)
+        {
+            itemsByKey.remove(key);
+        } else
+        {
+            removeItemAt(index);
+        }
     }
 }
@@ -0,0 +1,120 @@
+package com.craxiom.networksurvey.model;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Holds a survey record along with its serialized forms so that the cost of encoding a record is only paid once, no
+ * matter how many sinks (each MQTT connection, gRPC, the MQTT outbox) it is sent to. The MQTT connections publish the
+ * cached JSON or protobuf bytes as they are, and the gRPC stream and the MQTT outbox use the cached protobuf bytes.
+ * <p>
+ * The survey record processor creates one envelope for each record and passes it to the listeners (e.g. through
+ * {@link com.craxiom.networksurvey.listeners.ICellularSurveyRecordListener#onGsmSurveyRecordEnvelope(SurveyRecordEnvelope)}).
+ * The sinks hold on to the envelope instead of the bare record for as long as they need the record (e.g. while it
+ * waits in the gRPC queue), so the bytes are shared no matter how many records are in flight. A record that was created
+ * by a sink (e.g. an MQTT batch message) gets its own envelope, and a record read back from the MQTT outbox gets one
+ * that reuses the stored bytes (see {@link #fromProtobufBytes(Message, byte[])}).
+ * <p>
+ * The serialized bytes are created the first time they are asked for. The returned arrays are shared, so callers must
+ * not modify them.
+ * <p>
+ * The envelope also carries the values that were merged into a record but that the protobuf message has no field for,
+ * like the {@link BluetoothSignalStats} for a Bluetooth record.
+ *
+ * @param <T> The type of the survey record.
+ * @since 1.10.0
+ */
+public final class SurveyRecordEnvelope<T extends Message>
+{
+    /**
+     * The same JSON options that the MQTT library printed the payloads with, so the JSON subscribers get the same
+     * payloads now that the MQTT connection publishes these bytes.
+     */
+    private static final JsonFormat.Printer JSON_PRINTER = JsonFormat.printer().preservingProtoFieldNames().omittingInsignificantWhitespace();
+
+    private final T record;
+    private final BluetoothSignalStats bluetoothSignalStats;
+    private volatile byte[] protobufBytes;
+    private volatile byte[] jsonBytes;
+
+    /**
+     * @param record The record to wrap.
+     */
+    public SurveyRecordEnvelope(T record)
+    {
+        this(record, null);
+    }
+
+    /**
+     * @param record      The Bluetooth record to wrap.
+     * @param signalStats The signal values from all the sightings that were merged into the record, or null if the
+     *                    record was not merged.
+     */
+    public SurveyRecordEnvelope(T record, BluetoothSignalStats signalStats)
+    {
+        this.record = record;
+        bluetoothSignalStats = signalStats;
+    }
+
+    /**
+     * Creates the envelope for a record that was parsed from its protobuf bytes (e.g. a message replayed from the MQTT
+     * outbox), so that the bytes are reused instead of the record being serialized again.
+     *
+     * @param record        The record that was parsed from the bytes.
+     * @param protobufBytes The bytes the record was parsed from. They are shared, so they must not be modified.
+     */
+    public static <T extends Message> SurveyRecordEnvelope<T> fromProtobufBytes(T record, byte[] protobufBytes)
+    {
+        final SurveyRecordEnvelope<T> envelope = new SurveyRecordEnvelope<>(record);
+        envelope.protobufBytes = protobufBytes;
+        return envelope;
+    }
+
+    public T getRecord()
+    {
+        return record;
+    }
+
+    /**
+     * @return The signal values that were merged into a Bluetooth record, or null if the record was not merged.
+     */
+    public BluetoothSignalStats getBluetoothSignalStats()
+    {
+        return bluetoothSignalStats;
+    }
+
+    /**
+     * @return The binary protobuf encoding of the record.
+     */
+    public byte[] getProtobufBytes()
+    {
+        byte[] bytes = protobufBytes;
+        if (bytes == null)
+        {
+            // Two threads might both serialize the record the first time, but they produce the same bytes
+            bytes = record.toByteArray();
+            protobufBytes = bytes;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return The UTF-8 JSON encoding of the record, using the proto field names. This is the payload for the MQTT
+     * JSON topics.
+     */
+    public byte[] getJsonBytes() throws InvalidProtocolBufferException
+    {
+        byte[] bytes = jsonBytes;
+        if (bytes == null)
+        {
+            bytes = JSON_PRINTER.print(record).getBytes(StandardCharsets.UTF_8);
+            jsonBytes = bytes;
+        }
+
+        return bytes;
+    }
+}
@@ -10,7 +10,7 @@ import com.craxiom.messaging.WifiBeaconRecord;
  */
 public class WifiRecordWrapper
 {
-    private final WifiBeaconRecord wifiBeaconRecord;
+    private final SurveyRecordEnvelope<WifiBeaconRecord> envelope;
     private final String capabilitiesString;
 
     /**
@@ -19,13 +19,22 @@ public class WifiRecordWrapper
      */
     public WifiRecordWrapper(WifiBeaconRecord wifiBeaconRecord, String capabilitiesString)
     {
-        this.wifiBeaconRecord = wifiBeaconRecord;
+        envelope = new SurveyRecordEnvelope<>(wifiBeaconRecord);
         this.capabilitiesString = capabilitiesString;
     }
 
     public WifiBeaconRecord getWifiBeaconRecord()
     {
-        return wifiBeaconRecord;
+        return envelope.getRecord();
+    }
+
+    /**
+     * @return The envelope that holds the serialized bytes of the Wi-Fi record, so that the sinks can share them.
+     * @since 1.10.0
+     */
+    public SurveyRecordEnvelope<WifiBeaconRecord> getEnvelope()
+    {
+        return envelope;
     }
 
     public String getCapabilitiesString()
@@ -0,0 +1,230 @@
+package com.craxiom.networksurvey.mqtt;
+
+import com.craxiom.mqttlibrary.MqttConstants;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * The settings for an additional MQTT broker that the survey records are streamed to at the same time as the broker
+ * configured in the MQTT connection UI (e.g. a local field broker and a regional broker).
+ * <p>
+ * The additional brokers are configured as a JSON array. The field names are the same as the MQTT connection QR code,
+ * plus an optional list of the topics to publish to that broker, for example:
+ * <pre>
+ * [{"mqtt_host": "regional.example.com", "mqtt_port": 8883, "mqtt_tls": true, "mqtt_username": "bob",
+ *   "mqtt_password": "secret", "mqtt_payload_format": "protobuf", "mqtt_topics": ["lte_message", "nr_message"]}]
+ * </pre>
+ * If the client ID is not set the device name from the main connection is used, and if the topics are not set all the
+ * topics are published.
+ *
+ * @since 1.10.0
+ */
+public class MqttBrokerConfig
+{
+    /**
+     * The start of the outbox directory name for each additional broker, so that the directories of the brokers that
+     * are no longer configured can be found and removed.
+     */
+    public static final String OUTBOX_DIRECTORY_PREFIX = MqttOutbox.DIRECTORY_NAME + "_broker_";
+
+    private static final int MAX_DIRECTORY_HOST_LENGTH = 64;
+
+    private static final List<String> CELLULAR_TOPICS = Arrays.asList(MqttConnection.MQTT_GSM_MESSAGE_TOPIC,
+            MqttConnection.MQTT_CDMA_MESSAGE_TOPIC, MqttConnection.MQTT_UMTS_MESSAGE_TOPIC,
+            MqttConnection.MQTT_LTE_MESSAGE_TOPIC, MqttConnection.MQTT_NR_MESSAGE_TOPIC);
+
+    @SerializedName("mqtt_host")
+    private String host;
+
+    @SerializedName("mqtt_port")
+    private int port;
+
+    @SerializedName("mqtt_tls")
+    private boolean tlsEnabled;
+
+    @SerializedName("mqtt_client")
+    private String clientId;
+
+    @SerializedName("mqtt_username")
+    private String username;
+
+    @SerializedName("mqtt_password")
+    private String password;
+
+    @SerializedName("mqtt_payload_format")
+    private String payloadFormat;
+
+    @SerializedName("mqtt_topics")
+    private List<String> topics;
+
+    /**
+     * Parses the additional broker settings. Entries without a host are skipped.
+     *
+     * @param configValue The JSON array of broker settings, which can be null or empty.
+     * @return The valid broker settings, or an empty list if the value could not be parsed.
+     */
+    public static List<MqttBrokerConfig> parse(String configValue)
+    {
+        if (configValue == null || configValue.trim().isEmpty()) return Collections.emptyList();
+
+        final MqttBrokerConfig[] configs;
+        try
+        {
+            configs = new Gson().fromJson(configValue, MqttBrokerConfig[].class);
+        } catch (JsonParseException e)
+        {
+            Timber.w(e, "Ignoring the additional MQTT brokers because the setting is not a valid JSON array");
+            return Collections.emptyList();
+        }
+
+        if (configs == null) return Collections.emptyList();
+
+        final List<MqttBrokerConfig> brokerConfigs = new ArrayList<>(configs.length);
+        for (MqttBrokerConfig config : configs)
+        {
+            if (config == null || config.host == null || config.host.trim().isEmpty())
+            {
+                Timber.w("Ignoring an additional MQTT broker entry because it does not have a host");
+                continue;
+            }
+
+            brokerConfigs.add(config);
+        }
+
+        return brokerConfigs;
+    }
+
+    public String getHost()
+    {
+        return host.trim();
+    }
+
+    /**
+     * @return The configured port, or the standard MQTT port for the TLS setting if one was not configured.
+     */
+    public int getPort()
+    {
+        if (port > 0) return port;
+
+        return tlsEnabled ? MqttConstants.MQTT_SSL_PORT : MqttConstants.MQTT_PLAIN_TEXT_PORT;
+    }
+
+    /**
+     * @return A short name for the broker to show in the UI and the logs.
+     */
+    public String getName()
+    {
+        return getHost() + ":" + getPort();
+    }
+
+    /**
+     * Returns the name of the outbox directory for this broker. The name comes from the broker's host, port, and client
+     * ID instead of its position in the list, so each broker keeps its own outbox when the list is edited.
+     *
+     * @param defaultClientId The client ID to use if one is not configured for this broker.
+     * @return The directory name, which starts with {@link #OUTBOX_DIRECTORY_PREFIX}.
+     */
+    public String getOutboxDirectoryName(String defaultClientId)
+    {
+        String readableHost = getHost().replaceAll("[^A-Za-z0-9.-]", "_");
+        if (readableHost.length() > MAX_DIRECTORY_HOST_LENGTH) readableHost = readableHost.substring(0, MAX_DIRECTORY_HOST_LENGTH);
+
+        // The hash keeps the name unique (and file system safe) no matter what the client ID contains
+        return OUTBOX_DIRECTORY_PREFIX + readableHost + "_" + getPort() + "_" +
+                hash(getHost() + ":" + getPort() + ":" + getClientId(defaultClientId));
+    }
+
+    /**
+     * @return The topics to publish to this broker, or null if all the topics should be published.
+     */
+    public Set<String> getTopicFilter()
+    {
+        if (topics == null || topics.isEmpty()) return null;
+
+        final Set<String> topicFilter = new HashSet<>();
+        for (String topic : topics)
+        {
+            if (topic != null && !topic.trim().isEmpty()) topicFilter.add(topic.trim());
+        }
+
+        return topicFilter.isEmpty() ? null : topicFilter;
+    }
+
+    /**
+     * Creates the connection info for this broker. Only the record streams that have a topic in the topic filter are
+     * enabled so that the scanners for the other record types are not started just for this broker.
+     *
+     * @param defaultClientId     The client ID to use if one is not configured for this broker.
+     * @param batchPublishEnabled True to publish the Wi-Fi and Bluetooth records on the batch topics.
+     * @param batchWindowMs       The batch window to use if batch publishing is enabled.
+     * @return The connection info to pass to the {@link MqttConnection}.
+     */
+    public MqttConnectionInfo toConnectionInfo(String defaultClientId, boolean batchPublishEnabled, int batchWindowMs)
+    {
+        final Set<String> topicFilter = getTopicFilter();
+
+        return new MqttConnectionInfo(getHost(), getPort(), tlsEnabled, getClientId(defaultClientId), username, password,
+                isAnyTopicEnabled(topicFilter, CELLULAR_TOPICS),
+                isAnyTopicEnabled(topicFilter, Arrays.asList(MqttConnection.MQTT_WIFI_BEACON_MESSAGE_TOPIC,
+                        MqttConnection.MQTT_WIFI_BEACON_BATCH_MESSAGE_TOPIC)),
+                isAnyTopicEnabled(topicFilter, Arrays.asList(MqttConnection.MQTT_BLUETOOTH_MESSAGE_TOPIC,
+                        MqttConnection.MQTT_BLUETOOTH_BATCH_MESSAGE_TOPIC)),
+                isAnyTopicEnabled(topicFilter, Collections.singletonList(MqttConnection.MQTT_GNSS_MESSAGE_TOPIC)),
+                isAnyTopicEnabled(topicFilter, Collections.singletonList(MqttConnection.MQTT_DEVICE_STATUS_MESSAGE_TOPIC)),
+                batchPublishEnabled, batchWindowMs, MqttPayloadFormat.fromPreferenceValue(payloadFormat));
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName() + (topics == null || topics.isEmpty() ? "" : " " + topics);
+    }
+
+    private String getClientId(String defaultClientId)
+    {
+        return clientId == null || clientId.trim().isEmpty() ? defaultClientId : clientId.trim();
+    }
+
+    /**
+     * @return The first 8 bytes of the SHA-256 hash of the value, as hex.
+     */
+    private static String hash(String value)
+    {
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) hex.append(String.format("%02x", digest[i]));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isAnyTopicEnabled(Set<String> topicFilter, List<String> streamTopics)
+    {
+        if (topicFilter == null) return true;
+
+        for (String topic : streamTopics)
+        {
+            if (topicFilter.contains(topic)) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,268 @@
+package com.craxiom.networksurvey.mqtt;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import com.craxiom.mqttlibrary.IConnectionStateListener;
+import com.craxiom.mqttlibrary.connection.BrokerConnectionInfo;
+import com.craxiom.mqttlibrary.connection.ConnectionState;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedContext;
+import com.hivemq.client.mqtt.lifecycle.MqttDisconnectSource;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3ClientBuilder;
+import com.hivemq.client.mqtt.mqtt3.exceptions.Mqtt3ConnAckException;
+import com.hivemq.client.mqtt.mqtt3.message.auth.Mqtt3SimpleAuth;
+import com.hivemq.client.mqtt.mqtt3.message.auth.Mqtt3SimpleAuthBuilder;
+import com.hivemq.client.mqtt.mqtt3.message.connect.connack.Mqtt3ConnAck;
+import com.hivemq.client.mqtt.mqtt3.message.connect.connack.Mqtt3ConnAckReturnCode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * The connection to an MQTT broker, which publishes payloads that are already serialized.
+ * <p>
+ * This handles the connection the same way as the mqtt-library's {@code DefaultMqttConnection} (automatic reconnects,
+ * a persistent session, and stopping the reconnects when the credentials are rejected or the user turns the connection
+ * off), and it reports the same {@link ConnectionState}s to the same {@link IConnectionStateListener}s so that the
+ * library's connection UI works with it. The difference is that the library only publishes the JSON that it prints
+ * from a message itself, so a payload that was serialized once for all the sinks (see
+ * {@link com.craxiom.networksurvey.model.SurveyRecordEnvelope}) would be printed again for every connection. Instead,
+ * {@link #publishBytes(String, byte[])} publishes the given bytes as they are, which works for both of the
+ * {@link MqttPayloadFormat}s.
+ *
+ * @since 1.10.0
+ */
+public abstract class MqttBrokerConnection
+{
+    private static final long DISCONNECT_TIMEOUT_SECONDS = 3;
+    private static final long RECONNECT_MAX_DELAY_SECONDS = 20;
+
+    /**
+     * The QoS that all the messages are published with.
+     */
+    private static final MqttQos PUBLISH_QOS = MqttQos.AT_LEAST_ONCE;
+
+    private final List<IConnectionStateListener> mqttConnectionListeners = new CopyOnWriteArrayList<>();
+    private volatile ConnectionState connectionState = ConnectionState.DISCONNECTED;
+    private volatile Mqtt3AsyncClient mqtt3Client;
+    private CompletableFuture<Mqtt3ConnAck> connectFuture;
+    private volatile boolean userCanceled;
+
+    /**
+     * The client ID from the last call to {@link #connect(Context, BrokerConnectionInfo)}, which is also the device
+     * name that is set on the published records.
+     */
+    protected volatile String mqttClientId;
+
+    protected MqttBrokerConnection()
+    {
+    }
+
+    /**
+     * Connects to the MQTT broker. If the connection is lost, it is automatically reconnected until
+     * {@link #disconnect()} is called.
+     *
+     * @param context        The context used to let the user know if the broker rejected the credentials.
+     * @param connectionInfo The broker to connect to, and the credentials to connect with.
+     */
+    public synchronized void connect(Context context, BrokerConnectionInfo connectionInfo)
+    {
+        try
+        {
+            if (mqtt3Client != null && mqtt3Client.getState().isConnectedOrReconnect())
+            {
+                Timber.i("Disconnect in progress, delaying the new connection");
+                try
+                {
+                    mqtt3Client.disconnect().get(DISCONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (Throwable t)
+                {
+                    Timber.e(t, "Could not properly close the old connection before starting a new one.");
+                }
+                Timber.i("Disconnect complete, resuming the new connection");
+            }
+
+            userCanceled = false;
+            mqttClientId = connectionInfo.getMqttClientId();
+            final String username = connectionInfo.getMqttUsername();
+            final String password = connectionInfo.getMqttPassword();
+
+            final Mqtt3ClientBuilder clientBuilder = Mqtt3Client.builder().identifier(mqttClientId);
+
+            if (username != null)
+            {
+                final Mqtt3SimpleAuthBuilder.Complete authBuilder = Mqtt3SimpleAuth.builder().username(username);
+                if (password != null) authBuilder.password(password.getBytes(StandardCharsets.UTF_8));
+                clientBuilder.simpleAuth(authBuilder.build());
+            }
+
+            if (connectionInfo.isTlsEnabled()) clientBuilder.sslWithDefaultConfig();
+
+            clientBuilder.serverHost(connectionInfo.getMqttBrokerHost())
+                    .serverPort(connectionInfo.getPortNumber())
+                    .automaticReconnect().maxDelay(RECONNECT_MAX_DELAY_SECONDS, TimeUnit.SECONDS).applyAutomaticReconnect()
+                    .addConnectedListener(connectedContext -> onConnected())
+                    .addDisconnectedListener(disconnectedContext -> onDisconnected(context, disconnectedContext));
+
+            mqtt3Client = clientBuilder.buildAsync();
+            connectFuture = mqtt3Client.connectWith().cleanSession(false).send();
+        } catch (Exception e)
+        {
+            Timber.e(e, "Unable to create the connection to the MQTT broker");
+        }
+    }
+
+    /**
+     * Disconnects from the MQTT broker and stops any reconnect attempts.
+     */
+    public synchronized void disconnect()
+    {
+        userCanceled = true;
+        if (mqtt3Client == null) return;
+
+        try
+        {
+            if (connectFuture != null && !connectFuture.isDone())
+            {
+                Timber.i("Canceling the currently connecting connection using the future");
+                connectFuture.cancel(true);
+            }
+
+            mqtt3Client.disconnect().whenComplete((result, throwable) -> {
+                Timber.d(throwable, "The MQTT disconnect request completed");
+                notifyConnectionStateChange(ConnectionState.DISCONNECTED);
+            });
+        } catch (Exception e)
+        {
+            Timber.e(e, "An exception occurred when disconnecting from the MQTT broker");
+        }
+    }
+
+    /**
+     * @return The current state of the connection to the MQTT broker.
+     */
+    public ConnectionState getConnectionState()
+    {
+        return connectionState;
+    }
+
+    public void registerMqttConnectionStateListener(IConnectionStateListener connectionStateListener)
+    {
+        mqttConnectionListeners.add(connectionStateListener);
+    }
+
+    public void unregisterMqttConnectionStateListener(IConnectionStateListener connectionStateListener)
+    {
+        mqttConnectionListeners.remove(connectionStateListener);
+    }
+
+    /**
+     * Publishes the payload on the topic as it is.
+     *
+     * @param topic   The MQTT topic to publish the payload on.
+     * @param payload The serialized message. It is not copied, so it must not be modified afterwards.
+     * @return True if the payload was handed to the MQTT client, or false if the client is not connected (or
+     * reconnecting) so the payload was not published.
+     */
+    protected boolean publishBytes(String topic, byte[] payload)
+    {
+        final Mqtt3AsyncClient client = mqtt3Client;
+        if (client == null || !client.getState().isConnectedOrReconnect()) return false;
+
+        try
+        {
+            client.publishWith()
+                    .topic(topic)
+                    .qos(PUBLISH_QOS)
+                    .payload(payload)
+                    .send();
+            return true;
+        } catch (Exception e)
+        {
+            Timber.e(e, "Caught an exception when trying to send an MQTT message");
+            return false;
+        }
+    }
+
+    private void onConnected()
+    {
+        if (userCanceled)
+        {
+            Timber.i("The user canceled the MQTT connection prior to the connection attempt completing, closing the new connection");
+            synchronized (this)
+            {
+                mqtt3Client.disconnect();
+            }
+            return;
+        }
+
+        Timber.i("MQTT Broker Connected!!!!");
+        notifyConnectionStateChange(ConnectionState.CONNECTED);
+    }
+
+    private void onDisconnected(Context context, MqttClientDisconnectedContext disconnectedContext)
+    {
+        final MqttDisconnectSource source = disconnectedContext.getSource();
+        Timber.d(disconnectedContext.getCause(), "MQTT Broker disconnected. source=%s", source);
+
+        Mqtt3ConnAckReturnCode returnCode = null;
+        final Throwable cause = disconnectedContext.getCause();
+        if (cause instanceof Mqtt3ConnAckException)
+        {
+            returnCode = ((Mqtt3ConnAckException) cause).getMqttMessage().getReturnCode();
+        }
+
+        if (returnCode == Mqtt3ConnAckReturnCode.BAD_USER_NAME_OR_PASSWORD || returnCode == Mqtt3ConnAckReturnCode.NOT_AUTHORIZED)
+        {
+            notifyConnectionStateChange(ConnectionState.DISCONNECTED);
+            Timber.d("Force stopping the reconnect attempts because the username and password were not correct");
+            disconnectedContext.getReconnector().reconnect(false);
+
+            if (context != null)
+            {
+                new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context,
+                        context.getText(com.craxiom.mqttlibrary.R.string.connection_error_invalid_credentials),
+                        Toast.LENGTH_LONG).show());
+            }
+        } else if (userCanceled)
+        {
+            notifyConnectionStateChange(ConnectionState.DISCONNECTED);
+            Timber.d("Force stopping the reconnect attempts because the user toggled the connection off");
+            disconnectedContext.getReconnector().reconnect(false);
+        } else if (source == MqttDisconnectSource.USER)
+        {
+            notifyConnectionStateChange(ConnectionState.DISCONNECTED);
+        } else
+        {
+            notifyConnectionStateChange(ConnectionState.CONNECTING);
+        }
+    }
+
+    private synchronized void notifyConnectionStateChange(ConnectionState newConnectionState)
+    {
+        Timber.i("MQTT Connection State Changed.  oldConnectionState=%s, newConnectionState=%s", connectionState, newConnectionState);
+
+        connectionState = newConnectionState;
+
+        for (IConnectionStateListener listener : mqttConnectionListeners)
+        {
+            try
+            {
+                listener.onConnectionStateChange(newConnectionState);
+            } catch (Exception e)
+            {
+                Timber.e(e, "Unable to notify a MQTT Connection State Listener because of an exception");
+            }
+        }
+    }
+}
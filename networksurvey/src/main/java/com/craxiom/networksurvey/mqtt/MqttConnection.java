@@ -1,5 +1,7 @@
 package com.craxiom.networksurvey.mqtt;
 
+import android.content.Context;
+
 import com.craxiom.messaging.BluetoothRecord;
 import com.craxiom.messaging.CdmaRecord;
 import com.craxiom.messaging.DeviceStatus;
@@ -10,171 +12,641 @@ import com.craxiom.messaging.NrRecord;
 import com.craxiom.messaging.PhoneState;
 import com.craxiom.messaging.UmtsRecord;
 import com.craxiom.messaging.WifiBeaconRecord;
-import com.craxiom.mqttlibrary.connection.DefaultMqttConnection;
+import com.craxiom.mqttlibrary.connection.BrokerConnectionInfo;
+import com.craxiom.mqttlibrary.connection.ConnectionState;
 import com.craxiom.networksurvey.listeners.IBluetoothSurveyRecordListener;
 import com.craxiom.networksurvey.listeners.ICellularSurveyRecordListener;
 import com.craxiom.networksurvey.listeners.IDeviceStatusListener;
 import com.craxiom.networksurvey.listeners.IGnssSurveyRecordListener;
 import com.craxiom.networksurvey.listeners.IWifiSurveyRecordListener;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 import com.craxiom.networksurvey.model.WifiRecordWrapper;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
 
 /**
  * Class for creating a connection to an MQTT server.
+ * <p>
+ * When batch publishing is enabled on the {@link MqttConnectionInfo}, the Wi-Fi and Bluetooth records are published on
+ * the batch topics instead of the per-record topics, with one message per scan or per batch window.
+ * <p>
+ * If an {@link MqttOutbox} is provided, the messages produced while the connection is not up are stored in it, and
+ * then replayed in order (and at a limited rate) each time the connection comes back.
+ * <p>
+ * The payloads are published as JSON by default. When the {@link MqttPayloadFormat#PROTOBUF} format is selected, the
+ * binary protobuf payloads are published on the parallel protobuf topics instead (e.g. gsm_message_protobuf).
+ * <p>
+ * Topics can be given a rate limit with {@link #setTopicRateLimits(List)} so that a high volume topic (e.g. Bluetooth
+ * in a busy area) can't flood the broker and delay the other topics. The limit for the Wi-Fi or Bluetooth record topic
+ * also applies to the records when they are batched; a limit set on a batch topic applies to the batch messages.
+ * <p>
+ * More than one connection can be fed from the same survey records, each to its own broker. A topic filter can be set
+ * with {@link #setTopicFilter(Set)} so that a connection only publishes some of the topics.
+ * <p>
+ * The records are shared with the other sinks, so they are published as they are passed in, and each connection's
+ * device name (its client ID) is only added to the payloads it publishes (see {@link MqttDeviceNameHeader}). The
+ * messages in the outbox are stored without the device name, and it is added when they are replayed.
  *
  * @since 0.1.1
  */
-public class MqttConnection extends DefaultMqttConnection implements ICellularSurveyRecordListener, IWifiSurveyRecordListener,
+public class MqttConnection extends MqttBrokerConnection implements ICellularSurveyRecordListener, IWifiSurveyRecordListener,
         IBluetoothSurveyRecordListener, IGnssSurveyRecordListener, IDeviceStatusListener
 {
-    private static final String MQTT_GSM_MESSAGE_TOPIC = "gsm_message";
-    private static final String MQTT_CDMA_MESSAGE_TOPIC = "cdma_message";
-    private static final String MQTT_UMTS_MESSAGE_TOPIC = "umts_message";
-    private static final String MQTT_LTE_MESSAGE_TOPIC = "lte_message";
-    private static final String MQTT_NR_MESSAGE_TOPIC = "nr_message";
-    private static final String MQTT_WIFI_BEACON_MESSAGE_TOPIC = "80211_beacon_message";
-    private static final String MQTT_BLUETOOTH_MESSAGE_TOPIC = "bluetooth_message";
-    private static final String MQTT_GNSS_MESSAGE_TOPIC = "gnss_message";
-    private static final String MQTT_DEVICE_STATUS_MESSAGE_TOPIC = "device_status_message";
+    static final String MQTT_GSM_MESSAGE_TOPIC = "gsm_message";
+    static final String MQTT_CDMA_MESSAGE_TOPIC = "cdma_message";
+    static final String MQTT_UMTS_MESSAGE_TOPIC = "umts_message";
+    static final String MQTT_LTE_MESSAGE_TOPIC = "lte_message";
+    static final String MQTT_NR_MESSAGE_TOPIC = "nr_message";
+    static final String MQTT_WIFI_BEACON_MESSAGE_TOPIC = "80211_beacon_message";
+    static final String MQTT_BLUETOOTH_MESSAGE_TOPIC = "bluetooth_message";
+    static final String MQTT_GNSS_MESSAGE_TOPIC = "gnss_message";
+    static final String MQTT_DEVICE_STATUS_MESSAGE_TOPIC = "device_status_message";
+    static final String MQTT_WIFI_BEACON_BATCH_MESSAGE_TOPIC = "80211_beacon_batch_message";
+    static final String MQTT_BLUETOOTH_BATCH_MESSAGE_TOPIC = "bluetooth_batch_message";
 
-    @Override
-    public void onGsmSurveyRecord(GsmRecord gsmRecord)
+    private static final String WIFI_BEACON_BATCH_MESSAGE_TYPE = "WifiBeaconRecordBatch";
+    private static final String BLUETOOTH_BATCH_MESSAGE_TYPE = "BluetoothRecordBatch";
+
+    private final MqttRecordBatcher<WifiBeaconRecord> wifiBeaconBatcher =
+            new MqttRecordBatcher<>(WifiBeaconRecord.getDescriptor(), WIFI_BEACON_BATCH_MESSAGE_TYPE);
+    private final MqttRecordBatcher<BluetoothRecord> bluetoothBatcher =
+            new MqttRecordBatcher<>(BluetoothRecord.getDescriptor(), BLUETOOTH_BATCH_MESSAGE_TYPE);
+
+    private static final long RATE_LIMIT_DRAIN_INTERVAL_MS = 250;
+
+    private static final int REPLAY_BURST_SIZE = 10;
+    private static final long REPLAY_BURST_INTERVAL_MS = 200;
+
+    private final MqttOutbox outbox;
+    private final ExecutorRegistry executorRegistry;
+    private final Map<String, Descriptors.Descriptor> replayDescriptors = new HashMap<>();
+    private final AtomicBoolean replayRunning = new AtomicBoolean(false);
+
+    private volatile MqttPayloadFormat payloadFormat = MqttPayloadFormat.JSON;
+    private volatile MqttDeviceNameHeader deviceNameHeader = new MqttDeviceNameHeader(null);
+    private volatile boolean batchPublishEnabled;
+    private volatile int batchWindowMs;
+    private ScheduledFuture<?> batchFlushTask;
+
+    private List<MqttTopicRateLimit> topicRateLimits = Collections.emptyList();
+    private volatile Map<String, MqttTopicRateLimiter> rateLimiters = Collections.emptyMap();
+    private ScheduledFuture<?> rateLimitTask;
+
+    private volatile Set<String> topicFilter;
+    private volatile String brokerName = "";
+    private final AtomicLong publishedCount = new AtomicLong();
+
+    public MqttConnection()
+    {
+        this(null);
+    }
+
+    /**
+     * @param outbox The outbox to hold the messages while the connection is down, or null to drop them instead.
+     * @since 1.10.0
+     */
+    public MqttConnection(MqttOutbox outbox)
     {
-        // Set the device name to the user entered value in the MQTT connection UI (or the value provided via MDM)
-        if (mqttClientId != null)
+        this(outbox, ExecutorRegistry.getInstance());
+    }
+
+    /**
+     * @param outbox           The outbox to hold the messages while the connection is down, or null to drop them instead.
+     * @param executorRegistry The registry to run the batch, rate limit, and outbox work on.
+     * @since 1.10.0
+     */
+    public MqttConnection(MqttOutbox outbox, ExecutorRegistry executorRegistry)
+    {
+        this.outbox = outbox;
+        this.executorRegistry = executorRegistry;
+
+        for (Descriptors.Descriptor descriptor : Arrays.asList(GsmRecord.getDescriptor(), CdmaRecord.getDescriptor(),
+                UmtsRecord.getDescriptor(), LteRecord.getDescriptor(), NrRecord.getDescriptor(),
+                WifiBeaconRecord.getDescriptor(), BluetoothRecord.getDescriptor(), GnssRecord.getDescriptor(),
+                DeviceStatus.getDescriptor(), PhoneState.getDescriptor(), wifiBeaconBatcher.getBatchDescriptor(),
+                bluetoothBatcher.getBatchDescriptor()))
         {
-            final GsmRecord.Builder recordBuilder = gsmRecord.toBuilder();
-            gsmRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
+            replayDescriptors.put(descriptor.getFullName(), descriptor);
         }
 
-        publishMessage(MQTT_GSM_MESSAGE_TOPIC, gsmRecord);
+        if (outbox != null) registerMqttConnectionStateListener(this::onConnectionStateChange);
     }
 
     @Override
-    public void onCdmaSurveyRecord(CdmaRecord cdmaRecord)
+    public synchronized void connect(Context context, BrokerConnectionInfo connectionInfo)
     {
-        // Set the device name to the user entered value in the MQTT connection UI (or the value provided via MDM)
-        if (mqttClientId != null)
+        stopBatchFlushing();
+
+        if (outbox != null && !outbox.isLoaded())
+        {
+            // Reading the messages left over from a previous run can take a while, so keep it off the calling thread
+            executorRegistry.getExecutor(ExecutorRegistry.Role.NETWORK).execute(outbox::load);
+        }
+
+        brokerName = connectionInfo.getMqttBrokerHost() + ":" + connectionInfo.getPortNumber();
+        payloadFormat = connectionInfo instanceof MqttConnectionInfo ?
+                ((MqttConnectionInfo) connectionInfo).getPayloadFormat() : MqttPayloadFormat.JSON;
+        if (payloadFormat != MqttPayloadFormat.JSON)
         {
-            final CdmaRecord.Builder recordBuilder = cdmaRecord.toBuilder();
-            cdmaRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
+            Timber.i("Publishing the MQTT messages in the %s payload format", payloadFormat);
         }
 
-        publishMessage(MQTT_CDMA_MESSAGE_TOPIC, cdmaRecord);
+        deviceNameHeader = new MqttDeviceNameHeader(connectionInfo.getMqttClientId());
+        wifiBeaconBatcher.setDeviceName(connectionInfo.getMqttClientId());
+        bluetoothBatcher.setDeviceName(connectionInfo.getMqttClientId());
+
+        if (connectionInfo instanceof MqttConnectionInfo && ((MqttConnectionInfo) connectionInfo).isBatchPublishEnabled())
+        {
+            batchPublishEnabled = true;
+            batchWindowMs = Math.max(0, ((MqttConnectionInfo) connectionInfo).getBatchWindowMs());
+
+            if (batchWindowMs > 0)
+            {
+                batchFlushTask = executorRegistry.getExecutor(ExecutorRegistry.Role.NETWORK)
+                        .scheduleWithFixedDelay(this::publishPendingBatches, batchWindowMs, batchWindowMs, TimeUnit.MILLISECONDS);
+            }
+
+            Timber.i("Publishing the Wi-Fi and Bluetooth records in batches (batch window %d ms)", batchWindowMs);
+        } else
+        {
+            batchPublishEnabled = false;
+            batchWindowMs = 0;
+        }
+
+        startRateLimiting();
+
+        super.connect(context, connectionInfo);
+    }
+
+    /**
+     * Sets the rate limits for the topics. The limits take effect on the next call to
+     * {@link #connect(Context, BrokerConnectionInfo)}.
+     *
+     * @param topicRateLimits The rate limits, or an empty list to publish everything as soon as it is received.
+     * @since 1.10.0
+     */
+    public synchronized void setTopicRateLimits(List<MqttTopicRateLimit> topicRateLimits)
+    {
+        this.topicRateLimits = topicRateLimits == null ? Collections.emptyList() : new ArrayList<>(topicRateLimits);
+    }
+
+    /**
+     * Limits the topics that this connection publishes.
+     *
+     * @param topicFilter The (JSON) topic names to publish, or null to publish all the topics.
+     * @since 1.10.0
+     */
+    public void setTopicFilter(Set<String> topicFilter)
+    {
+        this.topicFilter = topicFilter == null ? null : new HashSet<>(topicFilter);
+    }
+
+    @Override
+    public synchronized void disconnect()
+    {
+        // Get any records that are waiting on the batch window out before the connection is closed
+        publishPendingBatches();
+        stopBatchFlushing();
+        publishRateLimitSamples();
+        stopRateLimiting();
+
+        super.disconnect();
+    }
+
+    @Override
+    public void onGsmSurveyRecord(GsmRecord gsmRecord)
+    {
+        onGsmSurveyRecordEnvelope(new SurveyRecordEnvelope<>(gsmRecord));
+    }
+
+    @Override
+    public void onGsmSurveyRecordEnvelope(SurveyRecordEnvelope<GsmRecord> envelope)
+    {
+        publish(MQTT_GSM_MESSAGE_TOPIC, envelope);
+    }
+
+    @Override
+    public void onCdmaSurveyRecord(CdmaRecord cdmaRecord)
+    {
+        onCdmaSurveyRecordEnvelope(new SurveyRecordEnvelope<>(cdmaRecord));
+    }
+
+    @Override
+    public void onCdmaSurveyRecordEnvelope(SurveyRecordEnvelope<CdmaRecord> envelope)
+    {
+        publish(MQTT_CDMA_MESSAGE_TOPIC, envelope);
     }
 
     @Override
     public void onUmtsSurveyRecord(UmtsRecord umtsRecord)
     {
-        // Set the device name to the user entered value in the MQTT connection UI (or the value provided via MDM)
-        if (mqttClientId != null)
-        {
-            final UmtsRecord.Builder recordBuilder = umtsRecord.toBuilder();
-            umtsRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
-        }
+        onUmtsSurveyRecordEnvelope(new SurveyRecordEnvelope<>(umtsRecord));
+    }
 
-        publishMessage(MQTT_UMTS_MESSAGE_TOPIC, umtsRecord);
+    @Override
+    public void onUmtsSurveyRecordEnvelope(SurveyRecordEnvelope<UmtsRecord> envelope)
+    {
+        publish(MQTT_UMTS_MESSAGE_TOPIC, envelope);
     }
 
     @Override
     public void onLteSurveyRecord(LteRecord lteRecord)
     {
-        // Set the device name to the user entered value in the MQTT connection UI (or the value provided via MDM)
-        if (mqttClientId != null)
-        {
-            final LteRecord.Builder recordBuilder = lteRecord.toBuilder();
-            lteRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
-        }
+        onLteSurveyRecordEnvelope(new SurveyRecordEnvelope<>(lteRecord));
+    }
 
-        publishMessage(MQTT_LTE_MESSAGE_TOPIC, lteRecord);
+    @Override
+    public void onLteSurveyRecordEnvelope(SurveyRecordEnvelope<LteRecord> envelope)
+    {
+        publish(MQTT_LTE_MESSAGE_TOPIC, envelope);
     }
 
     @Override
     public void onNrSurveyRecord(NrRecord nrRecord)
     {
-        if (mqttClientId != null)
-        {
-            final NrRecord.Builder recordBuilder = nrRecord.toBuilder();
-            nrRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
-        }
+        onNrSurveyRecordEnvelope(new SurveyRecordEnvelope<>(nrRecord));
+    }
 
-        publishMessage(MQTT_NR_MESSAGE_TOPIC, nrRecord);
+    @Override
+    public void onNrSurveyRecordEnvelope(SurveyRecordEnvelope<NrRecord> envelope)
+    {
+        publish(MQTT_NR_MESSAGE_TOPIC, envelope);
+    }
+
+    /**
+     * @return True so that each AP is only published again when it was seen again, instead of once for every scan that
+     * still lists it.
+     */
+    @Override
+    public boolean isOnlyNewAccessPointsWanted()
+    {
+        return true;
     }
 
     @Override
     public void onWifiBeaconSurveyRecords(List<WifiRecordWrapper> wifiBeaconRecords)
     {
-        wifiBeaconRecords.forEach(wifiRecord -> {
-            WifiBeaconRecord wifiBeaconRecord = wifiRecord.getWifiBeaconRecord();
-            if (mqttClientId != null)
-            {
-                final WifiBeaconRecord.Builder recordBuilder = wifiBeaconRecord.toBuilder();
-                wifiBeaconRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
-            }
-            publishMessage(MQTT_WIFI_BEACON_MESSAGE_TOPIC, wifiBeaconRecord);
-        });
+        if (batchPublishEnabled)
+        {
+            final List<WifiBeaconRecord> records = new ArrayList<>(wifiBeaconRecords.size());
+            wifiBeaconRecords.forEach(wifiRecord -> records.add(wifiRecord.getEnvelope().getRecord()));
+            addToBatch(wifiBeaconBatcher, MQTT_WIFI_BEACON_MESSAGE_TOPIC, MQTT_WIFI_BEACON_BATCH_MESSAGE_TOPIC, records);
+            return;
+        }
+
+        wifiBeaconRecords.forEach(wifiRecord -> publish(MQTT_WIFI_BEACON_MESSAGE_TOPIC, wifiRecord.getEnvelope()));
     }
 
     @Override
     public void onBluetoothSurveyRecord(BluetoothRecord bluetoothRecord)
     {
-        // Set the device name to the user entered value in the MQTT connection UI (or the value provided via MDM)
-        if (mqttClientId != null)
+        onBluetoothSurveyRecordEnvelope(new SurveyRecordEnvelope<>(bluetoothRecord));
+    }
+
+    @Override
+    public void onBluetoothSurveyRecordEnvelope(SurveyRecordEnvelope<BluetoothRecord> envelope)
+    {
+        if (batchPublishEnabled)
         {
-            final BluetoothRecord.Builder recordBuilder = bluetoothRecord.toBuilder();
-            bluetoothRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
+            addToBatch(bluetoothBatcher, MQTT_BLUETOOTH_MESSAGE_TOPIC, MQTT_BLUETOOTH_BATCH_MESSAGE_TOPIC,
+                    Collections.singletonList(envelope.getRecord()));
+            return;
         }
 
-        publishMessage(MQTT_BLUETOOTH_MESSAGE_TOPIC, bluetoothRecord);
+        publish(MQTT_BLUETOOTH_MESSAGE_TOPIC, envelope);
     }
 
     @Override
     public void onBluetoothSurveyRecords(List<BluetoothRecord> bluetoothRecords)
     {
-        bluetoothRecords.forEach(bluetoothRecord -> {
-            if (mqttClientId != null)
-            {
-                final BluetoothRecord.Builder recordBuilder = bluetoothRecord.toBuilder();
-                bluetoothRecord = recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
-            }
-            publishMessage(MQTT_BLUETOOTH_MESSAGE_TOPIC, bluetoothRecord);
-        });
+        final List<SurveyRecordEnvelope<BluetoothRecord>> envelopes = new ArrayList<>(bluetoothRecords.size());
+        bluetoothRecords.forEach(bluetoothRecord -> envelopes.add(new SurveyRecordEnvelope<>(bluetoothRecord)));
+        onBluetoothSurveyRecordEnvelopes(envelopes);
     }
 
     @Override
-    public void onGnssSurveyRecord(GnssRecord gnssRecord)
+    public void onBluetoothSurveyRecordEnvelopes(List<SurveyRecordEnvelope<BluetoothRecord>> envelopes)
     {
-        if (mqttClientId != null)
+        if (batchPublishEnabled)
         {
-            final GnssRecord.Builder gnssRecordBuilder = gnssRecord.toBuilder();
-            gnssRecord = gnssRecordBuilder.setData(gnssRecordBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
+            final List<BluetoothRecord> records = new ArrayList<>(envelopes.size());
+            envelopes.forEach(envelope -> records.add(envelope.getRecord()));
+            addToBatch(bluetoothBatcher, MQTT_BLUETOOTH_MESSAGE_TOPIC, MQTT_BLUETOOTH_BATCH_MESSAGE_TOPIC, records);
+            return;
         }
 
-        publishMessage(MQTT_GNSS_MESSAGE_TOPIC, gnssRecord);
+        envelopes.forEach(envelope -> publish(MQTT_BLUETOOTH_MESSAGE_TOPIC, envelope));
+    }
+
+    @Override
+    public void onGnssSurveyRecord(GnssRecord gnssRecord)
+    {
+        onGnssSurveyRecordEnvelope(new SurveyRecordEnvelope<>(gnssRecord));
+    }
+
+    @Override
+    public void onGnssSurveyRecordEnvelope(SurveyRecordEnvelope<GnssRecord> envelope)
+    {
+        publish(MQTT_GNSS_MESSAGE_TOPIC, envelope);
     }
 
     @Override
     public void onDeviceStatus(DeviceStatus deviceStatus)
     {
-        if (mqttClientId != null)
-        {
-            final DeviceStatus.Builder deviceStatusBuilder = deviceStatus.toBuilder();
-            deviceStatus = deviceStatusBuilder.setData(deviceStatusBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
-        }
+        onDeviceStatusEnvelope(new SurveyRecordEnvelope<>(deviceStatus));
+    }
 
-        publishMessage(MQTT_DEVICE_STATUS_MESSAGE_TOPIC, deviceStatus);
+    @Override
+    public void onDeviceStatusEnvelope(SurveyRecordEnvelope<DeviceStatus> envelope)
+    {
+        publish(MQTT_DEVICE_STATUS_MESSAGE_TOPIC, envelope);
     }
 
     @Override
     public void onPhoneState(PhoneState phoneState)
     {
-        if (mqttClientId != null)
+        onPhoneStateEnvelope(new SurveyRecordEnvelope<>(phoneState));
+    }
+
+    @Override
+    public void onPhoneStateEnvelope(SurveyRecordEnvelope<PhoneState> envelope)
+    {
+        publish(MQTT_DEVICE_STATUS_MESSAGE_TOPIC, envelope);
+    }
+
+    /**
+     * @return The outbox that holds the messages while the connection is down, or null if there is not one.
+     * @since 1.10.0
+     */
+    public MqttOutbox getOutbox()
+    {
+        return outbox;
+    }
+
+    /**
+     * @return The host and port of the broker from the last call to {@link #connect(Context, BrokerConnectionInfo)}.
+     * @since 1.10.0
+     */
+    public String getBrokerName()
+    {
+        return brokerName;
+    }
+
+    /**
+     * @return The number of messages that have been sent to the broker by this connection, which can be sampled to
+     * show the throughput of the connection.
+     * @since 1.10.0
+     */
+    public long getPublishedCount()
+    {
+        return publishedCount.get();
+    }
+
+    /**
+     * Publishes the message if the connection is up, otherwise stores it in the outbox so that it can be published once
+     * the connection is back. If the topic has a rate limit, the message is held by the topic's rate limiter instead,
+     * and it might be published by one of the next rate limit drains.
+     */
+    private void publish(String topic, SurveyRecordEnvelope<?> envelope)
+    {
+        final Set<String> filter = topicFilter;
+        if (filter != null && !filter.contains(topic)) return;
+
+        final MqttTopicRateLimiter rateLimiter = rateLimiters.get(topic);
+        if (rateLimiter != null)
+        {
+            rateLimiter.add(envelope);
+            return;
+        }
+
+        publishOrQueue(topic, envelope);
+    }
+
+    /**
+     * Sends the message to the broker if the connection is up, otherwise adds it to the outbox.
+     */
+    private void publishOrQueue(String topic, SurveyRecordEnvelope<?> envelope)
+    {
+        if (outbox != null && getConnectionState() != ConnectionState.CONNECTED)
+        {
+            outbox.add(topic, envelope);
+            return;
+        }
+
+        publishToBroker(topic, envelope);
+    }
+
+    /**
+     * Sends the message to the broker in the configured payload format, on the format's topic. The payload is the one
+     * cached on the record's {@link SurveyRecordEnvelope}, so it is only serialized once no matter how many connections
+     * publish the record, and this connection's device name is added to it by the {@link MqttDeviceNameHeader}.
+     * <p>
+     * If the client is not connected (e.g. the connection dropped after the message was taken out of the outbox), the
+     * message goes back to the outbox instead of being lost.
+     */
+    private void publishToBroker(String topic, SurveyRecordEnvelope<?> envelope)
+    {
+        final MqttPayloadFormat format = payloadFormat;
+        try
+        {
+            if (publishBytes(format.getTopic(topic), deviceNameHeader.getPayload(format, envelope)))
+            {
+                publishedCount.incrementAndGet();
+            } else if (outbox != null)
+            {
+                outbox.add(topic, envelope);
+            } else
+            {
+                Timber.d("Dropping an MQTT message for topic %s because the client is not connected", topic);
+            }
+        } catch (Exception e)
+        {
+            Timber.e(e, "Caught an exception when trying to send an MQTT message");
+        }
+    }
+
+    /**
+     * Kicks off a replay of the outbox each time the connection comes up.
+     */
+    private void onConnectionStateChange(ConnectionState connectionState)
+    {
+        // The replay loads the outbox if the background load has not finished yet
+        if (connectionState != ConnectionState.CONNECTED || (outbox.isLoaded() && outbox.getQueuedCount() == 0)) return;
+        if (!replayRunning.compareAndSet(false, true)) return;
+
+        final Thread replayThread = executorRegistry.newThread("MqttOutboxReplay", ExecutorRegistry.Role.NETWORK, () -> {
+            try
+            {
+                outbox.replay(replayDescriptors::get, this::publishToBroker,
+                        () -> getConnectionState() == ConnectionState.CONNECTED, REPLAY_BURST_SIZE, REPLAY_BURST_INTERVAL_MS);
+            } catch (InterruptedException e)
+            {
+                Timber.i("The MQTT outbox replay was interrupted");
+            } catch (Exception e)
+            {
+                Timber.e(e, "The MQTT outbox replay failed");
+            } finally
+            {
+                replayRunning.set(false);
+            }
+        });
+        replayThread.start();
+    }
+
+    /**
+     * Batches the records, unless the per-record topic has a rate limit. The rate limit applies to the records whether
+     * or not they are batched, so in that case the records are held by the topic's rate limiter, and the ones it picks
+     * are batched when it is drained (see {@link #publishRateLimitSamples()}).
+     *
+     * @param recordTopic The topic the records are published on when batch publishing is off.
+     * @param batchTopic  The topic for the batch messages.
+     */
+    private <T extends Message> void addToBatch(MqttRecordBatcher<T> batcher, String recordTopic, String batchTopic, List<T> records)
+    {
+        final MqttTopicRateLimiter rateLimiter = rateLimiters.get(recordTopic);
+        if (rateLimiter != null)
+        {
+            records.forEach(record -> rateLimiter.add(new SurveyRecordEnvelope<>(record)));
+            return;
+        }
+
+        batchRecords(batcher, batchTopic, records);
+    }
+
+    /**
+     * Publishes the records as one or more batch messages, or holds on to them until the batch window expires if a
+     * batch window is configured.
+     */
+    private <T extends Message> void batchRecords(MqttRecordBatcher<T> batcher, String topic, List<T> records)
+    {
+        if (batchWindowMs > 0)
+        {
+            batcher.addAll(records);
+            return;
+        }
+
+        batcher.createBatchMessages(records).forEach(batchMessage -> publish(topic, new SurveyRecordEnvelope<>(batchMessage)));
+    }
+
+    /**
+     * Publishes the records that have been collected since the last batch window expired.
+     */
+    private void publishPendingBatches()
+    {
+        try
+        {
+            wifiBeaconBatcher.drain().forEach(batchMessage ->
+                    publish(MQTT_WIFI_BEACON_BATCH_MESSAGE_TOPIC, new SurveyRecordEnvelope<>(batchMessage)));
+            bluetoothBatcher.drain().forEach(batchMessage ->
+                    publish(MQTT_BLUETOOTH_BATCH_MESSAGE_TOPIC, new SurveyRecordEnvelope<>(batchMessage)));
+        } catch (Exception e)
         {
-            final PhoneState.Builder messageBuilder = phoneState.toBuilder();
-            phoneState = messageBuilder.setData(messageBuilder.getDataBuilder().setDeviceName(mqttClientId)).build();
+            // Catch everything so that the scheduled executor does not stop running the flush task
+            Timber.e(e, "Could not publish the batched MQTT records");
         }
+    }
+
+    /**
+     * Creates a fresh token bucket for each of the topic rate limits, and starts the task that publishes a sample of the
+     * messages that went over the limits.
+     */
+    private void startRateLimiting()
+    {
+        stopRateLimiting();
+        if (topicRateLimits.isEmpty()) return;
+
+        final Map<String, MqttTopicRateLimiter> limiters = new HashMap<>();
+        for (MqttTopicRateLimit rateLimit : topicRateLimits)
+        {
+            limiters.put(rateLimit.getTopic(), new MqttTopicRateLimiter(rateLimit));
+        }
+        rateLimiters = limiters;
+
+        rateLimitTask = executorRegistry.getExecutor(ExecutorRegistry.Role.NETWORK)
+                .scheduleWithFixedDelay(this::publishRateLimitSamples, RATE_LIMIT_DRAIN_INTERVAL_MS,
+                        RATE_LIMIT_DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
-        publishMessage(MQTT_DEVICE_STATUS_MESSAGE_TOPIC, phoneState);
+        Timber.i("Rate limiting the MQTT topics %s", topicRateLimits);
+    }
+
+    private void stopRateLimiting()
+    {
+        if (rateLimitTask != null)
+        {
+            // The pool is shared, so only this connection's task is cancelled
+            rateLimitTask.cancel(false);
+            rateLimitTask = null;
+        }
+
+        for (MqttTopicRateLimiter rateLimiter : rateLimiters.values())
+        {
+            Timber.i("MQTT rate limit %s: %d published, %d dropped", rateLimiter.getRateLimit(),
+                    rateLimiter.getPublishedCount(), rateLimiter.getDroppedCount());
+        }
+        rateLimiters = Collections.emptyMap();
+    }
+
+    /**
+     * Publishes the messages that the sampling strategy picked from the ones held for each topic's limit. When batch
+     * publishing is on, the picked Wi-Fi and Bluetooth records are batched instead.
+     */
+    private void publishRateLimitSamples()
+    {
+        try
+        {
+            for (Map.Entry<String, MqttTopicRateLimiter> entry : rateLimiters.entrySet())
+            {
+                final String topic = entry.getKey();
+                final List<SurveyRecordEnvelope<?>> envelopes = entry.getValue().drain();
+                if (envelopes.isEmpty()) continue;
+
+                if (batchPublishEnabled && MQTT_WIFI_BEACON_MESSAGE_TOPIC.equals(topic))
+                {
+                    batchRecords(wifiBeaconBatcher, MQTT_WIFI_BEACON_BATCH_MESSAGE_TOPIC, getRecords(envelopes, WifiBeaconRecord.class));
+                } else if (batchPublishEnabled && MQTT_BLUETOOTH_MESSAGE_TOPIC.equals(topic))
+                {
+                    batchRecords(bluetoothBatcher, MQTT_BLUETOOTH_BATCH_MESSAGE_TOPIC, getRecords(envelopes, BluetoothRecord.class));
+                } else
+                {
+                    envelopes.forEach(envelope -> publishOrQueue(topic, envelope));
+                }
+            }
+        } catch (Exception e)
+        {
+            // Catch everything so that the scheduled executor does not stop running the drain task
+            Timber.e(e, "Could not publish the rate limited MQTT messages");
+        }
+    }
+
+    private static <T extends Message> List<T> getRecords(List<SurveyRecordEnvelope<?>> envelopes, Class<T> recordClass)
+    {
+        final List<T> records = new ArrayList<>(envelopes.size());
+        envelopes.forEach(envelope -> records.add(recordClass.cast(envelope.getRecord())));
+        return records;
+    }
+
+    private void stopBatchFlushing()
+    {
+        if (batchFlushTask != null)
+        {
+            batchFlushTask.cancel(false);
+            batchFlushTask = null;
+        }
     }
-}
\ No newline at end of file
+}
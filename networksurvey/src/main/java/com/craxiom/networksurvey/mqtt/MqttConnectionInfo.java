@@ -9,10 +9,44 @@ public class MqttConnectionInfo extends BrokerConnectionInfo
     private final boolean isBluetoothStreamEnabled;
     private final boolean isGnssStreamEnabled;
     private final boolean isDeviceStatusStreamEnabled;
+    private final boolean isBatchPublishEnabled;
+    private final int batchWindowMs;
+    private final MqttPayloadFormat payloadFormat;
 
     public MqttConnectionInfo(String mqttBrokerHost, int portNumber, boolean tlsEnabled, String mqttClientId, String mqttUsername,
                               String mqttPassword, boolean isCellularStreamEnabled, boolean isWifiStreamEnabled,
                               boolean isBluetoothStreamEnabled, boolean isGnssStreamEnabled, boolean isDeviceStatusStreamEnabled)
+    {
+        this(mqttBrokerHost, portNumber, tlsEnabled, mqttClientId, mqttUsername, mqttPassword, isCellularStreamEnabled,
+                isWifiStreamEnabled, isBluetoothStreamEnabled, isGnssStreamEnabled, isDeviceStatusStreamEnabled, false, 0);
+    }
+
+    /**
+     * @param isBatchPublishEnabled True to publish the Wi-Fi and Bluetooth records on the batch topics instead of
+     *                              publishing each record as its own message.
+     * @param batchWindowMs         When batch publishing is enabled, the time window to collect records for before
+     *                              publishing them as one message. 0 publishes one message per scan.
+     * @since 1.10.0
+     */
+    public MqttConnectionInfo(String mqttBrokerHost, int portNumber, boolean tlsEnabled, String mqttClientId, String mqttUsername,
+                              String mqttPassword, boolean isCellularStreamEnabled, boolean isWifiStreamEnabled,
+                              boolean isBluetoothStreamEnabled, boolean isGnssStreamEnabled, boolean isDeviceStatusStreamEnabled,
+                              boolean isBatchPublishEnabled, int batchWindowMs)
+    {
+        this(mqttBrokerHost, portNumber, tlsEnabled, mqttClientId, mqttUsername, mqttPassword, isCellularStreamEnabled,
+                isWifiStreamEnabled, isBluetoothStreamEnabled, isGnssStreamEnabled, isDeviceStatusStreamEnabled,
+                isBatchPublishEnabled, batchWindowMs, MqttPayloadFormat.JSON);
+    }
+
+    /**
+     * @param payloadFormat The format to publish the message payloads in. Binary protobuf payloads are published on
+     *                      the parallel topics so that JSON consumers are not affected.
+     * @since 1.10.0
+     */
+    public MqttConnectionInfo(String mqttBrokerHost, int portNumber, boolean tlsEnabled, String mqttClientId, String mqttUsername,
+                              String mqttPassword, boolean isCellularStreamEnabled, boolean isWifiStreamEnabled,
+                              boolean isBluetoothStreamEnabled, boolean isGnssStreamEnabled, boolean isDeviceStatusStreamEnabled,
+                              boolean isBatchPublishEnabled, int batchWindowMs, MqttPayloadFormat payloadFormat)
     {
         super(mqttBrokerHost, portNumber, tlsEnabled, mqttClientId, mqttUsername, mqttPassword);
         this.isCellularStreamEnabled = isCellularStreamEnabled;
@@ -20,6 +54,9 @@ public class MqttConnectionInfo extends BrokerConnectionInfo
         this.isBluetoothStreamEnabled = isBluetoothStreamEnabled;
         this.isGnssStreamEnabled = isGnssStreamEnabled;
         this.isDeviceStatusStreamEnabled = isDeviceStatusStreamEnabled;
+        this.isBatchPublishEnabled = isBatchPublishEnabled;
+        this.batchWindowMs = batchWindowMs;
+        this.payloadFormat = payloadFormat == null ? MqttPayloadFormat.JSON : payloadFormat;
     }
 
     public boolean isCellularStreamEnabled()
@@ -46,4 +83,19 @@ public class MqttConnectionInfo extends BrokerConnectionInfo
     {
         return isDeviceStatusStreamEnabled;
     }
+
+    public boolean isBatchPublishEnabled()
+    {
+        return isBatchPublishEnabled;
+    }
+
+    public int getBatchWindowMs()
+    {
+        return batchWindowMs;
+    }
+
+    public MqttPayloadFormat getPayloadFormat()
+    {
+        return payloadFormat;
+    }
 }
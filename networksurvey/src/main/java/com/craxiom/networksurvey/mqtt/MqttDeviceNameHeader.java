@@ -0,0 +1,183 @@
+package com.craxiom.networksurvey.mqtt;
+
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adds an MQTT connection's device name to the serialized records, without copying the records.
+ * <p>
+ * The device name is the client ID the user entered for the connection (or the one provided via MDM), so it is only
+ * set on the records that are published to that connection. The records are shared with the other sinks, and their
+ * payloads are cached on the {@link SurveyRecordEnvelope}, so instead of building a copy of each record with the name
+ * set, the name is added to the cached payload:
+ * <ul>
+ * <li>Protobuf: the encoding of a record with only {@code data.device_name} set is appended to the record's bytes.
+ * Parsing the concatenation of two messages merges them, so the subscribers see the record with the device name.</li>
+ * <li>JSON: {@code "device_name":"..."} is inserted at the end of the record's {@code data} object.</li>
+ * </ul>
+ * The encoded name is built once for each record type. A record that does not fit the splicing (e.g. it already has a
+ * different device name, or it has no {@code data} field) is copied with the name set instead, the same as before.
+ *
+ * @since 1.10.0
+ */
+public class MqttDeviceNameHeader
+{
+    private static final String DATA_FIELD = "data";
+    private static final String DEVICE_NAME_FIELD = "device_name";
+
+    private final String deviceName;
+    private final Map<Descriptors.Descriptor, RecordHeader> recordHeaders = new ConcurrentHashMap<>();
+
+    /**
+     * @param deviceName The device name to add to the records, or null (or empty) to publish the records as they are.
+     */
+    public MqttDeviceNameHeader(String deviceName)
+    {
+        this.deviceName = deviceName == null ? "" : deviceName;
+    }
+
+    public String getDeviceName()
+    {
+        return deviceName;
+    }
+
+    /**
+     * @param format   The format to publish the record in.
+     * @param envelope The envelope for the record to publish.
+     * @return The payload for the record in the format, with this device name set. The returned array must not be
+     * modified, because it might be the one cached on the envelope.
+     */
+    public byte[] getPayload(MqttPayloadFormat format, SurveyRecordEnvelope<?> envelope) throws InvalidProtocolBufferException
+    {
+        if (deviceName.isEmpty()) return format.serialize(envelope);
+
+        final Message record = envelope.getRecord();
+        final RecordHeader recordHeader = recordHeaders.computeIfAbsent(record.getDescriptorForType(), this::createRecordHeader);
+        if (recordHeader == RecordHeader.NONE) return format.serialize(envelope);
+
+        final Message data = (Message) record.getField(recordHeader.dataField);
+        final String recordDeviceName = (String) data.getField(recordHeader.deviceNameField);
+        if (deviceName.equals(recordDeviceName)) return format.serialize(envelope);
+
+        if (recordDeviceName.isEmpty() && record.hasField(recordHeader.dataField))
+        {
+            final byte[] payload = format.serialize(envelope);
+            if (format == MqttPayloadFormat.PROTOBUF) return concat(payload, recordHeader.protobufBytes);
+
+            final byte[] splicedJson = spliceJson(payload, recordHeader.jsonBytes);
+            if (splicedJson != null) return splicedJson;
+        }
+
+        return format.serialize(new SurveyRecordEnvelope<>(record.toBuilder()
+                .setField(recordHeader.dataField, data.toBuilder().setField(recordHeader.deviceNameField, deviceName).build())
+                .build()));
+    }
+
+    /**
+     * Encodes the device name for a record type, or returns {@link RecordHeader#NONE} if the record type has no
+     * {@code data.device_name} field.
+     */
+    private RecordHeader createRecordHeader(Descriptors.Descriptor recordDescriptor)
+    {
+        final Descriptors.FieldDescriptor dataField = recordDescriptor.findFieldByName(DATA_FIELD);
+        if (dataField == null || dataField.getJavaType() != Descriptors.FieldDescriptor.JavaType.MESSAGE
+                || dataField.isRepeated())
+        {
+            return RecordHeader.NONE;
+        }
+
+        final Descriptors.FieldDescriptor deviceNameField = dataField.getMessageType().findFieldByName(DEVICE_NAME_FIELD);
+        if (deviceNameField == null || deviceNameField.getJavaType() != Descriptors.FieldDescriptor.JavaType.STRING
+                || deviceNameField.isRepeated())
+        {
+            return RecordHeader.NONE;
+        }
+
+        final DynamicMessage deviceNameData = DynamicMessage.newBuilder(dataField.getMessageType())
+                .setField(deviceNameField, deviceName)
+                .build();
+        final byte[] protobufBytes = DynamicMessage.newBuilder(recordDescriptor)
+                .setField(dataField, deviceNameData)
+                .build()
+                .toByteArray();
+
+        // The fields are printed in field number order, so the JSON can only be spliced if the data field has the
+        // highest number and is printed last
+        byte[] jsonBytes = null;
+        if (recordDescriptor.getFields().stream().allMatch(field -> field.getNumber() <= dataField.getNumber()))
+        {
+            try
+            {
+                // {"device_name":"..."} without the braces, so the escaping matches the rest of the JSON
+                final byte[] dataJson = new SurveyRecordEnvelope<>(deviceNameData).getJsonBytes();
+                jsonBytes = new byte[dataJson.length - 2];
+                System.arraycopy(dataJson, 1, jsonBytes, 0, jsonBytes.length);
+            } catch (InvalidProtocolBufferException e)
+            {
+                jsonBytes = null;
+            }
+        }
+
+        return new RecordHeader(dataField, deviceNameField, protobufBytes, jsonBytes);
+    }
+
+    /**
+     * Inserts the device name member before the closing brace of the data object, which is the last member of the
+     * record object (e.g. {@code {"version":"...","data":{...}}}).
+     *
+     * @return The JSON with the device name, or null if the JSON does not end with the data object.
+     */
+    private static byte[] spliceJson(byte[] json, byte[] deviceNameMember)
+    {
+        final int length = json.length;
+        if (deviceNameMember == null || length < 3 || json[length - 1] != '}' || json[length - 2] != '}') return null;
+
+        final int insertAt = length - 2;
+        final boolean emptyData = json[insertAt - 1] == '{';
+
+        final byte[] spliced = new byte[length + deviceNameMember.length + (emptyData ? 0 : 1)];
+        System.arraycopy(json, 0, spliced, 0, insertAt);
+        int position = insertAt;
+        if (!emptyData) spliced[position++] = ',';
+        System.arraycopy(deviceNameMember, 0, spliced, position, deviceNameMember.length);
+        position += deviceNameMember.length;
+        System.arraycopy(json, insertAt, spliced, position, 2);
+        return spliced;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second)
+    {
+        final byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * The device name encoded for one record type.
+     */
+    private static final class RecordHeader
+    {
+        private static final RecordHeader NONE = new RecordHeader(null, null, null, null);
+
+        private final Descriptors.FieldDescriptor dataField;
+        private final Descriptors.FieldDescriptor deviceNameField;
+        private final byte[] protobufBytes;
+        private final byte[] jsonBytes;
+
+        private RecordHeader(Descriptors.FieldDescriptor dataField, Descriptors.FieldDescriptor deviceNameField,
+                             byte[] protobufBytes, byte[] jsonBytes)
+        {
+            this.dataField = dataField;
+            this.deviceNameField = deviceNameField;
+            this.protobufBytes = protobufBytes;
+            this.jsonBytes = jsonBytes;
+        }
+    }
+}
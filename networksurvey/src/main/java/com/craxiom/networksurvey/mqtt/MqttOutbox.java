@@ -0,0 +1,908 @@
+package com.craxiom.networksurvey.mqtt;
+
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import timber.log.Timber;
+
+/**
+ * A bounded, disk backed outbox for the MQTT messages that are produced while the connection to the MQTT broker is
+ * down. The messages are kept per topic and are replayed in order once the connection comes back.
+ * <p>
+ * Each topic gets its own directory of append only segment files. A message is stored as its protobuf bytes along with
+ * the full name of its message type so that it can be parsed back into a {@link DynamicMessage} and published exactly
+ * as it would have been when it was created. The replayed message's envelope reuses the stored bytes, so a protobuf
+ * payload is not serialized again. When a topic goes over its size cap, the oldest segment is deleted, and
+ * messages older than the age cap are dropped instead of replayed.
+ * <p>
+ * A segment is only deleted once all of its messages have been replayed. If the replay is stopped part way through a
+ * segment (e.g. because the connection dropped again), the segment is rewritten with only the messages that have not
+ * been published yet.
+ * <p>
+ * Adding a message only updates the in-memory index of the segments, so it is quick enough for the thread that
+ * publishes the live messages. The message is written to its segment file later on the write executor (the NETWORK
+ * pool in the app), along with the other messages added around the same time, and the segment file is flushed once per
+ * batch instead of once per message. A batch is written after {@link #WRITE_DELAY_MS}, or as soon as
+ * {@link #WRITE_BATCH_BYTES} are waiting. The messages that were added in the last moments before the app was killed
+ * can be lost, the same as the ones that were still waiting to be published.
+ * <p>
+ * Creating the outbox does not touch the disk. The messages left over from a previous run are loaded by {@link #load()},
+ * which reads every segment, so it should be called from a background thread. If it has not been called by the time a
+ * message is added or replayed, it is called then.
+ *
+ * @since 1.10.0
+ */
+public class MqttOutbox
+{
+    public static final String DIRECTORY_NAME = "mqtt_outbox";
+
+    public static final long DEFAULT_MAX_BYTES_PER_TOPIC = 5 * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * How long the added messages wait for more messages to be added before they are written to disk together.
+     */
+    static final long WRITE_DELAY_MS = 1_000;
+
+    /**
+     * The number of bytes waiting to be written that triggers the write without waiting for {@link #WRITE_DELAY_MS}.
+     */
+    static final long WRITE_BATCH_BYTES = 64 * 1024;
+
+    private static final long SEGMENT_BYTES = 256 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CHARSET = "UTF-8";
+
+    private final File directory;
+    private final long maxBytesPerTopic;
+    private final long maxAgeMs;
+    private final ScheduledExecutorService writeExecutor;
+
+    private final Map<String, TopicQueue> topicQueues = new LinkedHashMap<>();
+    private boolean loaded;
+    private long queuedCount;
+    private long queuedBytes;
+    private long droppedCount;
+
+    // The disk operations waiting for the write executor, in the order they have to be done. Guarded by this.
+    private List<DiskOperation> pendingOperations = new ArrayList<>();
+    private long pendingBytes;
+    private boolean writeScheduled;
+    private boolean batchWriteRequested;
+
+    // Only the thread that holds the write lock touches the segment files that are being written
+    private final Object writeLock = new Object();
+    private Segment openSegment;
+    private DataOutputStream openSegmentWriter;
+
+    private volatile boolean replaying;
+    private volatile long replayedCount;
+    private volatile long replayTotal;
+
+    /**
+     * Creates the outbox with the default size and age caps.
+     *
+     * @param directory     The directory to store the outbox in. It is created if it does not exist.
+     * @param writeExecutor The executor to write the added messages to disk on.
+     */
+    public MqttOutbox(File directory, ScheduledExecutorService writeExecutor)
+    {
+        this(directory, DEFAULT_MAX_BYTES_PER_TOPIC, DEFAULT_MAX_AGE_MS, writeExecutor);
+    }
+
+    /**
+     * @param directory        The directory to store the outbox in. It is created if it does not exist.
+     * @param maxBytesPerTopic The maximum number of bytes to store for each topic before the oldest messages are dropped.
+     * @param maxAgeMs         Messages older than this are dropped instead of being replayed.
+     * @param writeExecutor    The executor to write the added messages to disk on.
+     */
+    public MqttOutbox(File directory, long maxBytesPerTopic, long maxAgeMs, ScheduledExecutorService writeExecutor)
+    {
+        this.directory = directory;
+        this.maxBytesPerTopic = maxBytesPerTopic;
+        this.maxAgeMs = maxAgeMs;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * Loads the messages left over from a previous run. This reads every segment to count its messages, so it should
+     * not be called from the main thread. Only the first call does anything.
+     */
+    public synchronized void load()
+    {
+        if (loaded) return;
+        loaded = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            Timber.e("Could not create the MQTT outbox directory %s", directory);
+        }
+
+        loadExistingSegments();
+    }
+
+    /**
+     * @return True if the messages left over from a previous run have been loaded. Until then, the counts only include
+     * the messages added since the outbox was created.
+     */
+    public synchronized boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    /**
+     * Stores the message so that it can be published to the topic once the connection is back. The message is counted
+     * right away, and it is written to disk on the write executor.
+     *
+     * @param topic    The MQTT topic to publish the message to.
+     * @param envelope The envelope for the message to publish, which holds the bytes to store.
+     */
+    public void add(String topic, SurveyRecordEnvelope<?> envelope)
+    {
+        final Entry entry = new Entry(System.currentTimeMillis(), envelope.getRecord().getDescriptorForType().getFullName(),
+                envelope.getProtobufBytes());
+
+        final boolean writeNow;
+        final boolean scheduleWrite;
+        synchronized (this)
+        {
+            load();
+
+            final TopicQueue topicQueue = getOrCreateTopicQueue(topic);
+            if (topicQueue == null) return;
+
+            final Segment segment = topicQueue.getWritableSegment();
+            final long entryBytes = entry.getSizeBytes();
+            segment.count++;
+            segment.bytes += entryBytes;
+            segment.newestTimestampMs = entry.timestampMs;
+            topicQueue.count++;
+            topicQueue.bytes += entryBytes;
+            queuedCount++;
+            queuedBytes += entryBytes;
+
+            pendingOperations.add(new DiskOperation(segment, entry));
+            pendingBytes += entryBytes;
+
+            enforceCaps(topicQueue);
+
+            writeNow = pendingBytes >= WRITE_BATCH_BYTES && !batchWriteRequested;
+            if (writeNow) batchWriteRequested = true;
+            scheduleWrite = !writeScheduled;
+            writeScheduled = true;
+        }
+
+        // A batch that is written early does not cancel the delayed write, which then writes what was added since
+        if (writeNow) writeExecutor.execute(this::writePendingEntries);
+        if (scheduleWrite) writeExecutor.schedule(this::writePendingEntries, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the messages that are waiting for the write executor to disk on the calling thread, e.g. before the app
+     * exits or before the outbox directory is read by something else.
+     */
+    public void flush()
+    {
+        writePendingEntries();
+    }
+
+    /**
+     * Publishes all the stored messages, oldest first for each topic, until the outbox is empty or {@code keepGoing}
+     * returns false. This method blocks the calling thread, and sleeps between bursts of messages so the replay does
+     * not crowd out the live messages.
+     *
+     * @param descriptorResolver Returns the descriptor for a message type's full name, or null if it is unknown.
+     * @param publisher          Publishes a replayed message to its topic. The envelope holds the stored protobuf bytes.
+     * @param keepGoing          Checked before each message; return false to stop the replay (e.g. the connection
+     *                           dropped).
+     * @param burstSize          The number of messages to publish before pausing.
+     * @param burstIntervalMs    How long to pause between bursts.
+     * @throws InterruptedException If the thread is interrupted while pausing between bursts.
+     */
+    public void replay(Function<String, Descriptors.Descriptor> descriptorResolver, BiConsumer<String, SurveyRecordEnvelope<?>> publisher,
+                       BooleanSupplier keepGoing, int burstSize, long burstIntervalMs) throws InterruptedException
+    {
+        final List<String> topics;
+        synchronized (this)
+        {
+            load();
+            if (queuedCount == 0) return;
+
+            topics = new ArrayList<>(topicQueues.keySet());
+            replayedCount = 0;
+            replayTotal = queuedCount;
+            replaying = true;
+        }
+
+        Timber.i("Replaying %d messages from the MQTT outbox", replayTotal);
+
+        int burstCount = 0;
+        try
+        {
+            for (String topic : topics)
+            {
+                Segment segment;
+                while (keepGoing.getAsBoolean() && (segment = takeOldestSegment(topic)) != null)
+                {
+                    // Nothing is added to the segment once it is taken, so this writes the last of its messages
+                    writePendingEntries();
+                    closeSegmentWriter(segment);
+
+                    final SegmentReplay segmentReplay = new SegmentReplay(topic, segment);
+                    try
+                    {
+                        while (keepGoing.getAsBoolean() && segmentReplay.hasNext())
+                        {
+                            final SurveyRecordEnvelope<?> envelope = segmentReplay.next(descriptorResolver);
+                            if (envelope != null)
+                            {
+                                publisher.accept(topic, envelope);
+                                replayedCount++;
+
+                                if (++burstCount >= burstSize)
+                                {
+                                    burstCount = 0;
+                                    Thread.sleep(burstIntervalMs);
+                                }
+                            }
+                        }
+                    } finally
+                    {
+                        segmentReplay.finish();
+                    }
+                }
+            }
+        } finally
+        {
+            replaying = false;
+            Timber.i("Finished replaying the MQTT outbox; replayed=%d, remaining=%d", replayedCount, getQueuedCount());
+        }
+    }
+
+    /**
+     * @return The number of messages waiting in the outbox.
+     */
+    public synchronized long getQueuedCount()
+    {
+        return queuedCount;
+    }
+
+    /**
+     * @return The number of bytes used by the messages waiting in the outbox.
+     */
+    public synchronized long getQueuedBytes()
+    {
+        return queuedBytes;
+    }
+
+    /**
+     * @return The number of messages that were dropped because they went over the size cap or the age cap.
+     */
+    public synchronized long getDroppedCount()
+    {
+        return droppedCount;
+    }
+
+    /**
+     * @return True if the outbox is currently being replayed.
+     */
+    public boolean isReplaying()
+    {
+        return replaying;
+    }
+
+    /**
+     * @return The number of messages that have been published by the current (or most recent) replay.
+     */
+    public long getReplayedCount()
+    {
+        return replayedCount;
+    }
+
+    /**
+     * @return The number of messages that were in the outbox when the current (or most recent) replay started.
+     */
+    public long getReplayTotal()
+    {
+        return replayTotal;
+    }
+
+    /**
+     * Returns the oldest segment for the topic, and makes sure that no more messages are added to it so that it can be
+     * safely read once its pending messages are written.
+     */
+    private synchronized Segment takeOldestSegment(String topic)
+    {
+        final TopicQueue topicQueue = topicQueues.get(topic);
+        if (topicQueue == null) return null;
+
+        final Segment segment = topicQueue.segments.peekFirst();
+        if (segment == null) return null;
+
+        if (segment == topicQueue.writableSegment) topicQueue.writableSegment = null;
+        segment.replaying = true;
+        return segment;
+    }
+
+    /**
+     * Writes the pending messages and deletes the pending segments, in the order they were added, and then flushes the
+     * segment that was written to last. The delayed write from {@link #add(String, SurveyRecordEnvelope)} calls this
+     * on the write executor, and the replay calls it before it reads a segment.
+     */
+    private void writePendingEntries()
+    {
+        synchronized (writeLock)
+        {
+            final List<DiskOperation> operations;
+            synchronized (this)
+            {
+                operations = pendingOperations;
+                pendingOperations = new ArrayList<>();
+                pendingBytes = 0;
+                writeScheduled = false;
+                batchWriteRequested = false;
+            }
+
+            if (operations.isEmpty()) return;
+
+            for (DiskOperation operation : operations)
+            {
+                if (operation.entry == null)
+                {
+                    if (openSegment == operation.segment) closeOpenSegmentWriter();
+                    deleteFile(operation.segment.file);
+                } else if (!operation.segment.dropped && !operation.segment.writeFailed)
+                {
+                    writeEntry(operation.segment, operation.entry);
+                }
+            }
+
+            if (openSegmentWriter != null)
+            {
+                try
+                {
+                    openSegmentWriter.flush();
+                } catch (IOException e)
+                {
+                    Timber.e(e, "Could not flush the MQTT outbox segment %s", openSegment.file);
+                    openSegment.writeFailed = true;
+                    closeOpenSegmentWriter();
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the entry to the segment file. If the write fails, no more entries are written to the segment, and the
+     * next message for the topic starts a new segment. The entries in the counts that never made it to the file are
+     * dropped when the segment is replayed.
+     */
+    private void writeEntry(Segment segment, Entry entry)
+    {
+        try
+        {
+            if (openSegment != segment)
+            {
+                closeOpenSegmentWriter();
+                openSegmentWriter = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment.file, true)));
+                openSegment = segment;
+            }
+
+            writeEntry(openSegmentWriter, entry.timestampMs, entry.typeName, entry.payload);
+        } catch (IOException e)
+        {
+            Timber.e(e, "Could not add a message to the MQTT outbox segment %s", segment.file);
+            segment.writeFailed = true;
+            closeOpenSegmentWriter();
+        }
+    }
+
+    /**
+     * Closes the segment's file if it is the one that was written to last, so that it can be read and rewritten.
+     */
+    private void closeSegmentWriter(Segment segment)
+    {
+        synchronized (writeLock)
+        {
+            if (openSegment == segment) closeOpenSegmentWriter();
+        }
+    }
+
+    private void closeOpenSegmentWriter()
+    {
+        if (openSegmentWriter != null)
+        {
+            try
+            {
+                openSegmentWriter.close();
+            } catch (IOException e)
+            {
+                Timber.e(e, "Could not close an MQTT outbox segment");
+            }
+        }
+        openSegmentWriter = null;
+        openSegment = null;
+    }
+
+    /**
+     * Called as each replayed (or expired) entry is consumed so the totals stay accurate while the replay is running.
+     */
+    private synchronized void onEntryConsumed(String topic, Segment segment, long entryBytes, boolean dropped)
+    {
+        final TopicQueue topicQueue = topicQueues.get(topic);
+        if (topicQueue == null) return;
+
+        segment.count--;
+        segment.bytes -= entryBytes;
+        topicQueue.count--;
+        topicQueue.bytes -= entryBytes;
+        queuedCount--;
+        queuedBytes -= entryBytes;
+        if (dropped) droppedCount++;
+    }
+
+    /**
+     * Removes the segment once it has been fully replayed, or leaves it at the head of the topic's queue (with only the
+     * unsent messages) if the replay stopped part way through it.
+     *
+     * @param remainingBytes The size of the segment file after the replay; 0 if it was fully replayed.
+     */
+    private synchronized void onSegmentReplayFinished(String topic, Segment segment, boolean fullyReplayed, long remainingBytes)
+    {
+        segment.replaying = false;
+
+        final TopicQueue topicQueue = topicQueues.get(topic);
+        if (topicQueue == null) return;
+
+        if (fullyReplayed)
+        {
+            // Anything left in the counts at this point was unreadable (e.g. a partial write), so it is dropped
+            topicQueue.segments.remove(segment);
+            droppedCount += segment.count;
+            remainingBytes = 0;
+            deleteFile(segment.file);
+        }
+
+        final long byteDelta = remainingBytes - segment.bytes;
+        segment.bytes = remainingBytes;
+        topicQueue.bytes += byteDelta;
+        queuedBytes += byteDelta;
+
+        if (fullyReplayed)
+        {
+            topicQueue.count -= segment.count;
+            queuedCount -= segment.count;
+            segment.count = 0;
+        }
+    }
+
+    private TopicQueue getOrCreateTopicQueue(String topic)
+    {
+        TopicQueue topicQueue = topicQueues.get(topic);
+        if (topicQueue != null) return topicQueue;
+
+        try
+        {
+            final File topicDirectory = new File(directory, URLEncoder.encode(topic, CHARSET));
+            if (!topicDirectory.isDirectory() && !topicDirectory.mkdirs())
+            {
+                Timber.e("Could not create the MQTT outbox directory for topic %s", topic);
+                return null;
+            }
+
+            topicQueue = new TopicQueue(topicDirectory);
+            topicQueues.put(topic, topicQueue);
+            return topicQueue;
+        } catch (UnsupportedEncodingException e)
+        {
+            Timber.e(e, "Could not create the MQTT outbox directory name for topic %s", topic);
+            return null;
+        }
+    }
+
+    /**
+     * Drops the oldest segments for the topic while the topic is over its size cap or the segment's newest message is
+     * older than the age cap. A segment that is being replayed is never dropped.
+     */
+    private void enforceCaps(TopicQueue topicQueue)
+    {
+        final long oldestAllowedMs = System.currentTimeMillis() - maxAgeMs;
+
+        while (topicQueue.segments.size() > 1)
+        {
+            final Segment oldest = topicQueue.segments.peekFirst();
+            if (oldest.replaying) return;
+
+            final boolean overSize = topicQueue.bytes > maxBytesPerTopic;
+            final boolean expired = oldest.newestTimestampMs < oldestAllowedMs;
+            if (!overSize && !expired) return;
+
+            topicQueue.segments.removeFirst();
+            topicQueue.count -= oldest.count;
+            topicQueue.bytes -= oldest.bytes;
+            queuedCount -= oldest.count;
+            queuedBytes -= oldest.bytes;
+            droppedCount += oldest.count;
+
+            // The segment's pending messages are skipped, and the file is deleted in order with the other writes
+            oldest.dropped = true;
+            pendingOperations.add(new DiskOperation(oldest, null));
+
+            Timber.w("Dropped %d messages from the MQTT outbox because the %s cap was reached", oldest.count,
+                    overSize ? "size" : "age");
+        }
+    }
+
+    private void loadExistingSegments()
+    {
+        final File[] topicDirectories = directory.listFiles(File::isDirectory);
+        if (topicDirectories == null) return;
+
+        for (File topicDirectory : topicDirectories)
+        {
+            final String topic;
+            try
+            {
+                topic = URLDecoder.decode(topicDirectory.getName(), CHARSET);
+            } catch (UnsupportedEncodingException | IllegalArgumentException e)
+            {
+                Timber.e(e, "Skipping an unknown MQTT outbox directory %s", topicDirectory);
+                continue;
+            }
+
+            final File[] segmentFiles = topicDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+            if (segmentFiles == null || segmentFiles.length == 0) continue;
+
+            Arrays.sort(segmentFiles, (file1, file2) -> Long.compare(getSequenceNumber(file1), getSequenceNumber(file2)));
+
+            final TopicQueue topicQueue = new TopicQueue(topicDirectory);
+            for (File segmentFile : segmentFiles)
+            {
+                final Segment segment = new Segment(segmentFile);
+                segment.count = countEntries(segmentFile);
+                segment.bytes = segmentFile.length();
+                segment.newestTimestampMs = segmentFile.lastModified();
+                topicQueue.segments.addLast(segment);
+                topicQueue.count += segment.count;
+                topicQueue.bytes += segment.bytes;
+                topicQueue.nextSequenceNumber = Math.max(topicQueue.nextSequenceNumber, getSequenceNumber(segmentFile) + 1);
+            }
+
+            topicQueues.put(topic, topicQueue);
+            queuedCount += topicQueue.count;
+            queuedBytes += topicQueue.bytes;
+        }
+
+        if (queuedCount > 0) Timber.i("Loaded %d messages from the MQTT outbox", queuedCount);
+    }
+
+    /**
+     * Counts the complete entries in a segment file. A partial entry at the end (e.g. from the app being killed in the
+     * middle of a write) is ignored.
+     */
+    private static int countEntries(File segmentFile)
+    {
+        int count = 0;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile))))
+        {
+            while (readEntry(inputStream) != null) count++;
+        } catch (IOException e)
+        {
+            Timber.e(e, "Could not read the MQTT outbox segment %s", segmentFile);
+        }
+        return count;
+    }
+
+    private static long writeEntry(DataOutputStream outputStream, long timestampMs, String typeName, byte[] payload) throws IOException
+    {
+        final int startSize = outputStream.size();
+        outputStream.writeLong(timestampMs);
+        outputStream.writeUTF(typeName);
+        outputStream.writeInt(payload.length);
+        outputStream.write(payload);
+        return outputStream.size() - startSize;
+    }
+
+    /**
+     * @return The next entry in the stream, or null if the end of the stream (or a partial entry) was reached.
+     */
+    private static Entry readEntry(DataInputStream inputStream) throws IOException
+    {
+        try
+        {
+            final long timestampMs = inputStream.readLong();
+            final String typeName = inputStream.readUTF();
+            final int payloadLength = inputStream.readInt();
+            if (payloadLength < 0) return null;
+
+            final byte[] payload = new byte[payloadLength];
+            inputStream.readFully(payload);
+
+            return new Entry(timestampMs, typeName, payload);
+        } catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+    private static long getSequenceNumber(File segmentFile)
+    {
+        final String name = segmentFile.getName();
+        try
+        {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e)
+        {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Deletes an outbox directory and all the messages in it (e.g. for a broker that is no longer configured). The
+     * outbox for the directory must not be in use.
+     *
+     * @param directory The outbox directory to delete.
+     */
+    public static void deleteOutbox(File directory)
+    {
+        final File[] topicDirectories = directory.listFiles(File::isDirectory);
+        if (topicDirectories != null)
+        {
+            for (File topicDirectory : topicDirectories)
+            {
+                final File[] files = topicDirectory.listFiles();
+                if (files != null) Arrays.stream(files).forEach(MqttOutbox::deleteFile);
+                deleteFile(topicDirectory);
+            }
+        }
+
+        deleteFile(directory);
+    }
+
+    private static void deleteFile(File file)
+    {
+        if (file.exists() && !file.delete()) Timber.w("Could not delete the MQTT outbox file %s", file);
+    }
+
+    /**
+     * The stored form of one message.
+     */
+    private static final class Entry
+    {
+        private final long timestampMs;
+        private final String typeName;
+        private final byte[] payload;
+
+        private Entry(long timestampMs, String typeName, byte[] payload)
+        {
+            this.timestampMs = timestampMs;
+            this.typeName = typeName;
+            this.payload = payload;
+        }
+
+        private long getSizeBytes()
+        {
+            // The long timestamp, the modified UTF-8 type name (the type names are ASCII), the int length, the payload
+            return 8 + 2 + typeName.length() + 4 + payload.length;
+        }
+    }
+
+    /**
+     * A message to append to a segment file, or, if there is no entry, a segment file to delete.
+     */
+    private static final class DiskOperation
+    {
+        private final Segment segment;
+        private final Entry entry;
+
+        private DiskOperation(Segment segment, Entry entry)
+        {
+            this.segment = segment;
+            this.entry = entry;
+        }
+    }
+
+    private static final class Segment
+    {
+        private final File file;
+        private int count;
+        private long bytes;
+        private long newestTimestampMs;
+        private boolean replaying;
+        private volatile boolean dropped;
+        private volatile boolean writeFailed;
+
+        private Segment(File file)
+        {
+            this.file = file;
+        }
+    }
+
+    private static final class TopicQueue
+    {
+        private final File topicDirectory;
+        private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+        private long nextSequenceNumber;
+        private long count;
+        private long bytes;
+
+        private Segment writableSegment;
+
+        private TopicQueue(File topicDirectory)
+        {
+            this.topicDirectory = topicDirectory;
+        }
+
+        /**
+         * @return The segment that new entries should be added to, rolling to a new segment if the current one is
+         * full, is being replayed, or could not be written to. The segment file is created when its first entry is
+         * written.
+         */
+        private Segment getWritableSegment()
+        {
+            if (writableSegment != null && writableSegment.bytes < SEGMENT_BYTES && !writableSegment.writeFailed)
+            {
+                return writableSegment;
+            }
+
+            final Segment segment = new Segment(new File(topicDirectory, nextSequenceNumber++ + SEGMENT_SUFFIX));
+            writableSegment = segment;
+            segments.addLast(segment);
+            return segment;
+        }
+    }
+
+    /**
+     * Reads the entries from one segment during a replay, and takes care of cleaning up the segment afterwards.
+     */
+    private final class SegmentReplay
+    {
+        private final String topic;
+        private final Segment segment;
+        private DataInputStream inputStream;
+        private Entry nextEntry;
+        private boolean endOfSegment;
+
+        private SegmentReplay(String topic, Segment segment)
+        {
+            this.topic = topic;
+            this.segment = segment;
+        }
+
+        private boolean hasNext()
+        {
+            if (nextEntry != null) return true;
+            if (endOfSegment) return false;
+
+            try
+            {
+                if (inputStream == null)
+                {
+                    inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+                }
+
+                nextEntry = readEntry(inputStream);
+            } catch (IOException e)
+            {
+                Timber.e(e, "Could not read the MQTT outbox segment %s", segment.file);
+                nextEntry = null;
+            }
+
+            if (nextEntry == null) endOfSegment = true;
+            return nextEntry != null;
+        }
+
+        /**
+         * @return The envelope for the next message to publish, or null if the entry was dropped because it is too old
+         * or its type is unknown.
+         */
+        private SurveyRecordEnvelope<?> next(Function<String, Descriptors.Descriptor> descriptorResolver)
+        {
+            final Entry entry = nextEntry;
+            nextEntry = null;
+
+            SurveyRecordEnvelope<?> envelope = null;
+            if (entry.timestampMs >= System.currentTimeMillis() - maxAgeMs)
+            {
+                final Descriptors.Descriptor descriptor = descriptorResolver.apply(entry.typeName);
+                if (descriptor != null)
+                {
+                    try
+                    {
+                        envelope = SurveyRecordEnvelope.fromProtobufBytes(DynamicMessage.parseFrom(descriptor, entry.payload), entry.payload);
+                    } catch (IOException e)
+                    {
+                        Timber.e(e, "Could not parse a %s message from the MQTT outbox", entry.typeName);
+                    }
+                } else
+                {
+                    Timber.w("Dropping an MQTT outbox message with an unknown type %s", entry.typeName);
+                }
+            }
+
+            onEntryConsumed(topic, segment, entry.getSizeBytes(), envelope == null);
+            return envelope;
+        }
+
+        /**
+         * Deletes the segment if everything was replayed, otherwise rewrites it with only the entries that are left.
+         */
+        private void finish()
+        {
+            final boolean fullyReplayed = nextEntry == null && !hasNext();
+            long remainingBytes = segment.file.length();
+            try
+            {
+                if (!fullyReplayed) remainingBytes = rewriteRemainingEntries();
+            } catch (IOException e)
+            {
+                Timber.e(e, "Could not save the unsent entries of MQTT outbox segment %s", segment.file);
+            } finally
+            {
+                closeQuietly();
+                onSegmentReplayFinished(topic, segment, fullyReplayed, remainingBytes);
+            }
+        }
+
+        /**
+         * @return The size of the rewritten segment.
+         */
+        private long rewriteRemainingEntries() throws IOException
+        {
+            final File tempFile = new File(segment.file.getPath() + TEMP_SUFFIX);
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+            {
+                Entry entry = nextEntry;
+                while (entry != null)
+                {
+                    writeEntry(outputStream, entry.timestampMs, entry.typeName, entry.payload);
+                    entry = readEntry(inputStream);
+                }
+            }
+
+            closeQuietly();
+            if (!tempFile.renameTo(segment.file)) throw new IOException("Could not replace " + segment.file);
+
+            return segment.file.length();
+        }
+
+        private void closeQuietly()
+        {
+            if (inputStream == null) return;
+
+            try
+            {
+                inputStream.close();
+            } catch (IOException ignore)
+            {
+            }
+            inputStream = null;
+        }
+    }
+}
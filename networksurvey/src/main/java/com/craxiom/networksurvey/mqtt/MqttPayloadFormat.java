@@ -0,0 +1,88 @@
+package com.craxiom.networksurvey.mqtt;
+
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The formats that the MQTT message payloads can be published in.
+ * <p>
+ * JSON payloads are published on the standard topics. Binary protobuf payloads are published on a parallel set of
+ * topics (the standard topic name with {@link #PROTOBUF_TOPIC_SUFFIX} appended) so that existing JSON consumers are not
+ * handed payloads they can't parse.
+ *
+ * @since 1.10.0
+ */
+public enum MqttPayloadFormat
+{
+    JSON("json", "")
+            {
+                @Override
+                public byte[] serialize(SurveyRecordEnvelope<?> envelope) throws InvalidProtocolBufferException
+                {
+                    return envelope.getJsonBytes();
+                }
+            },
+    PROTOBUF("protobuf", MqttPayloadFormat.PROTOBUF_TOPIC_SUFFIX)
+            {
+                @Override
+                public byte[] serialize(SurveyRecordEnvelope<?> envelope)
+                {
+                    return envelope.getProtobufBytes();
+                }
+            };
+
+    public static final String PROTOBUF_TOPIC_SUFFIX = "_protobuf";
+
+    private final String preferenceValue;
+    private final String topicSuffix;
+    private final Map<String, String> topicCache = new ConcurrentHashMap<>();
+
+    MqttPayloadFormat(String preferenceValue, String topicSuffix)
+    {
+        this.preferenceValue = preferenceValue;
+        this.topicSuffix = topicSuffix;
+    }
+
+    /**
+     * @param envelope The envelope for the message to serialize.
+     * @return The payload bytes for the message in this format. The bytes are cached on the envelope and shared with the
+     * other sinks, so they must not be modified.
+     */
+    public abstract byte[] serialize(SurveyRecordEnvelope<?> envelope) throws InvalidProtocolBufferException;
+
+    /**
+     * @param baseTopic The standard (JSON) topic for a message.
+     * @return The topic to publish this format on. The names are cached so that a new string is not built each publish.
+     */
+    public String getTopic(String baseTopic)
+    {
+        if (topicSuffix.isEmpty()) return baseTopic;
+
+        return topicCache.computeIfAbsent(baseTopic, topic -> topic + topicSuffix);
+    }
+
+    /**
+     * @return The value used to store this format in the preferences and in the MDM settings.
+     */
+    public String getPreferenceValue()
+    {
+        return preferenceValue;
+    }
+
+    /**
+     * @param preferenceValue The value from the preferences or MDM settings.
+     * @return The matching payload format, or {@link #JSON} if the value is null or not recognized.
+     */
+    public static MqttPayloadFormat fromPreferenceValue(String preferenceValue)
+    {
+        for (MqttPayloadFormat format : values())
+        {
+            if (format.preferenceValue.equalsIgnoreCase(preferenceValue)) return format;
+        }
+
+        return JSON;
+    }
+}
@@ -0,0 +1,191 @@
+package com.craxiom.networksurvey.mqtt;
+
+import com.craxiom.networksurvey.BuildConfig;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Groups survey records into batch messages so that a whole scan (or all the records from a time window) can be
+ * published as a single MQTT message instead of one message per record.
+ * <p>
+ * The messaging API does not define batch messages, so the batch message type is built at runtime. It wraps the
+ * existing record message in a repeated field, which means the JSON for each record in the batch is the same as when
+ * the record is published on its own, except for the device name:
+ * <pre>
+ * {"version":"0.8.0","message_type":"WifiBeaconRecordBatch","records":[{...},{...}],"device_name":"Pixel"}
+ * </pre>
+ * The MQTT connection's device name is set once on the batch (see {@link #setDeviceName(String)}) instead of on each
+ * record, so the records are batched as they are passed in, without being copied.
+ *
+ * @param <T> The type of record that is batched.
+ * @since 1.10.0
+ */
+public class MqttRecordBatcher<T extends Message>
+{
+    /**
+     * The maximum number of records to put in one batch message. Larger batches are split across several messages to
+     * keep the MQTT packets a reasonable size.
+     */
+    static final int MAX_RECORDS_PER_MESSAGE = 500;
+
+    private static final String VERSION_FIELD = "version";
+    private static final String MESSAGE_TYPE_FIELD = "message_type";
+    private static final String RECORDS_FIELD = "records";
+    private static final String DEVICE_NAME_FIELD = "device_name";
+
+    private final Descriptors.FieldDescriptor versionField;
+    private final Descriptors.FieldDescriptor messageTypeField;
+    private final Descriptors.FieldDescriptor recordsField;
+    private final Descriptors.FieldDescriptor deviceNameField;
+    private final String messageType;
+    private volatile String deviceName = "";
+
+    private final List<T> pendingRecords = new ArrayList<>();
+
+    /**
+     * @param recordDescriptor The descriptor for the record message that will be batched.
+     * @param messageType      The message type to set on each batch message (e.g. "WifiBeaconRecordBatch").
+     */
+    public MqttRecordBatcher(Descriptors.Descriptor recordDescriptor, String messageType)
+    {
+        this.messageType = messageType;
+
+        final Descriptors.Descriptor batchDescriptor = createBatchDescriptor(recordDescriptor, messageType);
+        versionField = batchDescriptor.findFieldByName(VERSION_FIELD);
+        messageTypeField = batchDescriptor.findFieldByName(MESSAGE_TYPE_FIELD);
+        recordsField = batchDescriptor.findFieldByName(RECORDS_FIELD);
+        deviceNameField = batchDescriptor.findFieldByName(DEVICE_NAME_FIELD);
+    }
+
+    /**
+     * @param deviceName The device name to set on the batch messages, or null to leave it off.
+     */
+    public void setDeviceName(String deviceName)
+    {
+        this.deviceName = deviceName == null ? "" : deviceName;
+    }
+
+    /**
+     * @return The descriptor for the batch message type.
+     */
+    public Descriptors.Descriptor getBatchDescriptor()
+    {
+        return recordsField.getContainingType();
+    }
+
+    /**
+     * Holds on to the records until the next call to {@link #drain()}.
+     *
+     * @param records The records to add to the next batch.
+     */
+    public synchronized void addAll(Collection<? extends T> records)
+    {
+        pendingRecords.addAll(records);
+    }
+
+    /**
+     * @return The batch messages for all the records that have been added since the last drain, or an empty list if
+     * no records have been added.
+     */
+    public List<DynamicMessage> drain()
+    {
+        final List<T> records;
+        synchronized (this)
+        {
+            if (pendingRecords.isEmpty()) return Collections.emptyList();
+
+            records = new ArrayList<>(pendingRecords);
+            pendingRecords.clear();
+        }
+
+        return createBatchMessages(records);
+    }
+
+    /**
+     * Creates the batch messages for the provided records without holding on to them.
+     *
+     * @param records The records to put in the batch.
+     * @return One batch message per {@link #MAX_RECORDS_PER_MESSAGE} records.
+     */
+    public List<DynamicMessage> createBatchMessages(List<? extends T> records)
+    {
+        if (records.isEmpty()) return Collections.emptyList();
+
+        final List<DynamicMessage> batchMessages = new ArrayList<>((records.size() + MAX_RECORDS_PER_MESSAGE - 1) / MAX_RECORDS_PER_MESSAGE);
+        for (int start = 0; start < records.size(); start += MAX_RECORDS_PER_MESSAGE)
+        {
+            final List<? extends T> batchRecords = records.subList(start, Math.min(records.size(), start + MAX_RECORDS_PER_MESSAGE));
+
+            final DynamicMessage.Builder batchBuilder = DynamicMessage.newBuilder(recordsField.getContainingType())
+                    .setField(versionField, BuildConfig.MESSAGING_API_VERSION)
+                    .setField(messageTypeField, messageType)
+                    .setField(deviceNameField, deviceName);
+            for (T record : batchRecords)
+            {
+                batchBuilder.addRepeatedField(recordsField, record);
+            }
+
+            batchMessages.add(batchBuilder.build());
+        }
+
+        return batchMessages;
+    }
+
+    /**
+     * Builds the descriptor for a message with a version, a message type, a repeated field of the record type, and the
+     * device name.
+     */
+    private static Descriptors.Descriptor createBatchDescriptor(Descriptors.Descriptor recordDescriptor, String batchName)
+    {
+        final Descriptors.FileDescriptor recordFile = recordDescriptor.getFile();
+
+        final DescriptorProtos.DescriptorProto batchProto = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName(batchName)
+                .addField(DescriptorProtos.FieldDescriptorProto.newBuilder()
+                        .setName(VERSION_FIELD)
+                        .setNumber(1)
+                        .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING)
+                        .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL))
+                .addField(DescriptorProtos.FieldDescriptorProto.newBuilder()
+                        .setName(MESSAGE_TYPE_FIELD)
+                        .setNumber(2)
+                        .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING)
+                        .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL))
+                .addField(DescriptorProtos.FieldDescriptorProto.newBuilder()
+                        .setName(RECORDS_FIELD)
+                        .setNumber(3)
+                        .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setTypeName("." + recordDescriptor.getFullName())
+                        .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED))
+                .addField(DescriptorProtos.FieldDescriptorProto.newBuilder()
+                        .setName(DEVICE_NAME_FIELD)
+                        .setNumber(4)
+                        .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING)
+                        .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL))
+                .build();
+
+        final DescriptorProtos.FileDescriptorProto fileProto = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("network_survey_" + batchName + ".proto")
+                .setPackage("com.craxiom.networksurvey.mqtt")
+                .setSyntax("proto3")
+                .addDependency(recordFile.getName())
+                .addMessageType(batchProto)
+                .build();
+
+        try
+        {
+            return Descriptors.FileDescriptor.buildFrom(fileProto, new Descriptors.FileDescriptor[]{recordFile})
+                    .findMessageTypeByName(batchName);
+        } catch (Descriptors.DescriptorValidationException e)
+        {
+            throw new IllegalStateException("Could not create the " + batchName + " message descriptor", e);
+        }
+    }
+}
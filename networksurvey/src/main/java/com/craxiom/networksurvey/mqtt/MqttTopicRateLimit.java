@@ -0,0 +1,160 @@
+package com.craxiom.networksurvey.mqtt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import timber.log.Timber;
+
+/**
+ * The token bucket settings for one MQTT topic, and how to pick which of the records that go over the limit are still
+ * published once tokens become available.
+ * <p>
+ * The limits are configured as a comma separated list of {@code topic:ratePerSecond[:strategy[:burst]]} entries, for
+ * example {@code bluetooth_message:20:newest,80211_beacon_message:50:strongest:100}. The strategy defaults to
+ * {@link SamplingStrategy#NEWEST_PER_IDENTIFIER} and the burst defaults to one second worth of tokens.
+ *
+ * @since 1.10.0
+ */
+public class MqttTopicRateLimit
+{
+    /**
+     * How to choose which of the records that went over the rate limit get published when there are tokens available
+     * again. Any records that are not chosen are dropped.
+     */
+    public enum SamplingStrategy
+    {
+        /**
+         * Keep only the latest record for each identifier (e.g. BSSID, Bluetooth address, or cell identity) so that
+         * every device that was seen is reported with its most recent values.
+         */
+        NEWEST_PER_IDENTIFIER("newest"),
+        /**
+         * Keep the records with the strongest signal.
+         */
+        STRONGEST_SIGNAL("strongest"),
+        /**
+         * Keep a uniform random sample of the records.
+         */
+        UNIFORM("uniform");
+
+        private final String configValue;
+
+        SamplingStrategy(String configValue)
+        {
+            this.configValue = configValue;
+        }
+
+        static SamplingStrategy fromConfigValue(String configValue)
+        {
+            for (SamplingStrategy strategy : values())
+            {
+                if (strategy.configValue.equalsIgnoreCase(configValue) || strategy.name().equalsIgnoreCase(configValue))
+                {
+                    return strategy;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private final String topic;
+    private final double ratePerSecond;
+    private final int burst;
+    private final SamplingStrategy samplingStrategy;
+
+    /**
+     * @param topic            The (JSON) topic name that the limit applies to.
+     * @param ratePerSecond    The number of messages per second that can be published on the topic.
+     * @param burst            The maximum number of messages that can be published back to back.
+     * @param samplingStrategy How to pick the records to publish from the ones that went over the limit.
+     */
+    public MqttTopicRateLimit(String topic, double ratePerSecond, int burst, SamplingStrategy samplingStrategy)
+    {
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("The rate must be greater than 0");
+        if (burst < 1) throw new IllegalArgumentException("The burst must be at least 1");
+
+        this.topic = topic;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.samplingStrategy = samplingStrategy == null ? SamplingStrategy.NEWEST_PER_IDENTIFIER : samplingStrategy;
+    }
+
+    public String getTopic()
+    {
+        return topic;
+    }
+
+    public double getRatePerSecond()
+    {
+        return ratePerSecond;
+    }
+
+    public int getBurst()
+    {
+        return burst;
+    }
+
+    public SamplingStrategy getSamplingStrategy()
+    {
+        return samplingStrategy;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.US, "%s:%.1f/s burst %d (%s)", topic, ratePerSecond, burst, samplingStrategy);
+    }
+
+    /**
+     * Parses the rate limit setting. Entries that can't be parsed are logged and skipped so that one typo does not
+     * turn off all the limits.
+     *
+     * @param rateLimits The comma separated list of rate limits, or null or empty for no limits.
+     * @return The parsed rate limits.
+     */
+    public static List<MqttTopicRateLimit> parse(String rateLimits)
+    {
+        if (rateLimits == null || rateLimits.trim().isEmpty()) return Collections.emptyList();
+
+        final List<MqttTopicRateLimit> parsedLimits = new ArrayList<>();
+        for (String entry : rateLimits.split("[,;\\s]+"))
+        {
+            if (entry.isEmpty()) continue;
+
+            try
+            {
+                final String[] parts = entry.split(":");
+                if (parts.length < 2 || parts.length > 4 || parts[0].isEmpty())
+                {
+                    Timber.w("Skipping the invalid MQTT rate limit entry %s", entry);
+                    continue;
+                }
+
+                final double ratePerSecond = Double.parseDouble(parts[1]);
+
+                SamplingStrategy strategy = SamplingStrategy.NEWEST_PER_IDENTIFIER;
+                if (parts.length > 2)
+                {
+                    strategy = SamplingStrategy.fromConfigValue(parts[2]);
+                    if (strategy == null)
+                    {
+                        Timber.w("Skipping the MQTT rate limit entry %s because the sampling strategy is not valid", entry);
+                        continue;
+                    }
+                }
+
+                final int burst = parts.length > 3 ? Integer.parseInt(parts[3]) : (int) Math.max(1, Math.ceil(ratePerSecond));
+
+                parsedLimits.add(new MqttTopicRateLimit(parts[0], ratePerSecond, burst, strategy));
+            } catch (IllegalArgumentException e)
+            {
+                Timber.w(e, "Skipping the invalid MQTT rate limit entry %s", entry);
+            }
+        }
+
+        return parsedLimits;
+    }
+}
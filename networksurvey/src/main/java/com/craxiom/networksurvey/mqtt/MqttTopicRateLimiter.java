@@ -0,0 +1,413 @@
+package com.craxiom.networksurvey.mqtt;
+
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket for one MQTT topic.
+ * <p>
+ * Every message for the topic is held (up to {@link #MAX_HELD_RECORDS}), and each call to {@link #drain()} publishes
+ * as many of them as the bucket has tokens for, picked with the topic's {@link MqttTopicRateLimit.SamplingStrategy}.
+ * Because no message skips the hold, the strategy picks from all the messages in the window (e.g. the strongest signal
+ * strategy is not beaten by weak records that happened to arrive first). The messages that are not picked stay held for
+ * the next drain, until they are pushed out by the strategy once {@link #MAX_HELD_RECORDS} is reached or they are older
+ * than {@link #MAX_HOLD_MS}. A busy topic therefore degrades to a sample of recent records instead of building up a
+ * backlog that delays the other topics. A message on a quiet topic waits at most until the next drain.
+ * <p>
+ * The record identifier and signal strength that the sampling strategies use are read from the record's data field by
+ * name, so the same code works for all the record types. The field lookups are cached for each message type.
+ *
+ * @since 1.10.0
+ */
+public class MqttTopicRateLimiter
+{
+    /**
+     * The maximum number of over the limit records to hold on to between drains.
+     */
+    public static final int MAX_HELD_RECORDS = 1_000;
+
+    /**
+     * Held records older than this are dropped at the next drain so that a topic that stays over its limit publishes
+     * recent records instead of old ones.
+     */
+    public static final long MAX_HOLD_MS = 10_000;
+
+    private static final String DATA_FIELD = "data";
+    private static final String WRAPPER_VALUE_FIELD = "value";
+
+    /**
+     * The fields that together identify the device or cell that a record is for. Only the ones present on the record
+     * type are used.
+     */
+    private static final List<String> IDENTIFIER_FIELDS = Arrays.asList("bssid", "source_address", "constellation",
+            "space_vehicle_id", "mcc", "mnc", "lac", "tac", "ci", "cid", "eci", "nci", "sid", "nid", "bsid", "psc", "pci");
+
+    /**
+     * The signal strength fields, in order of preference. The first one present on the record type is used.
+     */
+    private static final List<String> SIGNAL_FIELDS = Arrays.asList("rsrp", "ss_rsrp", "rscp", "signal_strength", "cn0_db_hz", "ecio");
+
+    private static final Map<Descriptors.Descriptor, RecordFields> RECORD_FIELDS_CACHE = new ConcurrentHashMap<>();
+
+    private static final Comparator<HeldRecord> WEAKEST_FIRST = (first, second) -> Double.compare(first.signal, second.signal);
+
+    private final MqttTopicRateLimit rateLimit;
+    private final LongSupplier nanoClock;
+    private final Random random;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private long nextSequence;
+
+    private final LinkedHashMap<Object, HeldRecord> newestPerIdentifier = new LinkedHashMap<>();
+    private final PriorityQueue<HeldRecord> strongest = new PriorityQueue<>(WEAKEST_FIRST);
+    private final List<HeldRecord> reservoir = new ArrayList<>();
+    private long seenSinceReservoirEmpty;
+
+    private long publishedCount;
+    private long droppedCount;
+
+    public MqttTopicRateLimiter(MqttTopicRateLimit rateLimit)
+    {
+        this(rateLimit, System::nanoTime, new Random());
+    }
+
+    /**
+     * @param nanoClock The clock to refill the bucket from.
+     * @param random    The random number source for the uniform sampling.
+     */
+    public MqttTopicRateLimiter(MqttTopicRateLimit rateLimit, LongSupplier nanoClock, Random random)
+    {
+        this.rateLimit = rateLimit;
+        this.nanoClock = nanoClock;
+        this.random = random;
+
+        tokens = rateLimit.getBurst();
+        lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    public MqttTopicRateLimit getRateLimit()
+    {
+        return rateLimit;
+    }
+
+    /**
+     * Holds on to the message until the next {@link #drain()}.
+     *
+     * @param envelope The envelope for the message to publish.
+     */
+    public synchronized void add(SurveyRecordEnvelope<?> envelope)
+    {
+        hold(envelope);
+    }
+
+    /**
+     * Picks as many of the held records as there are tokens for. The records that are not picked are kept for the next
+     * drain, except the ones that are older than {@link #MAX_HOLD_MS}, which are dropped.
+     *
+     * @return The records to publish, in the order they arrived.
+     */
+    public List<SurveyRecordEnvelope<?>> drain()
+    {
+        final List<HeldRecord> selected;
+        synchronized (this)
+        {
+            refill();
+            dropExpired(nanoClock.getAsLong() - TimeUnit.MILLISECONDS.toNanos(MAX_HOLD_MS));
+
+            final int heldCount = getHeldCount();
+            if (heldCount == 0) return Collections.emptyList();
+
+            selected = select((int) Math.min(heldCount, Math.floor(tokens)));
+
+            tokens -= selected.size();
+            publishedCount += selected.size();
+        }
+
+        Collections.sort(selected, (first, second) -> Long.compare(first.sequence, second.sequence));
+
+        final List<SurveyRecordEnvelope<?>> envelopes = new ArrayList<>(selected.size());
+        for (HeldRecord heldRecord : selected) envelopes.add(heldRecord.envelope);
+        return envelopes;
+    }
+
+    /**
+     * @return The number of messages that were picked for publishing by the drains.
+     */
+    public synchronized long getPublishedCount()
+    {
+        return publishedCount;
+    }
+
+    /**
+     * @return The number of held messages that were dropped because they were not picked in time.
+     */
+    public synchronized long getDroppedCount()
+    {
+        return droppedCount;
+    }
+
+    private void refill()
+    {
+        final long now = nanoClock.getAsLong();
+        final long elapsedNanos = now - lastRefillNanos;
+        if (elapsedNanos <= 0) return;
+
+        lastRefillNanos = now;
+        tokens = Math.min(rateLimit.getBurst(), tokens + elapsedNanos * rateLimit.getRatePerSecond() / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Drops the held records that arrived before the provided time.
+     */
+    private void dropExpired(long oldestAllowedNanos)
+    {
+        final int heldCount = getHeldCount();
+        newestPerIdentifier.values().removeIf(heldRecord -> heldRecord.arrivalNanos < oldestAllowedNanos);
+        strongest.removeIf(heldRecord -> heldRecord.arrivalNanos < oldestAllowedNanos);
+        reservoir.removeIf(heldRecord -> heldRecord.arrivalNanos < oldestAllowedNanos);
+        droppedCount += heldCount - getHeldCount();
+
+        if (reservoir.isEmpty()) seenSinceReservoirEmpty = 0;
+    }
+
+    private int getHeldCount()
+    {
+        switch (rateLimit.getSamplingStrategy())
+        {
+            case STRONGEST_SIGNAL:
+                return strongest.size();
+            case UNIFORM:
+                return reservoir.size();
+            case NEWEST_PER_IDENTIFIER:
+            default:
+                return newestPerIdentifier.size();
+        }
+    }
+
+    private void hold(SurveyRecordEnvelope<?> envelope)
+    {
+        final Message message = envelope.getRecord();
+        final HeldRecord heldRecord = new HeldRecord(nextSequence++, nanoClock.getAsLong(), envelope);
+
+        switch (rateLimit.getSamplingStrategy())
+        {
+            case STRONGEST_SIGNAL:
+                heldRecord.signal = getSignalStrength(message);
+                strongest.add(heldRecord);
+                if (strongest.size() > MAX_HELD_RECORDS)
+                {
+                    strongest.poll();
+                    droppedCount++;
+                }
+                break;
+
+            case UNIFORM:
+                // Reservoir sampling so that every record has the same chance of being kept once the reservoir is full
+                seenSinceReservoirEmpty++;
+                if (reservoir.size() < MAX_HELD_RECORDS)
+                {
+                    reservoir.add(heldRecord);
+                } else
+                {
+                    final long index = (long) (random.nextDouble() * seenSinceReservoirEmpty);
+                    if (index < MAX_HELD_RECORDS) reservoir.set((int) index, heldRecord);
+                    droppedCount++;
+                }
+                break;
+
+            case NEWEST_PER_IDENTIFIER:
+            default:
+                final String identifier = getIdentifier(message);
+                heldRecord.key = identifier == null ? heldRecord : identifier;
+
+                // Remove first so that the updated identifier moves to the end of the insertion order
+                if (newestPerIdentifier.remove(heldRecord.key) != null) droppedCount++;
+                newestPerIdentifier.put(heldRecord.key, heldRecord);
+
+                if (newestPerIdentifier.size() > MAX_HELD_RECORDS)
+                {
+                    final Iterator<HeldRecord> iterator = newestPerIdentifier.values().iterator();
+                    iterator.next();
+                    iterator.remove();
+                    droppedCount++;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Picks the records to publish and removes them from the held records.
+     */
+    private List<HeldRecord> select(int count)
+    {
+        if (count <= 0) return new ArrayList<>();
+
+        switch (rateLimit.getSamplingStrategy())
+        {
+            case STRONGEST_SIGNAL:
+            {
+                final List<HeldRecord> records = new ArrayList<>(strongest);
+                Collections.sort(records, WEAKEST_FIRST.reversed());
+                strongest.clear();
+                strongest.addAll(records.subList(count, records.size()));
+                return new ArrayList<>(records.subList(0, count));
+            }
+
+            case UNIFORM:
+            {
+                // A partial Fisher-Yates shuffle picks the records without any bias
+                for (int i = 0; i < count; i++)
+                {
+                    Collections.swap(reservoir, i, i + random.nextInt(reservoir.size() - i));
+                }
+                final List<HeldRecord> selected = new ArrayList<>(reservoir.subList(0, count));
+                reservoir.subList(0, count).clear();
+                if (reservoir.isEmpty()) seenSinceReservoirEmpty = 0;
+                return selected;
+            }
+
+            case NEWEST_PER_IDENTIFIER:
+            default:
+            {
+                // The identifiers that were updated most recently are at the end
+                final List<HeldRecord> records = new ArrayList<>(newestPerIdentifier.values());
+                final List<HeldRecord> selected = new ArrayList<>(records.subList(records.size() - count, records.size()));
+                for (HeldRecord heldRecord : selected) newestPerIdentifier.remove(heldRecord.key);
+                return selected;
+            }
+        }
+    }
+
+    /**
+     * @return The values of the identifier fields that are set on the record's data, or null if none of them are.
+     */
+    static String getIdentifier(Message message)
+    {
+        final RecordFields recordFields = getRecordFields(message.getDescriptorForType());
+        if (recordFields.dataField == null || recordFields.identifierFields.isEmpty()) return null;
+
+        final Message data = (Message) message.getField(recordFields.dataField);
+
+        StringBuilder identifier = null;
+        for (Descriptors.FieldDescriptor field : recordFields.identifierFields)
+        {
+            if (!data.hasField(field)) continue;
+
+            if (identifier == null)
+            {
+                identifier = new StringBuilder();
+            } else
+            {
+                identifier.append('/');
+            }
+
+            final Object value = getFieldValue(data, field);
+            identifier.append(field.getName()).append('=').append(value instanceof Descriptors.EnumValueDescriptor ?
+                    ((Descriptors.EnumValueDescriptor) value).getName() : value);
+        }
+
+        return identifier == null ? null : identifier.toString();
+    }
+
+    /**
+     * @return The signal strength from the record's data, or negative infinity if the record does not have one (so
+     * that those records are the first to be dropped).
+     */
+    static double getSignalStrength(Message message)
+    {
+        final RecordFields recordFields = getRecordFields(message.getDescriptorForType());
+        if (recordFields.dataField == null || recordFields.signalField == null) return Double.NEGATIVE_INFINITY;
+
+        final Message data = (Message) message.getField(recordFields.dataField);
+        if (!data.hasField(recordFields.signalField)) return Double.NEGATIVE_INFINITY;
+
+        final Object value = getFieldValue(data, recordFields.signalField);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return The field value, unwrapped if the field is one of the protobuf wrapper types (e.g. Int32Value).
+     */
+    private static Object getFieldValue(Message message, Descriptors.FieldDescriptor field)
+    {
+        final Object value = message.getField(field);
+        if (value instanceof Message)
+        {
+            final Descriptors.FieldDescriptor wrappedField = ((Message) value).getDescriptorForType().findFieldByName(WRAPPER_VALUE_FIELD);
+            if (wrappedField != null) return ((Message) value).getField(wrappedField);
+        }
+
+        return value;
+    }
+
+    private static RecordFields getRecordFields(Descriptors.Descriptor recordDescriptor)
+    {
+        return RECORD_FIELDS_CACHE.computeIfAbsent(recordDescriptor, RecordFields::new);
+    }
+
+    /**
+     * The fields of a record type that the sampling strategies use.
+     */
+    private static final class RecordFields
+    {
+        private final Descriptors.FieldDescriptor dataField;
+        private final List<Descriptors.FieldDescriptor> identifierFields = new ArrayList<>();
+        private Descriptors.FieldDescriptor signalField;
+
+        private RecordFields(Descriptors.Descriptor recordDescriptor)
+        {
+            final Descriptors.FieldDescriptor field = recordDescriptor.findFieldByName(DATA_FIELD);
+            dataField = field != null && field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE && !field.isRepeated() ? field : null;
+            if (dataField == null) return;
+
+            final Descriptors.Descriptor dataDescriptor = dataField.getMessageType();
+            for (String fieldName : IDENTIFIER_FIELDS)
+            {
+                final Descriptors.FieldDescriptor identifierField = dataDescriptor.findFieldByName(fieldName);
+                if (identifierField != null && !identifierField.isRepeated()) identifierFields.add(identifierField);
+            }
+
+            for (String fieldName : SIGNAL_FIELDS)
+            {
+                final Descriptors.FieldDescriptor candidate = dataDescriptor.findFieldByName(fieldName);
+                if (candidate != null && !candidate.isRepeated())
+                {
+                    signalField = candidate;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final class HeldRecord
+    {
+        private final long sequence;
+        private final long arrivalNanos;
+        private final SurveyRecordEnvelope<?> envelope;
+        private Object key;
+        private double signal;
+
+        private HeldRecord(long sequence, long arrivalNanos, SurveyRecordEnvelope<?> envelope)
+        {
+            this.sequence = sequence;
+            this.arrivalNanos = arrivalNanos;
+            this.envelope = envelope;
+        }
+    }
+}
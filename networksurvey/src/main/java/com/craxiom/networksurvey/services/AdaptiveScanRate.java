@@ -0,0 +1,38 @@
+package com.craxiom.networksurvey.services;
+
+/**
+ * Calculates a scan interval from the current speed so that the scans are spread out by distance instead of by time.
+ * For example, with a 20 m spacing a device moving at 20 m/s scans every second, and a parked device only scans at the
+ * maximum interval. This saves battery and log space when stationary and collects more samples when moving fast.
+ *
+ * @since 1.10.0
+ */
+public final class AdaptiveScanRate
+{
+    private AdaptiveScanRate()
+    {
+    }
+
+    /**
+     * @param fixedIntervalMs      The configured scan interval, which is used when the adaptive rate is disabled or the
+     *                             speed is not known.
+     * @param speedMetersPerSecond The current speed, or {@link Float#NaN} if it is not known.
+     * @param spacingMeters        The distance to travel between scans, or 0 to disable the adaptive rate.
+     * @param minIntervalMs        The shortest interval to use, no matter how fast the device is moving.
+     * @param maxIntervalMs        The longest interval to use, which is also used when the device is stationary.
+     * @return The time to wait before the next scan.
+     */
+    public static long getIntervalMs(long fixedIntervalMs, float speedMetersPerSecond, int spacingMeters,
+                                     long minIntervalMs, long maxIntervalMs)
+    {
+        if (spacingMeters <= 0 || Float.isNaN(speedMetersPerSecond)) return fixedIntervalMs;
+
+        // Don't let a misconfigured floor be above the ceiling
+        maxIntervalMs = Math.max(minIntervalMs, maxIntervalMs);
+
+        if (speedMetersPerSecond <= 0) return maxIntervalMs;
+
+        final double intervalMs = spacingMeters * 1_000d / speedMetersPerSecond;
+        return Math.max(minIntervalMs, (long) Math.min(maxIntervalMs, intervalMs));
+    }
+}
@@ -0,0 +1,176 @@
+package com.craxiom.networksurvey.services;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * A thread safe queue that holds at most {@code capacity} messages. When the queue is full, the oldest message is
+ * dropped to make room for the new one. This keeps the memory used by an outbound stream bounded when the remote server
+ * stalls or the connection drops, while still favoring the most recent survey data.
+ * <p>
+ * The capacity is a soft limit when multiple threads are adding at the same time; it can be briefly exceeded by the
+ * number of concurrent producers.
+ * <p>
+ * Dropped messages are not silent: while messages are being dropped, a warning with the number dropped is logged at
+ * most once every {@link #DROP_LOG_INTERVAL_SECONDS} seconds, and {@link #logDroppedCount()} logs the total (e.g. when
+ * the stream that drains this queue closes).
+ *
+ * @param <E> The type of message held in this queue.
+ * @since 1.10.0
+ */
+public class BoundedMessageQueue<E> extends AbstractQueue<E>
+{
+    /**
+     * The minimum time between the warnings that are logged while messages are being dropped.
+     */
+    static final long DROP_LOG_INTERVAL_SECONDS = 30;
+    private static final long DROP_LOG_INTERVAL_NS = TimeUnit.SECONDS.toNanos(DROP_LOG_INTERVAL_SECONDS);
+
+    private final ConcurrentLinkedQueue<E> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong lastDropLogNs = new AtomicLong(System.nanoTime() - DROP_LOG_INTERVAL_NS);
+    private final AtomicLong droppedCountAtLastLog = new AtomicLong();
+    private final String name;
+    private final int capacity;
+
+    /**
+     * @param capacity The maximum number of messages to hold before the oldest messages start getting dropped.
+     */
+    public BoundedMessageQueue(int capacity)
+    {
+        this("message", capacity);
+    }
+
+    /**
+     * @param name     The name of the messages in this queue (e.g. the record type), which is used in the log messages.
+     * @param capacity The maximum number of messages to hold before the oldest messages start getting dropped.
+     */
+    public BoundedMessageQueue(String name, int capacity)
+    {
+        if (capacity < 1) throw new IllegalArgumentException("The capacity must be at least 1, but was " + capacity);
+
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the message to the tail of this queue, dropping the oldest message(s) if the queue is full.
+     *
+     * @return Always true since the new message is always accepted.
+     */
+    @Override
+    public boolean offer(E message)
+    {
+        if (message == null) throw new NullPointerException();
+
+        boolean dropped = false;
+        while (size.get() >= capacity)
+        {
+            if (queue.poll() == null) break;
+
+            size.decrementAndGet();
+            droppedCount.incrementAndGet();
+            dropped = true;
+        }
+
+        queue.offer(message);
+        size.incrementAndGet();
+
+        if (dropped) logDropsIfIntervalElapsed();
+        return true;
+    }
+
+    @Override
+    public E poll()
+    {
+        final E message = queue.poll();
+        if (message != null) size.decrementAndGet();
+        return message;
+    }
+
+    @Override
+    public E peek()
+    {
+        return queue.peek();
+    }
+
+    @Override
+    public int size()
+    {
+        return Math.max(0, size.get());
+    }
+
+    /**
+     * @return An iterator over the queued messages. Removal is not supported through the iterator.
+     */
+    @Override
+    public Iterator<E> iterator()
+    {
+        final Iterator<E> iterator = queue.iterator();
+        return new Iterator<E>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next()
+            {
+                return iterator.next();
+            }
+        };
+    }
+
+    /**
+     * @return The maximum number of messages this queue will hold.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return The total number of messages that have been dropped because the queue was full.
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+    /**
+     * Logs the total number of messages that have been dropped because the queue was full, if any were dropped.
+     */
+    public void logDroppedCount()
+    {
+        final long dropped = droppedCount.get();
+        if (dropped > 0)
+        {
+            Timber.w("Dropped %d of the oldest %s messages in total because the queue was full (capacity=%d)",
+                    dropped, name, capacity);
+        }
+    }
+
+    /**
+     * Logs how many messages were dropped since the last warning, unless a warning was logged within the last
+     * {@link #DROP_LOG_INTERVAL_SECONDS} seconds. Only one of the threads that are adding at the same time logs it.
+     */
+    private void logDropsIfIntervalElapsed()
+    {
+        final long now = System.nanoTime();
+        final long lastLogNs = lastDropLogNs.get();
+        if (now - lastLogNs < DROP_LOG_INTERVAL_NS || !lastDropLogNs.compareAndSet(lastLogNs, now)) return;
+
+        final long dropped = droppedCount.get();
+        Timber.w("Dropped %d of the oldest %s messages because the queue is full (capacity=%d, dropped in total=%d)",
+                dropped - droppedCountAtLastLog.getAndSet(dropped), name, capacity, dropped);
+    }
+}
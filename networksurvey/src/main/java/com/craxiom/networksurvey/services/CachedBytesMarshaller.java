@@ -0,0 +1,75 @@
+package com.craxiom.networksurvey.services;
+
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.google.protobuf.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.function.Function;
+
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.AbstractStub;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * A gRPC request marshaller that sends {@link SurveyRecordEnvelope}s and writes the protobuf bytes cached on each
+ * envelope instead of serializing the record again, so a record that is also published over MQTT (or stored in the
+ * MQTT outbox) is only encoded once. Responses are parsed with the original marshaller.
+ * <p>
+ * This class does not depend on any Android classes so that it can be exercised from JVM unit tests.
+ *
+ * @param <T> The request message type.
+ * @since 1.10.0
+ */
+public class CachedBytesMarshaller<T extends Message> implements MethodDescriptor.Marshaller<SurveyRecordEnvelope<T>>
+{
+    private final MethodDescriptor.Marshaller<T> delegate;
+
+    public CachedBytesMarshaller(MethodDescriptor.Marshaller<T> delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public InputStream stream(SurveyRecordEnvelope<T> envelope)
+    {
+        return new KnownLengthInputStream(envelope.getProtobufBytes());
+    }
+
+    @Override
+    public SurveyRecordEnvelope<T> parse(InputStream stream)
+    {
+        return new SurveyRecordEnvelope<>(delegate.parse(stream));
+    }
+
+    /**
+     * Creates the same client streaming call as the generated stub method (with the stub's channel and call options,
+     * including any compression), but with envelopes as the requests, written by a {@link CachedBytesMarshaller}.
+     *
+     * @param stub   The stub to get the channel and call options from.
+     * @param method The generated method descriptor (e.g. {@code WirelessSurveyGrpc.getStreamLteSurveyMethod()}).
+     * @return A function that can be used in place of the stub method reference.
+     */
+    public static <ReqT extends Message, RespT> Function<StreamObserver<RespT>, StreamObserver<SurveyRecordEnvelope<ReqT>>> clientStreamingCall(
+            AbstractStub<?> stub, MethodDescriptor<ReqT, RespT> method)
+    {
+        final MethodDescriptor<SurveyRecordEnvelope<ReqT>, RespT> cachedBytesMethod =
+                method.toBuilder(new CachedBytesMarshaller<>(method.getRequestMarshaller()), method.getResponseMarshaller()).build();
+
+        return responseObserver -> ClientCalls.asyncClientStreamingCall(
+                stub.getChannel().newCall(cachedBytesMethod, stub.getCallOptions()), responseObserver);
+    }
+
+    /**
+     * Lets gRPC size the message frame without copying the bytes into a buffer first.
+     */
+    private static final class KnownLengthInputStream extends ByteArrayInputStream implements KnownLength
+    {
+        private KnownLengthInputStream(byte[] bytes)
+        {
+            super(bytes);
+        }
+    }
+}
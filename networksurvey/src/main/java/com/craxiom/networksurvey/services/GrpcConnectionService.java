@@ -56,20 +56,22 @@ import com.craxiom.networksurvey.listeners.ICellularSurveyRecordListener;
 import com.craxiom.networksurvey.listeners.IDeviceStatusListener;
 import com.craxiom.networksurvey.listeners.IWifiSurveyRecordListener;
 import com.craxiom.networksurvey.messaging.NetworkSurveyStatusGrpc;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 import com.craxiom.networksurvey.model.WifiRecordWrapper;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
 import com.craxiom.networksurvey.util.IOUtils;
 import com.craxiom.networksurvey.util.LegacyRecordConversion;
 import com.craxiom.networksurvey.util.MathUtils;
+import com.craxiom.networksurvey.util.PreferenceUtils;
 import com.google.protobuf.Int32Value;
 
 import java.lang.ref.WeakReference;
 import java.net.ConnectException;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -95,6 +97,14 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     // number of concurrent linked queues. Does not take into account the old queues
     private static final int NUMBER_OF_QUEUES_TO_PROCESS = 7;
     private static final int QUEUE_PROCESSING_SLEEP_TIME = 1_000;
+    /**
+     * The max number of messages held for each stream while the server is stalled or the connection is down. When a
+     * queue is full, the oldest message is dropped to make room for the newest one, so the most recent survey data is
+     * the data that gets sent once the stream recovers. The dropped messages are not resent. Each queue logs a warning
+     * with the number it dropped while it is dropping, and the total is logged when the stream for it closes.
+     */
+    private static final int MAX_QUEUED_MESSAGES = 5_000;
+    private static final String GZIP_COMPRESSOR_NAME = "gzip";
 
     private static ConnectionState connectionState = ConnectionState.DISCONNECTED;
 
@@ -113,13 +123,13 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
 
     private final ScheduledExecutorService executorService;
 
-    private final ConcurrentLinkedQueue<DeviceStatus> deviceStatusQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<GsmRecord> gsmRecordQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<CdmaRecord> cdmaRecordQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<UmtsRecord> umtsRecordQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<LteRecord> lteRecordQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<NrRecord> nrRecordQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<WifiBeaconRecord> wifiBeaconRecordQueue = new ConcurrentLinkedQueue<>();
+    private final BoundedMessageQueue<SurveyRecordEnvelope<DeviceStatus>> deviceStatusQueue = new BoundedMessageQueue<>("DeviceStatus", MAX_QUEUED_MESSAGES);
+    private final BoundedMessageQueue<SurveyRecordEnvelope<GsmRecord>> gsmRecordQueue = new BoundedMessageQueue<>("GsmRecord", MAX_QUEUED_MESSAGES);
+    private final BoundedMessageQueue<SurveyRecordEnvelope<CdmaRecord>> cdmaRecordQueue = new BoundedMessageQueue<>("CdmaRecord", MAX_QUEUED_MESSAGES);
+    private final BoundedMessageQueue<SurveyRecordEnvelope<UmtsRecord>> umtsRecordQueue = new BoundedMessageQueue<>("UmtsRecord", MAX_QUEUED_MESSAGES);
+    private final BoundedMessageQueue<SurveyRecordEnvelope<LteRecord>> lteRecordQueue = new BoundedMessageQueue<>("LteRecord", MAX_QUEUED_MESSAGES);
+    private final BoundedMessageQueue<SurveyRecordEnvelope<NrRecord>> nrRecordQueue = new BoundedMessageQueue<>("NrRecord", MAX_QUEUED_MESSAGES);
+    private final BoundedMessageQueue<SurveyRecordEnvelope<WifiBeaconRecord>> wifiBeaconRecordQueue = new BoundedMessageQueue<>("WifiBeaconRecord", MAX_QUEUED_MESSAGES);
 
     private final List<IConnectionStateListener> grpcConnectionListeners = new CopyOnWriteArrayList<>();
 
@@ -136,13 +146,13 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     private GrpcTask<com.craxiom.networksurvey.messaging.LteRecord, com.craxiom.networksurvey.messaging.LteSurveyResponse> oldLteRecordGrpcTask;
 
     // New connection approach
-    private GrpcTask<DeviceStatus, StatusUpdateReply> deviceStatusGrpcTask;
-    private GrpcTask<GsmRecord, GsmSurveyResponse> gsmRecordGrpcTask;
-    private GrpcTask<CdmaRecord, CdmaSurveyResponse> cdmaRecordGrpcTask;
-    private GrpcTask<UmtsRecord, UmtsSurveyResponse> umtsRecordGrpcTask;
-    private GrpcTask<LteRecord, LteSurveyResponse> lteRecordGrpcTask;
-    private GrpcTask<NrRecord, NrSurveyResponse> nrRecordGrpcTask;
-    private GrpcTask<WifiBeaconRecord, WifiBeaconSurveyResponse> wifiBeaconRecordGrpcTask;
+    private GrpcTask<SurveyRecordEnvelope<DeviceStatus>, StatusUpdateReply> deviceStatusGrpcTask;
+    private GrpcTask<SurveyRecordEnvelope<GsmRecord>, GsmSurveyResponse> gsmRecordGrpcTask;
+    private GrpcTask<SurveyRecordEnvelope<CdmaRecord>, CdmaSurveyResponse> cdmaRecordGrpcTask;
+    private GrpcTask<SurveyRecordEnvelope<UmtsRecord>, UmtsSurveyResponse> umtsRecordGrpcTask;
+    private GrpcTask<SurveyRecordEnvelope<LteRecord>, LteSurveyResponse> lteRecordGrpcTask;
+    private GrpcTask<SurveyRecordEnvelope<NrRecord>, NrSurveyResponse> nrRecordGrpcTask;
+    private GrpcTask<SurveyRecordEnvelope<WifiBeaconRecord>, WifiBeaconSurveyResponse> wifiBeaconRecordGrpcTask;
     private ManagedChannel channel;
     private final AtomicInteger deviceStatusGeneratorTaskId = new AtomicInteger();
 
@@ -167,6 +177,14 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
      */
     private boolean oldConnectionApproach = false;
 
+    /**
+     * The batch window (in milliseconds) that is used by the {@link GrpcTask}s created for the current connection. It
+     * is read from the user/MDM preferences each time a connection is started.
+     *
+     * @since 1.10.0
+     */
+    private volatile int grpcBatchWindowMs = NetworkSurveyConstants.DEFAULT_GRPC_BATCH_WINDOW_MS;
+
     public GrpcConnectionService()
     {
         connectionState = ConnectionState.DISCONNECTED;
@@ -176,7 +194,8 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
 
         surveyServiceConnection = new SurveyServiceConnection();
 
-        executorService = Executors.newScheduledThreadPool(NUMBER_OF_QUEUES_TO_PROCESS);
+        // Each queue's stream blocks a thread for as long as the connection is up, so they get their own pool
+        executorService = ExecutorRegistry.getInstance().getDedicatedExecutor("ns-grpc-stream", NUMBER_OF_QUEUES_TO_PROCESS, ExecutorRegistry.Role.NETWORK);
     }
 
     /**
@@ -233,7 +252,7 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     {
         super.onCreate();
 
-        HandlerThread deviceStatusReportHandlerThread = new HandlerThread("DeviceStatusThread");
+        HandlerThread deviceStatusReportHandlerThread = ExecutorRegistry.getInstance().newHandlerThread("DeviceStatusThread", ExecutorRegistry.Role.NETWORK);
         deviceStatusReportHandlerThread.start();
 
         deviceStatusReportHandler = new Handler(deviceStatusReportHandlerThread.getLooper());
@@ -311,7 +330,7 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
         {
             if (deviceStatusGrpcTask != null && deviceStatusGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                deviceStatusQueue.add(deviceStatus);
+                deviceStatusQueue.add(new SurveyRecordEnvelope<>(deviceStatus));
             } else if (oldConnectionApproach && oldDeviceStatusGrpcTask != null && oldDeviceStatusGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
                 oldDeviceStatusQueue.add(LegacyRecordConversion.convertDeviceStatus(deviceStatus));
@@ -328,14 +347,20 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     @Override
     public void onGsmSurveyRecord(GsmRecord gsmRecord)
     {
-        if (isConnected() && gsmRecord != null)
+        if (gsmRecord != null) onGsmSurveyRecordEnvelope(new SurveyRecordEnvelope<>(gsmRecord));
+    }
+
+    @Override
+    public void onGsmSurveyRecordEnvelope(SurveyRecordEnvelope<GsmRecord> envelope)
+    {
+        if (isConnected())
         {
             if (gsmRecordGrpcTask != null && gsmRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                gsmRecordQueue.add(gsmRecord);
+                gsmRecordQueue.add(envelope);
             } else if (oldConnectionApproach && oldGsmRecordGrpcTask != null && oldGsmRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                oldGsmRecordQueue.add(LegacyRecordConversion.convertGsmRecord(gsmRecord));
+                oldGsmRecordQueue.add(LegacyRecordConversion.convertGsmRecord(envelope.getRecord()));
             }
         }
     }
@@ -343,14 +368,20 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     @Override
     public void onCdmaSurveyRecord(CdmaRecord cdmaRecord)
     {
-        if (isConnected() && cdmaRecord != null)
+        if (cdmaRecord != null) onCdmaSurveyRecordEnvelope(new SurveyRecordEnvelope<>(cdmaRecord));
+    }
+
+    @Override
+    public void onCdmaSurveyRecordEnvelope(SurveyRecordEnvelope<CdmaRecord> envelope)
+    {
+        if (isConnected())
         {
             if (cdmaRecordGrpcTask != null && cdmaRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                cdmaRecordQueue.add(cdmaRecord);
+                cdmaRecordQueue.add(envelope);
             } else if (oldConnectionApproach && oldCdmaRecordGrpcTask != null && oldCdmaRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                oldCdmaRecordQueue.add(LegacyRecordConversion.convertCdmaRecord(cdmaRecord));
+                oldCdmaRecordQueue.add(LegacyRecordConversion.convertCdmaRecord(envelope.getRecord()));
             }
         }
     }
@@ -358,14 +389,20 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     @Override
     public void onUmtsSurveyRecord(UmtsRecord umtsRecord)
     {
-        if (isConnected() && umtsRecord != null)
+        if (umtsRecord != null) onUmtsSurveyRecordEnvelope(new SurveyRecordEnvelope<>(umtsRecord));
+    }
+
+    @Override
+    public void onUmtsSurveyRecordEnvelope(SurveyRecordEnvelope<UmtsRecord> envelope)
+    {
+        if (isConnected())
         {
             if (umtsRecordGrpcTask != null && umtsRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                umtsRecordQueue.add(umtsRecord);
+                umtsRecordQueue.add(envelope);
             } else if (oldConnectionApproach && oldUmtsRecordGrpcTask != null && oldUmtsRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                oldUmtsRecordQueue.add(LegacyRecordConversion.convertUmtsRecord(umtsRecord));
+                oldUmtsRecordQueue.add(LegacyRecordConversion.convertUmtsRecord(envelope.getRecord()));
             }
         }
     }
@@ -373,14 +410,20 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     @Override
     public void onLteSurveyRecord(LteRecord lteRecord)
     {
-        if (isConnected() && lteRecord != null)
+        if (lteRecord != null) onLteSurveyRecordEnvelope(new SurveyRecordEnvelope<>(lteRecord));
+    }
+
+    @Override
+    public void onLteSurveyRecordEnvelope(SurveyRecordEnvelope<LteRecord> envelope)
+    {
+        if (isConnected())
         {
             if (lteRecordGrpcTask != null && lteRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                lteRecordQueue.add(lteRecord);
+                lteRecordQueue.add(envelope);
             } else if (oldConnectionApproach && oldLteRecordGrpcTask != null && oldLteRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
             {
-                oldLteRecordQueue.add(LegacyRecordConversion.convertLteRecord(lteRecord));
+                oldLteRecordQueue.add(LegacyRecordConversion.convertLteRecord(envelope.getRecord()));
             }
         }
     }
@@ -388,19 +431,35 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     @Override
     public void onNrSurveyRecord(NrRecord nrRecord)
     {
-        if (isConnected() && nrRecord != null && nrRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
+        if (nrRecord != null) onNrSurveyRecordEnvelope(new SurveyRecordEnvelope<>(nrRecord));
+    }
+
+    @Override
+    public void onNrSurveyRecordEnvelope(SurveyRecordEnvelope<NrRecord> envelope)
+    {
+        if (isConnected() && nrRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
         {
-            nrRecordQueue.add(nrRecord);
+            nrRecordQueue.add(envelope);
         }
     }
 
+    /**
+     * @return True so that each AP is only streamed again when it was seen again, instead of once for every scan that
+     * still lists it.
+     */
+    @Override
+    public boolean isOnlyNewAccessPointsWanted()
+    {
+        return true;
+    }
+
     @Override
     public void onWifiBeaconSurveyRecords(List<WifiRecordWrapper> wifiBeaconRecords)
     {
         if (isConnected() && wifiBeaconRecordGrpcTask != null && wifiBeaconRecordGrpcTask.getStatus() != AsyncTask.Status.FINISHED)
         {
             wifiBeaconRecordQueue.addAll(
-                    wifiBeaconRecords.stream().map(WifiRecordWrapper::getWifiBeaconRecord).collect(Collectors.toList()));
+                    wifiBeaconRecords.stream().map(WifiRecordWrapper::getEnvelope).collect(Collectors.toList()));
         }
     }
 
@@ -457,16 +516,19 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
             notifyConnectionStateChange(ConnectionState.CONNECTING);
             initializeDeviceStatusReport(deviceStatusGeneratorTaskId.incrementAndGet());
 
-            new Thread(() -> {
+            ExecutorRegistry.getInstance().newThread("gRPC Connection Thread", ExecutorRegistry.Role.NETWORK, () -> {
                 try
                 {
-                    Thread.currentThread().setName("gRPC Connection Thread");
                     final Context applicationContext = getApplicationContext();
                     channel = AndroidChannelBuilder.forAddress(host, port)
                             .usePlaintext()
                             .context(applicationContext)
                             .build();
 
+                    final boolean compressionEnabled = PreferenceUtils.getGrpcCompressionPreference(applicationContext);
+                    grpcBatchWindowMs = PreferenceUtils.getGrpcBatchWindowPreferenceMs(applicationContext);
+                    Timber.i("gRPC stream options: compression=%s, batchWindowMs=%d", compressionEnabled, grpcBatchWindowMs);
+
                     if (!startConnection())
                     {
                         final String errorMessage = "Unable to connect to the Network Survey Server";
@@ -508,28 +570,43 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
                         oldLteRecordGrpcTask.executeOnExecutor(executorService);
                     } else
                     {
+                        DeviceStatusGrpc.DeviceStatusStub deviceStatusStub = DeviceStatusGrpc.newStub(channel);
+                        WirelessSurveyGrpc.WirelessSurveyStub wirelessSurveyStub = WirelessSurveyGrpc.newStub(channel);
+                        if (compressionEnabled)
+                        {
+                            deviceStatusStub = deviceStatusStub.withCompression(GZIP_COMPRESSOR_NAME);
+                            wirelessSurveyStub = wirelessSurveyStub.withCompression(GZIP_COMPRESSOR_NAME);
+                        }
+
+                        // The calls write the protobuf bytes cached on each record's envelope so that records that
+                        // are also going to MQTT are only serialized once
+
                         deviceStatusGrpcTask = new GrpcTask<>(this, deviceStatusQueue,
-                                statusUpdateReplyStreamObserver -> DeviceStatusGrpc.newStub(channel).statusUpdate(statusUpdateReplyStreamObserver));
+                                CachedBytesMarshaller.clientStreamingCall(deviceStatusStub, DeviceStatusGrpc.getStatusUpdateMethod()));
                         deviceStatusGrpcTask.executeOnExecutor(executorService);
 
-                        final WirelessSurveyGrpc.WirelessSurveyStub wirelessSurveyStub = WirelessSurveyGrpc.newStub(channel);
-
-                        gsmRecordGrpcTask = new GrpcTask<>(this, gsmRecordQueue, wirelessSurveyStub::streamGsmSurvey);
+                        gsmRecordGrpcTask = new GrpcTask<>(this, gsmRecordQueue,
+                                CachedBytesMarshaller.clientStreamingCall(wirelessSurveyStub, WirelessSurveyGrpc.getStreamGsmSurveyMethod()));
                         gsmRecordGrpcTask.executeOnExecutor(executorService);
 
-                        cdmaRecordGrpcTask = new GrpcTask<>(this, cdmaRecordQueue, wirelessSurveyStub::streamCdmaSurvey);
+                        cdmaRecordGrpcTask = new GrpcTask<>(this, cdmaRecordQueue,
+                                CachedBytesMarshaller.clientStreamingCall(wirelessSurveyStub, WirelessSurveyGrpc.getStreamCdmaSurveyMethod()));
                         cdmaRecordGrpcTask.executeOnExecutor(executorService);
 
-                        umtsRecordGrpcTask = new GrpcTask<>(this, umtsRecordQueue, wirelessSurveyStub::streamUmtsSurvey);
+                        umtsRecordGrpcTask = new GrpcTask<>(this, umtsRecordQueue,
+                                CachedBytesMarshaller.clientStreamingCall(wirelessSurveyStub, WirelessSurveyGrpc.getStreamUmtsSurveyMethod()));
                         umtsRecordGrpcTask.executeOnExecutor(executorService);
 
-                        lteRecordGrpcTask = new GrpcTask<>(this, lteRecordQueue, wirelessSurveyStub::streamLteSurvey);
+                        lteRecordGrpcTask = new GrpcTask<>(this, lteRecordQueue,
+                                CachedBytesMarshaller.clientStreamingCall(wirelessSurveyStub, WirelessSurveyGrpc.getStreamLteSurveyMethod()));
                         lteRecordGrpcTask.executeOnExecutor(executorService);
 
-                        nrRecordGrpcTask = new GrpcTask<>(this, nrRecordQueue, wirelessSurveyStub::streamNrSurvey);
+                        nrRecordGrpcTask = new GrpcTask<>(this, nrRecordQueue,
+                                CachedBytesMarshaller.clientStreamingCall(wirelessSurveyStub, WirelessSurveyGrpc.getStreamNrSurveyMethod()));
                         nrRecordGrpcTask.executeOnExecutor(executorService);
 
-                        wifiBeaconRecordGrpcTask = new GrpcTask<>(this, wifiBeaconRecordQueue, wirelessSurveyStub::streamWifiBeaconSurvey);
+                        wifiBeaconRecordGrpcTask = new GrpcTask<>(this, wifiBeaconRecordQueue,
+                                CachedBytesMarshaller.clientStreamingCall(wirelessSurveyStub, WirelessSurveyGrpc.getStreamWifiBeaconSurveyMethod()));
                         wifiBeaconRecordGrpcTask.executeOnExecutor(executorService);
                     }
                 } catch (Throwable t)
@@ -936,111 +1013,25 @@ public class GrpcConnectionService extends Service implements IDeviceStatusListe
     private class GrpcTask<MessageType, Reply> extends AsyncTask<Void, Void, Boolean>
     {
         private final WeakReference<GrpcConnectionService> serviceWeakReference;
-        private final ConcurrentLinkedQueue<MessageType> messageQueue;
-        private final Function<StreamObserver<Reply>, StreamObserver<MessageType>> asyncStubCall;
+        private final Queue<MessageType> queue;
+        private final GrpcStreamWorker<MessageType, Reply> streamWorker;
 
-        private Throwable failed;
-
-        private GrpcTask(GrpcConnectionService serviceWeakReference, ConcurrentLinkedQueue<MessageType> queue,
+        private GrpcTask(GrpcConnectionService serviceWeakReference, Queue<MessageType> queue,
                          Function<StreamObserver<Reply>, StreamObserver<MessageType>> asyncStubCall)
         {
             this.serviceWeakReference = new WeakReference<>(serviceWeakReference);
-            messageQueue = queue;
-            this.asyncStubCall = asyncStubCall;
+            this.queue = queue;
+            streamWorker = new GrpcStreamWorker<>(queue, grpcBatchWindowMs, QUEUE_PROCESSING_SLEEP_TIME, asyncStubCall);
         }
 
         @Override
         protected Boolean doInBackground(Void... nothing)
         {
-            try
-            {
-                final CountDownLatch finishLatch = new CountDownLatch(1);
-                final StreamObserver<Reply> responseObserver = new StreamObserver<Reply>()
-                {
-                    @Override
-                    public void onNext(Reply value)
-                    {
-
-                    }
-
-                    @Override
-                    public void onError(Throwable t)
-                    {
-                        failed = t;
-                        Timber.e(t, "An error occurred in a gRPC stream");
-                        finishLatch.countDown();
-                    }
-
-                    @Override
-                    public void onCompleted()
-                    {
-                        Timber.i("Completed a gRPC stream");
-                        finishLatch.countDown();
-                    }
-                };
-
-                final StreamObserver<MessageType> outgoingMessageStream = asyncStubCall.apply(responseObserver);
-
-                try
-                {
-                    while (finishLatch.getCount() != 0 && !isCancelled())
-                    {
-                        final GrpcConnectionService grpcConnectionService = serviceWeakReference.get();
-                        if (grpcConnectionService == null)
-                        {
-                            finishLatch.countDown();
-                            break;
-                        }
-
-                        final MessageType nextMessageToSend = messageQueue.poll();
-
-                        // I know Thread.sleep() is bad, but after working through a couple different solutions using a
-                        // scheduled executor service, I found that solution to be a bit more complicated than I wanted.
-                        // Eventually, we could get away from using an error in the gRPC stream to indicate that the
-                        // remote server is no longer reachable, but when I added a listener for state changes via
-                        // channel.notifyWhenStateChanged(), I seemed to have run into a bug because that call was
-                        // actually changing the channel connection state. Therefore, until we can reliable come up with
-                        // a way to know when the connection drops, this sleep seems like the best approach.
-                        if (nextMessageToSend == null)
-                        {
-                            Thread.sleep(QUEUE_PROCESSING_SLEEP_TIME);
-                            continue;
-                        }
+            final boolean unimplemented = streamWorker.stream(() -> !isCancelled() && serviceWeakReference.get() != null);
 
-                        Timber.v("Sending a message to the remote gRPC server: %s", nextMessageToSend);
-
-                        outgoingMessageStream.onNext(nextMessageToSend);
-                    }
-                } catch (InterruptedException ignore)
-                {
-                    Timber.i("The gRPC task was interrupted");
-                } catch (RuntimeException e)
-                {
-                    // Cancel RPC
-                    outgoingMessageStream.onError(e);
-                    throw e;
-                }
+            if (queue instanceof BoundedMessageQueue) ((BoundedMessageQueue<?>) queue).logDroppedCount();
 
-                // Mark the end of the stream
-                outgoingMessageStream.onCompleted();
-
-                // Receiving happens asynchronously
-                if (!finishLatch.await(1, TimeUnit.MINUTES))
-                {
-                    throw new RuntimeException("Could not finish rpc within 1 minute, the server is likely down");
-                }
-
-                if (failed instanceof StatusRuntimeException)
-                {
-                    return ((StatusRuntimeException) failed).getStatus().getCode() == io.grpc.Status.Code.UNIMPLEMENTED;
-                }
-
-                return false;
-            } catch (Throwable e)
-            {
-                Timber.e(e, "The connection to the remote gRPC server closed with an exception");
-                return true;
-            }
+            return unimplemented;
         }
 
         /**
@@ -0,0 +1,110 @@
+package com.craxiom.networksurvey.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Drains a queue of outgoing messages onto a client streaming gRPC call.
+ * <p>
+ * When the batch window is zero, a single message is sent per call to {@link #sendQueuedMessages(StreamObserver)},
+ * which matches the original one-message-at-a-time behavior. When a batch window is set, the first message that is
+ * found on the queue is held for up to the batch window so that any other messages that show up during that time
+ * (e.g. the rest of the APs from a Wi-Fi scan, or the rest of the satellites from a GNSS event) can be written back to
+ * back.
+ * <p>
+ * Batching does not change what goes out on the wire. The stream worker already sends everything that is queued back to
+ * back before it sleeps on an empty queue, so the OkHttp transport writes about the same bytes with the same number of
+ * socket writes either way. What batching saves is client CPU: GrpcUplinkBenchmarkTest measured about 16 us per Wi-Fi
+ * record with a 100 ms window, against about 23 us per record without one. In exchange each message is delayed by up
+ * to the batch window, which is why batching is off by default.
+ * <p>
+ * This class does not depend on any Android classes so that it can be exercised from JVM unit tests.
+ *
+ * @param <MessageType> The type of message that will be streamed to the remote gRPC server.
+ * @since 1.10.0
+ */
+public class GrpcMessageBatcher<MessageType>
+{
+    /**
+     * The upper limit on the number of messages written in one batch so that a large backlog does not starve the
+     * cancellation checks in the calling loop.
+     */
+    static final int MAX_BATCH_SIZE = 256;
+
+    /**
+     * How long to sleep between checks of the queue while waiting for the batch window to expire.
+     */
+    private static final int BATCH_POLL_SLEEP_MS = 10;
+
+    private final Queue<MessageType> messageQueue;
+    private final int batchWindowMs;
+
+    /**
+     * @param messageQueue  The queue to pull the messages from.
+     * @param batchWindowMs The amount of time to wait for additional messages once the first message of a batch has
+     *                      been pulled off the queue. A value of zero (or less) disables batching.
+     */
+    public GrpcMessageBatcher(Queue<MessageType> messageQueue, int batchWindowMs)
+    {
+        this.messageQueue = messageQueue;
+        this.batchWindowMs = Math.max(0, batchWindowMs);
+    }
+
+    /**
+     * @return True if messages are held for the batch window before being sent, false if each message is sent as soon
+     * as it is pulled off the queue.
+     */
+    public boolean isBatchingEnabled()
+    {
+        return batchWindowMs > 0;
+    }
+
+    /**
+     * Pulls the next message (or batch of messages if batching is enabled) off the queue and writes them to the
+     * provided outgoing stream.
+     *
+     * @param outgoingMessageStream The stream to write the messages to.
+     * @return The number of messages that were sent, which is zero if the queue was empty.
+     * @throws InterruptedException If the thread was interrupted while waiting for the batch window to expire.
+     */
+    public int sendQueuedMessages(StreamObserver<MessageType> outgoingMessageStream) throws InterruptedException
+    {
+        final MessageType firstMessage = messageQueue.poll();
+        if (firstMessage == null) return 0;
+
+        if (batchWindowMs == 0)
+        {
+            outgoingMessageStream.onNext(firstMessage);
+            return 1;
+        }
+
+        final List<MessageType> batch = new ArrayList<>();
+        batch.add(firstMessage);
+
+        final long batchDeadline = System.nanoTime() + batchWindowMs * 1_000_000L;
+        while (batch.size() < MAX_BATCH_SIZE)
+        {
+            final MessageType nextMessage = messageQueue.poll();
+            if (nextMessage != null)
+            {
+                batch.add(nextMessage);
+                continue;
+            }
+
+            final long remainingNs = batchDeadline - System.nanoTime();
+            if (remainingNs <= 0) break;
+
+            Thread.sleep(Math.min(BATCH_POLL_SLEEP_MS, Math.max(1, remainingNs / 1_000_000L)));
+        }
+
+        for (MessageType message : batch)
+        {
+            outgoingMessageStream.onNext(message);
+        }
+
+        return batch.size();
+    }
+}
@@ -0,0 +1,194 @@
+package com.craxiom.networksurvey.services;
+
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import timber.log.Timber;
+
+/**
+ * Streams the messages from a queue to a remote gRPC server over a single client streaming RPC, until the stream
+ * fails, the server completes it, or the caller asks it to stop.
+ * <p>
+ * This holds the streaming loop that used to live directly in the {@link GrpcConnectionService} async task. It has no
+ * Android dependencies so the same code that runs in the app can be driven from JVM tests against an in-process
+ * server.
+ * <p>
+ * Messages are only pulled off the queue while the gRPC transport reports that the stream is ready. When the remote
+ * server stalls, the backlog stays in the (bounded) queue instead of piling up in the transport buffers.
+ *
+ * @param <MessageType> The type of message that will be streamed to the remote gRPC server.
+ * @param <Reply>       The reply type that will come back from gRPC server once the stream is complete.
+ * @since 1.10.0
+ */
+public class GrpcStreamWorker<MessageType, Reply>
+{
+    private static final long STREAM_COMPLETION_TIMEOUT_MINUTES = 1;
+    private static final long READY_WAIT_MS = 100;
+
+    private final GrpcMessageBatcher<MessageType> messageBatcher;
+    private final int idleSleepMs;
+    private final Function<StreamObserver<Reply>, StreamObserver<MessageType>> asyncStubCall;
+    private final Object readyLock = new Object();
+
+    private volatile Throwable failed;
+    private volatile ClientCallStreamObserver<MessageType> requestStream;
+
+    /**
+     * @param messageQueue  The queue to pull the messages from.
+     * @param batchWindowMs The batch window to pass to the {@link GrpcMessageBatcher}; 0 disables batching.
+     * @param idleSleepMs   How long to sleep when the queue is empty before checking it again.
+     * @param asyncStubCall The function that opens the client streaming RPC on an async stub.
+     */
+    public GrpcStreamWorker(Queue<MessageType> messageQueue, int batchWindowMs, int idleSleepMs,
+                            Function<StreamObserver<Reply>, StreamObserver<MessageType>> asyncStubCall)
+    {
+        messageBatcher = new GrpcMessageBatcher<>(messageQueue, batchWindowMs);
+        this.idleSleepMs = idleSleepMs;
+        this.asyncStubCall = asyncStubCall;
+    }
+
+    /**
+     * Opens the RPC and streams messages until the stream ends or {@code keepRunning} returns false. This method blocks
+     * the calling thread for the life of the stream.
+     *
+     * @param keepRunning Checked before each send; return false to close the stream (e.g. when the task is canceled).
+     * @return True if the remote procedure call (RPC) is unimplemented on the remote server, or if the stream closed
+     * with an unexpected exception. In that event a reconnect should not be attempted.
+     */
+    public boolean stream(BooleanSupplier keepRunning)
+    {
+        try
+        {
+            final CountDownLatch finishLatch = new CountDownLatch(1);
+            final ClientResponseObserver<MessageType, Reply> responseObserver = new ClientResponseObserver<MessageType, Reply>()
+            {
+                @Override
+                public void beforeStart(ClientCallStreamObserver<MessageType> stream)
+                {
+                    requestStream = stream;
+                    stream.setOnReadyHandler(() -> {
+                        synchronized (readyLock)
+                        {
+                            readyLock.notifyAll();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(Reply value)
+                {
+
+                }
+
+                @Override
+                public void onError(Throwable t)
+                {
+                    failed = t;
+                    Timber.e(t, "An error occurred in a gRPC stream");
+                    finishLatch.countDown();
+                    synchronized (readyLock)
+                    {
+                        readyLock.notifyAll();
+                    }
+                }
+
+                @Override
+                public void onCompleted()
+                {
+                    Timber.i("Completed a gRPC stream");
+                    finishLatch.countDown();
+                }
+            };
+
+            final StreamObserver<MessageType> outgoingMessageStream = asyncStubCall.apply(responseObserver);
+
+            try
+            {
+                while (finishLatch.getCount() != 0 && keepRunning.getAsBoolean())
+                {
+                    if (!waitUntilReady(finishLatch)) continue;
+
+                    final int sentCount = messageBatcher.sendQueuedMessages(outgoingMessageStream);
+
+                    // I know Thread.sleep() is bad, but after working through a couple different solutions using a
+                    // scheduled executor service, I found that solution to be a bit more complicated than I wanted.
+                    // Eventually, we could get away from using an error in the gRPC stream to indicate that the
+                    // remote server is no longer reachable, but when I added a listener for state changes via
+                    // channel.notifyWhenStateChanged(), I seemed to have run into a bug because that call was
+                    // actually changing the channel connection state. Therefore, until we can reliable come up with
+                    // a way to know when the connection drops, this sleep seems like the best approach.
+                    if (sentCount == 0)
+                    {
+                        Thread.sleep(idleSleepMs);
+                        continue;
+                    }
+
+                    Timber.v("Sent %d message(s) to the remote gRPC server", sentCount);
+                }
+            } catch (InterruptedException ignore)
+            {
+                Timber.i("The gRPC task was interrupted");
+            } catch (RuntimeException e)
+            {
+                // Cancel RPC
+                outgoingMessageStream.onError(e);
+                throw e;
+            }
+
+            // Mark the end of the stream
+            outgoingMessageStream.onCompleted();
+
+            // Receiving happens asynchronously
+            if (!finishLatch.await(STREAM_COMPLETION_TIMEOUT_MINUTES, TimeUnit.MINUTES))
+            {
+                throw new RuntimeException("Could not finish rpc within 1 minute, the server is likely down");
+            }
+
+            if (failed instanceof StatusRuntimeException)
+            {
+                return ((StatusRuntimeException) failed).getStatus().getCode() == Status.Code.UNIMPLEMENTED;
+            }
+
+            return false;
+        } catch (Throwable e)
+        {
+            Timber.e(e, "The connection to the remote gRPC server closed with an exception");
+            return true;
+        }
+    }
+
+    /**
+     * @return The error that closed the stream, or null if the stream has not failed.
+     */
+    public Throwable getFailure()
+    {
+        return failed;
+    }
+
+    /**
+     * Waits (for a short time) for the transport to indicate that it can accept more messages without buffering them.
+     *
+     * @return True if the stream is ready for more messages, false if the caller should check its exit conditions and
+     * then try again.
+     */
+    private boolean waitUntilReady(CountDownLatch finishLatch) throws InterruptedException
+    {
+        final ClientCallStreamObserver<MessageType> stream = requestStream;
+        if (stream == null || stream.isReady()) return true;
+
+        synchronized (readyLock)
+        {
+            if (!stream.isReady() && finishLatch.getCount() != 0) readyLock.wait(READY_WAIT_MS);
+        }
+
+        return stream.isReady();
+    }
+}
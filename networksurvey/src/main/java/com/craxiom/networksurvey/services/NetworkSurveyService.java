@@ -34,6 +34,7 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.telephony.CellInfo;
 import android.telephony.PhoneStateListener;
@@ -55,7 +56,6 @@ import com.craxiom.mqttlibrary.IMqttService;
 import com.craxiom.mqttlibrary.MqttConstants;
 import com.craxiom.mqttlibrary.connection.BrokerConnectionInfo;
 import com.craxiom.mqttlibrary.connection.ConnectionState;
-import com.craxiom.mqttlibrary.connection.DefaultMqttConnection;
 import com.craxiom.mqttlibrary.ui.AConnectionFragment;
 import com.craxiom.networksurvey.Application;
 import com.craxiom.networksurvey.BuildConfig;
@@ -75,21 +75,32 @@ import com.craxiom.networksurvey.logging.BluetoothSurveyRecordLogger;
 import com.craxiom.networksurvey.logging.CellularSurveyRecordLogger;
 import com.craxiom.networksurvey.logging.GnssRecordLogger;
 import com.craxiom.networksurvey.logging.PhoneStateRecordLogger;
+import com.craxiom.networksurvey.logging.SurveyRecordLogger;
 import com.craxiom.networksurvey.logging.WifiSurveyRecordLogger;
+import com.craxiom.networksurvey.mqtt.MqttBrokerConfig;
 import com.craxiom.networksurvey.mqtt.MqttConnection;
 import com.craxiom.networksurvey.mqtt.MqttConnectionInfo;
+import com.craxiom.networksurvey.mqtt.MqttOutbox;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
+import com.craxiom.networksurvey.mqtt.MqttTopicRateLimit;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
 import com.craxiom.networksurvey.util.IOUtils;
 import com.craxiom.networksurvey.util.MathUtils;
 import com.craxiom.networksurvey.util.PreferenceUtils;
 import com.google.protobuf.Int32Value;
 
+import java.io.File;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import timber.log.Timber;
 
@@ -109,6 +120,19 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
      */
     private static final long TIME_TO_WAIT_FOR_GNSS_RAW_BEFORE_FAILURE = 1000L * 15L;
     private static final int PING_RATE_MS = 10_000;
+    /**
+     * The scan run times are aligned to whole seconds so that scans with different intervals share a wakeup.
+     */
+    private static final long SCAN_ALIGNMENT_MS = 1_000;
+    /**
+     * Android 9 and 10 don't have an API to check if Wi-Fi scan throttling is enabled, but the developer option that
+     * disables it is stored in this global setting.
+     */
+    private static final String WIFI_SCAN_THROTTLE_ENABLED_SETTING = "wifi_scan_throttle_enabled";
+    /**
+     * An AP that has not been seen for this long is forgotten by the Wi-Fi scan result de-duplication.
+     */
+    private static final long WIFI_RESULT_MEMORY_US = 10 * 60 * 1_000_000L;
 
     private final AtomicBoolean cellularScanningActive = new AtomicBoolean(false);
     private final AtomicBoolean wifiScanningActive = new AtomicBoolean(false);
@@ -120,45 +144,55 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     private final AtomicBoolean gnssLoggingEnabled = new AtomicBoolean(false);
     private final AtomicBoolean gnssStarted = new AtomicBoolean(false);
 
-    private final AtomicInteger cellularScanningTaskId = new AtomicInteger();
-    private final AtomicInteger wifiScanningTaskId = new AtomicInteger();
-    private final AtomicInteger bluetoothScanningTaskId = new AtomicInteger();
-    private final AtomicInteger deviceStatusGeneratorTaskId = new AtomicInteger();
-    private final AtomicInteger gnssScanningTaskId = new AtomicInteger();
-
     private final SurveyServiceBinder surveyServiceBinder;
     private final Handler uiThreadHandler;
     private final ExecutorService executorService;
+    private final ExecutorService scanCallbackExecutor;
 
     private volatile int cellularScanRateMs;
     private volatile int wifiScanRateMs;
     private volatile int bluetoothScanRateMs;
     private volatile int gnssScanRateMs;
     private volatile int deviceStatusScanRateMs;
+    private volatile int adaptiveScanSpacingMeters;
+    private volatile int adaptiveScanMinIntervalMs;
+    private volatile int adaptiveScanMaxIntervalMs;
 
     private String deviceId;
     private SurveyRecordProcessor surveyRecordProcessor;
     private GpsListener gpsListener;
     private IGnssFailureListener gnssFailureListener;
-    private CellularSurveyRecordLogger cellularSurveyRecordLogger;
-    private WifiSurveyRecordLogger wifiSurveyRecordLogger;
-    private BluetoothSurveyRecordLogger bluetoothSurveyRecordLogger;
-    private GnssRecordLogger gnssRecordLogger;
-    private PhoneStateRecordLogger phoneStateRecordLogger;
+    // The loggers are only created while their logging is turned on, so most of the time these are null
+    private volatile CellularSurveyRecordLogger cellularSurveyRecordLogger;
+    private volatile WifiSurveyRecordLogger wifiSurveyRecordLogger;
+    private volatile BluetoothSurveyRecordLogger bluetoothSurveyRecordLogger;
+    private volatile GnssRecordLogger gnssRecordLogger;
+    private volatile PhoneStateRecordLogger phoneStateRecordLogger;
     private Looper serviceLooper;
     private Handler serviceHandler;
+    private ScanScheduler scanScheduler;
+    private StartupMetrics startupMetrics;
+    private volatile ScanScheduler.ScheduledTask cellularScanTask;
+    private volatile ScanScheduler.ScheduledTask wifiScanTask;
+    private volatile ScanScheduler.ScheduledTask bluetoothScanTask;
+    private volatile ScanScheduler.ScheduledTask deviceStatusTask;
+    private volatile ScanScheduler.ScheduledTask gnssTimeoutTask;
     private LocationManager locationManager = null;
     private long firstGpsAcqTime = Long.MIN_VALUE;
     private boolean gnssRawSupportKnown = false;
     private boolean hasGnssRawFailureNagLaunched = false;
     private MqttConnection mqttConnection;
+    private final List<MqttConnection> additionalMqttConnections = new CopyOnWriteArrayList<>();
     private BroadcastReceiver managedConfigurationListener;
 
-    private TelephonyManager.CellInfoCallback cellInfoCallback;
-    private BroadcastReceiver wifiScanReceiver;
-    private ScanCallback bluetoothScanCallback;
-    private BroadcastReceiver bluetoothBroadcastReceiver;
-    private GnssMeasurementsEvent.Callback measurementListener;
+    // The scanning resources are created when their scan is started and released when it is stopped
+    private volatile TelephonyManager.CellInfoCallback cellInfoCallback;
+    private volatile BroadcastReceiver wifiScanReceiver;
+    private final WifiScanBudget wifiScanBudget = new WifiScanBudget();
+    private final Map<String, Long> wifiResultTimestampsUs = new HashMap<>();
+    private volatile ScanCallback bluetoothScanCallback;
+    private volatile BroadcastReceiver bluetoothBroadcastReceiver;
+    private volatile GnssMeasurementsEvent.Callback measurementListener;
     private PhoneStateListener phoneStateListener;
 
     public NetworkSurveyService()
@@ -166,7 +200,9 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         surveyServiceBinder = new SurveyServiceBinder();
         uiThreadHandler = new Handler(Looper.getMainLooper());
 
-        executorService = Executors.newFixedThreadPool(8);
+        final ExecutorRegistry executorRegistry = ExecutorRegistry.getInstance();
+        executorService = executorRegistry.getExecutor(ExecutorRegistry.Role.CONVERSION);
+        scanCallbackExecutor = executorRegistry.getExecutor(ExecutorRegistry.Role.SCAN_CALLBACK);
     }
 
     @Override
@@ -175,25 +211,22 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         super.onCreate();
 
         Timber.i("Creating the Network Survey Service");
+        startupMetrics = new StartupMetrics(SystemClock::elapsedRealtime);
 
         final Context context = getApplicationContext();
 
-        final HandlerThread handlerThread = new HandlerThread("NetworkSurveyService");
+        final HandlerThread handlerThread = ExecutorRegistry.getInstance().newHandlerThread("NetworkSurveyService", ExecutorRegistry.Role.SCAN_CALLBACK);
         handlerThread.start();
 
         serviceLooper = handlerThread.getLooper();
         serviceHandler = new Handler(serviceLooper);
+        scanScheduler = new ScanScheduler(serviceHandler, SCAN_ALIGNMENT_MS);
 
         deviceId = createDeviceId();
-        cellularSurveyRecordLogger = new CellularSurveyRecordLogger(this, serviceLooper);
-        wifiSurveyRecordLogger = new WifiSurveyRecordLogger(this, serviceLooper);
-        bluetoothSurveyRecordLogger = new BluetoothSurveyRecordLogger(this, serviceLooper);
-        gnssRecordLogger = new GnssRecordLogger(this, serviceLooper);
-        phoneStateRecordLogger = new PhoneStateRecordLogger(this, serviceLooper);
 
         gpsListener = new GpsListener();
 
-        surveyRecordProcessor = new SurveyRecordProcessor(gpsListener, deviceId, context, executorService);
+        surveyRecordProcessor = new SurveyRecordProcessor(gpsListener, deviceId, context, executorService, startupMetrics);
 
         setScanRateValues();
         PreferenceManager.getDefaultSharedPreferences(context).registerOnSharedPreferenceChangeListener(this);
@@ -202,12 +235,12 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         initializeMqttConnection();
         registerManagedConfigurationListener();
 
-        initializeCellularScanningResources();
-        initializeWifiScanningResources();
-        initializeBluetoothScanningResources();
-        initializeGnssScanningResources();
+        // The scanning resources and loggers are created when a scan or logging is first started, so a service that is
+        // only used for one of them (e.g. only the GNSS screen is open) does not pay for the rest
 
         updateServiceNotification();
+
+        startupMetrics.onServiceCreated();
     }
 
     @Override
@@ -265,6 +298,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             unregisterMqttConnectionStateListener(this);
             mqttConnection.disconnect();
         }
+        disconnectAdditionalMqttBrokers();
 
         PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).unregisterOnSharedPreferenceChangeListener(this);
 
@@ -277,7 +311,9 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
 
         serviceLooper.quitSafely();
         shutdownNotifications();
-        executorService.shutdown();
+
+        // The executors are shared for the life of the process, so they are not shut down here
+        ExecutorRegistry.getInstance().logStats();
 
         super.onDestroy();
     }
@@ -288,17 +324,17 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         switch (key)
         {
             case NetworkSurveyConstants.PROPERTY_LOG_ROLLOVER_SIZE_MB:
-                wifiSurveyRecordLogger.onSharedPreferenceChanged();
-                bluetoothSurveyRecordLogger.onSharedPreferenceChanged();
-                cellularSurveyRecordLogger.onSharedPreferenceChanged();
-                gnssRecordLogger.onSharedPreferenceChanged();
-                phoneStateRecordLogger.onSharedPreferenceChanged();
+                getCreatedLoggers().forEach(SurveyRecordLogger::onSharedPreferenceChanged);
                 break;
             case NetworkSurveyConstants.PROPERTY_CELLULAR_SCAN_INTERVAL_SECONDS:
             case NetworkSurveyConstants.PROPERTY_WIFI_SCAN_INTERVAL_SECONDS:
             case NetworkSurveyConstants.PROPERTY_BLUETOOTH_SCAN_INTERVAL_SECONDS:
             case NetworkSurveyConstants.PROPERTY_GNSS_SCAN_INTERVAL_SECONDS:
             case NetworkSurveyConstants.PROPERTY_DEVICE_STATUS_SCAN_INTERVAL_SECONDS:
+            case NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_SPACING_METERS:
+            case NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS:
+            case NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS:
+            case NetworkSurveyConstants.PROPERTY_BLUETOOTH_MAX_RECORDS_PER_SCAN:
                 setScanRateValues();
                 break;
 
@@ -307,16 +343,40 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     }
 
     /**
-     * Creates the {@link DefaultMqttConnection} instance.
+     * Creates the {@link MqttConnection} instance.
      *
      * @since 0.1.1
      */
     public void initializeMqttConnection()
     {
-        mqttConnection = new MqttConnection();
+        mqttConnection = new MqttConnection(new MqttOutbox(new File(getFilesDir(), MqttOutbox.DIRECTORY_NAME),
+                ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.NETWORK)));
         mqttConnection.registerMqttConnectionStateListener(this);
     }
 
+    /**
+     * @return The outbox that holds the MQTT messages while the MQTT connection is down, or null if the MQTT connection
+     * has not been initialized.
+     * @since 1.10.0
+     */
+    public MqttOutbox getMqttOutbox()
+    {
+        return mqttConnection == null ? null : mqttConnection.getOutbox();
+    }
+
+    /**
+     * @return The MQTT connection configured in the MQTT connection UI (or via MDM) followed by the connections to the
+     * additional MQTT brokers, so that the status and throughput of each one can be shown.
+     * @since 1.10.0
+     */
+    public List<MqttConnection> getMqttConnections()
+    {
+        final List<MqttConnection> connections = new ArrayList<>(additionalMqttConnections.size() + 1);
+        if (mqttConnection != null) connections.add(mqttConnection);
+        connections.addAll(additionalMqttConnections);
+        return connections;
+    }
+
     /**
      * Connect to an MQTT broker.
      *
@@ -326,31 +386,138 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     @Override
     public void connectToMqttBroker(BrokerConnectionInfo connectionInfo)
     {
+        final List<MqttTopicRateLimit> topicRateLimits = MqttTopicRateLimit.parse(PreferenceUtils.getMqttTopicRateLimitsPreference(getApplicationContext()));
+        mqttConnection.setTopicRateLimits(topicRateLimits);
         mqttConnection.connect(getApplicationContext(), connectionInfo);
-        MqttConnectionInfo networkSurveyConnection = (MqttConnectionInfo) connectionInfo;
+        registerMqttConnectionListeners(mqttConnection, (MqttConnectionInfo) connectionInfo);
+
+        connectToAdditionalMqttBrokers((MqttConnectionInfo) connectionInfo, topicRateLimits);
+    }
+
+    /**
+     * Connects to each of the additional MQTT brokers from the settings. Each broker gets its own connection (with its
+     * own outbox, topic filter, and payload format), and all of them are registered as listeners with the same survey
+     * record processor so that the records are only generated (and serialized) once no matter how many brokers there
+     * are.
+     *
+     * @param mainConnectionInfo The connection info for the main MQTT connection, which provides the defaults for
+     *                           the additional brokers.
+     * @param topicRateLimits    The rate limits to apply to each connection.
+     * @since 1.10.0
+     */
+    private void connectToAdditionalMqttBrokers(MqttConnectionInfo mainConnectionInfo, List<MqttTopicRateLimit> topicRateLimits)
+    {
+        disconnectAdditionalMqttBrokers();
 
-        if (networkSurveyConnection.isCellularStreamEnabled())
+        final List<MqttBrokerConfig> brokerConfigs = MqttBrokerConfig.parse(PreferenceUtils.getMqttAdditionalBrokersPreference(getApplicationContext()));
+        final Set<String> outboxDirectoryNames = new HashSet<>();
+        for (MqttBrokerConfig brokerConfig : brokerConfigs)
         {
-            registerCellularSurveyRecordListener(mqttConnection);
+            final String outboxDirectoryName = brokerConfig.getOutboxDirectoryName(mainConnectionInfo.getMqttClientId());
+            if (!outboxDirectoryNames.add(outboxDirectoryName))
+            {
+                Timber.w("Ignoring the additional MQTT broker %s because it is configured more than once", brokerConfig);
+                continue;
+            }
+
+            Timber.i("Connecting to the additional MQTT broker %s", brokerConfig);
+
+            // Each broker gets its own outbox so that one broker being down does not hold up the others
+            final MqttConnection connection = new MqttConnection(new MqttOutbox(new File(getFilesDir(), outboxDirectoryName),
+                    ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.NETWORK)));
+            final MqttConnectionInfo connectionInfo = brokerConfig.toConnectionInfo(mainConnectionInfo.getMqttClientId(),
+                    mainConnectionInfo.isBatchPublishEnabled(), mainConnectionInfo.getBatchWindowMs());
+
+            connection.setTopicFilter(brokerConfig.getTopicFilter());
+            connection.setTopicRateLimits(topicRateLimits);
+            connection.connect(getApplicationContext(), connectionInfo);
+            registerMqttConnectionListeners(connection, connectionInfo);
+
+            additionalMqttConnections.add(connection);
+        }
+
+        ExecutorRegistry.getInstance().getExecutor(ExecutorRegistry.Role.DISK).execute(() -> deleteStaleMqttOutboxes(outboxDirectoryNames));
+    }
+
+    /**
+     * Deletes the outboxes of the additional MQTT brokers that are no longer configured, so that their messages do not
+     * take up storage forever.
+     *
+     * @param outboxDirectoryNames The outbox directory names of the brokers that are configured.
+     * @since 1.10.0
+     */
+    private void deleteStaleMqttOutboxes(Set<String> outboxDirectoryNames)
+    {
+        final File[] outboxDirectories = getFilesDir().listFiles(file -> file.isDirectory()
+                && file.getName().startsWith(MqttBrokerConfig.OUTBOX_DIRECTORY_PREFIX)
+                && !outboxDirectoryNames.contains(file.getName()));
+        if (outboxDirectories == null) return;
+
+        for (File outboxDirectory : outboxDirectories)
+        {
+            Timber.i("Deleting the MQTT outbox %s because its broker is no longer configured", outboxDirectory.getName());
+            MqttOutbox.deleteOutbox(outboxDirectory);
+        }
+    }
+
+    /**
+     * Disconnects from all the additional MQTT brokers and removes their survey record listeners.
+     *
+     * @since 1.10.0
+     */
+    private void disconnectAdditionalMqttBrokers()
+    {
+        for (MqttConnection connection : additionalMqttConnections)
+        {
+            connection.disconnect();
+            unregisterMqttConnectionListeners(connection);
+        }
+        additionalMqttConnections.clear();
+    }
+
+    /**
+     * Registers the MQTT connection as a listener for each of the record streams that are enabled for it.
+     *
+     * @since 1.10.0
+     */
+    private void registerMqttConnectionListeners(MqttConnection connection, MqttConnectionInfo connectionInfo)
+    {
+        if (connectionInfo.isCellularStreamEnabled())
+        {
+            registerCellularSurveyRecordListener(connection);
         }
-        if (networkSurveyConnection.isWifiStreamEnabled())
+        if (connectionInfo.isWifiStreamEnabled())
         {
-            registerWifiSurveyRecordListener(mqttConnection);
+            registerWifiSurveyRecordListener(connection);
         }
-        if (networkSurveyConnection.isBluetoothStreamEnabled())
+        if (connectionInfo.isBluetoothStreamEnabled())
         {
-            registerBluetoothSurveyRecordListener(mqttConnection);
+            registerBluetoothSurveyRecordListener(connection);
         }
-        if (networkSurveyConnection.isGnssStreamEnabled())
+        if (connectionInfo.isGnssStreamEnabled())
         {
-            registerGnssSurveyRecordListener(mqttConnection);
+            registerGnssSurveyRecordListener(connection);
         }
-        if (networkSurveyConnection.isDeviceStatusStreamEnabled())
+        if (connectionInfo.isDeviceStatusStreamEnabled())
         {
-            registerDeviceStatusListener(mqttConnection);
+            registerDeviceStatusListener(connection);
         }
     }
 
+    /**
+     * Removes the MQTT connection from all the survey record listeners.
+     *
+     * @since 1.10.0
+     */
+    private void unregisterMqttConnectionListeners(MqttConnection connection)
+    {
+        unregisterCellularSurveyRecordListener(connection);
+        unregisterWifiSurveyRecordListener(connection);
+        unregisterBluetoothSurveyRecordListener(connection);
+        unregisterGnssSurveyRecordListener(connection);
+        unregisterDeviceStatusListener(connection);
+    }
+
     /**
      * Disconnect from the MQTT broker and also remove the MQTT survey record listener.
      *
@@ -361,13 +528,10 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     {
         Timber.i("Disconnecting from the MQTT Broker");
 
+        disconnectAdditionalMqttBrokers();
         mqttConnection.disconnect();
 
-        unregisterCellularSurveyRecordListener(mqttConnection);
-        unregisterWifiSurveyRecordListener(mqttConnection);
-        unregisterBluetoothSurveyRecordListener(mqttConnection);
-        unregisterGnssSurveyRecordListener(mqttConnection);
-        unregisterDeviceStatusListener(mqttConnection);
+        unregisterMqttConnectionListeners(mqttConnection);
     }
 
     /**
@@ -757,6 +921,12 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
 
             Timber.i("Toggling cellular logging to %s", enable);
 
+            if (enable)
+            {
+                cellularSurveyRecordLogger = new CellularSurveyRecordLogger(this, serviceLooper);
+                phoneStateRecordLogger = new PhoneStateRecordLogger(this, serviceLooper);
+            }
+
             final boolean successful = cellularSurveyRecordLogger.enableLogging(enable) &&
                     phoneStateRecordLogger.enableLogging(enable);
             if (successful)
@@ -774,6 +944,12 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
 
             final boolean newLoggingState = cellularLoggingEnabled.get();
             if (successful && newLoggingState) initializePing();
+            if (!newLoggingState)
+            {
+                // Release the loggers and their GeoPackage managers until logging is turned on again
+                cellularSurveyRecordLogger = null;
+                phoneStateRecordLogger = null;
+            }
 
             return successful ? newLoggingState : null;
         }
@@ -825,6 +1001,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                 if (!wifiEnabled) return null;
             }
 
+            if (enable) wifiSurveyRecordLogger = new WifiSurveyRecordLogger(this, serviceLooper);
+
             final boolean successful = wifiSurveyRecordLogger.enableLogging(enable);
             if (successful)
             {
@@ -840,6 +1018,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             updateServiceNotification();
 
             final boolean newLoggingState = wifiLoggingEnabled.get();
+            if (!newLoggingState) wifiSurveyRecordLogger = null;
 
             return successful ? newLoggingState : null;
         }
@@ -872,6 +1051,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                 if (!bluetoothEnabled) return null;
             }
 
+            if (enable) bluetoothSurveyRecordLogger = new BluetoothSurveyRecordLogger(this, serviceLooper);
+
             final boolean successful = bluetoothSurveyRecordLogger.enableLogging(enable);
             if (successful)
             {
@@ -887,6 +1068,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             updateServiceNotification();
 
             final boolean newLoggingState = bluetoothLoggingEnabled.get();
+            if (!newLoggingState) bluetoothSurveyRecordLogger = null;
 
             return successful ? newLoggingState : null;
         }
@@ -931,6 +1113,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
 
             Timber.i("Toggling GNSS logging to %s", enable);
 
+            if (enable) gnssRecordLogger = new GnssRecordLogger(this, serviceLooper);
+
             final boolean successful = gnssRecordLogger.enableLogging(enable);
             if (successful)
             {
@@ -947,6 +1131,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             updateServiceNotification();
 
             final boolean newLoggingState = gnssLoggingEnabled.get();
+            if (!newLoggingState) gnssRecordLogger = null;
 
             return successful ? newLoggingState : null;
         }
@@ -1025,7 +1210,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     }
 
     /**
-     * Triggers a read of the scan rate values and stores them in instance variables.
+     * Triggers a read of the scan rate values and stores them in instance variables. The Bluetooth records per scan
+     * limit is read here as well since it also changes how much each scan produces.
      * <p>
      * The approach for reading the scan rates is to first use the MDM provided values. If those are not
      * set then the user preference values are employed. Finally, the default values are used as a fallback.
@@ -1051,11 +1237,38 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         deviceStatusScanRateMs = PreferenceUtils.getScanRatePreferenceMs(NetworkSurveyConstants.PROPERTY_DEVICE_STATUS_SCAN_INTERVAL_SECONDS,
                 NetworkSurveyConstants.DEFAULT_DEVICE_STATUS_SCAN_INTERVAL_SECONDS, applicationContext);
 
+        adaptiveScanSpacingMeters = PreferenceUtils.getAdaptiveScanSpacingPreferenceMeters(applicationContext);
+
+        adaptiveScanMinIntervalMs = PreferenceUtils.getScanRatePreferenceMs(NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS,
+                NetworkSurveyConstants.DEFAULT_ADAPTIVE_SCAN_MIN_INTERVAL_SECONDS, applicationContext);
+
+        adaptiveScanMaxIntervalMs = PreferenceUtils.getScanRatePreferenceMs(NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS,
+                NetworkSurveyConstants.DEFAULT_ADAPTIVE_SCAN_MAX_INTERVAL_SECONDS, applicationContext);
+
         surveyRecordProcessor.setGnssScanRateMs(gnssScanRateMs);
+        surveyRecordProcessor.setBluetoothMaxRecordsPerScan(PreferenceUtils.getBluetoothMaxRecordsPerScanPreference(applicationContext));
 
         updateLocationListener();
     }
 
+    /**
+     * Gets the time to wait before the next cellular or Wi-Fi scan. If the adaptive scan spacing is set, the interval
+     * follows the current speed from the {@link GpsListener} (see {@link AdaptiveScanRate}). Otherwise, or if the speed
+     * is not known, the provided fixed interval is used.
+     *
+     * @param fixedIntervalMs The scan interval set by the user or MDM for the scan type.
+     * @return The scan interval to use.
+     * @since 1.10.0
+     */
+    private long getAdaptiveScanRateMs(int fixedIntervalMs)
+    {
+        final int spacingMeters = adaptiveScanSpacingMeters;
+        if (spacingMeters <= 0 || gpsListener == null) return fixedIntervalMs;
+
+        return AdaptiveScanRate.getIntervalMs(fixedIntervalMs, gpsListener.getSpeedMetersPerSecond(), spacingMeters,
+                adaptiveScanMinIntervalMs, adaptiveScanMaxIntervalMs);
+    }
+
 
     /**
      * Creates a new {@link GpsListener} if necessary, and Registers with the Android {@link LocationManager} for
@@ -1111,6 +1324,13 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                 smallestScanRate = deviceStatusScanRateMs;
             }
 
+            // The adaptive scan rate needs a fresh speed at least as often as the fastest it can scan
+            if (adaptiveScanSpacingMeters > 0 && (cellularScanningActive.get() || wifiScanningActive.get())
+                    && adaptiveScanMinIntervalMs < smallestScanRate)
+            {
+                smallestScanRate = adaptiveScanMinIntervalMs;
+            }
+
             // Use the smallest scan rate set by the user for the active scanning types
             if (smallestScanRate > 10_000) smallestScanRate = smallestScanRate / 2;
 
@@ -1171,12 +1391,15 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         // The service handler can be null if this service has been stopped but the activity still has a reference to this old service
         if (serviceHandler == null) return;
 
+        initializeCellularScanningResources();
+        final TelephonyManager.CellInfoCallback callback = cellInfoCallback;
+
         serviceHandler.postDelayed(() -> {
             try
             {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
                 {
-                    telephonyManager.requestCellInfoUpdate(executorService, cellInfoCallback);
+                    telephonyManager.requestCellInfoUpdate(scanCallbackExecutor, callback);
                 } else
                 {
                     execute(() -> {
@@ -1215,46 +1438,35 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             return;
         }
 
-        final int handlerTaskId = cellularScanningTaskId.incrementAndGet();
+        initializeCellularScanningResources();
+        final TelephonyManager.CellInfoCallback callback = cellInfoCallback;
 
-        serviceHandler.postDelayed(new Runnable()
-        {
-            @Override
-            public void run()
+        scanScheduler.cancel(cellularScanTask);
+        cellularScanTask = scanScheduler.schedule("Cellular", 1_000, () -> getAdaptiveScanRateMs(cellularScanRateMs), () -> {
+            try
             {
-                try
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
                 {
-                    if (!cellularScanningActive.get() || cellularScanningTaskId.get() != handlerTaskId)
-                    {
-                        Timber.i("Stopping the handler that pulls the latest cellular information; taskId=%d", handlerTaskId);
-                        return;
-                    }
-
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
-                    {
-                        telephonyManager.requestCellInfoUpdate(executorService, cellInfoCallback);
-                    } else
-                    {
-                        execute(() -> {
-                            try
-                            {
-                                surveyRecordProcessor.onCellInfoUpdate(telephonyManager.getAllCellInfo(),
-                                        CalculationUtils.getNetworkType(telephonyManager.getDataNetworkType()),
-                                        CalculationUtils.getNetworkType(telephonyManager.getVoiceNetworkType()));
-                            } catch (Throwable t)
-                            {
-                                Timber.e(t, "Failed to pass the cellular info to the survey record processor");
-                            }
-                        });
-                    }
-
-                    serviceHandler.postDelayed(this, cellularScanRateMs);
-                } catch (SecurityException e)
+                    telephonyManager.requestCellInfoUpdate(scanCallbackExecutor, callback);
+                } else
                 {
-                    Timber.e(e, "Could not get the required permissions to get the network details");
+                    execute(() -> {
+                        try
+                        {
+                            surveyRecordProcessor.onCellInfoUpdate(telephonyManager.getAllCellInfo(),
+                                    CalculationUtils.getNetworkType(telephonyManager.getDataNetworkType()),
+                                    CalculationUtils.getNetworkType(telephonyManager.getVoiceNetworkType()));
+                        } catch (Throwable t)
+                        {
+                            Timber.e(t, "Failed to pass the cellular info to the survey record processor");
+                        }
+                    });
                 }
+            } catch (SecurityException e)
+            {
+                Timber.e(e, "Could not get the required permissions to get the network details");
             }
-        }, 1_000);
+        });
 
         updateLocationListener();
     }
@@ -1288,6 +1500,9 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     {
         Timber.d("Setting the cellular scanning active flag to false");
         cellularScanningActive.set(false);
+        scanScheduler.cancel(cellularScanTask);
+        cellularScanTask = null;
+        cellInfoCallback = null;
 
         updateLocationListener();
     }
@@ -1365,8 +1580,10 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
      *
      * @since 0.3.0
      */
-    private void initializeCellularScanningResources()
+    private synchronized void initializeCellularScanningResources()
     {
+        if (cellInfoCallback != null) return;
+
         final TelephonyManager telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
 
         if (telephonyManager == null)
@@ -1390,7 +1607,10 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                         voiceNetworkType = CalculationUtils.getNetworkType(telephonyManager.getVoiceNetworkType());
                     }
 
-                    surveyRecordProcessor.onCellInfoUpdate(cellInfo, dataNetworkType, voiceNetworkType);
+                    // Hand the conversion off so that the scan callback thread is free for the next callback
+                    final String finalDataNetworkType = dataNetworkType;
+                    final String finalVoiceNetworkType = voiceNetworkType;
+                    execute(() -> surveyRecordProcessor.onCellInfoUpdate(cellInfo, finalDataNetworkType, finalVoiceNetworkType));
                 }
 
                 @Override
@@ -1409,8 +1629,10 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
      *
      * @since 0.1.2
      */
-    private void initializeWifiScanningResources()
+    private synchronized void initializeWifiScanningResources()
     {
+        if (wifiScanReceiver != null) return;
+
         final WifiManager wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
 
         if (wifiManager == null)
@@ -1424,33 +1646,108 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             @Override
             public void onReceive(Context c, Intent intent)
             {
-                boolean success = intent.getBooleanExtra(WifiManager.EXTRA_RESULTS_UPDATED, false);
-                if (success)
+                // The results are also delivered when another app or the system ran the scan, or when a scan failed.
+                // Any results that are newer than what was already processed are still worth logging. The UI still
+                // gets every AP in the results (see IWifiSurveyRecordListener.isOnlyNewAccessPointsWanted).
+                final boolean resultsUpdated = intent.getBooleanExtra(WifiManager.EXTRA_RESULTS_UPDATED, false);
+                wifiScanBudget.onScanResults(SystemClock.elapsedRealtime(), resultsUpdated);
+
+                final List<ScanResult> results = wifiManager.getScanResults();
+                if (results == null)
                 {
-                    final List<ScanResult> results = wifiManager.getScanResults();
-                    if (results == null)
-                    {
-                        Timber.d("Null wifi scan results");
-                        return;
-                    }
+                    Timber.d("Null wifi scan results");
+                    return;
+                }
 
-                    surveyRecordProcessor.onWifiScanUpdate(results);
-                } else
+                final List<ScanResult> newResults = getNewWifiScanResults(results);
+                if (newResults.isEmpty())
                 {
-                    Timber.e("A Wi-Fi scan failed, ignoring the results.");
+                    if (!resultsUpdated) Timber.d("A Wi-Fi scan failed and there are no new cached results");
+                    return;
                 }
+
+                surveyRecordProcessor.onWifiScanUpdate(results, newResults);
             }
         };
     }
 
+    /**
+     * Filters out the scan results that were already processed. The scan results list returned by the Wi-Fi manager
+     * holds the last result for every AP that was seen recently, so the same result is returned for several scans in a
+     * row if an AP was not seen again. The {@link ScanResult#timestamp} is when the AP was last seen, so only the
+     * results with a newer timestamp than the last one processed for the AP are returned.
+     *
+     * @param results The scan results from the Wi-Fi manager.
+     * @return The results that have not been processed yet.
+     * @since 1.10.0
+     */
+    private List<ScanResult> getNewWifiScanResults(List<ScanResult> results)
+    {
+        final List<ScanResult> newResults = new ArrayList<>(results.size());
+
+        synchronized (wifiResultTimestampsUs)
+        {
+            long newestTimestampUs = 0;
+            for (ScanResult result : results)
+            {
+                final Long lastTimestampUs = wifiResultTimestampsUs.get(result.BSSID);
+                if (lastTimestampUs == null || result.timestamp > lastTimestampUs)
+                {
+                    wifiResultTimestampsUs.put(result.BSSID, result.timestamp);
+                    newResults.add(result);
+                }
+                newestTimestampUs = Math.max(newestTimestampUs, result.timestamp);
+            }
+
+            // Forget the APs that have not been seen in a while so the map does not keep growing during a long survey
+            final long oldestTimestampUs = newestTimestampUs - WIFI_RESULT_MEMORY_US;
+            wifiResultTimestampsUs.values().removeIf(timestampUs -> timestampUs < oldestTimestampUs);
+        }
+
+        return newResults;
+    }
+
+    /**
+     * @param wifiManager The Wi-Fi manager to use on Android 11 and higher.
+     * @return True if the Android OS is throttling the Wi-Fi scans requested by this app.
+     * @since 1.10.0
+     */
+    private boolean isWifiScanThrottleEnabled(WifiManager wifiManager)
+    {
+        // Scan throttling is new as of Android 9
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) return false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) return wifiManager.isScanThrottleEnabled();
+
+        try
+        {
+            return Settings.Global.getInt(getContentResolver(), WIFI_SCAN_THROTTLE_ENABLED_SETTING, 1) != 0;
+        } catch (Exception e)
+        {
+            Timber.w(e, "Could not read the Wi-Fi scan throttle setting, assuming throttling is enabled");
+            return true;
+        }
+    }
+
+    /**
+     * @return True if the Wi-Fi scans are being budgeted because the Android OS is throttling them.
+     * @since 1.10.0
+     */
+    public boolean isWifiScanThrottled()
+    {
+        return wifiScanBudget.isThrottled();
+    }
+
     /**
      * Create the Bluetooth Scan broadcast receiver that will be notified of Bluetooth scan events once
      * {@link #startBluetoothRecordScanning()} is called.
      *
      * @since 1.0.0
      */
-    private void initializeBluetoothScanningResources()
+    private synchronized void initializeBluetoothScanningResources()
     {
+        if (bluetoothBroadcastReceiver != null) return;
+
         final BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
 
         if (bluetoothManager == null)
@@ -1489,6 +1786,9 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                     if (rssi == Short.MIN_VALUE) return;
 
                     surveyRecordProcessor.onBluetoothClassicScanUpdate(device, rssi);
+                } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(intent.getAction()))
+                {
+                    surveyRecordProcessor.onBluetoothClassicDiscoveryFinished();
                 }
             }
         };
@@ -1527,8 +1827,10 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
      *
      * @since 0.3.0
      */
-    private void initializeGnssScanningResources()
+    private synchronized void initializeGnssScanningResources()
     {
+        if (measurementListener != null) return;
+
         measurementListener = new GnssMeasurementsEvent.Callback()
         {
             @Override
@@ -1553,6 +1855,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
 
         final IntentFilter scanResultsIntentFilter = new IntentFilter();
         scanResultsIntentFilter.addAction(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION);
+        initializeWifiScanningResources();
         registerReceiver(wifiScanReceiver, scanResultsIntentFilter);
 
         final WifiManager wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
@@ -1564,32 +1867,31 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             return;
         }
 
-        final int handlerTaskId = wifiScanningTaskId.incrementAndGet();
-
-        serviceHandler.postDelayed(new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                try
-                {
-                    if (!wifiScanningActive.get() || wifiScanningTaskId.get() != handlerTaskId)
+        // Once the throttle budget is used up, wait until a scan is available instead of having the request fail
+        scanScheduler.cancel(wifiScanTask);
+        wifiScanTask = scanScheduler.schedule("Wi-Fi", 2_000,
+                () -> Math.max(getAdaptiveScanRateMs(wifiScanRateMs), wifiScanBudget.getDelayUntilAvailableMs(SystemClock.elapsedRealtime())),
+                () -> {
+                    try
                     {
-                        Timber.i("Stopping the handler that pulls the latest wifi information, taskId=%d", handlerTaskId);
-                        return;
-                    }
-
-                    boolean success = wifiManager.startScan();
+                        wifiScanBudget.setThrottled(isWifiScanThrottleEnabled(wifiManager));
+                        if (!wifiScanBudget.tryAcquire(SystemClock.elapsedRealtime(), getAdaptiveScanRateMs(wifiScanRateMs)))
+                        {
+                            return;
+                        }
 
-                    if (!success) Timber.e("Kicking off a Wi-Fi scan failed");
+                        boolean success = wifiManager.startScan();
 
-                    serviceHandler.postDelayed(this, wifiScanRateMs);
-                } catch (Exception e)
-                {
-                    Timber.e(e, "Could not run a Wi-Fi scan");
-                }
-            }
-        }, 2_000);
+                        if (!success)
+                        {
+                            wifiScanBudget.onScanFailed();
+                            Timber.e("Kicking off a Wi-Fi scan failed");
+                        }
+                    } catch (Exception e)
+                    {
+                        Timber.e(e, "Could not run a Wi-Fi scan");
+                    }
+                });
 
         updateLocationListener();
     }
@@ -1602,10 +1904,17 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     private void stopWifiRecordScanning()
     {
         wifiScanningActive.set(false);
+        scanScheduler.cancel(wifiScanTask);
+        wifiScanTask = null;
+        wifiScanBudget.log();
+        synchronized (wifiResultTimestampsUs)
+        {
+            wifiResultTimestampsUs.clear();
+        }
 
         try
         {
-            unregisterReceiver(wifiScanReceiver);
+            if (wifiScanReceiver != null) unregisterReceiver(wifiScanReceiver);
         } catch (Exception e)
         {
             // Because we are extra cautious and want to make sure that we unregister the receiver, when the service
@@ -1613,6 +1922,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             // we don't have one registered.
             Timber.v(e, "Could not unregister the NetworkSurveyService Wi-Fi Scan Receiver");
         }
+        wifiScanReceiver = null;
 
         updateLocationListener();
     }
@@ -1703,6 +2013,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
 
         final IntentFilter intentFilter = new IntentFilter(BluetoothDevice.ACTION_FOUND);
         intentFilter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+        initializeBluetoothScanningResources();
         registerReceiver(bluetoothBroadcastReceiver, intentFilter);
 
         final ScanSettings.Builder scanSettingsBuilder = new ScanSettings.Builder();
@@ -1710,38 +2021,24 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         scanSettingsBuilder.setReportDelay(bluetoothScanRateMs);
         bluetoothLeScanner.startScan(Collections.emptyList(), scanSettingsBuilder.build(), bluetoothScanCallback);
 
-        final int handlerTaskId = bluetoothScanningTaskId.incrementAndGet();
-
-        serviceHandler.postDelayed(new Runnable()
-        {
-            @Override
-            public void run()
+        scanScheduler.cancel(bluetoothScanTask);
+        bluetoothScanTask = scanScheduler.schedule("Bluetooth", 1_000, () -> bluetoothScanRateMs, () -> {
+            try
             {
-                try
+                // Calling start Discovery scans for BT Classic (BR/EDR) devices as well. However, it also seems
+                // it allows for getting some BLE devices as well, but we seem to get more with the BLE scanner above
+                if (!bluetoothAdapter.isDiscovering())
                 {
-                    if (!bluetoothScanningActive.get() || bluetoothScanningTaskId.get() != handlerTaskId)
-                    {
-                        Timber.i("Stopping the handler that pulls the latest Bluetooth information; taskId=%d", handlerTaskId);
-                        return;
-                    }
-
-                    // Calling start Discovery scans for BT Classic (BR/EDR) devices as well. However, it also seems
-                    // it allows for getting some BLE devices as well, but we seem to get more with the BLE scanner above
-                    if (!bluetoothAdapter.isDiscovering())
-                    {
-                        bluetoothAdapter.startDiscovery();
-                    } else
-                    {
-                        Timber.d("Bluetooth discovery already in progress, not starting a new discovery.");
-                    }
-
-                    serviceHandler.postDelayed(this, bluetoothScanRateMs);
-                } catch (Exception e)
+                    bluetoothAdapter.startDiscovery();
+                } else
                 {
-                    Timber.e(e, "Could not run a Bluetooth scan");
+                    Timber.d("Bluetooth discovery already in progress, not starting a new discovery.");
                 }
+            } catch (Exception e)
+            {
+                Timber.e(e, "Could not run a Bluetooth scan");
             }
-        }, 1_000);
+        });
 
         updateLocationListener();
     }
@@ -1754,6 +2051,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     private void stopBluetoothRecordScanning()
     {
         bluetoothScanningActive.set(false);
+        scanScheduler.cancel(bluetoothScanTask);
+        bluetoothScanTask = null;
 
         try
         {
@@ -1763,13 +2062,18 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                 bluetoothAdapter.cancelDiscovery();
 
                 final BluetoothLeScanner bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-                if (bluetoothLeScanner != null) bluetoothLeScanner.stopScan(bluetoothScanCallback);
+                if (bluetoothLeScanner != null && bluetoothScanCallback != null) bluetoothLeScanner.stopScan(bluetoothScanCallback);
             }
-            unregisterReceiver(bluetoothBroadcastReceiver);
+            if (bluetoothBroadcastReceiver != null) unregisterReceiver(bluetoothBroadcastReceiver);
         } catch (Exception e)
         {
             Timber.v(e, "Could not stop the Bluetooth Scan Callback");
         }
+        bluetoothBroadcastReceiver = null;
+        bluetoothScanCallback = null;
+
+        // Don't leave any Bluetooth Classic results waiting on a BLE batch report that is not going to come
+        surveyRecordProcessor.onBluetoothClassicDiscoveryFinished();
 
         updateLocationListener();
     }
@@ -1785,30 +2089,16 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     {
         if (deviceStatusActive.getAndSet(true)) return;
 
-        final int handlerTaskId = deviceStatusGeneratorTaskId.incrementAndGet();
-
-        serviceHandler.postDelayed(new Runnable()
-        {
-            @Override
-            public void run()
+        scanScheduler.cancel(deviceStatusTask);
+        deviceStatusTask = scanScheduler.schedule("Device Status", 1_000, () -> deviceStatusScanRateMs, () -> {
+            try
             {
-                try
-                {
-                    if (!deviceStatusActive.get() || deviceStatusGeneratorTaskId.get() != handlerTaskId)
-                    {
-                        Timber.i("Stopping the handler that generates the device status message; taskId=%d", handlerTaskId);
-                        return;
-                    }
-
-                    surveyRecordProcessor.onDeviceStatus(generateDeviceStatus());
-
-                    serviceHandler.postDelayed(this, deviceStatusScanRateMs);
-                } catch (SecurityException e)
-                {
-                    Timber.e(e, "Could not get the required permissions to generate a device status message");
-                }
+                surveyRecordProcessor.onDeviceStatus(generateDeviceStatus());
+            } catch (SecurityException e)
+            {
+                Timber.e(e, "Could not get the required permissions to generate a device status message");
             }
-        }, 1000L);
+        });
 
         // Add a listener for the Service State information if we have access to the Telephony Manager
         final TelephonyManager telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
@@ -1907,6 +2197,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         }
 
         deviceStatusActive.set(false);
+        scanScheduler.cancel(deviceStatusTask);
+        deviceStatusTask = null;
 
         updateLocationListener();
     }
@@ -2002,8 +2294,6 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
 
         boolean success = false;
 
-        final int handlerTaskId = gnssScanningTaskId.incrementAndGet();
-
         boolean hasPermissions = ContextCompat.checkSelfPermission(this,
                 Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
         hasPermissions = hasPermissions && ContextCompat.checkSelfPermission(this,
@@ -2013,12 +2303,13 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         {
             if (locationManager == null)
             {
+                initializeGnssScanningResources();
                 locationManager = getSystemService(LocationManager.class);
                 if (locationManager != null)
                 {
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R)
                     {
-                        locationManager.registerGnssMeasurementsCallback(executorService, measurementListener);
+                        locationManager.registerGnssMeasurementsCallback(scanCallbackExecutor, measurementListener);
                     } else
                     {
                         locationManager.registerGnssMeasurementsCallback(measurementListener);
@@ -2031,28 +2322,17 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                 Timber.w("The location manager was null when registering the GNSS listeners");
             }
 
-            serviceHandler.postDelayed(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        if (!gnssStarted.get() || gnssScanningTaskId.get() != handlerTaskId)
+            scanScheduler.cancel(gnssTimeoutTask);
+            gnssTimeoutTask = scanScheduler.schedule("GNSS Timeout", getGnssTimeoutIntervalMs(gnssScanRateMs),
+                    () -> getGnssTimeoutIntervalMs(gnssScanRateMs), () -> {
+                        try
                         {
-                            Timber.i("Stopping the handler that checks for missed GNSS measurements");
-                            return;
+                            surveyRecordProcessor.checkForMissedGnssMeasurement();
+                        } catch (SecurityException e)
+                        {
+                            Timber.e(e, "Could not get the required permissions to check for missed GNSS measurement");
                         }
-
-                        surveyRecordProcessor.checkForMissedGnssMeasurement();
-
-                        serviceHandler.postDelayed(this, getGnssTimeoutIntervalMs(gnssScanRateMs));
-                    } catch (SecurityException e)
-                    {
-                        Timber.e(e, "Could not get the required permissions to check for missed GNSS measurement");
-                    }
-                }
-            }, getGnssTimeoutIntervalMs(gnssScanRateMs));
+                    });
 
             success = true;
         }
@@ -2071,12 +2351,16 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
     {
         if (!gnssStarted.getAndSet(false)) return;
 
+        scanScheduler.cancel(gnssTimeoutTask);
+        gnssTimeoutTask = null;
+
         if (locationManager != null)
         {
             locationManager.unregisterGnssMeasurementsCallback(measurementListener);
             gpsListener.clearGnssTimeoutCallback();
             locationManager = null;
         }
+        measurementListener = null;
 
         updateLocationListener();
     }
@@ -2089,11 +2373,23 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
      */
     private void stopAllLogging()
     {
-        if (cellularSurveyRecordLogger != null) cellularSurveyRecordLogger.enableLogging(false);
-        if (wifiSurveyRecordLogger != null) wifiSurveyRecordLogger.enableLogging(false);
-        if (bluetoothSurveyRecordLogger != null) bluetoothSurveyRecordLogger.enableLogging(false);
-        if (gnssRecordLogger != null) gnssRecordLogger.enableLogging(false);
-        if (phoneStateRecordLogger != null) phoneStateRecordLogger.enableLogging(false);
+        getCreatedLoggers().forEach(logger -> logger.enableLogging(false));
+    }
+
+    /**
+     * @return The loggers that currently exist. A logger is created when its logging is turned on and dropped when it is
+     * turned off, so this is usually only the loggers that are logging.
+     * @since 1.10.0
+     */
+    private List<SurveyRecordLogger> getCreatedLoggers()
+    {
+        final List<SurveyRecordLogger> loggers = new ArrayList<>(5);
+        for (SurveyRecordLogger logger : new SurveyRecordLogger[]{cellularSurveyRecordLogger, wifiSurveyRecordLogger,
+                bluetoothSurveyRecordLogger, gnssRecordLogger, phoneStateRecordLogger})
+        {
+            if (logger != null) loggers.add(logger);
+        }
+        return loggers;
     }
 
     /**
@@ -2122,11 +2418,7 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
                 setScanRateValues();
                 attemptMqttConnectWithMdmConfig(true);
 
-                cellularSurveyRecordLogger.onMdmPreferenceChanged();
-                wifiSurveyRecordLogger.onMdmPreferenceChanged();
-                bluetoothSurveyRecordLogger.onMdmPreferenceChanged();
-                gnssRecordLogger.onMdmPreferenceChanged();
-                phoneStateRecordLogger.onMdmPreferenceChanged();
+                getCreatedLoggers().forEach(SurveyRecordLogger::onMdmPreferenceChanged);
             }
         };
 
@@ -2194,6 +2486,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             final boolean bluetoothStreamEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BLUETOOTH_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BLUETOOTH_STREAM_SETTING);
             final boolean gnssStreamEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_GNSS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_GNSS_STREAM_SETTING);
             final boolean deviceStatusStreamEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_DEVICE_STATUS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_DEVICE_STATUS_STREAM_SETTING);
+            final boolean batchPublishEnabled = mdmProperties.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BATCH_PUBLISH_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BATCH_PUBLISH_SETTING);
+            final MqttPayloadFormat payloadFormat = MqttPayloadFormat.fromPreferenceValue(mdmProperties.getString(NetworkSurveyConstants.PROPERTY_MQTT_PAYLOAD_FORMAT, NetworkSurveyConstants.DEFAULT_MQTT_PAYLOAD_FORMAT));
 
             if (mqttBrokerHost == null || clientId == null)
             {
@@ -2201,7 +2495,8 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
             }
 
             return new MqttConnectionInfo(mqttBrokerHost, portNumber, tlsEnabled, clientId, username, password,
-                    cellularStreamEnabled, wifiStreamEnabled, bluetoothStreamEnabled, gnssStreamEnabled, deviceStatusStreamEnabled);
+                    cellularStreamEnabled, wifiStreamEnabled, bluetoothStreamEnabled, gnssStreamEnabled, deviceStatusStreamEnabled,
+                    batchPublishEnabled, PreferenceUtils.getMqttBatchWindowPreferenceMs(getApplicationContext()), payloadFormat);
         }
 
         return null;
@@ -2235,9 +2530,12 @@ public class NetworkSurveyService extends Service implements IConnectionStateLis
         final boolean bluetoothStreamEnabled = preferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BLUETOOTH_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BLUETOOTH_STREAM_SETTING);
         final boolean gnssStreamEnabled = preferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_GNSS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_GNSS_STREAM_SETTING);
         final boolean deviceStatusStreamEnabled = preferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_DEVICE_STATUS_STREAM_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_DEVICE_STATUS_STREAM_SETTING);
+        final boolean batchPublishEnabled = preferences.getBoolean(NetworkSurveyConstants.PROPERTY_MQTT_BATCH_PUBLISH_ENABLED, NetworkSurveyConstants.DEFAULT_MQTT_BATCH_PUBLISH_SETTING);
+        final MqttPayloadFormat payloadFormat = MqttPayloadFormat.fromPreferenceValue(preferences.getString(NetworkSurveyConstants.PROPERTY_MQTT_PAYLOAD_FORMAT, NetworkSurveyConstants.DEFAULT_MQTT_PAYLOAD_FORMAT));
 
         return new MqttConnectionInfo(mqttBrokerHost, portNumber, tlsEnabled, clientId, username, password,
-                cellularStreamEnabled, wifiStreamEnabled, bluetoothStreamEnabled, gnssStreamEnabled, deviceStatusStreamEnabled);
+                cellularStreamEnabled, wifiStreamEnabled, bluetoothStreamEnabled, gnssStreamEnabled, deviceStatusStreamEnabled,
+                batchPublishEnabled, PreferenceUtils.getMqttBatchWindowPreferenceMs(getApplicationContext()), payloadFormat);
     }
 
     /**
@@ -0,0 +1,300 @@
+package com.craxiom.networksurvey.services;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import timber.log.Timber;
+
+/**
+ * Runs all the periodic scans (cellular, Wi-Fi, Bluetooth, etc) from a single handler callback. Each task runs at a
+ * fixed rate: the next run is scheduled from when the last run was supposed to happen rather than from when it finished,
+ * so the time it takes to run a task does not add up over time. If the handler falls more than a full interval behind,
+ * the missed runs are skipped instead of all being run back to back.
+ * <p>
+ * When an alignment is set, the run times are rounded up to a multiple of it. Because the scan intervals are whole
+ * seconds, aligning to a second means tasks with different intervals still wake up at the same moments and run together
+ * in a single wakeup instead of each waking the device separately.
+ * <p>
+ * The actual time between runs is compared to the intended interval for each task and logged when the task is
+ * cancelled, so the scheduling accuracy can be checked.
+ *
+ * @since 1.10.0
+ */
+public class ScanScheduler
+{
+    private final Handler handler;
+    private final long alignmentMs;
+    private final Runnable tickRunnable = this::onTick;
+
+    // Guarded by this
+    private final List<ScheduledTask> tasks = new ArrayList<>();
+    private long scheduledTickTime = Long.MAX_VALUE;
+
+    /**
+     * @param handler     The handler that the tasks are run on.
+     * @param alignmentMs If greater than 0, the run times are rounded up to a multiple of this value so that tasks can
+     *                    share a wakeup.
+     */
+    public ScanScheduler(Handler handler, long alignmentMs)
+    {
+        this.handler = handler;
+        this.alignmentMs = alignmentMs;
+    }
+
+    /**
+     * Starts running a task periodically.
+     *
+     * @param name           The name of the task to use in the logs.
+     * @param initialDelayMs The time to wait before the first run.
+     * @param intervalMs     Provides the time between runs. It is called after each run so that a change to the
+     *                       interval is picked up without having to schedule the task again.
+     * @param action         The task to run on the handler.
+     * @return The handle to use to cancel the task.
+     */
+    public synchronized ScheduledTask schedule(String name, long initialDelayMs, LongSupplier intervalMs, Runnable action)
+    {
+        final long now = SystemClock.uptimeMillis();
+        final ScheduledTask task = new ScheduledTask(name, intervalMs, action, align(now + initialDelayMs, alignmentMs));
+        tasks.add(task);
+        postTickIfNeeded();
+        return task;
+    }
+
+    /**
+     * Stops running the task and logs its interval stats. Calling this with a task that was already cancelled, or
+     * with null, does nothing.
+     */
+    public synchronized void cancel(ScheduledTask task)
+    {
+        if (task == null || !tasks.remove(task)) return;
+
+        task.cancelled = true;
+        task.stats.log(task.name);
+    }
+
+    private void onTick()
+    {
+        final long now = SystemClock.uptimeMillis();
+        final List<ScheduledTask> dueTasks = new ArrayList<>();
+
+        synchronized (this)
+        {
+            scheduledTickTime = Long.MAX_VALUE;
+            for (ScheduledTask task : tasks)
+            {
+                if (task.nextRunTime <= now) dueTasks.add(task);
+            }
+        }
+
+        for (ScheduledTask task : dueTasks)
+        {
+            // The task might have been cancelled by another task that ran in this tick
+            if (task.cancelled) continue;
+
+            try
+            {
+                task.action.run();
+            } catch (Exception e)
+            {
+                Timber.e(e, "The %s scan task failed", task.name);
+            }
+        }
+
+        synchronized (this)
+        {
+            for (ScheduledTask task : dueTasks)
+            {
+                if (task.cancelled) continue;
+
+                final long intervalMs = task.intervalMs.getAsLong();
+                task.stats.onRun(now, intervalMs);
+
+                final long nextRunTime = getNextRunTime(task.nextRunTime, intervalMs, SystemClock.uptimeMillis(), alignmentMs);
+                task.stats.onSkippedRuns(getSkippedRuns(task.nextRunTime, nextRunTime, intervalMs));
+                task.nextRunTime = nextRunTime;
+            }
+
+            postTickIfNeeded();
+        }
+    }
+
+    /**
+     * Posts the tick callback for the earliest run time of all the tasks, unless it is already posted for that time.
+     */
+    private void postTickIfNeeded()
+    {
+        long earliestRunTime = Long.MAX_VALUE;
+        for (ScheduledTask task : tasks)
+        {
+            earliestRunTime = Math.min(earliestRunTime, task.nextRunTime);
+        }
+
+        if (earliestRunTime == scheduledTickTime) return;
+
+        handler.removeCallbacks(tickRunnable);
+        scheduledTickTime = earliestRunTime;
+        if (earliestRunTime != Long.MAX_VALUE) handler.postAtTime(tickRunnable, earliestRunTime);
+    }
+
+    /**
+     * Calculates when a task should run next so that it keeps a fixed rate.
+     *
+     * @param lastRunTime The time the task was supposed to run last, not the time it actually ran.
+     * @param intervalMs  The time between runs.
+     * @param now         The current time.
+     * @param alignmentMs The value to round the run time up to a multiple of, or 0 to not align it.
+     * @return The next run time, which is always after now. If more than an interval was missed, the missed runs are
+     * skipped.
+     */
+    static long getNextRunTime(long lastRunTime, long intervalMs, long now, long alignmentMs)
+    {
+        if (intervalMs <= 0) intervalMs = 1;
+
+        long nextRunTime = lastRunTime + intervalMs;
+        if (nextRunTime <= now)
+        {
+            final long missedIntervals = (now - lastRunTime) / intervalMs;
+            nextRunTime = lastRunTime + (missedIntervals + 1) * intervalMs;
+        }
+
+        return align(nextRunTime, alignmentMs);
+    }
+
+    /**
+     * @return The number of runs that were skipped between the last run time and the next run time.
+     */
+    static long getSkippedRuns(long lastRunTime, long nextRunTime, long intervalMs)
+    {
+        if (intervalMs <= 0) return 0;
+        return Math.max(0, (nextRunTime - lastRunTime) / intervalMs - 1);
+    }
+
+    static long align(long time, long alignmentMs)
+    {
+        if (alignmentMs <= 0) return time;
+
+        final long remainder = time % alignmentMs;
+        return remainder == 0 ? time : time + alignmentMs - remainder;
+    }
+
+    /**
+     * The handle for a task that was scheduled with {@link #schedule(String, long, LongSupplier, Runnable)}.
+     */
+    public static class ScheduledTask
+    {
+        private final String name;
+        private final LongSupplier intervalMs;
+        private final Runnable action;
+        private final IntervalStats stats = new IntervalStats();
+
+        private volatile boolean cancelled;
+        private long nextRunTime;
+
+        private ScheduledTask(String name, LongSupplier intervalMs, Runnable action, long firstRunTime)
+        {
+            this.name = name;
+            this.intervalMs = intervalMs;
+            this.action = action;
+            nextRunTime = firstRunTime;
+        }
+
+        public IntervalStats getStats()
+        {
+            return stats;
+        }
+    }
+
+    /**
+     * Tracks how closely the actual time between runs of a task matched the intended interval.
+     */
+    public static class IntervalStats
+    {
+        private long lastRunTime = -1;
+        private long runCount;
+        private long intervalCount;
+        private long intendedIntervalSumMs;
+        private long actualIntervalSumMs;
+        private long absoluteErrorSumMs;
+        private long maxAbsoluteErrorMs;
+        private long skippedRuns;
+
+        /**
+         * Records a run of the task.
+         *
+         * @param runTime    The time the task actually ran.
+         * @param intervalMs The interval that was intended between this run and the previous one.
+         */
+        synchronized void onRun(long runTime, long intervalMs)
+        {
+            runCount++;
+            if (lastRunTime >= 0)
+            {
+                final long actualIntervalMs = runTime - lastRunTime;
+                final long absoluteErrorMs = Math.abs(actualIntervalMs - intervalMs);
+
+                intervalCount++;
+                intendedIntervalSumMs += intervalMs;
+                actualIntervalSumMs += actualIntervalMs;
+                absoluteErrorSumMs += absoluteErrorMs;
+                maxAbsoluteErrorMs = Math.max(maxAbsoluteErrorMs, absoluteErrorMs);
+            }
+            lastRunTime = runTime;
+        }
+
+        synchronized void onSkippedRuns(long count)
+        {
+            skippedRuns += count;
+        }
+
+        public synchronized long getRunCount()
+        {
+            return runCount;
+        }
+
+        public synchronized long getSkippedRuns()
+        {
+            return skippedRuns;
+        }
+
+        /**
+         * @return The average intended interval, or 0 if the task has not run at least twice.
+         */
+        public synchronized double getAverageIntendedIntervalMs()
+        {
+            return intervalCount == 0 ? 0 : (double) intendedIntervalSumMs / intervalCount;
+        }
+
+        /**
+         * @return The average actual time between runs, or 0 if the task has not run at least twice.
+         */
+        public synchronized double getAverageActualIntervalMs()
+        {
+            return intervalCount == 0 ? 0 : (double) actualIntervalSumMs / intervalCount;
+        }
+
+        /**
+         * @return The average difference between the actual and intended intervals, or 0 if the task has not run at
+         * least twice.
+         */
+        public synchronized double getAverageAbsoluteErrorMs()
+        {
+            return intervalCount == 0 ? 0 : (double) absoluteErrorSumMs / intervalCount;
+        }
+
+        public synchronized long getMaxAbsoluteErrorMs()
+        {
+            return maxAbsoluteErrorMs;
+        }
+
+        private synchronized void log(String name)
+        {
+            Timber.i("%s scan interval stats: runs=%d, skipped=%d, intended avg=%.1f ms, actual avg=%.1f ms, avg error=%.1f ms, max error=%d ms",
+                    name, runCount, skippedRuns, getAverageIntendedIntervalMs(), getAverageActualIntervalMs(),
+                    getAverageAbsoluteErrorMs(), maxAbsoluteErrorMs);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.craxiom.networksurvey.services;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import timber.log.Timber;
+
+/**
+ * Measures how quickly the survey service gets going after it is started: how long creating the service takes, and how
+ * long it takes until the first record of each type is sent to the listeners. The heap in use is logged along with each
+ * time so that the memory cost of a cold start can be compared between builds.
+ *
+ * @since 1.10.0
+ */
+public class StartupMetrics
+{
+    /**
+     * The record type used for the first record of any type.
+     */
+    static final String ANY_RECORD = "any";
+
+    private final LongSupplier clockMs;
+    private final long startTimeMs;
+    private final Set<String> seenRecordTypes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Starts the measurement.
+     *
+     * @param clockMs The monotonic clock to use for the times.
+     */
+    public StartupMetrics(LongSupplier clockMs)
+    {
+        this.clockMs = clockMs;
+        startTimeMs = clockMs.getAsLong();
+    }
+
+    /**
+     * Logs the time it took for the service to be created.
+     */
+    void onServiceCreated()
+    {
+        Timber.i("Survey service created in %d ms, heap in use %d KB", getElapsedMs(), getUsedHeapKb());
+    }
+
+    /**
+     * Notes that a record of the provided type was sent to the listeners. The time is only logged for the first record
+     * of each type, and for the first record overall.
+     *
+     * @param recordType The name of the record type to use in the log.
+     * @return True if this was the first record of the type.
+     */
+    boolean onRecord(String recordType)
+    {
+        // Most calls are for a type that was already seen, so check before paying for the add
+        if (seenRecordTypes.contains(recordType) || !seenRecordTypes.add(recordType)) return false;
+
+        final long elapsedMs = getElapsedMs();
+        if (seenRecordTypes.add(ANY_RECORD))
+        {
+            Timber.i("Time to the first survey record: %d ms (%s), heap in use %d KB", elapsedMs, recordType, getUsedHeapKb());
+        }
+        Timber.i("Time to the first %s record: %d ms", recordType, elapsedMs);
+
+        return true;
+    }
+
+    long getElapsedMs()
+    {
+        return clockMs.getAsLong() - startTimeMs;
+    }
+
+    private static long getUsedHeapKb()
+    {
+        final Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+    }
+}
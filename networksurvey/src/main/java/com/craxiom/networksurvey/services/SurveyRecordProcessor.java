@@ -79,13 +79,16 @@ import com.craxiom.networksurvey.listeners.ICellularSurveyRecordListener;
 import com.craxiom.networksurvey.listeners.IDeviceStatusListener;
 import com.craxiom.networksurvey.listeners.IGnssSurveyRecordListener;
 import com.craxiom.networksurvey.listeners.IWifiSurveyRecordListener;
+import com.craxiom.networksurvey.model.BluetoothSignalStats;
 import com.craxiom.networksurvey.model.CellularProtocol;
 import com.craxiom.networksurvey.model.CellularRecordWrapper;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
 import com.craxiom.networksurvey.model.WifiRecordWrapper;
 import com.craxiom.networksurvey.util.IOUtils;
 import com.craxiom.networksurvey.util.MathUtils;
 import com.craxiom.networksurvey.util.ParserUtils;
 import com.craxiom.networksurvey.util.PreferenceUtils;
+import com.craxiom.networksurvey.util.RecordSampler;
 import com.craxiom.networksurvey.util.WifiCapabilitiesUtils;
 import com.google.protobuf.BoolValue;
 import com.google.protobuf.FloatValue;
@@ -101,12 +104,15 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import timber.log.Timber;
 
@@ -124,6 +130,7 @@ public class SurveyRecordProcessor
 
     private final Object cellInfoProcessingLock = new Object();
     private final Object activityUpdateLock = new Object();
+    private final Object bluetoothClassicResultsLock = new Object();
 
     private final GpsListener gpsListener;
     private final Set<ICellularSurveyRecordListener> cellularSurveyRecordListeners = new CopyOnWriteArraySet<>();
@@ -134,6 +141,7 @@ public class SurveyRecordProcessor
     private volatile NetworkSurveyActivity networkSurveyActivity;
 
     private final ExecutorService executorService;
+    private final StartupMetrics startupMetrics;
     private final String deviceId;
     private final String missionId;
     private final Context context;
@@ -144,6 +152,20 @@ public class SurveyRecordProcessor
     private int wifiRecordNumber = 1;
     private int bluetoothRecordNumber = 1;
 
+    /**
+     * The record for each AP in the latest Wi-Fi scan results, keyed by the BSSID, so that the APs that were not seen
+     * again can be shown in the UI without generating (and numbering) a new record for them.
+     */
+    private final Map<String, WifiRecordWrapper> latestWifiRecords = new HashMap<>();
+
+    /**
+     * The Bluetooth Classic discovery results that are waiting to be merged with the next BLE batch report, keyed by
+     * the device address. Guarded by {@link #bluetoothClassicResultsLock}.
+     */
+    private Map<String, MergedBluetoothResult> pendingBluetoothClassicResults = new LinkedHashMap<>();
+    private final RecordSampler bluetoothRecordSampler = new RecordSampler();
+    private volatile int bluetoothMaxRecordsPerScan;
+
     private int gnssRecordNumber = 1;
     private int gnssGroupNumber = 0; // This will be incremented to 1 the first time it is used.
 
@@ -156,15 +178,18 @@ public class SurveyRecordProcessor
      * Creates a new processor that can consume the raw survey records in Android format and convert them to the
      * protobuf defined formats.
      *
-     * @param gpsListener The GPS Listener that is used to retrieve the latest location.
-     * @param deviceId    The Device ID associated with this phone.
-     * @param context     The context that is used to get the app's default shared preferences.
+     * @param gpsListener    The GPS Listener that is used to retrieve the latest location.
+     * @param deviceId       The Device ID associated with this phone.
+     * @param context        The context that is used to get the app's default shared preferences.
+     * @param startupMetrics Notified of each record that is sent out so the time to the first record can be measured.
      */
-    SurveyRecordProcessor(GpsListener gpsListener, String deviceId, Context context, ExecutorService executorService)
+    SurveyRecordProcessor(GpsListener gpsListener, String deviceId, Context context, ExecutorService executorService,
+                          StartupMetrics startupMetrics)
     {
         this.gpsListener = gpsListener;
         this.deviceId = deviceId;
         this.executorService = executorService;
+        this.startupMetrics = startupMetrics;
         this.context = context;
 
         missionId = MISSION_ID_PREFIX + deviceId + " " + DATE_TIME_FORMATTER.format(LocalDateTime.now());
@@ -376,16 +401,18 @@ public class SurveyRecordProcessor
     /**
      * Notification for when a new set of Wi-Fi scan results are available to process.
      *
-     * @param apScanResults The list of results coming from the Android wifi scanning API.
+     * @param apScanResults    The list of results coming from the Android wifi scanning API.
+     * @param newApScanResults The results from the list that have not been processed before (i.e. the AP was seen
+     *                         again since the last time the results were processed).
      * @since 0.1.2
      */
-    void onWifiScanUpdate(List<ScanResult> apScanResults)
+    void onWifiScanUpdate(List<ScanResult> apScanResults, List<ScanResult> newApScanResults)
     {
         /*Timber.v("SCAN RESULTS:");
         apScanResults.forEach(scanResult -> Timber.v(scanResult.toString()));
         Timber.v("");*/
 
-        execute(() -> processAccessPoints(apScanResults));
+        execute(() -> processAccessPoints(apScanResults, newApScanResults));
     }
 
     /**
@@ -426,6 +453,17 @@ public class SurveyRecordProcessor
         execute(() -> processBluetoothResults(results));
     }
 
+    /**
+     * Notification that a Bluetooth Classic discovery finished (or Bluetooth scanning was stopped), so any discovery
+     * results that were not merged into a BLE batch report yet should be processed now.
+     *
+     * @since 1.10.0
+     */
+    void onBluetoothClassicDiscoveryFinished()
+    {
+        execute(() -> processBluetoothResults(Collections.emptyList()));
+    }
+
     /**
      * Notification for when the latest set of GNSS measurements are available to process.
      *
@@ -549,6 +587,18 @@ public class SurveyRecordProcessor
         gnssScanRateMs = gnssScanIntervalMs;
     }
 
+    /**
+     * Sets the maximum number of Bluetooth records to create from each BLE batch report. At very high device
+     * densities a scan can produce more records than the loggers and uplinks can keep up with.
+     *
+     * @param maxRecordsPerScan The maximum number of records per scan, or 0 for no limit.
+     * @since 1.10.0
+     */
+    void setBluetoothMaxRecordsPerScan(int maxRecordsPerScan)
+    {
+        bluetoothMaxRecordsPerScan = maxRecordsPerScan;
+    }
+
     /**
      * Given a {@link CellInfo} record, convert it to the appropriate ProtoBuf defined message.  Then, notify any
      * listeners so it can be written to a log file and/or sent to any servers if those services are enabled.
@@ -610,20 +660,52 @@ public class SurveyRecordProcessor
 
     /**
      * Given a group of 802.11 scan results, create the protobuf objects from it and notify any listeners.
+     * <p>
+     * A record is only generated for the new results. The APs that were not seen again keep the record from the last
+     * time they were processed, so the listeners get the full list by default, and the listeners that opted in to
+     * only the new records (see {@link IWifiSurveyRecordListener#isOnlyNewAccessPointsWanted()}), which are the
+     * GeoPackage logger and the MQTT and gRPC uplinks, only get the new records.
      *
-     * @param apScanResults The list of Scan Results.
+     * @param apScanResults    The list of Scan Results.
+     * @param newApScanResults The results from the list that have not been processed before.
      * @since 0.1.2
      */
-    private void processAccessPoints(List<ScanResult> apScanResults)
+    private void processAccessPoints(List<ScanResult> apScanResults, List<ScanResult> newApScanResults)
     {
-        final List<WifiRecordWrapper> wifiBeaconRecords = apScanResults.stream()
-                .map(this::generateWiFiBeaconSurveyRecord)
-                .collect(Collectors.toList());
-        notifyWifiBeaconRecordListeners(wifiBeaconRecords);
+        final Set<ScanResult> newResults = Collections.newSetFromMap(new IdentityHashMap<>());
+        newResults.addAll(newApScanResults);
+
+        final List<WifiRecordWrapper> allRecords = new ArrayList<>(apScanResults.size());
+        final List<WifiRecordWrapper> newRecords = new ArrayList<>(newApScanResults.size());
+        synchronized (latestWifiRecords)
+        {
+            final Map<String, WifiRecordWrapper> currentRecords = new HashMap<>();
+            for (ScanResult result : apScanResults)
+            {
+                WifiRecordWrapper record = newResults.contains(result) ? null : latestWifiRecords.get(result.BSSID);
+                if (record == null)
+                {
+                    record = generateWiFiBeaconSurveyRecord(result);
+                    if (record == null) continue;
+                    newRecords.add(record);
+                }
+
+                allRecords.add(record);
+                currentRecords.put(result.BSSID, record);
+            }
+
+            // Only keep the APs in the latest results so that the map does not grow during a long survey
+            latestWifiRecords.clear();
+            latestWifiRecords.putAll(currentRecords);
+        }
+
+        notifyWifiBeaconRecordListeners(allRecords, newRecords);
     }
 
     /**
-     * Given a Bluetooth classic scan result, create the protobuf objects from it and notify any listeners.
+     * Given a Bluetooth classic scan result, hold on to it so that it can be merged with the BLE sightings of the same
+     * device in the next BLE batch report. Discovery often finds the same devices as the BLE scanner, so this avoids
+     * logging a separate record for each. The held results are processed no later than when the discovery finishes.
      *
      * @param device The Bluetooth device object associated with the scan.
      * @param rssi   The RSSI value associated with the scan.
@@ -631,7 +713,14 @@ public class SurveyRecordProcessor
      */
     private void processBluetoothClassicResult(BluetoothDevice device, int rssi)
     {
-        notifyBluetoothRecordListeners(generateBluetoothSurveyRecord(device, rssi, UNSET_TX_POWER_LEVEL));
+        final String address = device.getAddress();
+        if (!validateBluetoothFields(address)) return;
+
+        synchronized (bluetoothClassicResultsLock)
+        {
+            pendingBluetoothClassicResults.computeIfAbsent(address, key -> new MergedBluetoothResult())
+                    .add(device, rssi, UNSET_TX_POWER_LEVEL);
+        }
     }
 
     /**
@@ -647,15 +736,56 @@ public class SurveyRecordProcessor
 
     /**
      * Given a group of Bluetooth scan results, create the protobuf objects from it and notify any listeners.
+     * <p>
+     * A batch report holds every advertisement seen since the last report, so the same device can show up many times.
+     * All the sightings of a device (including any held Bluetooth Classic discovery results) are merged into one record
+     * per address. The record's signal strength is the max RSSI, and the mean RSSI and sample count are sent to the
+     * listeners on the record's {@link SurveyRecordEnvelope} as a {@link BluetoothSignalStats}.
+     * <p>
+     * If there are more devices than the Bluetooth max records per scan, then only the strongest devices and a random
+     * sample of the rest are kept (see {@link RecordSampler}), and the number that were left out is recorded in the
+     * stats of each record that was kept.
      *
      * @param results The list of Scan Results.
      * @since 1.0.0
      */
     private void processBluetoothResults(List<android.bluetooth.le.ScanResult> results)
     {
-        final List<BluetoothRecord> bluetoothRecords = results.stream()
-                .map(this::generateBluetoothSurveyRecord)
-                .collect(Collectors.toList());
+        final Map<String, MergedBluetoothResult> mergedResults;
+        synchronized (bluetoothClassicResultsLock)
+        {
+            mergedResults = pendingBluetoothClassicResults;
+            pendingBluetoothClassicResults = new LinkedHashMap<>();
+        }
+
+        for (android.bluetooth.le.ScanResult result : results)
+        {
+            final BluetoothDevice device = result.getDevice();
+            final String address = device.getAddress();
+            if (!validateBluetoothFields(address)) continue;
+
+            mergedResults.computeIfAbsent(address, key -> new MergedBluetoothResult())
+                    .add(device, result.getRssi(), result.getTxPower());
+        }
+
+        final List<MergedBluetoothResult> keptResults = bluetoothRecordSampler.select(new ArrayList<>(mergedResults.values()),
+                bluetoothMaxRecordsPerScan, mergedResult -> mergedResult.stats.getMaxRssi());
+        final int suppressedCount = mergedResults.size() - keptResults.size();
+        if (suppressedCount > 0)
+        {
+            Timber.d("Keeping %d of the %d Bluetooth devices in the scan", keptResults.size(), mergedResults.size());
+        }
+
+        final List<SurveyRecordEnvelope<BluetoothRecord>> bluetoothRecords = new ArrayList<>(keptResults.size());
+        for (MergedBluetoothResult mergedResult : keptResults)
+        {
+            final BluetoothSignalStats stats = mergedResult.stats;
+            stats.setScanSuppressedCount(suppressedCount);
+            final BluetoothRecord record = generateBluetoothSurveyRecord(mergedResult.device, stats.getMaxRssi(),
+                    stats.hasTxPower() ? stats.getTxPower() : UNSET_TX_POWER_LEVEL);
+            if (record != null) bluetoothRecords.add(new SurveyRecordEnvelope<>(record, stats));
+        }
+
         notifyBluetoothRecordListeners(bluetoothRecords);
     }
 
@@ -1705,11 +1835,13 @@ public class SurveyRecordProcessor
     private void notifyGsmRecordListeners(GsmRecord gsmRecord)
     {
         if (gsmRecord == null) return;
+        final SurveyRecordEnvelope<GsmRecord> envelope = new SurveyRecordEnvelope<>(gsmRecord);
+
         for (ICellularSurveyRecordListener listener : cellularSurveyRecordListeners)
         {
             try
             {
-                listener.onGsmSurveyRecord(gsmRecord);
+                listener.onGsmSurveyRecordEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Cellular Survey Record Listener because of an exception");
@@ -1725,11 +1857,13 @@ public class SurveyRecordProcessor
     private void notifyCdmaRecordListeners(CdmaRecord cdmaRecord)
     {
         if (cdmaRecord == null) return;
+        final SurveyRecordEnvelope<CdmaRecord> envelope = new SurveyRecordEnvelope<>(cdmaRecord);
+
         for (ICellularSurveyRecordListener listener : cellularSurveyRecordListeners)
         {
             try
             {
-                listener.onCdmaSurveyRecord(cdmaRecord);
+                listener.onCdmaSurveyRecordEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Cellular Survey Record Listener because of an exception");
@@ -1745,11 +1879,13 @@ public class SurveyRecordProcessor
     private void notifyUmtsRecordListeners(UmtsRecord umtsRecord)
     {
         if (umtsRecord == null) return;
+        final SurveyRecordEnvelope<UmtsRecord> envelope = new SurveyRecordEnvelope<>(umtsRecord);
+
         for (ICellularSurveyRecordListener listener : cellularSurveyRecordListeners)
         {
             try
             {
-                listener.onUmtsSurveyRecord(umtsRecord);
+                listener.onUmtsSurveyRecordEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Cellular Survey Record Listener because of an exception");
@@ -1765,11 +1901,13 @@ public class SurveyRecordProcessor
     private void notifyLteRecordListeners(LteRecord lteRecord)
     {
         if (lteRecord == null) return;
+        final SurveyRecordEnvelope<LteRecord> envelope = new SurveyRecordEnvelope<>(lteRecord);
+
         for (ICellularSurveyRecordListener listener : cellularSurveyRecordListeners)
         {
             try
             {
-                listener.onLteSurveyRecord(lteRecord);
+                listener.onLteSurveyRecordEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Cellular Survey Record Listener because of an exception");
@@ -1786,11 +1924,12 @@ public class SurveyRecordProcessor
     private void notifyNrRecordListeners(NrRecord nrRecord)
     {
         if (nrRecord == null) return;
+        final SurveyRecordEnvelope<NrRecord> envelope = new SurveyRecordEnvelope<>(nrRecord);
 
         cellularSurveyRecordListeners.forEach(l -> {
             try
             {
-                l.onNrSurveyRecord(nrRecord);
+                l.onNrSurveyRecordEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Cellular Survey Record Listener because of an exception");
@@ -1808,6 +1947,8 @@ public class SurveyRecordProcessor
      */
     private void notifyCellularListeners(List<CellularRecordWrapper> cellularRecords)
     {
+        if (!cellularRecords.isEmpty()) startupMetrics.onRecord("cellular");
+
         cellularSurveyRecordListeners.forEach(l -> {
             try
             {
@@ -1842,15 +1983,20 @@ public class SurveyRecordProcessor
     /**
      * Notify all the listeners that we have a new group of 802.11 Beacon Records available.
      *
-     * @param wifiBeaconRecords The new list 802.11 Beacon Survey Records to send to the listeners.
+     * @param allRecords The 802.11 Beacon Survey Records for every AP in the latest scan results.
+     * @param newRecords The records from {@code allRecords} that were generated for new scan results.
      * @since 0.1.2
      */
-    private void notifyWifiBeaconRecordListeners(List<WifiRecordWrapper> wifiBeaconRecords)
+    private void notifyWifiBeaconRecordListeners(List<WifiRecordWrapper> allRecords, List<WifiRecordWrapper> newRecords)
     {
-        if (wifiBeaconRecords == null || wifiBeaconRecords.isEmpty()) return;
+        if (allRecords.isEmpty()) return;
+        if (!newRecords.isEmpty()) startupMetrics.onRecord("Wi-Fi");
 
         for (IWifiSurveyRecordListener listener : wifiSurveyRecordListeners)
         {
+            final List<WifiRecordWrapper> wifiBeaconRecords = listener.isOnlyNewAccessPointsWanted() ? newRecords : allRecords;
+            if (wifiBeaconRecords.isEmpty()) continue;
+
             try
             {
                 listener.onWifiBeaconSurveyRecords(wifiBeaconRecords);
@@ -1870,12 +2016,14 @@ public class SurveyRecordProcessor
     private void notifyBluetoothRecordListeners(BluetoothRecord bluetoothRecord)
     {
         if (bluetoothRecord == null) return;
+        final SurveyRecordEnvelope<BluetoothRecord> envelope = new SurveyRecordEnvelope<>(bluetoothRecord);
+        startupMetrics.onRecord("Bluetooth");
 
         for (IBluetoothSurveyRecordListener listener : bluetoothSurveyRecordListeners)
         {
             try
             {
-                listener.onBluetoothSurveyRecord(bluetoothRecord);
+                listener.onBluetoothSurveyRecordEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Bluetooth Survey Record Listener because of an exception");
@@ -1886,18 +2034,19 @@ public class SurveyRecordProcessor
     /**
      * Notify all the listeners that we have a new group of Bluetooth Records available.
      *
-     * @param bluetoothRecords The new list Bluetooth Survey Records to send to the listeners.
+     * @param bluetoothRecords The envelopes for the new list Bluetooth Survey Records to send to the listeners.
      * @since 1.0.0
      */
-    private void notifyBluetoothRecordListeners(List<BluetoothRecord> bluetoothRecords)
+    private void notifyBluetoothRecordListeners(List<SurveyRecordEnvelope<BluetoothRecord>> bluetoothRecords)
     {
         if (bluetoothRecords == null || bluetoothRecords.isEmpty()) return;
+        startupMetrics.onRecord("Bluetooth");
 
         for (IBluetoothSurveyRecordListener listener : bluetoothSurveyRecordListeners)
         {
             try
             {
-                listener.onBluetoothSurveyRecords(bluetoothRecords);
+                listener.onBluetoothSurveyRecordEnvelopes(bluetoothRecords);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Bluetooth Survey Record Listener because of an exception");
@@ -1914,11 +2063,14 @@ public class SurveyRecordProcessor
     private void notifyGnssRecordListeners(GnssRecord gnssRecord)
     {
         if (gnssRecord == null) return;
+        final SurveyRecordEnvelope<GnssRecord> envelope = new SurveyRecordEnvelope<>(gnssRecord);
+        startupMetrics.onRecord("GNSS");
+
         for (IGnssSurveyRecordListener listener : gnssSurveyRecordListeners)
         {
             try
             {
-                listener.onGnssSurveyRecord(gnssRecord);
+                listener.onGnssSurveyRecordEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a GNSS Survey Record Listener because of an exception");
@@ -1935,11 +2087,14 @@ public class SurveyRecordProcessor
     private void notifyDeviceStatusListeners(DeviceStatus deviceStatus)
     {
         if (deviceStatus == null) return;
+        final SurveyRecordEnvelope<DeviceStatus> envelope = new SurveyRecordEnvelope<>(deviceStatus);
+        startupMetrics.onRecord("device status");
+
         for (IDeviceStatusListener listener : deviceStatusListeners)
         {
             try
             {
-                listener.onDeviceStatus(deviceStatus);
+                listener.onDeviceStatusEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Device Status Listener because of an exception");
@@ -1956,15 +2111,34 @@ public class SurveyRecordProcessor
     private void notifyPhoneStateListeners(PhoneState phoneState)
     {
         if (phoneState == null) return;
+        final SurveyRecordEnvelope<PhoneState> envelope = new SurveyRecordEnvelope<>(phoneState);
+        startupMetrics.onRecord("phone state");
+
         for (IDeviceStatusListener listener : deviceStatusListeners)
         {
             try
             {
-                listener.onPhoneState(phoneState);
+                listener.onPhoneStateEnvelope(envelope);
             } catch (Exception e)
             {
                 Timber.e(e, "Unable to notify a Phone State Listener because of an exception");
             }
         }
     }
+
+    /**
+     * All the sightings of one Bluetooth device in a scan report.
+     */
+    private static final class MergedBluetoothResult
+    {
+        private final BluetoothSignalStats stats = new BluetoothSignalStats();
+        private BluetoothDevice device;
+
+        private void add(BluetoothDevice device, int rssi, int txPowerLevel)
+        {
+            this.device = device;
+            stats.addRssi(rssi);
+            if (txPowerLevel != UNSET_TX_POWER_LEVEL) stats.setTxPower(txPowerLevel);
+        }
+    }
 }
@@ -0,0 +1,176 @@
+package com.craxiom.networksurvey.services;
+
+import timber.log.Timber;
+
+/**
+ * Keeps the active Wi-Fi scan requests within the Android scan throttle so that no scan request is rejected. As of
+ * Android 9, a foreground app can only start 4 scans in a 2 minute window; any request after that fails and returns no
+ * new results. Instead of finding out after the fact, the scans are budgeted: once the budget for the window is used
+ * up, the next scan is delayed until the oldest scan in the window ages out.
+ * <p>
+ * Scan results that were triggered by the system or by other apps are also delivered to this app. If such passive
+ * results arrived recently, the active scan is skipped so that the budget is saved for when it is needed.
+ * <p>
+ * All the times are in milliseconds and must come from the same monotonic clock.
+ *
+ * @since 1.10.0
+ */
+public class WifiScanBudget
+{
+    /**
+     * The number of scans allowed in the throttle window for a foreground app.
+     */
+    public static final int MAX_SCANS_PER_WINDOW = 4;
+    public static final long THROTTLE_WINDOW_MS = 120_000;
+
+    private final int maxScans;
+    private final long windowMs;
+
+    // Guarded by this
+    private final long[] scanRequestTimes;
+    private int nextScanIndex;
+    private int scanRequestCount;
+    private boolean throttled;
+    private boolean scanPending;
+    private long lastPassiveResultsTime = Long.MIN_VALUE;
+
+    private long activeScans;
+    private long failedScans;
+    private long passiveResults;
+    private long scansSkippedForBudget;
+    private long scansSkippedForPassiveResults;
+
+    public WifiScanBudget()
+    {
+        this(MAX_SCANS_PER_WINDOW, THROTTLE_WINDOW_MS);
+    }
+
+    WifiScanBudget(int maxScans, long windowMs)
+    {
+        this.maxScans = maxScans;
+        this.windowMs = windowMs;
+        scanRequestTimes = new long[maxScans];
+    }
+
+    /**
+     * Sets whether the scans need to be budgeted. Until this is called the scans are not budgeted (and the UI does not
+     * report throttling), since it is not known yet.
+     *
+     * @param throttled True if the Android OS is throttling the Wi-Fi scans, false if throttling is disabled (e.g. from
+     *                  the developer options, or because the Android version is older than 9).
+     */
+    public synchronized void setThrottled(boolean throttled)
+    {
+        this.throttled = throttled;
+    }
+
+    public synchronized boolean isThrottled()
+    {
+        return throttled;
+    }
+
+    /**
+     * Decides if an active scan should be started now, and if so, counts it against the budget.
+     *
+     * @param now        The current time.
+     * @param intervalMs The configured time between scans. If passive results arrived in the last half of this
+     *                   interval, then they are fresh enough and the active scan is skipped.
+     * @return True if the caller should start a scan, false if it should be skipped.
+     */
+    public synchronized boolean tryAcquire(long now, long intervalMs)
+    {
+        if (lastPassiveResultsTime != Long.MIN_VALUE && now - lastPassiveResultsTime < intervalMs / 2)
+        {
+            scansSkippedForPassiveResults++;
+            return false;
+        }
+
+        if (getDelayUntilAvailableMs(now) > 0)
+        {
+            scansSkippedForBudget++;
+            return false;
+        }
+
+        scanRequestTimes[nextScanIndex] = now;
+        nextScanIndex = (nextScanIndex + 1) % maxScans;
+        if (scanRequestCount < maxScans) scanRequestCount++;
+
+        activeScans++;
+        scanPending = true;
+        return true;
+    }
+
+    /**
+     * Records that the Android OS rejected a scan request, which means the budget is out of sync with the OS (e.g.
+     * another component of this app also requested a scan). The rejected request still counts against the budget.
+     */
+    public synchronized void onScanFailed()
+    {
+        failedScans++;
+        scanPending = false;
+    }
+
+    /**
+     * Records that a new set of scan results was delivered.
+     *
+     * @param now            The current time.
+     * @param resultsUpdated The value of the results updated flag from the scan results broadcast, which is true if a
+     *                       scan completed successfully.
+     */
+    public synchronized void onScanResults(long now, boolean resultsUpdated)
+    {
+        if (scanPending && resultsUpdated)
+        {
+            // These are the results from our own scan
+            scanPending = false;
+            return;
+        }
+
+        passiveResults++;
+        if (resultsUpdated) lastPassiveResultsTime = now;
+    }
+
+    /**
+     * @return The time until another scan can be started without going over the budget, or 0 if a scan can be started
+     * now.
+     */
+    public synchronized long getDelayUntilAvailableMs(long now)
+    {
+        if (!throttled || scanRequestCount < maxScans) return 0;
+
+        // The oldest request in the window is the one that will be overwritten next
+        final long oldestRequestTime = scanRequestTimes[nextScanIndex];
+        return Math.max(0, oldestRequestTime + windowMs - now);
+    }
+
+    public synchronized long getActiveScans()
+    {
+        return activeScans;
+    }
+
+    public synchronized long getFailedScans()
+    {
+        return failedScans;
+    }
+
+    public synchronized long getPassiveResults()
+    {
+        return passiveResults;
+    }
+
+    public synchronized long getScansSkippedForBudget()
+    {
+        return scansSkippedForBudget;
+    }
+
+    public synchronized long getScansSkippedForPassiveResults()
+    {
+        return scansSkippedForPassiveResults;
+    }
+
+    synchronized void log()
+    {
+        Timber.i("Wi-Fi scan budget stats: throttled=%b, active scans=%d, failed=%d, passive results=%d, skipped for budget=%d, skipped for passive results=%d",
+                throttled, activeScans, failedScans, passiveResults, scansSkippedForBudget, scansSkippedForPassiveResults);
+    }
+}
@@ -17,6 +17,9 @@ package com.craxiom.networksurvey.util;
 
 import com.craxiom.networksurvey.model.GnssType;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Originally from the GPS Test open source Android app.  https://github.com/barbeau/gpstest
  */
@@ -27,6 +30,25 @@ public class CarrierFreqUtils
      */
     public static final String CF_UNKNOWN = "unknown";
 
+    /**
+     * The band index for a carrier frequency that doesn't match any known frequencies.
+     *
+     * @since 1.10.0
+     */
+    public static final int BAND_UNKNOWN = 0;
+
+    private static final int BAND_TABLE_MIN_MHZ = 1100;
+    private static final int BAND_TABLE_MAX_MHZ = 2600;
+    // Any SBAS svid with both L1 and L5 works here since the band index does not depend on which SBAS system it is
+    private static final int SBAS_BAND_TABLE_SVID = 120;
+
+    /**
+     * The band index for each whole MHz from {@link #BAND_TABLE_MIN_MHZ} to {@link #BAND_TABLE_MAX_MHZ}, indexed by
+     * the {@link GnssType} ordinal. It is built once from {@link #getCarrierFrequencyLabel(GnssType, int, float)} so
+     * that finding the band for a measurement is an array lookup instead of a series of float comparisons.
+     */
+    private static final byte[][] BAND_TABLE = createBandTable();
+
     /**
      * Returns the label that should be displayed for a given GNSS constellation, svid, and carrier
      * frequency in MHz, or {@link #CF_UNKNOWN} if no carrier frequency label is found
@@ -212,4 +234,55 @@ public class CarrierFreqUtils
         // Unknown carrier frequency for given constellation and svid
         return CF_UNKNOWN;
     }
+
+    /**
+     * Returns a small index that identifies the band of a carrier frequency within a GNSS constellation. Each index
+     * corresponds to one of the labels returned from {@link #getCarrierFrequencyLabel(GnssType, int, float)} for the
+     * constellation, which makes it suitable for use in a numeric key. No objects are allocated by this method.
+     * <p>
+     * The frequency is rounded to the nearest MHz before looking up the band. All the nominal carrier frequencies are
+     * well inside the 1 MHz tolerance used for the labels, so the rounding only matters for frequencies that are
+     * right on the edge of that tolerance.
+     *
+     * @param gnssType           constellation type defined in GnssType
+     * @param carrierFrequencyHz carrier frequency for the signal in Hz
+     * @return The band index, or {@link #BAND_UNKNOWN} if the frequency does not match a known band for the
+     * constellation. The index is always less than 256.
+     * @since 1.10.0
+     */
+    public static int getCarrierFrequencyBand(GnssType gnssType, float carrierFrequencyHz)
+    {
+        final int mhz = Math.round(MathUtils.toMhz(carrierFrequencyHz));
+        if (mhz < BAND_TABLE_MIN_MHZ || mhz > BAND_TABLE_MAX_MHZ) return BAND_UNKNOWN;
+
+        return BAND_TABLE[gnssType.ordinal()][mhz - BAND_TABLE_MIN_MHZ];
+    }
+
+    private static byte[][] createBandTable()
+    {
+        final GnssType[] gnssTypes = GnssType.values();
+        final byte[][] bandTable = new byte[gnssTypes.length][BAND_TABLE_MAX_MHZ - BAND_TABLE_MIN_MHZ + 1];
+
+        for (GnssType gnssType : gnssTypes)
+        {
+            final int svid = gnssType == GnssType.SBAS ? SBAS_BAND_TABLE_SVID : 0;
+            final List<String> labels = new ArrayList<>();
+            labels.add(CF_UNKNOWN); // Puts CF_UNKNOWN at BAND_UNKNOWN
+
+            final byte[] bands = bandTable[gnssType.ordinal()];
+            for (int mhz = BAND_TABLE_MIN_MHZ; mhz <= BAND_TABLE_MAX_MHZ; mhz++)
+            {
+                final String label = getCarrierFrequencyLabel(gnssType, svid, mhz);
+                int band = labels.indexOf(label);
+                if (band == -1)
+                {
+                    band = labels.size();
+                    labels.add(label);
+                }
+                bands[mhz - BAND_TABLE_MIN_MHZ] = (byte) band;
+            }
+        }
+
+        return bandTable;
+    }
 }
@@ -0,0 +1,245 @@
+package com.craxiom.networksurvey.util;
+
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import timber.log.Timber;
+
+/**
+ * The one place where the background threads for this app are created. Before this, each component created its own
+ * pools (e.g. 8 threads for the survey service and 7 more for the gRPC connection), so a survey with a few outputs
+ * enabled ran far more busy threads than a low end phone has cores, and they all competed at the same priority as the
+ * scans.
+ * <p>
+ * Each kind of work has a {@link Role} with its own small named pool, sized from the number of cores and run at a
+ * priority that fits the work. The pools live for the whole process, so components must not shut them down; they cancel
+ * their own tasks instead. Work that blocks for a long time (e.g. a gRPC stream) gets a dedicated pool or thread from
+ * here so that it does not hold up the shared pools, but is still named and shows up in the stats.
+ *
+ * @since 1.10.0
+ */
+public class ExecutorRegistry
+{
+    /**
+     * The kinds of background work, each with its own pool.
+     */
+    public enum Role
+    {
+        /**
+         * Receives the callbacks from the Android scan APIs. The callbacks only hand the results off, so one thread at
+         * the default priority keeps them from being delayed by the rest of the work.
+         */
+        SCAN_CALLBACK("ns-scan-callback", Process.THREAD_PRIORITY_DEFAULT),
+        /**
+         * Converts the scan results into survey records and sends them to the listeners.
+         */
+        CONVERSION("ns-conversion", Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE),
+        /**
+         * File work such as opening and closing the log files.
+         */
+        DISK("ns-disk", Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Publishing and connection work for the MQTT and gRPC outputs.
+         */
+        NETWORK("ns-network", Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Preparing data for the UI off of the main thread.
+         */
+        UI_PREPROCESSING("ns-ui-preprocessing", Process.THREAD_PRIORITY_DEFAULT);
+
+        private final String threadName;
+        private final int threadPriority;
+
+        Role(String threadName, int threadPriority)
+        {
+            this.threadName = threadName;
+            this.threadPriority = threadPriority;
+        }
+
+        public String getThreadName()
+        {
+            return threadName;
+        }
+
+        public int getThreadPriority()
+        {
+            return threadPriority;
+        }
+    }
+
+    private static ExecutorRegistry instance;
+
+    private final int coreCount;
+    private final IntConsumer prioritySetter;
+
+    // Guarded by this
+    private final Map<Role, MonitoredExecutor> rolePools = new EnumMap<>(Role.class);
+    private final Map<String, MonitoredExecutor> dedicatedPools = new LinkedHashMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * Creates a registry with its own pools. The app uses the shared {@link #getInstance()}; this is for the code that
+     * runs off of a device (e.g. the JVM unit tests), where {@link Process} is not available.
+     *
+     * @param prioritySetter Sets the priority of the calling thread, which each new thread calls with its role's
+     *                       priority.
+     */
+    public ExecutorRegistry(IntConsumer prioritySetter)
+    {
+        coreCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.prioritySetter = prioritySetter;
+    }
+
+    public static synchronized ExecutorRegistry getInstance()
+    {
+        if (instance == null) instance = new ExecutorRegistry(Process::setThreadPriority);
+        return instance;
+    }
+
+    /**
+     * @return The shared pool for the role, which is created the first time it is needed.
+     */
+    public synchronized MonitoredExecutor getExecutor(Role role)
+    {
+        MonitoredExecutor executor = rolePools.get(role);
+        if (executor == null)
+        {
+            final int threadCount = getThreadCount(role, coreCount);
+            executor = new MonitoredExecutor(role.getThreadName(), threadCount, new NamedThreadFactory(role.getThreadName(), role.getThreadPriority(), prioritySetter));
+            rolePools.put(role, executor);
+            Timber.i("Created the %s pool with %d threads for %d cores", role.getThreadName(), threadCount, coreCount);
+        }
+        return executor;
+    }
+
+    /**
+     * Gets a pool for work that blocks its threads for a long time, so that it would starve a shared pool. The pool is
+     * created the first time the name is used, and the same pool is returned for the same name after that, so a
+     * component that is created again does not leak another pool.
+     *
+     * @param name        The name of the pool, which is also used for its threads.
+     * @param threadCount The number of threads in the pool.
+     * @param role        The role to take the thread priority from.
+     */
+    public synchronized MonitoredExecutor getDedicatedExecutor(String name, int threadCount, Role role)
+    {
+        MonitoredExecutor executor = dedicatedPools.get(name);
+        if (executor == null)
+        {
+            executor = new MonitoredExecutor(name, threadCount, new NamedThreadFactory(name, role.getThreadPriority(), prioritySetter));
+            dedicatedPools.put(name, executor);
+            Timber.i("Created the dedicated %s pool with %d threads", name, threadCount);
+        }
+        return executor;
+    }
+
+    /**
+     * Creates a named thread for a single long running job, at the priority of the role. The thread is not started.
+     */
+    public Thread newThread(String name, Role role, Runnable runnable)
+    {
+        final Thread thread = new NamedThreadFactory(name, role.getThreadPriority(), prioritySetter).newThread(runnable);
+        thread.setName(name);
+        trackThread(thread);
+        return thread;
+    }
+
+    /**
+     * Creates a handler thread at the priority of the role. The thread is not started.
+     */
+    public HandlerThread newHandlerThread(String name, Role role)
+    {
+        final HandlerThread handlerThread = new HandlerThread(name, role.getThreadPriority());
+        trackThread(handlerThread);
+        return handlerThread;
+    }
+
+    /**
+     * @return The stats for all the pools since the last call to this method, with the shared pools first.
+     */
+    public synchronized List<MonitoredExecutor.Stats> takeStats()
+    {
+        final List<MonitoredExecutor.Stats> stats = new ArrayList<>();
+        for (MonitoredExecutor executor : rolePools.values()) stats.add(executor.takeStats());
+        for (MonitoredExecutor executor : dedicatedPools.values()) stats.add(executor.takeStats());
+        return stats;
+    }
+
+    /**
+     * @return The names of the single threads and handler threads that are still alive.
+     */
+    public synchronized List<String> getLiveThreadNames()
+    {
+        threads.removeIf(thread -> thread.getState() == Thread.State.TERMINATED);
+
+        final List<String> names = new ArrayList<>(threads.size());
+        for (Thread thread : threads) names.add(thread.getName());
+        return names;
+    }
+
+    public synchronized void logStats()
+    {
+        Timber.i("Executor stats (%d cores), threads %s", coreCount, getLiveThreadNames());
+        for (MonitoredExecutor.Stats stats : takeStats()) Timber.i("  %s", stats);
+    }
+
+    private synchronized void trackThread(Thread thread)
+    {
+        threads.removeIf(t -> t.getState() == Thread.State.TERMINATED);
+        threads.add(thread);
+    }
+
+    /**
+     * Sizes the shared pool for a role. Only conversion work is CPU bound enough to use more than one thread, and it
+     * leaves a core free for the main thread and the scan callbacks.
+     */
+    static int getThreadCount(Role role, int coreCount)
+    {
+        switch (role)
+        {
+            case CONVERSION:
+                return Math.max(1, Math.min(4, coreCount - 1));
+            case NETWORK:
+                return coreCount >= 4 ? 2 : 1;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Creates threads with a name and an Android thread priority. The priority has to be set from the new thread
+     * itself.
+     */
+    private static class NamedThreadFactory implements ThreadFactory
+    {
+        private final String name;
+        private final int priority;
+        private final IntConsumer prioritySetter;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(String name, int priority, IntConsumer prioritySetter)
+        {
+            this.name = name;
+            this.priority = priority;
+            this.prioritySetter = prioritySetter;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            return new Thread(() -> {
+                prioritySetter.accept(priority);
+                runnable.run();
+            }, name + "-" + threadNumber.getAndIncrement());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.craxiom.networksurvey.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * A scheduled thread pool with a fixed number of threads that keeps track of how long its tasks wait and run, so that
+ * an overloaded pool shows up in the stats instead of only as records that arrive late.
+ * <p>
+ * The queue latency of a task is the time between when it was supposed to start (right away for a task that was
+ * submitted with no delay) and when a thread actually started it.
+ *
+ * @since 1.10.0
+ */
+public class MonitoredExecutor extends ScheduledThreadPoolExecutor
+{
+    private final String name;
+    private final int threadCount;
+    // The start time and queue latency of the task that is running on the current thread
+    private final ThreadLocal<long[]> currentTask = new ThreadLocal<>();
+
+    // Guarded by this
+    private long taskCount;
+    private long totalQueueLatencyNanos;
+    private long maxQueueLatencyNanos;
+    private long totalRunTimeNanos;
+    private long maxRunTimeNanos;
+
+    /**
+     * @param name          The name of the pool to use in the stats.
+     * @param threadCount   The number of threads in the pool.
+     * @param threadFactory Creates the threads for the pool.
+     */
+    public MonitoredExecutor(String name, int threadCount, ThreadFactory threadFactory)
+    {
+        super(threadCount, threadFactory);
+        this.name = name;
+        this.threadCount = threadCount;
+
+        // Cancelled periodic tasks (e.g. a scan that was stopped) should not sit in the queue and count as queue depth
+        setRemoveOnCancelPolicy(true);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getThreadCount()
+    {
+        return threadCount;
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable)
+    {
+        super.beforeExecute(thread, runnable);
+
+        // The delay is negative once the start time has passed, so it is how late the task is starting
+        final long latencyNanos = runnable instanceof Delayed ?
+                Math.max(0, -((Delayed) runnable).getDelay(TimeUnit.NANOSECONDS)) : 0;
+        currentTask.set(new long[]{System.nanoTime(), latencyNanos});
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable)
+    {
+        super.afterExecute(runnable, throwable);
+
+        logTaskFailure(runnable, throwable);
+
+        final long[] task = currentTask.get();
+        if (task == null) return;
+        currentTask.remove();
+
+        final long runTimeNanos = System.nanoTime() - task[0];
+        final long latencyNanos = task[1];
+        synchronized (this)
+        {
+            taskCount++;
+            totalQueueLatencyNanos += latencyNanos;
+            if (latencyNanos > maxQueueLatencyNanos) maxQueueLatencyNanos = latencyNanos;
+            totalRunTimeNanos += runTimeNanos;
+            if (runTimeNanos > maxRunTimeNanos) maxRunTimeNanos = runTimeNanos;
+        }
+    }
+
+    /**
+     * A scheduled pool catches the exceptions from its tasks and keeps them in the task's future, so a task that fails
+     * would go unnoticed if no one looks at the future. Log them so that they are not lost.
+     */
+    private void logTaskFailure(Runnable runnable, Throwable throwable)
+    {
+        if (throwable == null && runnable instanceof Future && ((Future<?>) runnable).isDone())
+        {
+            try
+            {
+                ((Future<?>) runnable).get();
+            } catch (CancellationException e)
+            {
+                return;
+            } catch (ExecutionException e)
+            {
+                throwable = e.getCause();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (throwable != null) Timber.e(throwable, "A task in the %s pool failed", name);
+    }
+
+    /**
+     * @return A snapshot of the current state of the pool and the task times since the last call to this method.
+     */
+    public synchronized Stats takeStats()
+    {
+        final Stats stats = new Stats(name, threadCount, getReadyQueueDepth(), getActiveCount(), taskCount,
+                taskCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalQueueLatencyNanos / taskCount),
+                TimeUnit.NANOSECONDS.toMicros(maxQueueLatencyNanos),
+                taskCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalRunTimeNanos / taskCount),
+                TimeUnit.NANOSECONDS.toMicros(maxRunTimeNanos));
+
+        taskCount = 0;
+        totalQueueLatencyNanos = 0;
+        maxQueueLatencyNanos = 0;
+        totalRunTimeNanos = 0;
+        maxRunTimeNanos = 0;
+
+        return stats;
+    }
+
+    /**
+     * @return The number of tasks that are due to run but are waiting for a thread. Tasks scheduled for later, such as
+     * the next run of a periodic task, are not counted.
+     */
+    private int getReadyQueueDepth()
+    {
+        int readyCount = 0;
+        for (Runnable runnable : getQueue())
+        {
+            if (!(runnable instanceof Delayed) || ((Delayed) runnable).getDelay(TimeUnit.NANOSECONDS) <= 0) readyCount++;
+        }
+        return readyCount;
+    }
+
+    /**
+     * The state of a pool and the times of the tasks it ran over one stats window.
+     */
+    public static class Stats
+    {
+        public final String name;
+        public final int threadCount;
+        public final int queueDepth;
+        public final int activeCount;
+        public final long taskCount;
+        public final long meanQueueLatencyMicros;
+        public final long maxQueueLatencyMicros;
+        public final long meanRunTimeMicros;
+        public final long maxRunTimeMicros;
+
+        Stats(String name, int threadCount, int queueDepth, int activeCount, long taskCount, long meanQueueLatencyMicros,
+              long maxQueueLatencyMicros, long meanRunTimeMicros, long maxRunTimeMicros)
+        {
+            this.name = name;
+            this.threadCount = threadCount;
+            this.queueDepth = queueDepth;
+            this.activeCount = activeCount;
+            this.taskCount = taskCount;
+            this.meanQueueLatencyMicros = meanQueueLatencyMicros;
+            this.maxQueueLatencyMicros = maxQueueLatencyMicros;
+            this.meanRunTimeMicros = meanRunTimeMicros;
+            this.maxRunTimeMicros = maxRunTimeMicros;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + ": threads=" + activeCount + "/" + threadCount + ", queued=" + queueDepth
+                    + ", tasks=" + taskCount + ", wait avg/max=" + meanQueueLatencyMicros / 1000 + "/" + maxQueueLatencyMicros / 1000
+                    + " ms, run avg/max=" + meanRunTimeMicros / 1000 + "/" + maxRunTimeMicros / 1000 + " ms";
+        }
+    }
+}
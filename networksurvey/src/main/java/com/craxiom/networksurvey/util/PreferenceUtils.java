@@ -36,6 +36,7 @@ import com.craxiom.networksurvey.Application;
 import com.craxiom.networksurvey.R;
 import com.craxiom.networksurvey.constants.NetworkSurveyConstants;
 import com.craxiom.networksurvey.fragments.model.MqttConnectionSettings;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
 
 import timber.log.Timber;
 
@@ -225,6 +226,201 @@ public class PreferenceUtils
         }
     }
 
+    /**
+     * Gets the preference for if gzip message compression should be used on the gRPC uplink streams.
+     * <p>
+     * First, this method tries to pull the MDM provided value. If it is not set (either because the device is not
+     * under MDM control, or if that specific value is not set by the MDM administrator) then the value is pulled from
+     * the Android Shared Preferences (aka from the user settings). If it is not set there then the default value is
+     * used.
+     * <p>
+     * The only exception to this sequence is that if the user has toggled the MDM override switch in user settings,
+     * then the user preference value will be used instead of the MDM value.
+     *
+     * @param context The context to use when getting the Shared Preferences and Restriction Manager.
+     * @return True if the gRPC messages should be gzip compressed, false otherwise.
+     * @since 1.10.0
+     */
+    public static boolean getGrpcCompressionPreference(Context context)
+    {
+        return getAutoStartPreference(NetworkSurveyConstants.PROPERTY_GRPC_COMPRESSION_ENABLED,
+                NetworkSurveyConstants.DEFAULT_GRPC_COMPRESSION_ENABLED, context);
+    }
+
+    /**
+     * Gets the gRPC batch window preference, which is how long the first queued message is held so that other queued
+     * messages can be written to the gRPC stream along with it. A value of 0 disables batching.
+     * <p>
+     * First, this method tries to pull the MDM provided value. If it is not set (either because the device is not
+     * under MDM control, or if that specific value is not set by the MDM administrator) then the value is pulled from
+     * the Android Shared Preferences (aka from the user settings). If it is not set there then the default value is
+     * used.
+     * <p>
+     * The only exception to this sequence is that if the user has toggled the MDM override switch in user settings,
+     * then the user preference value will be used instead of the MDM value.
+     *
+     * @param context The context to use when getting the Shared Preferences and Restriction Manager.
+     * @return The batch window in milliseconds.
+     * @since 1.10.0
+     */
+    public static int getGrpcBatchWindowPreferenceMs(Context context)
+    {
+        return getNonNegativeIntPreference(NetworkSurveyConstants.PROPERTY_GRPC_BATCH_WINDOW_MS,
+                NetworkSurveyConstants.DEFAULT_GRPC_BATCH_WINDOW_MS, context);
+    }
+
+    /**
+     * Gets the MQTT batch window preference, which is how long the Wi-Fi and Bluetooth records are collected before
+     * they are published as one batch message. A value of 0 publishes one batch message per scan. This value is only
+     * used when batch publishing is enabled for the MQTT connection.
+     * <p>
+     * The MDM provided value is used first, then the user preference, then the default value (the same sequence as
+     * {@link #getGrpcBatchWindowPreferenceMs(Context)}).
+     *
+     * @param context The context to use when getting the Shared Preferences and Restriction Manager.
+     * @return The batch window in milliseconds.
+     * @since 1.10.0
+     */
+    public static int getMqttBatchWindowPreferenceMs(Context context)
+    {
+        return getNonNegativeIntPreference(NetworkSurveyConstants.PROPERTY_MQTT_BATCH_WINDOW_MS,
+                NetworkSurveyConstants.DEFAULT_MQTT_BATCH_WINDOW_MS, context);
+    }
+
+    /**
+     * Gets the maximum number of Bluetooth records to keep from each scan. When a scan has more devices than this, the
+     * strongest ones are kept along with a random sample of the rest. A value of 0 keeps all the records.
+     * <p>
+     * The MDM provided value is used first, then the user preference, then the default value (the same sequence as
+     * {@link #getGrpcBatchWindowPreferenceMs(Context)}).
+     *
+     * @param context The context to use when getting the Shared Preferences and Restriction Manager.
+     * @return The maximum number of Bluetooth records per scan.
+     * @since 1.10.0
+     */
+    public static int getBluetoothMaxRecordsPerScanPreference(Context context)
+    {
+        return getNonNegativeIntPreference(NetworkSurveyConstants.PROPERTY_BLUETOOTH_MAX_RECORDS_PER_SCAN,
+                NetworkSurveyConstants.DEFAULT_BLUETOOTH_MAX_RECORDS_PER_SCAN, context);
+    }
+
+    /**
+     * Gets the adaptive scan spacing preference, which is the distance in meters the device should travel between
+     * cellular and Wi-Fi scans. A value of 0 disables the adaptive scan rate so the fixed scan intervals are used.
+     * <p>
+     * The MDM provided value is used first, then the user preference, then the default value (the same sequence as
+     * {@link #getGrpcBatchWindowPreferenceMs(Context)}).
+     *
+     * @param context The context to use when getting the Shared Preferences and Restriction Manager.
+     * @return The spacing between scans in meters.
+     * @since 1.10.0
+     */
+    public static int getAdaptiveScanSpacingPreferenceMeters(Context context)
+    {
+        return getNonNegativeIntPreference(NetworkSurveyConstants.PROPERTY_ADAPTIVE_SCAN_SPACING_METERS,
+                NetworkSurveyConstants.DEFAULT_ADAPTIVE_SCAN_SPACING_METERS, context);
+    }
+
+    /**
+     * Gets the MQTT topic rate limits setting, which is a comma separated list of
+     * {@code topic:ratePerSecond[:strategy[:burst]]} entries (see {@link com.craxiom.networksurvey.mqtt.MqttTopicRateLimit}).
+     * <p>
+     * The MDM provided value is used first, then the user preference, then the default value of no rate limits.
+     *
+     * @param context The context to use when getting the Shared Preferences and Restriction Manager.
+     * @return The rate limits setting, which might be empty.
+     * @since 1.10.0
+     */
+    public static String getMqttTopicRateLimitsPreference(Context context)
+    {
+        final RestrictionsManager restrictionsManager = (RestrictionsManager) context.getSystemService(Context.RESTRICTIONS_SERVICE);
+
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        final boolean mdmOverride = preferences.getBoolean(NetworkSurveyConstants.PROPERTY_MDM_OVERRIDE_KEY, false);
+
+        // First try to use the MDM provided value.
+        if (restrictionsManager != null && !mdmOverride)
+        {
+            final Bundle mdmProperties = restrictionsManager.getApplicationRestrictions();
+
+            final String mdmRateLimits = mdmProperties.getString(NetworkSurveyConstants.PROPERTY_MQTT_TOPIC_RATE_LIMITS);
+            if (mdmRateLimits != null) return mdmRateLimits;
+        }
+
+        // Next, try to use the value from user preferences.
+        return preferences.getString(NetworkSurveyConstants.PROPERTY_MQTT_TOPIC_RATE_LIMITS, NetworkSurveyConstants.DEFAULT_MQTT_TOPIC_RATE_LIMITS);
+    }
+
+    /**
+     * Gets the additional MQTT brokers setting, which is a JSON array of broker settings (see
+     * {@link com.craxiom.networksurvey.mqtt.MqttBrokerConfig}).
+     * <p>
+     * The MDM provided value is used first, then the user preference, then the default value of no additional brokers.
+     *
+     * @param context The context to use when getting the Shared Preferences and Restriction Manager.
+     * @return The additional brokers setting, which might be empty.
+     * @since 1.10.0
+     */
+    public static String getMqttAdditionalBrokersPreference(Context context)
+    {
+        final RestrictionsManager restrictionsManager = (RestrictionsManager) context.getSystemService(Context.RESTRICTIONS_SERVICE);
+
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        final boolean mdmOverride = preferences.getBoolean(NetworkSurveyConstants.PROPERTY_MDM_OVERRIDE_KEY, false);
+
+        // First try to use the MDM provided value.
+        if (restrictionsManager != null && !mdmOverride)
+        {
+            final Bundle mdmProperties = restrictionsManager.getApplicationRestrictions();
+
+            final String mdmBrokers = mdmProperties.getString(NetworkSurveyConstants.PROPERTY_MQTT_ADDITIONAL_BROKERS);
+            if (mdmBrokers != null) return mdmBrokers;
+        }
+
+        // Next, try to use the value from user preferences.
+        return preferences.getString(NetworkSurveyConstants.PROPERTY_MQTT_ADDITIONAL_BROKERS, NetworkSurveyConstants.DEFAULT_MQTT_ADDITIONAL_BROKERS);
+    }
+
+    /**
+     * Gets an integer preference that must be 0 or greater, first from the MDM, then from the user preferences (where it
+     * is stored as a string), and finally falling back to the default value.
+     *
+     * @since 1.10.0
+     */
+    private static int getNonNegativeIntPreference(String preferenceKey, int defaultValue, Context context)
+    {
+        final RestrictionsManager restrictionsManager = (RestrictionsManager) context.getSystemService(Context.RESTRICTIONS_SERVICE);
+
+        final boolean mdmOverride = PreferenceManager.getDefaultSharedPreferences(context).getBoolean(NetworkSurveyConstants.PROPERTY_MDM_OVERRIDE_KEY, false);
+
+        // First try to use the MDM provided value.
+        if (restrictionsManager != null && !mdmOverride)
+        {
+            final Bundle mdmProperties = restrictionsManager.getApplicationRestrictions();
+
+            if (mdmProperties.containsKey(preferenceKey))
+            {
+                final int value = mdmProperties.getInt(preferenceKey);
+                if (value >= 0) return value;
+            }
+        }
+
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        // Next, try to use the value from user preferences.
+        final String valueString = preferences.getString(preferenceKey, String.valueOf(defaultValue));
+        try
+        {
+            final int value = Integer.parseInt(valueString);
+            if (value >= 0) return value;
+        } catch (Exception e)
+        {
+            Timber.e(e, "Could not convert the %s user preference (%s) to an int", preferenceKey, valueString);
+        }
+
+        return defaultValue;
+    }
+
     @TargetApi(9)
     public static void saveString(SharedPreferences prefs, String key, String value)
     {
@@ -450,6 +646,11 @@ public class PreferenceUtils
         {
             edit.putString(PROPERTY_MQTT_PASSWORD, mqttConnectionSettings.getMqttPassword());
         }
+        if (mqttConnectionSettings.getPayloadFormat() != null)
+        {
+            edit.putString(NetworkSurveyConstants.PROPERTY_MQTT_PAYLOAD_FORMAT,
+                    MqttPayloadFormat.fromPreferenceValue(mqttConnectionSettings.getPayloadFormat()).getPreferenceValue());
+        }
 
         edit.apply();
     }
@@ -0,0 +1,84 @@
+package com.craxiom.networksurvey.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Limits the number of records from one scan. When there are more records than the limit, half of the limit goes to
+ * the strongest records and the other half to a uniform reservoir sample of all the rest. The strongest devices are
+ * always kept, and the sample still represents the weaker devices instead of cutting them all off.
+ *
+ * @since 1.10.0
+ */
+public class RecordSampler
+{
+    private final Random random;
+
+    public RecordSampler()
+    {
+        this(new Random());
+    }
+
+    /**
+     * @param random The random number source for the reservoir sample.
+     */
+    public RecordSampler(Random random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * Selects the records to keep from one scan.
+     *
+     * @param records    The records from the scan.
+     * @param maxRecords The maximum number of records to keep, or 0 for no limit.
+     * @param signal     Gets the signal strength of a record, where a larger value is stronger.
+     * @return The records to keep, in the same order as they were provided. If there is no need to limit the records,
+     * then the provided list is returned.
+     */
+    public <T> List<T> select(List<T> records, int maxRecords, ToDoubleFunction<T> signal)
+    {
+        final int size = records.size();
+        if (maxRecords <= 0 || size <= maxRecords) return records;
+
+        final boolean[] keep = new boolean[size];
+
+        // The strongest records take the first half of the limit (rounded up so a limit of 1 keeps the strongest)
+        final int strongestCount = (maxRecords + 1) / 2;
+        final Integer[] bySignal = new Integer[size];
+        for (int i = 0; i < size; i++) bySignal[i] = i;
+        Arrays.sort(bySignal, Comparator.comparingDouble((Integer index) -> signal.applyAsDouble(records.get(index))).reversed());
+        for (int i = 0; i < strongestCount; i++) keep[bySignal[i]] = true;
+
+        // A reservoir sample of the rest takes the remaining part of the limit, so each of them has the same chance
+        final int sampleCount = maxRecords - strongestCount;
+        final int[] reservoir = new int[sampleCount];
+        int seen = 0;
+        for (int i = strongestCount; i < size; i++)
+        {
+            final int index = bySignal[i];
+            if (seen < sampleCount)
+            {
+                reservoir[seen] = index;
+            } else
+            {
+                final int slot = random.nextInt(seen + 1);
+                if (slot < sampleCount) reservoir[slot] = index;
+            }
+            seen++;
+        }
+        for (int index : reservoir) keep[index] = true;
+
+        final List<T> selected = new ArrayList<>(maxRecords);
+        for (int i = 0; i < size; i++)
+        {
+            if (keep[i]) selected.add(records.get(i));
+        }
+
+        return selected;
+    }
+}
@@ -0,0 +1,72 @@
+package com.craxiom.networksurvey.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the latest version of a reusable object from a single writer thread to a single reader thread without locking
+ * and without allocating. There are three instances of the object: the writer fills one, the reader uses another, and
+ * the third holds the most recently published version. Publishing and acquiring only swap which instance is which, so
+ * the reader can keep using its instance for as long as it wants while the writer keeps publishing newer versions.
+ *
+ * @param <T> The type of the object that is being handed between the threads.
+ * @since 1.10.0
+ */
+public class TripleBuffer<T>
+{
+    private static final int INDEX_MASK = 0b11;
+    private static final int FRESH_FLAG = 0b100;
+
+    private final T[] buffers;
+    /**
+     * The index of the middle buffer, plus {@link #FRESH_FLAG} if it was published after the reader last acquired.
+     */
+    private final AtomicInteger middleState = new AtomicInteger(1);
+
+    private int writeIndex = 0;
+    private int readIndex = 2;
+
+    /**
+     * @param first  The first instance, which is the one the writer starts with.
+     * @param second The second instance.
+     * @param third  The third instance, which is the one the reader starts with.
+     */
+    @SuppressWarnings("unchecked")
+    public TripleBuffer(T first, T second, T third)
+    {
+        buffers = (T[]) new Object[]{first, second, third};
+    }
+
+    /**
+     * Only call this method from the writer thread.
+     *
+     * @return The instance that the writer should fill before calling {@link #publish()}.
+     */
+    public T getWriteBuffer()
+    {
+        return buffers[writeIndex];
+    }
+
+    /**
+     * Makes the instance returned from {@link #getWriteBuffer()} the latest version. The writer gets a different
+     * instance to fill next time. Only call this method from the writer thread.
+     */
+    public void publish()
+    {
+        writeIndex = middleState.getAndSet(writeIndex | FRESH_FLAG) & INDEX_MASK;
+    }
+
+    /**
+     * Only call this method from the reader thread.
+     *
+     * @return The latest published instance, which the writer won't touch until this method is called again. If
+     * nothing new was published since the last call, then the same instance is returned again.
+     */
+    public T acquireLatest()
+    {
+        if ((middleState.get() & FRESH_FLAG) != 0)
+        {
+            readIndex = middleState.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return buffers[readIndex];
+    }
+}
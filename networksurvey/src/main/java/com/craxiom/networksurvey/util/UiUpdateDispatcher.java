@@ -0,0 +1,268 @@
+package com.craxiom.networksurvey.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+import timber.log.Timber;
+
+/**
+ * Applies UI updates at most once per display frame instead of posting a message to the main looper for every survey
+ * record. Each view that receives survey updates creates a {@link Channel}. Updates submitted to a channel from any
+ * thread are merged into a single pending update. That pending update is then applied on the main thread on the next
+ * {@link Choreographer} frame, or once the channel's minimum interval has passed if one was set.
+ * <p>
+ * Without this, a burst of records (e.g. many BLE advertisements) posts far more messages than the display can show,
+ * which delays everything else on the main thread.
+ *
+ * @since 1.10.0
+ */
+public class UiUpdateDispatcher implements Choreographer.FrameCallback
+{
+    private static UiUpdateDispatcher instance;
+
+    private final List<Channel<?>> channels = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private final Runnable frameScheduler = () -> Choreographer.getInstance().postFrameCallback(this);
+
+    private UiUpdateDispatcher()
+    {
+    }
+
+    public static synchronized UiUpdateDispatcher getInstance()
+    {
+        if (instance == null) instance = new UiUpdateDispatcher();
+        return instance;
+    }
+
+    /**
+     * Creates a channel where each new update replaces the pending one, so only the latest state is applied.
+     *
+     * @param name          The name to show in the debug stats.
+     * @param minIntervalMs The minimum time between applying updates, or 0 to apply an update every frame.
+     * @param applier       Applies an update to the UI. Always called on the main thread.
+     * @return The channel to submit updates to. Remove it with {@link #removeChannel(Channel)} when it is no longer
+     * needed.
+     */
+    public <T> Channel<T> createLatestValueChannel(String name, long minIntervalMs, Consumer<T> applier)
+    {
+        return createChannel(name, minIntervalMs, (pending, update) -> update, applier);
+    }
+
+    /**
+     * Creates a channel where each new update is merged into the pending one with the provided merger.
+     *
+     * @param name          The name to show in the debug stats.
+     * @param minIntervalMs The minimum time between applying updates, or 0 to apply an update every frame.
+     * @param merger        Merges a new update into the pending update, and returns the result. Called on the thread
+     *                      that submits the update.
+     * @param applier       Applies an update to the UI. Always called on the main thread.
+     * @return The channel to submit updates to. Remove it with {@link #removeChannel(Channel)} when it is no longer
+     * needed.
+     */
+    public <T> Channel<T> createChannel(String name, long minIntervalMs, BinaryOperator<T> merger, Consumer<T> applier)
+    {
+        final Channel<T> channel = new Channel<>(this, name, minIntervalMs, merger, applier);
+        channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * Removes the channel and drops any update that has not been applied yet.
+     */
+    public void removeChannel(Channel<?> channel)
+    {
+        if (channel == null) return;
+
+        channels.remove(channel);
+        channel.clearPending();
+    }
+
+    /**
+     * @return The channels that are currently registered, for showing their stats.
+     */
+    public List<Channel<?>> getChannels()
+    {
+        return channels;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        frameScheduled.set(false);
+
+        long nextDelayMs = Long.MAX_VALUE;
+        for (Channel<?> channel : channels)
+        {
+            final long delayMs = channel.applyIfDue(frameTimeNanos);
+            if (delayMs >= 0) nextDelayMs = Math.min(nextDelayMs, delayMs);
+        }
+
+        // A channel still has an update that is waiting on its minimum interval
+        if (nextDelayMs != Long.MAX_VALUE && frameScheduled.compareAndSet(false, true))
+        {
+            Choreographer.getInstance().postFrameCallbackDelayed(this, nextDelayMs);
+        }
+    }
+
+    /**
+     * Makes sure a frame callback is scheduled. Only one message is posted to the main looper no matter how many
+     * updates are submitted before the frame.
+     */
+    private void requestFrame()
+    {
+        if (!frameScheduled.compareAndSet(false, true)) return;
+
+        if (Looper.myLooper() == Looper.getMainLooper())
+        {
+            frameScheduler.run();
+        } else
+        {
+            mainHandler.post(frameScheduler);
+        }
+    }
+
+    /**
+     * Holds the pending update for one view.
+     *
+     * @param <T> The type of the update.
+     */
+    public static class Channel<T>
+    {
+        private static final long NOT_PENDING = -1;
+
+        private final UiUpdateDispatcher dispatcher;
+        private final String name;
+        private final long minIntervalNanos;
+        private final BinaryOperator<T> merger;
+        private final Consumer<T> applier;
+
+        private final AtomicLong submittedCount = new AtomicLong();
+        private final AtomicLong appliedCount = new AtomicLong();
+        private final AtomicLong droppedCount = new AtomicLong();
+
+        // Guarded by this
+        private T pendingUpdate;
+        private boolean hasPendingUpdate;
+
+        // Only accessed on the main thread
+        private long lastAppliedNanos = Long.MIN_VALUE;
+
+        private Channel(UiUpdateDispatcher dispatcher, String name, long minIntervalMs, BinaryOperator<T> merger, Consumer<T> applier)
+        {
+            this.dispatcher = dispatcher;
+            this.name = name;
+            minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+            this.merger = merger;
+            this.applier = applier;
+        }
+
+        /**
+         * Queues an update to be applied on an upcoming frame. If an update is already pending, then the two are
+         * merged and the merged update counts as a dropped update. This can be called from any thread.
+         */
+        public void submit(T update)
+        {
+            submittedCount.incrementAndGet();
+
+            synchronized (this)
+            {
+                if (hasPendingUpdate)
+                {
+                    pendingUpdate = merger.apply(pendingUpdate, update);
+                    droppedCount.incrementAndGet();
+                } else
+                {
+                    pendingUpdate = update;
+                    hasPendingUpdate = true;
+                }
+            }
+
+            dispatcher.requestFrame();
+        }
+
+        /**
+         * Drops the pending update, if there is one.
+         */
+        public void clearPending()
+        {
+            synchronized (this)
+            {
+                if (hasPendingUpdate) droppedCount.incrementAndGet();
+                pendingUpdate = null;
+                hasPendingUpdate = false;
+            }
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public long getSubmittedCount()
+        {
+            return submittedCount.get();
+        }
+
+        public long getAppliedCount()
+        {
+            return appliedCount.get();
+        }
+
+        /**
+         * @return The number of updates that were merged into a newer update or cleared instead of being applied on
+         * their own.
+         */
+        public long getDroppedCount()
+        {
+            return droppedCount.get();
+        }
+
+        /**
+         * Applies the pending update if the minimum interval has passed.
+         *
+         * @return {@link #NOT_PENDING} if there is no pending update after this call, otherwise the number of
+         * milliseconds until the pending update can be applied.
+         */
+        private long applyIfDue(long frameTimeNanos)
+        {
+            final T update;
+            synchronized (this)
+            {
+                if (!hasPendingUpdate) return NOT_PENDING;
+
+                if (lastAppliedNanos != Long.MIN_VALUE)
+                {
+                    final long remainingNanos = minIntervalNanos - (frameTimeNanos - lastAppliedNanos);
+                    if (remainingNanos > 0) return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+                }
+
+                update = pendingUpdate;
+                pendingUpdate = null;
+                hasPendingUpdate = false;
+            }
+
+            lastAppliedNanos = frameTimeNanos;
+            appliedCount.incrementAndGet();
+
+            try
+            {
+                applier.accept(update);
+            } catch (Exception e)
+            {
+                Timber.e(e, "Could not apply the UI update for %s", name);
+            }
+
+            return NOT_PENDING;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.craxiom.networksurvey.view;
+
+import java.util.Arrays;
+
+import timber.log.Timber;
+
+/**
+ * Keeps track of how long a view takes to draw each frame so that drawing regressions (and improvements) show up in the
+ * logs. The draw times are collected into a window of frames, and a summary of each full window is logged.
+ *
+ * @since 1.10.0
+ */
+public class FrameTimeStats
+{
+    private final String name;
+    private final long[] frameTimesNs;
+
+    private int frameCount;
+    private long totalNs;
+    private long maxNs;
+
+    private float lastAverageMs;
+    private float lastMaxMs;
+    private float lastP95Ms;
+
+    /**
+     * @param name         The name to use in the log messages.
+     * @param windowFrames The number of frames to summarize in each log message.
+     */
+    public FrameTimeStats(String name, int windowFrames)
+    {
+        this.name = name;
+        frameTimesNs = new long[windowFrames];
+    }
+
+    /**
+     * @return The value to pass to {@link #endFrame(long)} once the frame is drawn.
+     */
+    public long startFrame()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time it took to draw a frame, and logs a summary if the window is full.
+     *
+     * @param startNs The value returned from {@link #startFrame()}.
+     */
+    public void endFrame(long startNs)
+    {
+        final long frameTimeNs = System.nanoTime() - startNs;
+        frameTimesNs[frameCount++] = frameTimeNs;
+        totalNs += frameTimeNs;
+        if (frameTimeNs > maxNs) maxNs = frameTimeNs;
+
+        if (frameCount == frameTimesNs.length) summarizeWindow();
+    }
+
+    /**
+     * @return The average draw time in milliseconds for the last full window, or 0 if a window has not been completed.
+     */
+    public float getAverageMs()
+    {
+        return lastAverageMs;
+    }
+
+    /**
+     * @return The 95th percentile draw time in milliseconds for the last full window.
+     */
+    public float getP95Ms()
+    {
+        return lastP95Ms;
+    }
+
+    /**
+     * @return The longest draw time in milliseconds for the last full window.
+     */
+    public float getMaxMs()
+    {
+        return lastMaxMs;
+    }
+
+    private void summarizeWindow()
+    {
+        lastAverageMs = totalNs / (float) frameCount / 1_000_000f;
+        lastMaxMs = maxNs / 1_000_000f;
+
+        // Sorting in place is fine because the window is about to be reused
+        Arrays.sort(frameTimesNs, 0, frameCount);
+        lastP95Ms = frameTimesNs[(int) Math.ceil(frameCount * 0.95) - 1] / 1_000_000f;
+
+        Timber.d("%s draw time over %d frames: avg=%.2f ms, p95=%.2f ms, max=%.2f ms",
+                name, frameCount, lastAverageMs, lastP95Ms, lastMaxMs);
+
+        frameCount = 0;
+        totalNs = 0;
+        maxNs = 0;
+    }
+}
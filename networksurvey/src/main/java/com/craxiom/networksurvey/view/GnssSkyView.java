@@ -1,6 +1,8 @@
 package com.craxiom.networksurvey.view;
 
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
@@ -8,11 +10,11 @@ import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.RectF;
 import android.location.GnssMeasurementsEvent;
-import android.location.GnssStatus;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.View;
 import android.view.WindowManager;
 
@@ -22,6 +24,7 @@ import androidx.core.content.ContextCompat;
 
 import com.craxiom.networksurvey.R;
 import com.craxiom.networksurvey.listeners.IGnssListener;
+import com.craxiom.networksurvey.model.GnssStatusSnapshot;
 import com.craxiom.networksurvey.model.GnssType;
 import com.craxiom.networksurvey.util.GpsTestUtil;
 import com.craxiom.networksurvey.util.UIUtils;
@@ -43,6 +46,13 @@ public class GnssSkyView extends View implements IGnssListener
 
     private static final float PRN_TEXT_SCALE = 0.7f;
 
+    /**
+     * The satellite fill colors are cached per bucket of this many dB-Hz (or dB for SNR), which is a much smaller change
+     * in color than can be seen.
+     */
+    private static final float SATELLITE_COLOR_BUCKET_SIZE = 0.25f;
+    private static final int FRAME_STATS_WINDOW = 300;
+
     private int satRadius;
 
     private float[] snrThresholds;
@@ -68,26 +78,44 @@ public class GnssSkyView extends View implements IGnssListener
     private Paint northFillPaint;
     private Paint prnIdPaint;
     private Paint notInViewPaint;
+    private final Paint skyLayerPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * The satellite fill paints keyed by the signal strength bucket, so that a new paint is not created for every
+     * satellite on every frame.
+     */
+    private final SparseArray<Paint> satellitePaintCache = new SparseArray<>();
+    private boolean satellitePaintCacheUsesCn0 = true;
+
+    /**
+     * The horizon fill and elevation circles, which don't change with the orientation so they only need to be drawn
+     * again when the size of the view, the started state, or the theme changes.
+     */
+    private Bitmap skyLayerBitmap;
+    private int skyLayerSize;
+    private boolean skyLayerStarted;
+
+    // Reused between frames to avoid allocating on every draw
+    private final Path northPath = new Path();
+    private final Matrix northMatrix = new Matrix();
+    private final Path shapePath = new Path();
+    private final RectF ovalRect = new RectF();
+
+    private final FrameTimeStats frameTimeStats = new FrameTimeStats("GnssSkyView", FRAME_STATS_WINDOW);
 
     private double orientation = 0.0;
 
     private boolean started;
 
-    private float[] snrCn0s;
-    private float[] elevs;
-    private float[] azims;  // Holds either SNR or C/N0 - see #65
+    /**
+     * The latest satellite values, which are shared with the other GNSS views. Holds C/N0 values - see #65
+     */
+    private GnssStatusSnapshot gnssStatusSnapshot;
 
     private float snrCn0UsedAvg = 0.0f;
 
     private float snrCn0InViewAvg = 0.0f;
 
-    private boolean[] usedInFix;
-
-    private int[] prns;
-    private int[] constellationType;
-
-    private int svCount;
-
     private boolean useLegacyGnssApi = false;
 
     private boolean isSnrBad = false;
@@ -127,12 +155,10 @@ public class GnssSkyView extends View implements IGnssListener
         horizonStrokePaint.setAntiAlias(true);
 
         gridStrokePaint = new Paint();
-        gridStrokePaint.setColor(ContextCompat.getColor(this.context, R.color.gray));
         gridStrokePaint.setStyle(Paint.Style.STROKE);
         gridStrokePaint.setAntiAlias(true);
 
         satelliteFillPaint = new Paint();
-        satelliteFillPaint.setColor(ContextCompat.getColor(this.context, R.color.yellow));
         satelliteFillPaint.setStyle(Paint.Style.FILL);
         satelliteFillPaint.setAntiAlias(true);
 
@@ -149,16 +175,7 @@ public class GnssSkyView extends View implements IGnssListener
         satelliteUsedStrokePaint.setAntiAlias(true);
 
         snrThresholds = new float[]{MIN_VALUE_SNR, 10.0f, 20.0f, MAX_VALUE_SNR};
-        snrColors = new int[]{ContextCompat.getColor(this.context, R.color.gray),
-                ContextCompat.getColor(this.context, R.color.red),
-                ContextCompat.getColor(this.context, R.color.yellow),
-                ContextCompat.getColor(this.context, R.color.green)};
-
         cn0Thresholds = new float[]{MIN_VALUE_CN0, 21.67f, 33.3f, MAX_VALUE_CN0};
-        cn0Colors = new int[]{ContextCompat.getColor(this.context, R.color.gray),
-                ContextCompat.getColor(this.context, R.color.red),
-                ContextCompat.getColor(this.context, R.color.yellow),
-                ContextCompat.getColor(this.context, R.color.green)};
 
         northPaint = new Paint();
         northPaint.setColor(Color.BLACK);
@@ -180,11 +197,12 @@ public class GnssSkyView extends View implements IGnssListener
         prnIdPaint.setAntiAlias(true);
 
         notInViewPaint = new Paint();
-        notInViewPaint.setColor(ContextCompat.getColor(context, R.color.not_in_view_sat));
         notInViewPaint.setStyle(Paint.Style.FILL);
         notInViewPaint.setStrokeWidth(4.0f);
         notInViewPaint.setAntiAlias(true);
 
+        applyResourceColors();
+
         setFocusable(true);
 
         // Get the proper height and width of view before drawing
@@ -196,6 +214,26 @@ public class GnssSkyView extends View implements IGnssListener
         );
     }
 
+    /**
+     * Sets the colors that come from the resources, which can change with the theme.
+     */
+    private synchronized void applyResourceColors()
+    {
+        gridStrokePaint.setColor(ContextCompat.getColor(context, R.color.gray));
+        satelliteFillPaint.setColor(ContextCompat.getColor(context, R.color.yellow));
+        notInViewPaint.setColor(ContextCompat.getColor(context, R.color.not_in_view_sat));
+
+        snrColors = new int[]{ContextCompat.getColor(context, R.color.gray),
+                ContextCompat.getColor(context, R.color.red),
+                ContextCompat.getColor(context, R.color.yellow),
+                ContextCompat.getColor(context, R.color.green)};
+
+        cn0Colors = new int[]{ContextCompat.getColor(context, R.color.gray),
+                ContextCompat.getColor(context, R.color.red),
+                ContextCompat.getColor(context, R.color.yellow),
+                ContextCompat.getColor(context, R.color.green)};
+    }
+
     public void setStarted()
     {
         started = true;
@@ -205,69 +243,21 @@ public class GnssSkyView extends View implements IGnssListener
     public void setStopped()
     {
         started = false;
-        svCount = 0;
+        gnssStatusSnapshot = null;
         invalidate();
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    public synchronized void setGnssStatus(GnssStatus status)
+    /**
+     * @param snapshot The latest satellite values. The snapshot is kept and drawn until the next one is set, so it must
+     *                 not be changed in the meantime.
+     */
+    public synchronized void setGnssStatus(GnssStatusSnapshot snapshot)
     {
         useLegacyGnssApi = false;
         isSnrBad = false;
-        if (prns == null)
-        {
-            /*
-             * We need to allocate arrays big enough so we don't overflow them.  Per
-             * https://developer.android.com/reference/android/location/GnssStatus.html#getSvid(int)
-             * 255 should be enough to contain all known satellites world-wide.
-             */
-            final int maxLength = 255;
-            prns = new int[maxLength];
-            snrCn0s = new float[maxLength];
-            elevs = new float[maxLength];
-            azims = new float[maxLength];
-            constellationType = new int[maxLength];
-            usedInFix = new boolean[maxLength];
-        }
-
-        int length = status.getSatelliteCount();
-        svCount = 0;
-        int svInViewCount = 0;
-        int svUsedCount = 0;
-        float cn0InViewSum = 0.0f;
-        float cn0UsedSum = 0.0f;
-        snrCn0InViewAvg = 0.0f;
-        snrCn0UsedAvg = 0.0f;
-        while (svCount < length)
-        {
-            snrCn0s[svCount] = status.getCn0DbHz(svCount);  // Store C/N0 values (see #65)
-            elevs[svCount] = status.getElevationDegrees(svCount);
-            azims[svCount] = status.getAzimuthDegrees(svCount);
-            prns[svCount] = status.getSvid(svCount);
-            constellationType[svCount] = status.getConstellationType(svCount);
-            usedInFix[svCount] = status.usedInFix(svCount);
-            // If satellite is in view, add signal to calculate avg
-            if (status.getCn0DbHz(svCount) != 0.0f)
-            {
-                svInViewCount++;
-                cn0InViewSum = cn0InViewSum + status.getCn0DbHz(svCount);
-            }
-            if (status.usedInFix(svCount))
-            {
-                svUsedCount++;
-                cn0UsedSum = cn0UsedSum + status.getCn0DbHz(svCount);
-            }
-            svCount++;
-        }
-
-        if (svInViewCount > 0)
-        {
-            snrCn0InViewAvg = cn0InViewSum / svInViewCount;
-        }
-        if (svUsedCount > 0)
-        {
-            snrCn0UsedAvg = cn0UsedSum / svUsedCount;
-        }
+        gnssStatusSnapshot = snapshot;
+        snrCn0InViewAvg = snapshot.getCn0InViewAvg();
+        snrCn0UsedAvg = snapshot.getCn0UsedAvg();
 
         started = true;
         invalidate();
@@ -299,16 +289,56 @@ public class GnssSkyView extends View implements IGnssListener
     {
         float radius = s / 2f;
 
-        c.drawCircle(radius, radius, radius,
-                started ? horizonActiveFillPaint : horizonInactiveFillPaint);
+        c.drawBitmap(getSkyLayerBitmap(s), 0, 0, skyLayerPaint);
         drawLine(c, 0, radius, 2 * radius, radius);
         drawLine(c, radius, 0, radius, 2 * radius);
-        c.drawCircle(radius, radius, elevationToRadius(s, 60.0f), gridStrokePaint);
-        c.drawCircle(radius, radius, elevationToRadius(s, 30.0f), gridStrokePaint);
-        c.drawCircle(radius, radius, elevationToRadius(s, 0.0f), gridStrokePaint);
         c.drawCircle(radius, radius, radius, horizonStrokePaint);
     }
 
+    /**
+     * Returns the bitmap with the parts of the horizon that don't rotate with the orientation, drawing it first if
+     * the size or the started state changed since it was last drawn.
+     *
+     * @param s The size of the sky view.
+     */
+    private Bitmap getSkyLayerBitmap(int s)
+    {
+        if (skyLayerBitmap != null && skyLayerSize == s && skyLayerStarted == started) return skyLayerBitmap;
+
+        if (skyLayerBitmap == null || skyLayerSize != s)
+        {
+            if (skyLayerBitmap != null) skyLayerBitmap.recycle();
+            skyLayerBitmap = Bitmap.createBitmap(Math.max(s, 1), Math.max(s, 1), Bitmap.Config.ARGB_8888);
+        } else
+        {
+            skyLayerBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        skyLayerSize = s;
+        skyLayerStarted = started;
+
+        final Canvas layerCanvas = new Canvas(skyLayerBitmap);
+        final float radius = s / 2f;
+        layerCanvas.drawCircle(radius, radius, radius, started ? horizonActiveFillPaint : horizonInactiveFillPaint);
+        layerCanvas.drawCircle(radius, radius, elevationToRadius(s, 60.0f), gridStrokePaint);
+        layerCanvas.drawCircle(radius, radius, elevationToRadius(s, 30.0f), gridStrokePaint);
+        layerCanvas.drawCircle(radius, radius, elevationToRadius(s, 0.0f), gridStrokePaint);
+
+        return skyLayerBitmap;
+    }
+
+    /**
+     * Drops the cached bitmap and paints so that they are created again on the next draw.
+     */
+    private void clearDrawingCaches()
+    {
+        if (skyLayerBitmap != null)
+        {
+            skyLayerBitmap.recycle();
+            skyLayerBitmap = null;
+        }
+        satellitePaintCache.clear();
+    }
+
     private void drawNorthIndicator(Canvas c, int s)
     {
         float radius = s / 2f;
@@ -325,7 +355,8 @@ public class GnssSkyView extends View implements IGnssListener
         float x3 = x1 - radius * arrowHeightScale;
         float y3 = y1 + radius * arrowWidthScale;
 
-        Path path = new Path();
+        Path path = northPath;
+        path.reset();
         path.setFillType(Path.FillType.EVEN_ODD);
         path.moveTo(x1, y1);
         path.lineTo(x2, y2);
@@ -334,9 +365,8 @@ public class GnssSkyView extends View implements IGnssListener
         path.close();
 
         // Rotate arrow around center point
-        Matrix matrix = new Matrix();
-        matrix.postRotate((float) -orientation, radius, radius);
-        path.transform(matrix);
+        northMatrix.setRotate((float) -orientation, radius, radius);
+        path.transform(northMatrix);
 
         c.drawPath(path, northPaint);
         c.drawPath(path, northFillPaint);
@@ -460,7 +490,8 @@ public class GnssSkyView extends View implements IGnssListener
         float x3 = x + satRadius;
         float y3 = y + satRadius;
 
-        Path path = new Path();
+        Path path = shapePath;
+        path.reset();
         path.setFillType(Path.FillType.EVEN_ODD);
         path.moveTo(x1, y1);
         path.lineTo(x2, y2);
@@ -474,7 +505,9 @@ public class GnssSkyView extends View implements IGnssListener
 
     private void drawDiamond(Canvas c, float x, float y, Paint fillPaint, Paint strokePaint)
     {
-        Path path = new Path();
+        Path path = shapePath;
+        path.reset();
+        path.setFillType(Path.FillType.WINDING);
         path.moveTo(x, y - satRadius);
         path.lineTo(x - satRadius * 1.5f, y);
         path.lineTo(x, y + satRadius);
@@ -487,7 +520,9 @@ public class GnssSkyView extends View implements IGnssListener
 
     private void drawPentagon(Canvas c, float x, float y, Paint fillPaint, Paint strokePaint)
     {
-        Path path = new Path();
+        Path path = shapePath;
+        path.reset();
+        path.setFillType(Path.FillType.WINDING);
         path.moveTo(x, y - satRadius);
         path.lineTo(x - satRadius, y - (satRadius / 3f));
         path.lineTo(x - 2 * (satRadius / 3f), y + satRadius);
@@ -503,7 +538,9 @@ public class GnssSkyView extends View implements IGnssListener
     {
         final float multiplier = 0.6f;
         final float sideMultiplier = 1.4f;
-        Path path = new Path();
+        Path path = shapePath;
+        path.reset();
+        path.setFillType(Path.FillType.WINDING);
         // Top-left
         path.moveTo(x - satRadius * multiplier, y - satRadius);
         // Left
@@ -523,17 +560,35 @@ public class GnssSkyView extends View implements IGnssListener
 
     private void drawOval(Canvas c, float x, float y, Paint fillPaint, Paint strokePaint)
     {
-        RectF rect = new RectF(x - satRadius * 1.5f, y - satRadius, x + satRadius * 1.5f, y + satRadius);
+        RectF rect = ovalRect;
+        rect.set(x - satRadius * 1.5f, y - satRadius, x + satRadius * 1.5f, y + satRadius);
 
         c.drawOval(rect, fillPaint);
         c.drawOval(rect, strokePaint);
     }
 
+    /**
+     * Returns the fill paint for a satellite with the provided signal strength. The paints are cached by signal
+     * strength bucket, and the cache is cleared if switching between the SNR and C/N0 colors.
+     */
     private Paint getSatellitePaint(Paint base, float snrCn0)
     {
-        final Paint newPaint = new Paint(base);
-        newPaint.setColor(getSatelliteColor(snrCn0));
-        return newPaint;
+        final boolean usesCn0 = !useLegacyGnssApi || isSnrBad;
+        if (usesCn0 != satellitePaintCacheUsesCn0)
+        {
+            satellitePaintCache.clear();
+            satellitePaintCacheUsesCn0 = usesCn0;
+        }
+
+        final int bucket = Math.round(snrCn0 / SATELLITE_COLOR_BUCKET_SIZE);
+        Paint paint = satellitePaintCache.get(bucket);
+        if (paint == null)
+        {
+            paint = new Paint(base);
+            paint.setColor(getSatelliteColor(bucket * SATELLITE_COLOR_BUCKET_SIZE));
+            satellitePaintCache.put(bucket, paint);
+        }
+        return paint;
     }
 
     /**
@@ -604,25 +659,56 @@ public class GnssSkyView extends View implements IGnssListener
     @Override
     protected void onDraw(Canvas canvas)
     {
+        final long frameStartNs = frameTimeStats.startFrame();
+
         int minScreenDimen = Math.min(width, height);
 
         drawHorizon(canvas, minScreenDimen);
 
         drawNorthIndicator(canvas, minScreenDimen);
 
-        if (elevs != null)
+        final GnssStatusSnapshot snapshot = gnssStatusSnapshot;
+        if (snapshot != null)
         {
-            int numSats = svCount;
+            int numSats = snapshot.getSatelliteCount();
 
             for (int i = 0; i < numSats; i++)
             {
-                if (elevs[i] != 0.0f || azims[i] != 0.0f)
+                final float elevation = snapshot.getElevationDegrees(i);
+                final float azimuth = snapshot.getAzimuthDegrees(i);
+                if (elevation != 0.0f || azimuth != 0.0f)
                 {
-                    drawSatellite(canvas, minScreenDimen, elevs[i], azims[i], snrCn0s[i],
-                            prns[i], constellationType[i], usedInFix[i]);
+                    drawSatellite(canvas, minScreenDimen, elevation, azimuth, snapshot.getCn0DbHz(i),
+                            snapshot.getSvid(i), snapshot.getConstellationType(i), snapshot.usedInFix(i));
                 }
             }
         }
+
+        frameTimeStats.endFrame(frameStartNs);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh)
+    {
+        super.onSizeChanged(w, h, oldw, oldh);
+        clearDrawingCaches();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig)
+    {
+        super.onConfigurationChanged(newConfig);
+        // The theme might have changed, so don't keep drawing with the old colors
+        applyResourceColors();
+        clearDrawingCaches();
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        clearDrawingCaches();
+        super.onDetachedFromWindow();
     }
 
     @Override
@@ -641,9 +727,8 @@ public class GnssSkyView extends View implements IGnssListener
         invalidate();
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public void onSatelliteStatusChanged(GnssStatus status)
+    public void onSatelliteStatusChanged(GnssStatusSnapshot snapshot)
     {
     }
 
@@ -0,0 +1,82 @@
+package com.craxiom.networksurvey.view;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.util.TypedValue;
+
+import androidx.appcompat.widget.AppCompatTextView;
+
+import com.craxiom.networksurvey.util.ExecutorRegistry;
+import com.craxiom.networksurvey.util.MonitoredExecutor;
+import com.craxiom.networksurvey.util.UiUpdateDispatcher;
+
+/**
+ * A small debug overlay that shows how many UI updates each {@link UiUpdateDispatcher} channel has received, applied,
+ * and dropped, so that the effect of coalescing the updates can be seen while surveying. It also shows the queue depth,
+ * busy threads, and task latency of each {@link ExecutorRegistry} pool over the last second. It is only meant to be
+ * added to debug builds.
+ *
+ * @since 1.10.0
+ */
+public class UiUpdateStatsOverlay extends AppCompatTextView
+{
+    private static final long REFRESH_INTERVAL_MS = 1_000;
+
+    private final StringBuilder textBuilder = new StringBuilder();
+    private final Runnable refresher = this::refresh;
+
+    public UiUpdateStatsOverlay(Context context)
+    {
+        super(context);
+        setBackgroundColor(0x99000000);
+        setTextColor(Color.WHITE);
+        setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        final int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, getResources().getDisplayMetrics());
+        setPadding(padding, padding, padding, padding);
+
+        // The overlay is only for looking at, so let touches through to the views underneath it
+        setClickable(false);
+        setFocusable(false);
+    }
+
+    @Override
+    protected void onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        refresh();
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        removeCallbacks(refresher);
+        super.onDetachedFromWindow();
+    }
+
+    private void refresh()
+    {
+        textBuilder.setLength(0);
+        for (UiUpdateDispatcher.Channel<?> channel : UiUpdateDispatcher.getInstance().getChannels())
+        {
+            if (textBuilder.length() > 0) textBuilder.append('\n');
+            textBuilder.append(channel.getName())
+                    .append(": applied ").append(channel.getAppliedCount())
+                    .append('/').append(channel.getSubmittedCount())
+                    .append(", dropped ").append(channel.getDroppedCount());
+        }
+
+        for (MonitoredExecutor.Stats stats : ExecutorRegistry.getInstance().takeStats())
+        {
+            if (textBuilder.length() > 0) textBuilder.append('\n');
+            textBuilder.append(stats.name)
+                    .append(": busy ").append(stats.activeCount).append('/').append(stats.threadCount)
+                    .append(", queued ").append(stats.queueDepth)
+                    .append(", wait max ").append(stats.maxQueueLatencyMicros / 1000).append(" ms");
+        }
+
+        setText(textBuilder);
+        setVisibility(textBuilder.length() == 0 ? GONE : VISIBLE);
+
+        postDelayed(refresher, REFRESH_INTERVAL_MS);
+    }
+}
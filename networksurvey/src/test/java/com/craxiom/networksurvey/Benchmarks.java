@@ -0,0 +1,53 @@
+package com.craxiom.networksurvey;
+
+import android.util.Log;
+
+import org.junit.Assume;
+
+import java.util.Locale;
+
+import timber.log.Timber;
+
+/**
+ * Support for the benchmark tests. The benchmarks drive real threads and sockets for several seconds, so they are
+ * skipped in the normal unit test run. Run them with:
+ * <pre>
+ * ./gradlew :networksurvey:testDebugUnitTest -Pbenchmarks --tests '*Benchmark*' --tests '*Harness*'
+ * </pre>
+ * The results are logged through Timber, and the Gradle test task prints them when the benchmarks are enabled.
+ *
+ * @since 1.10.0
+ */
+final class Benchmarks
+{
+    /**
+     * The system property that the Gradle test task sets when the {@code benchmarks} project property is present.
+     */
+    static final String ENABLED_PROPERTY = "networksurvey.benchmarks";
+
+    private static final Timber.Tree REPORT_TREE = new Timber.Tree()
+    {
+        @Override
+        protected void log(int priority, String tag, String message, Throwable t)
+        {
+            // Leave out the debug logging from the code under test so that the results stand out
+            if (priority < Log.INFO) return;
+
+            System.out.println(String.format(Locale.US, "[benchmark] %s", message));
+        }
+    };
+
+    private Benchmarks()
+    {
+    }
+
+    /**
+     * Skips the calling test unless the benchmarks were asked for, and otherwise makes sure the results are logged.
+     */
+    static synchronized void assumeEnabled()
+    {
+        Assume.assumeTrue("The benchmarks only run with -Pbenchmarks", Boolean.getBoolean(ENABLED_PROPERTY));
+
+        if (!Timber.forest().contains(REPORT_TREE)) Timber.plant(REPORT_TREE);
+    }
+}
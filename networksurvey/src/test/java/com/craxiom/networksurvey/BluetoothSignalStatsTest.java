@@ -0,0 +1,61 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.networksurvey.model.BluetoothSignalStats;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link BluetoothSignalStats} that are kept when several sightings of a Bluetooth device are merged.
+ *
+ * @since 1.10.0
+ */
+public class BluetoothSignalStatsTest
+{
+    @Test
+    public void aggregatesTheRssi()
+    {
+        final BluetoothSignalStats stats = new BluetoothSignalStats();
+        assertTrue(Float.isNaN(stats.getMeanRssi()));
+
+        stats.addRssi(-80);
+        stats.addRssi(-60);
+        stats.addRssi(-70);
+
+        assertEquals(3, stats.getSampleCount());
+        assertEquals(-60, stats.getMaxRssi());
+        assertEquals(-70f, stats.getMeanRssi(), 0.001f);
+    }
+
+    @Test
+    public void keepsTheLatestTxPower()
+    {
+        final BluetoothSignalStats stats = new BluetoothSignalStats();
+        assertFalse(stats.hasTxPower());
+
+        stats.setTxPower(-12);
+        stats.setTxPower(-8);
+
+        assertTrue(stats.hasTxPower());
+        assertEquals(-8, stats.getTxPower());
+    }
+
+    @Test
+    public void statsAreAttachedToTheEnvelope()
+    {
+        final BluetoothSignalStats stats = new BluetoothSignalStats();
+        final WifiBeaconRecord record = WifiBeaconRecord.newBuilder().setVersion("1").build();
+        final SurveyRecordEnvelope<WifiBeaconRecord> envelope = new SurveyRecordEnvelope<>(record, stats);
+        assertSame(record, envelope.getRecord());
+        assertSame(stats, envelope.getBluetoothSignalStats());
+
+        assertNull(new SurveyRecordEnvelope<>(record).getBluetoothSignalStats());
+    }
+}
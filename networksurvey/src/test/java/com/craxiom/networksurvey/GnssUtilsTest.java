@@ -5,10 +5,12 @@ import android.location.GnssStatus;
 import com.craxiom.messaging.gnss.Constellation;
 import com.craxiom.networksurvey.constants.GnssMessageConstants;
 import com.craxiom.networksurvey.model.GnssType;
+import com.craxiom.networksurvey.util.CarrierFreqUtils;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 /**
  * Tests the various conversions for GNSS scanning and logging.
@@ -56,4 +58,23 @@ public class GnssUtilsTest
         assertEquals(Constellation.IRNSS, GnssMessageConstants.getProtobufConstellation(GnssStatus.CONSTELLATION_IRNSS));
         assertEquals(Constellation.SBAS, GnssMessageConstants.getProtobufConstellation(GnssStatus.CONSTELLATION_SBAS));
     }
+
+    @Test
+    public void validateCarrierFrequencyBand()
+    {
+        final int gpsL1 = CarrierFreqUtils.getCarrierFrequencyBand(GnssType.NAVSTAR, 1575.42e6f);
+        final int gpsL5 = CarrierFreqUtils.getCarrierFrequencyBand(GnssType.NAVSTAR, 1176.45e6f);
+        assertNotEquals(CarrierFreqUtils.BAND_UNKNOWN, gpsL1);
+        assertNotEquals(CarrierFreqUtils.BAND_UNKNOWN, gpsL5);
+        assertNotEquals(gpsL1, gpsL5);
+
+        // Every GLONASS FDMA channel is in the same band
+        final int glonassL1 = CarrierFreqUtils.getCarrierFrequencyBand(GnssType.GLONASS, 1598.0625e6f);
+        assertNotEquals(CarrierFreqUtils.BAND_UNKNOWN, glonassL1);
+        assertEquals(glonassL1, CarrierFreqUtils.getCarrierFrequencyBand(GnssType.GLONASS, 1609.3125e6f));
+
+        assertEquals(CarrierFreqUtils.BAND_UNKNOWN, CarrierFreqUtils.getCarrierFrequencyBand(GnssType.NAVSTAR, 1207.14e6f));
+        assertEquals(CarrierFreqUtils.BAND_UNKNOWN, CarrierFreqUtils.getCarrierFrequencyBand(GnssType.NAVSTAR, 0f));
+        assertEquals(CarrierFreqUtils.BAND_UNKNOWN, CarrierFreqUtils.getCarrierFrequencyBand(GnssType.UNKNOWN, 1575.42e6f));
+    }
 }
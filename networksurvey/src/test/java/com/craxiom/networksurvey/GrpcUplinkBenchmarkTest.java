@@ -0,0 +1,470 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.messaging.WifiBeaconRecordData;
+import com.craxiom.messaging.grpc.WifiBeaconSurveyResponse;
+import com.craxiom.messaging.grpc.WirelessSurveyGrpc;
+import com.craxiom.messaging.wifi.EncryptionType;
+import com.craxiom.networksurvey.constants.WifiBeaconMessageConstants;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.craxiom.networksurvey.services.BoundedMessageQueue;
+import com.craxiom.networksurvey.services.CachedBytesMarshaller;
+import com.craxiom.networksurvey.services.GrpcMessageBatcher;
+import com.craxiom.networksurvey.services.GrpcStreamWorker;
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.Int32Value;
+
+import org.junit.Test;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import javax.net.SocketFactory;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.okhttp.OkHttpChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the gRPC message batcher, and reports what it costs the client to stream each survey record with each of the
+ * uplink options: plain, gzip compressed, and batched.
+ * <p>
+ * The records are streamed by the same {@link GrpcStreamWorker}, marshaller, and OkHttp transport that the app uses, to
+ * a gRPC server on the loopback interface. The client's sockets count the bytes and the writes that go out on the
+ * wire, which include the HTTP/2 and gRPC framing, and the CPU time of the client threads is summed. The server runs
+ * in the same JVM on its own threads, so its CPU time is not counted.
+ * <p>
+ * The report is a benchmark, so it only runs when it is asked for (see {@link Benchmarks}).
+ *
+ * @since 1.10.0
+ */
+public class GrpcUplinkBenchmarkTest
+{
+    private static final String LOOPBACK_HOST = "127.0.0.1";
+    private static final String CLIENT_THREAD_PREFIX = "uplink-client-";
+    private static final String GZIP = "gzip";
+
+    private static final int WIFI_RECORDS_PER_SCAN = 20;
+    private static final int SCAN_COUNT = 100;
+    private static final int WARM_UP_SCAN_COUNT = 20;
+    private static final long SCAN_INTERVAL_MS = 50;
+
+    /**
+     * The same idle sleep that the gRPC connection service uses when the queue is empty.
+     */
+    private static final int IDLE_SLEEP_MS = 1_000;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    private static final List<UplinkOption> UPLINK_OPTIONS = Arrays.asList(
+            new UplinkOption("plain", false, 0),
+            new UplinkOption("gzip", true, 0),
+            new UplinkOption("batched (100 ms)", false, 100),
+            new UplinkOption("gzip + batched (100 ms)", true, 100));
+
+    @Test
+    public void batcherSendsOneMessageWhenBatchingIsDisabled() throws InterruptedException
+    {
+        final ConcurrentLinkedQueue<Integer> queue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 10; i++) queue.add(i);
+
+        final List<Integer> sent = new ArrayList<>();
+        final GrpcMessageBatcher<Integer> batcher = new GrpcMessageBatcher<>(queue, 0);
+
+        assertEquals(1, batcher.sendQueuedMessages(new CollectingStreamObserver<>(sent)));
+        assertEquals(1, sent.size());
+        assertEquals(9, queue.size());
+    }
+
+    @Test
+    public void batcherDrainsTheQueueInOrderWhenBatchingIsEnabled() throws InterruptedException
+    {
+        final ConcurrentLinkedQueue<Integer> queue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 10; i++) queue.add(i);
+
+        final List<Integer> sent = new ArrayList<>();
+        final GrpcMessageBatcher<Integer> batcher = new GrpcMessageBatcher<>(queue, 20);
+
+        assertEquals(10, batcher.sendQueuedMessages(new CollectingStreamObserver<>(sent)));
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 10; i++) assertEquals(Integer.valueOf(i), sent.get(i));
+
+        assertEquals(0, batcher.sendQueuedMessages(new CollectingStreamObserver<>(sent)));
+    }
+
+    @Test
+    public void reportUplinkCostPerRecord() throws Exception
+    {
+        Benchmarks.assumeEnabled();
+
+        final CountingWirelessSurveyService service = new CountingWirelessSurveyService();
+        final Server server = NettyServerBuilder.forAddress(new InetSocketAddress(LOOPBACK_HOST, 0))
+                .addService(service)
+                .build()
+                .start();
+        final ExecutorService clientExecutor = Executors.newCachedThreadPool(new ClientThreadFactory());
+        try
+        {
+            // The first runs only warm up the JIT, so that the option that is measured first is not charged for it
+            for (UplinkOption option : UPLINK_OPTIONS)
+            {
+                runUplink(server, service, clientExecutor, option.compressed, option.batchWindowMs, WARM_UP_SCAN_COUNT);
+            }
+
+            for (UplinkOption option : UPLINK_OPTIONS)
+            {
+                final UplinkStats stats = runUplink(server, service, clientExecutor, option.compressed, option.batchWindowMs, SCAN_COUNT);
+                Timber.i("%s: %s", option.name, stats);
+            }
+        } finally
+        {
+            clientExecutor.shutdownNow();
+            server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Streams Wi-Fi scans to the server over a new OkHttp channel the same way the gRPC connection service does, and
+     * measures what the client spent to send them.
+     */
+    private static UplinkStats runUplink(Server server, CountingWirelessSurveyService service, ExecutorService clientExecutor,
+                                         boolean compressed, int batchWindowMs, int scanCount) throws InterruptedException
+    {
+        final int recordCount = scanCount * WIFI_RECORDS_PER_SCAN;
+        service.receivedRecords.set(0);
+
+        final CountingSocketFactory socketFactory = new CountingSocketFactory();
+        final ManagedChannel channel = OkHttpChannelBuilder.forAddress(LOOPBACK_HOST, server.getPort())
+                .usePlaintext()
+                .socketFactory(socketFactory)
+                .executor(clientExecutor)
+                .transportExecutor(clientExecutor)
+                .build();
+        try
+        {
+            WirelessSurveyGrpc.WirelessSurveyStub stub = WirelessSurveyGrpc.newStub(channel);
+            if (compressed) stub = stub.withCompression(GZIP);
+
+            final BoundedMessageQueue<SurveyRecordEnvelope<WifiBeaconRecord>> queue = new BoundedMessageQueue<>(recordCount);
+            final GrpcStreamWorker<SurveyRecordEnvelope<WifiBeaconRecord>, WifiBeaconSurveyResponse> worker = new GrpcStreamWorker<>(
+                    queue, batchWindowMs, IDLE_SLEEP_MS,
+                    CachedBytesMarshaller.clientStreamingCall(stub, WirelessSurveyGrpc.getStreamWifiBeaconSurveyMethod()));
+
+            final AtomicBoolean keepRunning = new AtomicBoolean(true);
+            final Thread workerThread = new ClientThreadFactory().newThread(() -> worker.stream(keepRunning::get));
+            final ClientCpuClock cpuClock = new ClientCpuClock();
+            workerThread.start();
+
+            // The records from each scan are queued all at once, the same as the survey service queues them
+            for (int scan = 0; scan < scanCount; scan++)
+            {
+                for (int i = 0; i < WIFI_RECORDS_PER_SCAN; i++)
+                {
+                    queue.offer(new SurveyRecordEnvelope<>(createWifiRecord(scan * WIFI_RECORDS_PER_SCAN + i)));
+                }
+                Thread.sleep(SCAN_INTERVAL_MS);
+            }
+
+            final long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+            while (service.receivedRecords.get() < recordCount && System.currentTimeMillis() < drainDeadline)
+            {
+                Thread.sleep(10);
+            }
+            final long clientCpuNs = cpuClock.elapsedNs();
+            keepRunning.set(false);
+            workerThread.join(DRAIN_TIMEOUT_MS);
+
+            assertEquals("The server should receive every record", recordCount, service.receivedRecords.get());
+            assertEquals(0, queue.getDroppedCount());
+
+            return new UplinkStats(recordCount, socketFactory.bytesWritten.get(), socketFactory.writeCount.get(), clientCpuNs);
+        } finally
+        {
+            channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+    private static WifiBeaconRecord createWifiRecord(int index)
+    {
+        final WifiBeaconRecordData.Builder dataBuilder = WifiBeaconRecordData.newBuilder()
+                .setDeviceSerialNumber("353456789012345")
+                .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                .setLatitude(39.0 + index * 0.00001)
+                .setLongitude(-77.0 - index * 0.00001)
+                .setAltitude(120.5f)
+                .setAccuracy(4)
+                .setMissionId("NS 2022-11-08T15:40:00")
+                .setRecordNumber(index)
+                .setBssid(String.format(Locale.US, "6c:55:e8:%02x:%02x:%02x", index >> 16 & 0xFF, index >> 8 & 0xFF, index & 0xFF))
+                .setSsid("Survey-Net-" + (index % 50))
+                .setSignalStrength(FloatValue.newBuilder().setValue(-40 - index % 50))
+                .setChannel(Int32Value.newBuilder().setValue(1 + index % 11))
+                .setFrequencyMhz(Int32Value.newBuilder().setValue(2412 + 5 * (index % 11)))
+                .setEncryptionType(EncryptionType.WPA2)
+                .setWps(BoolValue.newBuilder().setValue(index % 3 == 0));
+
+        return WifiBeaconRecord.newBuilder()
+                .setMessageType(WifiBeaconMessageConstants.WIFI_BEACON_RECORD_MESSAGE_TYPE)
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(dataBuilder)
+                .build();
+    }
+
+    private static final class CollectingStreamObserver<T> implements StreamObserver<T>
+    {
+        private final List<T> collected;
+
+        private CollectingStreamObserver(List<T> collected)
+        {
+            this.collected = collected;
+        }
+
+        @Override
+        public void onNext(T value)
+        {
+            collected.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t)
+        {
+        }
+
+        @Override
+        public void onCompleted()
+        {
+        }
+    }
+
+    /**
+     * Counts the records that the server receives, and completes each stream once the client completes it.
+     */
+    private static final class CountingWirelessSurveyService extends WirelessSurveyGrpc.WirelessSurveyImplBase
+    {
+        private final AtomicInteger receivedRecords = new AtomicInteger();
+
+        @Override
+        public StreamObserver<WifiBeaconRecord> streamWifiBeaconSurvey(StreamObserver<WifiBeaconSurveyResponse> responseObserver)
+        {
+            return new StreamObserver<WifiBeaconRecord>()
+            {
+                @Override
+                public void onNext(WifiBeaconRecord value)
+                {
+                    receivedRecords.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable t)
+                {
+                }
+
+                @Override
+                public void onCompleted()
+                {
+                    responseObserver.onNext(WifiBeaconSurveyResponse.getDefaultInstance());
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+    }
+
+    /**
+     * One of the ways the gRPC connection service can stream the records.
+     */
+    private static final class UplinkOption
+    {
+        private final String name;
+        private final boolean compressed;
+        private final int batchWindowMs;
+
+        private UplinkOption(String name, boolean compressed, int batchWindowMs)
+        {
+            this.name = name;
+            this.compressed = compressed;
+            this.batchWindowMs = batchWindowMs;
+        }
+    }
+
+    /**
+     * Names the client threads so that their CPU time can be told apart from the server's, which runs in the same JVM.
+     */
+    private static final class ClientThreadFactory implements ThreadFactory
+    {
+        private static final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable, CLIENT_THREAD_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Sums the CPU time that the client threads (the stream worker and the OkHttp transport) used since the clock was
+     * created.
+     */
+    private static final class ClientCpuClock
+    {
+        private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        private final Map<Long, Long> startCpuNs = new HashMap<>();
+
+        private ClientCpuClock()
+        {
+            forEachClientThread(startCpuNs::put);
+        }
+
+        /**
+         * @return The CPU time of the client threads since the clock was created. The cached client executor keeps its
+         * threads alive for a minute, so the time of the threads that are idle again is still counted.
+         */
+        private long elapsedNs()
+        {
+            final long[] elapsedNs = {0};
+            forEachClientThread((threadId, cpuNs) -> elapsedNs[0] += cpuNs - startCpuNs.getOrDefault(threadId, 0L));
+            return elapsedNs[0];
+        }
+
+        private void forEachClientThread(BiConsumer<Long, Long> consumer)
+        {
+            for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds()))
+            {
+                if (threadInfo == null || !threadInfo.getThreadName().startsWith(CLIENT_THREAD_PREFIX)) continue;
+
+                final long cpuNs = threadMXBean.getThreadCpuTime(threadInfo.getThreadId());
+                if (cpuNs >= 0) consumer.accept(threadInfo.getThreadId(), cpuNs);
+            }
+        }
+    }
+
+    /**
+     * Creates sockets that count what the client writes to them, which is everything it sends on the wire: the HTTP/2
+     * frames, the gRPC message framing, and the (possibly compressed) messages.
+     */
+    private static final class CountingSocketFactory extends SocketFactory
+    {
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong writeCount = new AtomicLong();
+
+        @Override
+        public Socket createSocket()
+        {
+            return new CountingSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException
+        {
+            return connect(new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localAddress, int localPort) throws IOException
+        {
+            return connect(new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port) throws IOException
+        {
+            return connect(new InetSocketAddress(address, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+        {
+            return connect(new InetSocketAddress(address, port));
+        }
+
+        private Socket connect(InetSocketAddress address) throws IOException
+        {
+            final Socket socket = new CountingSocket();
+            socket.connect(address);
+            return socket;
+        }
+
+        private final class CountingSocket extends Socket
+        {
+            private OutputStream outputStream;
+
+            @Override
+            public synchronized OutputStream getOutputStream() throws IOException
+            {
+                if (outputStream == null)
+                {
+                    outputStream = new FilterOutputStream(super.getOutputStream())
+                    {
+                        @Override
+                        public void write(int b) throws IOException
+                        {
+                            out.write(b);
+                            bytesWritten.incrementAndGet();
+                            writeCount.incrementAndGet();
+                        }
+
+                        @Override
+                        public void write(byte[] bytes, int offset, int length) throws IOException
+                        {
+                            out.write(bytes, offset, length);
+                            bytesWritten.addAndGet(length);
+                            writeCount.incrementAndGet();
+                        }
+                    };
+                }
+                return outputStream;
+            }
+        }
+    }
+
+    private static final class UplinkStats
+    {
+        private final int recordCount;
+        private final long bytesWritten;
+        private final long writeCount;
+        private final long clientCpuNs;
+
+        private UplinkStats(int recordCount, long bytesWritten, long writeCount, long clientCpuNs)
+        {
+            this.recordCount = recordCount;
+            this.bytesWritten = bytesWritten;
+            this.writeCount = writeCount;
+            this.clientCpuNs = clientCpuNs;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "%.1f wire bytes/record, %.3f socket writes/record, %.1f us client CPU/record",
+                    (double) bytesWritten / recordCount, (double) writeCount / recordCount, clientCpuNs / 1_000d / recordCount);
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.DeviceStatus;
+import com.craxiom.messaging.DeviceStatusData;
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.messaging.WifiBeaconRecordData;
+import com.craxiom.messaging.grpc.DeviceStatusGrpc;
+import com.craxiom.messaging.grpc.StatusUpdateReply;
+import com.craxiom.messaging.grpc.WifiBeaconSurveyResponse;
+import com.craxiom.messaging.grpc.WirelessSurveyGrpc;
+import com.craxiom.networksurvey.services.BoundedMessageQueue;
+import com.craxiom.networksurvey.services.GrpcStreamWorker;
+import com.google.protobuf.FloatValue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A test harness for the gRPC uplink. It starts an in-process stand-in for the WirelessSurvey and DeviceStatus
+ * services, and then drives the same {@link GrpcStreamWorker} and {@link BoundedMessageQueue} code that
+ * {@link com.craxiom.networksurvey.services.GrpcConnectionService} uses at a configurable record rate.
+ * <p>
+ * Each scenario reports the sustained throughput, the end to end latency percentiles (from the time a record is
+ * queued until the server receives it), and the peak queue depth. The server can also be told to stall or to drop the
+ * stream so that the reconnect behavior can be checked, and so that we can verify the queue (and therefore memory)
+ * stays bounded.
+ * <p>
+ * The scenarios take several seconds each, so they only run when the benchmarks are asked for (see
+ * {@link Benchmarks}).
+ *
+ * @since 1.10.0
+ */
+public class GrpcUplinkHarnessTest
+{
+    /**
+     * Matches the QUEUE_PROCESSING_SLEEP_TIME in GrpcConnectionService.
+     */
+    private static final int SERVICE_IDLE_SLEEP_MS = 1_000;
+
+    /**
+     * GrpcConnectionService waits 10 seconds before reconnecting, which is shortened here to keep the tests quick.
+     */
+    private static final int RECONNECT_BACKOFF_MS = 100;
+
+    private static final long DRAIN_TIMEOUT_MS = 5_000;
+
+    private final StreamRecorder<WifiBeaconRecord> wifiRecorder = new StreamRecorder<>(record -> (int) record.getData().getRecordNumber());
+    private final StreamRecorder<DeviceStatus> deviceStatusRecorder = new StreamRecorder<>(null);
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        final String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName)
+                .addService(new FakeWirelessSurveyService())
+                .addService(new FakeDeviceStatusService())
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+    }
+
+    @After
+    public void stopServer() throws InterruptedException
+    {
+        channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void sustainedWifiThroughput() throws InterruptedException
+    {
+        Benchmarks.assumeEnabled();
+
+        final WirelessSurveyGrpc.WirelessSurveyStub stub = WirelessSurveyGrpc.newStub(channel);
+
+        for (int batchWindowMs : new int[]{0, 100})
+        {
+            final UplinkScenario scenario = new UplinkScenario("Wi-Fi batchWindowMs=" + batchWindowMs, 1_000, 3_000)
+                    .batchWindowMs(batchWindowMs)
+                    .idleSleepMs(SERVICE_IDLE_SLEEP_MS)
+                    .queueCapacity(5_000);
+
+            final UplinkStats stats = runUplink(scenario, wifiRecorder, GrpcUplinkHarnessTest::createWifiRecord,
+                    stub::streamWifiBeaconSurvey);
+
+            assertEquals(0, stats.dropped);
+            assertEquals(0, stats.lost);
+            assertEquals(stats.produced, stats.delivered);
+            assertEquals(0, stats.reconnects);
+        }
+    }
+
+    @Test
+    public void serverStallKeepsTheQueueBounded() throws InterruptedException
+    {
+        Benchmarks.assumeEnabled();
+
+        final int queueCapacity = 500;
+        wifiRecorder.stall(200, 2_000);
+
+        final UplinkScenario scenario = new UplinkScenario("Wi-Fi server stall", 1_000, 3_000)
+                .idleSleepMs(50)
+                .queueCapacity(queueCapacity);
+
+        final UplinkStats stats = runUplink(scenario, wifiRecorder, GrpcUplinkHarnessTest::createWifiRecord,
+                WirelessSurveyGrpc.newStub(channel)::streamWifiBeaconSurvey);
+
+        assertTrue("The stall should have caused the oldest records to be dropped", stats.dropped > 0);
+        assertTrue("The queue grew past its capacity: " + stats.maxQueueDepth, stats.maxQueueDepth <= queueCapacity);
+        assertEquals(0, stats.lost);
+        assertEquals(stats.produced, stats.delivered + stats.dropped);
+    }
+
+    @Test
+    public void serverDisconnectsTriggerReconnects() throws InterruptedException
+    {
+        Benchmarks.assumeEnabled();
+
+        final int queueCapacity = 1_000;
+        wifiRecorder.disconnectEvery(700);
+
+        final UplinkScenario scenario = new UplinkScenario("Wi-Fi server disconnects", 1_000, 3_000)
+                .idleSleepMs(50)
+                .queueCapacity(queueCapacity);
+
+        final UplinkStats stats = runUplink(scenario, wifiRecorder, GrpcUplinkHarnessTest::createWifiRecord,
+                WirelessSurveyGrpc.newStub(channel)::streamWifiBeaconSurvey);
+
+        assertTrue("Expected at least 3 reconnects, but there were " + stats.reconnects, stats.reconnects >= 3);
+        assertTrue("Records should keep flowing after each reconnect", stats.delivered > stats.produced / 2);
+        assertTrue("The queue grew past its capacity: " + stats.maxQueueDepth, stats.maxQueueDepth <= queueCapacity);
+        assertFalse(stats.unimplemented);
+    }
+
+    @Test
+    public void deviceStatusStream() throws InterruptedException
+    {
+        Benchmarks.assumeEnabled();
+
+        final UplinkScenario scenario = new UplinkScenario("Device Status", 20, 2_000)
+                .idleSleepMs(SERVICE_IDLE_SLEEP_MS)
+                .queueCapacity(100);
+
+        final UplinkStats stats = runUplink(scenario, deviceStatusRecorder, GrpcUplinkHarnessTest::createDeviceStatus,
+                DeviceStatusGrpc.newStub(channel)::statusUpdate);
+
+        assertEquals(stats.produced, stats.delivered);
+    }
+
+    @Test
+    public void unimplementedRpcStopsTheWorker()
+    {
+        // The server does not implement the NR stream, so the worker should report it as unimplemented
+        final GrpcStreamWorker<com.craxiom.messaging.NrRecord, com.craxiom.messaging.grpc.NrSurveyResponse> worker =
+                new GrpcStreamWorker<>(new BoundedMessageQueue<>(10), 0, 10, WirelessSurveyGrpc.newStub(channel)::streamNrSurvey);
+
+        assertTrue(worker.stream(() -> true));
+    }
+
+    /**
+     * Produces records at the scenario's rate, streams them with a {@link GrpcStreamWorker} (reconnecting whenever the
+     * stream closes just like the service does), and then collects the stats once all the queued records are drained.
+     */
+    private <M, R> UplinkStats runUplink(UplinkScenario scenario, StreamRecorder<M> recorder, IntFunction<M> messageFactory,
+                                         Function<StreamObserver<R>, StreamObserver<M>> stubCall) throws InterruptedException
+    {
+        final int totalRecords = scenario.recordsPerSecond * scenario.durationMs / 1_000;
+        final BoundedMessageQueue<M> queue = new BoundedMessageQueue<>(scenario.queueCapacity);
+        recorder.reset(totalRecords);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger reconnects = new AtomicInteger();
+        final AtomicBoolean unimplemented = new AtomicBoolean();
+        final Thread streamingThread = new Thread(() -> {
+            while (running.get())
+            {
+                final GrpcStreamWorker<M, R> worker = new GrpcStreamWorker<>(queue, scenario.batchWindowMs,
+                        scenario.idleSleepMs, stubCall);
+                if (worker.stream(running::get))
+                {
+                    unimplemented.set(true);
+                    return;
+                }
+
+                if (!running.get()) return;
+
+                reconnects.incrementAndGet();
+                try
+                {
+                    Thread.sleep(RECONNECT_BACKOFF_MS);
+                } catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }, "gRPC Harness Streaming Thread");
+        streamingThread.start();
+
+        // Produce the records in 10 ms ticks to approximate a steady record rate
+        final int tickMs = 10;
+        final int ticks = scenario.durationMs / tickMs;
+        final AtomicInteger produced = new AtomicInteger();
+        final AtomicInteger maxQueueDepth = new AtomicInteger();
+        final ScheduledExecutorService producer = Executors.newSingleThreadScheduledExecutor();
+        final long startNs = System.nanoTime();
+        producer.scheduleAtFixedRate(() -> {
+            final int target = (int) Math.min(totalRecords, (long) totalRecords * ((System.nanoTime() - startNs) / 1_000_000L) / scenario.durationMs);
+            while (produced.get() < target)
+            {
+                final int sequence = produced.getAndIncrement();
+                recorder.markQueued(sequence);
+                queue.add(messageFactory.apply(sequence));
+            }
+            maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        }, 0, tickMs, TimeUnit.MILLISECONDS);
+
+        Thread.sleep((long) ticks * tickMs);
+        producer.shutdown();
+        producer.awaitTermination(1, TimeUnit.SECONDS);
+        while (produced.get() < totalRecords)
+        {
+            final int sequence = produced.getAndIncrement();
+            recorder.markQueued(sequence);
+            queue.add(messageFactory.apply(sequence));
+        }
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+
+        // Wait for everything that is still queued to be sent and received
+        final long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (System.currentTimeMillis() < drainDeadline
+                && recorder.delivered.get() + queue.getDroppedCount() < totalRecords
+                && !unimplemented.get())
+        {
+            Thread.sleep(10);
+        }
+        final long elapsedNs = Math.max(1, recorder.lastReceivedNs.get() - startNs);
+
+        running.set(false);
+        streamingThread.interrupt();
+        streamingThread.join(DRAIN_TIMEOUT_MS);
+
+        final UplinkStats stats = new UplinkStats(totalRecords, recorder.delivered.get(), queue.getDroppedCount(),
+                queue.size(), reconnects.get(), maxQueueDepth.get(), unimplemented.get(),
+                recorder.delivered.get() * 1_000_000_000d / elapsedNs, recorder.latencyPercentilesMs(50, 95, 99));
+        Timber.i("%s: %s", scenario.name, stats);
+        return stats;
+    }
+
+    private static WifiBeaconRecord createWifiRecord(int sequence)
+    {
+        return WifiBeaconRecord.newBuilder()
+                .setMessageType("WifiBeaconRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(WifiBeaconRecordData.newBuilder()
+                        .setDeviceSerialNumber("353456789012345")
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setMissionId("NS 2022-11-08T15:40:00")
+                        .setRecordNumber(sequence)
+                        .setBssid(String.format(Locale.US, "6c:55:e8:%02x:%02x:%02x", sequence >> 16 & 0xFF, sequence >> 8 & 0xFF, sequence & 0xFF))
+                        .setSsid("Survey-Net-" + (sequence % 50))
+                        .setSignalStrength(FloatValue.newBuilder().setValue(-40 - sequence % 50)))
+                .build();
+    }
+
+    private static DeviceStatus createDeviceStatus(int sequence)
+    {
+        return DeviceStatus.newBuilder()
+                .setMessageType("DeviceStatus")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(DeviceStatusData.newBuilder()
+                        .setDeviceSerialNumber("353456789012345")
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00"))
+                .build();
+    }
+
+    /**
+     * The server side of the harness. It records when each message arrives, and can inject a stall or drop the stream.
+     *
+     * @param <M> The type of message received from the client.
+     */
+    private static final class StreamRecorder<M>
+    {
+        private final ToIntFunction<M> sequenceFunction;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong lastReceivedNs = new AtomicLong();
+
+        private long[] queuedTimesNs = new long[0];
+        private long[] latenciesNs = new long[0];
+        private volatile int stallAfter = -1;
+        private volatile long stallMs;
+        private volatile int disconnectEvery = -1;
+
+        /**
+         * @param sequenceFunction Pulls the sequence number out of a message, or null to use the order of arrival.
+         */
+        private StreamRecorder(ToIntFunction<M> sequenceFunction)
+        {
+            this.sequenceFunction = sequenceFunction;
+        }
+
+        void stall(int afterMessageCount, long durationMs)
+        {
+            stallAfter = afterMessageCount;
+            stallMs = durationMs;
+        }
+
+        void disconnectEvery(int messageCount)
+        {
+            disconnectEvery = messageCount;
+        }
+
+        void reset(int totalRecords)
+        {
+            queuedTimesNs = new long[totalRecords];
+            latenciesNs = new long[totalRecords];
+            Arrays.fill(latenciesNs, -1);
+            delivered.set(0);
+        }
+
+        void markQueued(int sequence)
+        {
+            queuedTimesNs[sequence] = System.nanoTime();
+        }
+
+        <R> StreamObserver<M> newStream(StreamObserver<R> responseObserver, R reply)
+        {
+            return new StreamObserver<M>()
+            {
+                private int streamMessageCount = 0;
+                private boolean closed = false;
+
+                @Override
+                public void onNext(M message)
+                {
+                    if (closed) return;
+
+                    final long nowNs = System.nanoTime();
+                    final long deliveredCount = delivered.getAndIncrement();
+                    final int sequence = sequenceFunction == null ? (int) deliveredCount : sequenceFunction.applyAsInt(message);
+                    if (sequence < latenciesNs.length) latenciesNs[sequence] = nowNs - queuedTimesNs[sequence];
+                    lastReceivedNs.set(nowNs);
+
+                    if (deliveredCount + 1 == stallAfter)
+                    {
+                        try
+                        {
+                            Thread.sleep(stallMs);
+                        } catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    streamMessageCount++;
+                    if (disconnectEvery > 0 && streamMessageCount >= disconnectEvery)
+                    {
+                        closed = true;
+                        responseObserver.onError(Status.UNAVAILABLE.withDescription("Injected disconnect").asRuntimeException());
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t)
+                {
+                    closed = true;
+                }
+
+                @Override
+                public void onCompleted()
+                {
+                    if (closed) return;
+
+                    closed = true;
+                    responseObserver.onNext(reply);
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+
+        /**
+         * @return The requested latency percentiles, in milliseconds, for the messages that were delivered.
+         */
+        double[] latencyPercentilesMs(int... percentiles)
+        {
+            final long[] sorted = Arrays.stream(latenciesNs).filter(latency -> latency >= 0).sorted().toArray();
+            final double[] results = new double[percentiles.length];
+            if (sorted.length == 0) return results;
+
+            for (int i = 0; i < percentiles.length; i++)
+            {
+                final int index = (int) Math.ceil(percentiles[i] / 100d * sorted.length) - 1;
+                results[i] = sorted[Math.max(0, index)] / 1_000_000d;
+            }
+            return results;
+        }
+    }
+
+    private final class FakeWirelessSurveyService extends WirelessSurveyGrpc.WirelessSurveyImplBase
+    {
+        @Override
+        public StreamObserver<WifiBeaconRecord> streamWifiBeaconSurvey(StreamObserver<WifiBeaconSurveyResponse> responseObserver)
+        {
+            return wifiRecorder.newStream(responseObserver, WifiBeaconSurveyResponse.getDefaultInstance());
+        }
+    }
+
+    private final class FakeDeviceStatusService extends DeviceStatusGrpc.DeviceStatusImplBase
+    {
+        @Override
+        public StreamObserver<DeviceStatus> statusUpdate(StreamObserver<StatusUpdateReply> responseObserver)
+        {
+            return deviceStatusRecorder.newStream(responseObserver, StatusUpdateReply.getDefaultInstance());
+        }
+    }
+
+    private static final class UplinkScenario
+    {
+        private final String name;
+        private final int recordsPerSecond;
+        private final int durationMs;
+        private int batchWindowMs = 0;
+        private int idleSleepMs = SERVICE_IDLE_SLEEP_MS;
+        private int queueCapacity = 5_000;
+
+        private UplinkScenario(String name, int recordsPerSecond, int durationMs)
+        {
+            this.name = name;
+            this.recordsPerSecond = recordsPerSecond;
+            this.durationMs = durationMs;
+        }
+
+        UplinkScenario batchWindowMs(int batchWindowMs)
+        {
+            this.batchWindowMs = batchWindowMs;
+            return this;
+        }
+
+        UplinkScenario idleSleepMs(int idleSleepMs)
+        {
+            this.idleSleepMs = idleSleepMs;
+            return this;
+        }
+
+        UplinkScenario queueCapacity(int queueCapacity)
+        {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+    }
+
+    private static final class UplinkStats
+    {
+        private final long produced;
+        private final long delivered;
+        private final long dropped;
+        private final long lost;
+        private final int reconnects;
+        private final int maxQueueDepth;
+        private final boolean unimplemented;
+        private final double recordsPerSecond;
+        private final double[] latencyPercentilesMs;
+
+        private UplinkStats(long produced, long delivered, long dropped, int stillQueued, int reconnects,
+                            int maxQueueDepth, boolean unimplemented, double recordsPerSecond, double[] latencyPercentilesMs)
+        {
+            this.produced = produced;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.lost = produced - delivered - dropped - stillQueued;
+            this.reconnects = reconnects;
+            this.maxQueueDepth = maxQueueDepth;
+            this.unimplemented = unimplemented;
+            this.recordsPerSecond = recordsPerSecond;
+            this.latencyPercentilesMs = latencyPercentilesMs;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "produced=%d, delivered=%d, dropped=%d, lost=%d, reconnects=%d, "
+                            + "maxQueueDepth=%d, throughput=%.0f records/s, latency p50=%.1f ms p95=%.1f ms p99=%.1f ms",
+                    produced, delivered, dropped, lost, reconnects, maxQueueDepth, recordsPerSecond,
+                    latencyPercentilesMs[0], latencyPercentilesMs[1], latencyPercentilesMs[2]);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.craxiom.networksurvey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for an MQTT broker that can be used in the JVM tests. It listens on the loopback interface and speaks just
+ * enough MQTT 3.1.1 for a publishing client: it accepts every CONNECT, acknowledges QoS 0 and QoS 1 PUBLISH packets,
+ * answers pings, and hands each published message to a listener instead of routing it to subscribers.
+ * <p>
+ * This is not a real broker (there is no session state, no subscriptions, and no QoS 2), but it goes through a real TCP
+ * socket so that the client's networking, framing, and flow control are all part of what is measured.
+ *
+ * @since 1.10.0
+ */
+public class LoopbackMqttBroker implements AutoCloseable
+{
+    private static final int CONNECT = 1;
+    private static final int PUBLISH = 3;
+    private static final int SUBSCRIBE = 8;
+    private static final int PINGREQ = 12;
+    private static final int DISCONNECT = 14;
+
+    /**
+     * Notified of each message that a client publishes.
+     */
+    public interface PublishListener
+    {
+        /**
+         * Called from the client's connection thread, so it should return quickly.
+         *
+         * @param topic         The topic the message was published on.
+         * @param payload       The message payload.
+         * @param receivedNanos The {@link System#nanoTime()} when the whole packet was read.
+         */
+        void onPublish(String topic, byte[] payload, long receivedNanos);
+    }
+
+    private final ServerSocket serverSocket;
+    private final PublishListener listener;
+    private final List<Socket> clientSockets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectCount = new AtomicInteger();
+    private final AtomicLong publishCount = new AtomicLong();
+    private final AtomicLong payloadBytes = new AtomicLong();
+
+    /**
+     * Starts the broker on a free port on the loopback interface.
+     *
+     * @param listener Notified of each published message.
+     */
+    public LoopbackMqttBroker(PublishListener listener) throws IOException
+    {
+        this.listener = listener;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        final Thread acceptThread = new Thread(this::acceptClients, "LoopbackMqttBroker accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public String getHost()
+    {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getConnectCount()
+    {
+        return connectCount.get();
+    }
+
+    public long getPublishCount()
+    {
+        return publishCount.get();
+    }
+
+    public long getPayloadBytes()
+    {
+        return payloadBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+        for (Socket socket : clientSockets)
+        {
+            socket.close();
+        }
+    }
+
+    private void acceptClients()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clientSockets.add(socket);
+
+                final Thread clientThread = new Thread(() -> serveClient(socket), "LoopbackMqttBroker client");
+                clientThread.setDaemon(true);
+                clientThread.start();
+            } catch (IOException e)
+            {
+                // The server socket was closed
+                return;
+            }
+        }
+    }
+
+    private void serveClient(Socket socket)
+    {
+        try (Socket ignored = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream()))
+        {
+            while (true)
+            {
+                final int header = in.read();
+                if (header == -1) return;
+
+                final int packetType = header >> 4;
+                final byte[] body = new byte[readRemainingLength(in)];
+                in.readFully(body);
+
+                switch (packetType)
+                {
+                    case CONNECT:
+                        connectCount.incrementAndGet();
+                        // CONNACK, no session present, connection accepted
+                        out.write(new byte[]{0x20, 0x02, 0x00, 0x00});
+                        out.flush();
+                        break;
+
+                    case PUBLISH:
+                        onPublish(header, body, in, out);
+                        break;
+
+                    case SUBSCRIBE:
+                        // SUBACK granting QoS 0 for the one topic filter the tests might send
+                        out.write(new byte[]{(byte) 0x90, 0x03, body[0], body[1], 0x00});
+                        out.flush();
+                        break;
+
+                    case PINGREQ:
+                        out.write(new byte[]{(byte) 0xD0, 0x00});
+                        out.flush();
+                        break;
+
+                    case DISCONNECT:
+                        return;
+
+                    default:
+                        // Nothing else needs a response from a broker that only receives QoS 0 and 1 messages
+                }
+            }
+        } catch (EOFException | SocketException e)
+        {
+            // The client went away or the broker was closed
+        } catch (IOException e)
+        {
+            throw new IllegalStateException("The loopback MQTT broker could not read from the client", e);
+        } finally
+        {
+            clientSockets.remove(socket);
+        }
+    }
+
+    private void onPublish(int header, byte[] body, DataInputStream in, OutputStream out) throws IOException
+    {
+        final long receivedNanos = System.nanoTime();
+        final int qos = (header >> 1) & 0x03;
+
+        final int topicLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+        final String topic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+        int offset = 2 + topicLength;
+
+        byte packetIdMsb = 0;
+        byte packetIdLsb = 0;
+        if (qos > 0)
+        {
+            packetIdMsb = body[offset];
+            packetIdLsb = body[offset + 1];
+            offset += 2;
+        }
+
+        final byte[] payload = new byte[body.length - offset];
+        System.arraycopy(body, offset, payload, 0, payload.length);
+
+        publishCount.incrementAndGet();
+        payloadBytes.addAndGet(payload.length);
+        listener.onPublish(topic, payload, receivedNanos);
+
+        if (qos == 1)
+        {
+            // PUBACK, only flushed once the client has stopped sending so that a burst gets acknowledged together
+            out.write(new byte[]{0x40, 0x02, packetIdMsb, packetIdLsb});
+            if (in.available() == 0) out.flush();
+        }
+    }
+
+    /**
+     * Reads the variable length "remaining length" field from the fixed header.
+     */
+    private static int readRemainingLength(DataInputStream in) throws IOException
+    {
+        int value = 0;
+        int multiplier = 1;
+        for (int i = 0; i < 4; i++)
+        {
+            final int encodedByte = in.readUnsignedByte();
+            value += (encodedByte & 0x7F) * multiplier;
+            if ((encodedByte & 0x80) == 0) return value;
+            multiplier *= 128;
+        }
+
+        throw new IOException("Malformed MQTT remaining length");
+    }
+}
@@ -0,0 +1,103 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.networksurvey.mqtt.MqttBrokerConfig;
+import com.craxiom.networksurvey.mqtt.MqttConnectionInfo;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link MqttBrokerConfig} class that holds the settings for the additional MQTT brokers.
+ *
+ * @since 1.10.0
+ */
+public class MqttBrokerConfigTest
+{
+    @Test
+    public void parseAdditionalBrokers()
+    {
+        final List<MqttBrokerConfig> configs = MqttBrokerConfig.parse("[" +
+                "{\"mqtt_host\": \"field.local\"}," +
+                "{\"mqtt_host\": \" regional.example.com \", \"mqtt_port\": 9883, \"mqtt_tls\": true, \"mqtt_client\": \"Regional\"," +
+                " \"mqtt_username\": \"bob\", \"mqtt_password\": \"secret\", \"mqtt_payload_format\": \"protobuf\"," +
+                " \"mqtt_topics\": [\"lte_message\", \" nr_message \", \"\"]}," +
+                "{\"mqtt_port\": 1883}]");
+
+        assertEquals(2, configs.size());
+
+        final MqttBrokerConfig fieldBroker = configs.get(0);
+        assertEquals("field.local:1883", fieldBroker.getName());
+        assertNull(fieldBroker.getTopicFilter());
+
+        final MqttConnectionInfo fieldConnectionInfo = fieldBroker.toConnectionInfo("Pixel3a", false, 0);
+        assertEquals("Pixel3a", fieldConnectionInfo.getMqttClientId());
+        assertFalse(fieldConnectionInfo.isTlsEnabled());
+        assertEquals(MqttPayloadFormat.JSON, fieldConnectionInfo.getPayloadFormat());
+        assertTrue(fieldConnectionInfo.isCellularStreamEnabled());
+        assertTrue(fieldConnectionInfo.isWifiStreamEnabled());
+        assertTrue(fieldConnectionInfo.isBluetoothStreamEnabled());
+        assertTrue(fieldConnectionInfo.isGnssStreamEnabled());
+        assertTrue(fieldConnectionInfo.isDeviceStatusStreamEnabled());
+
+        final MqttBrokerConfig regionalBroker = configs.get(1);
+        assertEquals("regional.example.com:9883", regionalBroker.getName());
+        assertEquals(new HashSet<>(Arrays.asList("lte_message", "nr_message")), regionalBroker.getTopicFilter());
+
+        // Only the cellular records are needed for the topics in the filter
+        final MqttConnectionInfo regionalConnectionInfo = regionalBroker.toConnectionInfo("Pixel3a", true, 5_000);
+        assertEquals("Regional", regionalConnectionInfo.getMqttClientId());
+        assertEquals("bob", regionalConnectionInfo.getMqttUsername());
+        assertTrue(regionalConnectionInfo.isTlsEnabled());
+        assertEquals(MqttPayloadFormat.PROTOBUF, regionalConnectionInfo.getPayloadFormat());
+        assertTrue(regionalConnectionInfo.isCellularStreamEnabled());
+        assertFalse(regionalConnectionInfo.isWifiStreamEnabled());
+        assertFalse(regionalConnectionInfo.isBluetoothStreamEnabled());
+        assertFalse(regionalConnectionInfo.isGnssStreamEnabled());
+        assertFalse(regionalConnectionInfo.isDeviceStatusStreamEnabled());
+        assertTrue(regionalConnectionInfo.isBatchPublishEnabled());
+        assertEquals(5_000, regionalConnectionInfo.getBatchWindowMs());
+    }
+
+    @Test
+    public void outboxDirectoryIsKeyedByTheBrokerIdentity()
+    {
+        final List<MqttBrokerConfig> configs = MqttBrokerConfig.parse("[" +
+                "{\"mqtt_host\": \"field.local\"}," +
+                "{\"mqtt_host\": \"field.local\", \"mqtt_port\": 1884}," +
+                "{\"mqtt_host\": \"field.local\", \"mqtt_client\": \"Other/Client\"}]");
+
+        final String directoryName = configs.get(0).getOutboxDirectoryName("Pixel3a");
+        assertTrue(directoryName.startsWith(MqttBrokerConfig.OUTBOX_DIRECTORY_PREFIX + "field.local_1883_"));
+
+        // The same broker gets the same directory no matter where it is in the list
+        final List<MqttBrokerConfig> reordered = MqttBrokerConfig.parse("[{\"mqtt_port\": 1884, \"mqtt_host\": \"field.local\"}," +
+                "{\"mqtt_host\": \"field.local\"}]");
+        assertEquals(directoryName, reordered.get(1).getOutboxDirectoryName("Pixel3a"));
+
+        // A different port, client ID, or default client ID is a different broker identity
+        final Set<String> directoryNames = new HashSet<>(Arrays.asList(directoryName,
+                configs.get(1).getOutboxDirectoryName("Pixel3a"), configs.get(2).getOutboxDirectoryName("Pixel3a"),
+                configs.get(0).getOutboxDirectoryName("Pixel7")));
+        assertEquals(4, directoryNames.size());
+        assertFalse(configs.get(2).getOutboxDirectoryName("Pixel3a").contains("/"));
+    }
+
+    @Test
+    public void invalidSettingsAreIgnored()
+    {
+        assertTrue(MqttBrokerConfig.parse(null).isEmpty());
+        assertTrue(MqttBrokerConfig.parse(" ").isEmpty());
+        assertTrue(MqttBrokerConfig.parse("field.local:1883").isEmpty());
+        assertTrue(MqttBrokerConfig.parse("{\"mqtt_host\": \"field.local\"}").isEmpty());
+    }
+}
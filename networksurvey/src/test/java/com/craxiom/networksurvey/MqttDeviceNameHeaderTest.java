@@ -0,0 +1,107 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.GsmRecord;
+import com.craxiom.messaging.GsmRecordData;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.craxiom.networksurvey.mqtt.MqttDeviceNameHeader;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
+import com.google.gson.JsonParser;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the {@link MqttDeviceNameHeader} class.
+ *
+ * @since 1.10.0
+ */
+public class MqttDeviceNameHeaderTest
+{
+    private static final JsonFormat.Printer JSON_PRINTER = JsonFormat.printer().preservingProtoFieldNames().omittingInsignificantWhitespace();
+    private static final String DEVICE_NAME = "Survey \"Phone\" \u00e9";
+
+    @Test
+    public void protobufPayloadParsesWithTheDeviceName() throws InvalidProtocolBufferException
+    {
+        final GsmRecord record = createGsmRecord("");
+        final MqttDeviceNameHeader header = new MqttDeviceNameHeader(DEVICE_NAME);
+
+        final byte[] payload = header.getPayload(MqttPayloadFormat.PROTOBUF, new SurveyRecordEnvelope<>(record));
+
+        assertEquals(withDeviceName(record), GsmRecord.parseFrom(payload));
+    }
+
+    @Test
+    public void jsonPayloadMatchesTheRecordWithTheDeviceName() throws InvalidProtocolBufferException
+    {
+        final GsmRecord record = createGsmRecord("");
+        final MqttDeviceNameHeader header = new MqttDeviceNameHeader(DEVICE_NAME);
+
+        final byte[] payload = header.getPayload(MqttPayloadFormat.JSON, new SurveyRecordEnvelope<>(record));
+
+        assertEquals(JsonParser.parseString(JSON_PRINTER.print(withDeviceName(record))),
+                JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void emptyDataGetsTheDeviceName() throws InvalidProtocolBufferException
+    {
+        final GsmRecord record = GsmRecord.newBuilder().setMessageType("GsmRecord").setData(GsmRecordData.getDefaultInstance()).build();
+        final MqttDeviceNameHeader header = new MqttDeviceNameHeader(DEVICE_NAME);
+
+        final byte[] payload = header.getPayload(MqttPayloadFormat.JSON, new SurveyRecordEnvelope<>(record));
+
+        assertEquals(JsonParser.parseString(JSON_PRINTER.print(withDeviceName(record))),
+                JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void recordsWithTheDeviceNameUseTheCachedPayload() throws InvalidProtocolBufferException
+    {
+        final SurveyRecordEnvelope<GsmRecord> envelope = new SurveyRecordEnvelope<>(createGsmRecord(DEVICE_NAME));
+        final MqttDeviceNameHeader header = new MqttDeviceNameHeader(DEVICE_NAME);
+
+        assertSame(envelope.getJsonBytes(), header.getPayload(MqttPayloadFormat.JSON, envelope));
+        assertSame(envelope.getProtobufBytes(), header.getPayload(MqttPayloadFormat.PROTOBUF, envelope));
+    }
+
+    @Test
+    public void otherDeviceNamesAreReplaced() throws InvalidProtocolBufferException
+    {
+        final GsmRecord record = createGsmRecord("Another Phone");
+        final MqttDeviceNameHeader header = new MqttDeviceNameHeader(DEVICE_NAME);
+
+        assertEquals(withDeviceName(record),
+                GsmRecord.parseFrom(header.getPayload(MqttPayloadFormat.PROTOBUF, new SurveyRecordEnvelope<>(record))));
+        assertEquals(JsonParser.parseString(JSON_PRINTER.print(withDeviceName(record))), JsonParser.parseString(
+                new String(header.getPayload(MqttPayloadFormat.JSON, new SurveyRecordEnvelope<>(record)), StandardCharsets.UTF_8)));
+    }
+
+    private static GsmRecord withDeviceName(GsmRecord record)
+    {
+        final GsmRecord.Builder recordBuilder = record.toBuilder();
+        return recordBuilder.setData(recordBuilder.getDataBuilder().setDeviceName(DEVICE_NAME)).build();
+    }
+
+    private static GsmRecord createGsmRecord(String deviceName)
+    {
+        return GsmRecord.newBuilder()
+                .setMessageType("GsmRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(GsmRecordData.newBuilder()
+                        .setDeviceSerialNumber("353456789012345")
+                        .setDeviceName(deviceName)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setMcc(Int32Value.of(310))
+                        .setMnc(Int32Value.of(260))
+                        .setCi(Int32Value.of(5678)))
+                .build();
+    }
+}
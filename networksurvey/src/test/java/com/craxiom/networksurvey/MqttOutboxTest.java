@@ -0,0 +1,243 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.BluetoothRecord;
+import com.craxiom.messaging.BluetoothRecordData;
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.messaging.WifiBeaconRecordData;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.craxiom.networksurvey.mqtt.MqttOutbox;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link MqttOutbox} class.
+ *
+ * @since 1.10.0
+ */
+public class MqttOutboxTest
+{
+    private static final String WIFI_TOPIC = "80211_beacon_message";
+    private static final String BLUETOOTH_TOPIC = "bluetooth_message";
+
+    // The tests run off of a device, so the thread priorities are left alone
+    private static final ScheduledExecutorService WRITE_EXECUTOR = new ExecutorRegistry(priority -> {
+    }).getExecutor(ExecutorRegistry.Role.NETWORK);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Function<String, Descriptors.Descriptor> descriptorResolver = createDescriptorResolver();
+
+    @Test
+    public void replaysEachTopicInOrder() throws IOException, InterruptedException
+    {
+        final MqttOutbox outbox = new MqttOutbox(temporaryFolder.newFolder(), WRITE_EXECUTOR);
+        for (int i = 0; i < 100; i++)
+        {
+            outbox.add(WIFI_TOPIC, createWifiRecord(i));
+            outbox.add(BLUETOOTH_TOPIC, createBluetoothRecord(i));
+        }
+        assertEquals(200, outbox.getQueuedCount());
+
+        final List<Message> wifiMessages = new ArrayList<>();
+        final List<Message> bluetoothMessages = new ArrayList<>();
+        outbox.replay(descriptorResolver, (topic, envelope) -> (WIFI_TOPIC.equals(topic) ? wifiMessages : bluetoothMessages).add(envelope.getRecord()),
+                () -> true, 1_000, 0);
+
+        assertEquals(100, wifiMessages.size());
+        assertEquals(100, bluetoothMessages.size());
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(createWifiRecord(i).getRecord().toByteString(), wifiMessages.get(i).toByteString());
+            assertEquals(createBluetoothRecord(i).getRecord().toByteString(), bluetoothMessages.get(i).toByteString());
+        }
+        assertEquals(0, outbox.getQueuedCount());
+        assertEquals(0, outbox.getQueuedBytes());
+        assertEquals(200, outbox.getReplayedCount());
+        assertFalse(outbox.isReplaying());
+    }
+
+    @Test
+    public void stoppedReplayResumesWhereItLeftOff() throws IOException, InterruptedException
+    {
+        final File directory = temporaryFolder.newFolder();
+        final MqttOutbox outbox = new MqttOutbox(directory, WRITE_EXECUTOR);
+        for (int i = 0; i < 50; i++) outbox.add(WIFI_TOPIC, createWifiRecord(i));
+
+        final List<Message> published = new ArrayList<>();
+        outbox.replay(descriptorResolver, (topic, envelope) -> published.add(envelope.getRecord()), () -> published.size() < 20, 1_000, 0);
+        assertEquals(20, published.size());
+        assertEquals(30, outbox.getQueuedCount());
+
+        // New messages that come in while the connection is down again go after the ones that were not replayed
+        outbox.add(WIFI_TOPIC, createWifiRecord(50));
+        outbox.flush();
+
+        // Reload from disk to make sure what is left survives an app restart
+        final MqttOutbox reloadedOutbox = new MqttOutbox(directory, WRITE_EXECUTOR);
+        assertFalse("Creating the outbox should not read the segments", reloadedOutbox.isLoaded());
+        assertEquals(0, reloadedOutbox.getQueuedCount());
+        reloadedOutbox.load();
+        assertEquals(31, reloadedOutbox.getQueuedCount());
+
+        reloadedOutbox.replay(descriptorResolver, (topic, envelope) -> published.add(envelope.getRecord()), () -> true, 1_000, 0);
+        assertEquals(51, published.size());
+        for (int i = 0; i < published.size(); i++)
+        {
+            assertEquals(createWifiRecord(i).getRecord().toByteString(), published.get(i).toByteString());
+        }
+        assertEquals(0, reloadedOutbox.getQueuedCount());
+    }
+
+    @Test
+    public void sizeCapDropsTheOldestMessages() throws IOException, InterruptedException
+    {
+        final long maxBytes = 1024 * 1024;
+        final MqttOutbox outbox = new MqttOutbox(temporaryFolder.newFolder(), maxBytes, TimeUnit.HOURS.toMillis(1), WRITE_EXECUTOR);
+
+        final int messageCount = 20_000;
+        for (int i = 0; i < messageCount; i++) outbox.add(WIFI_TOPIC, createWifiRecord(i));
+
+        // The newest segment is never dropped, so the cap can be exceeded by up to one segment
+        assertTrue(outbox.getQueuedBytes() <= maxBytes + 256 * 1024);
+        assertTrue(outbox.getDroppedCount() > 0);
+        assertEquals(messageCount, outbox.getQueuedCount() + outbox.getDroppedCount());
+
+        final List<Message> published = new ArrayList<>();
+        outbox.replay(descriptorResolver, (topic, envelope) -> published.add(envelope.getRecord()), () -> true, 1_000, 0);
+
+        // What is left should be the newest messages, still in order
+        assertEquals(createWifiRecord(messageCount - 1).getRecord().toByteString(), published.get(published.size() - 1).toByteString());
+        for (int i = 1; i < published.size(); i++)
+        {
+            assertEquals(getData(published.get(i - 1)).getRecordNumber() + 1, getData(published.get(i)).getRecordNumber());
+        }
+    }
+
+    @Test
+    public void ageCapDropsExpiredMessages() throws IOException, InterruptedException
+    {
+        final MqttOutbox outbox = new MqttOutbox(temporaryFolder.newFolder(), MqttOutbox.DEFAULT_MAX_BYTES_PER_TOPIC, 0, WRITE_EXECUTOR);
+        outbox.add(WIFI_TOPIC, createWifiRecord(0));
+        Thread.sleep(5);
+
+        final List<Message> published = new ArrayList<>();
+        outbox.replay(descriptorResolver, (topic, envelope) -> published.add(envelope.getRecord()), () -> true, 1_000, 0);
+
+        assertTrue(published.isEmpty());
+        assertEquals(0, outbox.getQueuedCount());
+        assertEquals(1, outbox.getDroppedCount());
+    }
+
+    @Test
+    public void addWritesToDiskOnTheWriteExecutor() throws IOException
+    {
+        final List<Runnable> writeTasks = new ArrayList<>();
+        final ScheduledExecutorService writeExecutor = new ScheduledThreadPoolExecutor(1)
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                writeTasks.add(command);
+            }
+
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+            {
+                writeTasks.add(command);
+                return null;
+            }
+        };
+
+        final File directory = temporaryFolder.newFolder();
+        final MqttOutbox outbox = new MqttOutbox(directory, writeExecutor);
+        for (int i = 0; i < 10; i++) outbox.add(WIFI_TOPIC, createWifiRecord(i));
+
+        assertEquals(10, outbox.getQueuedCount());
+        assertEquals("The adds should share one delayed write", 1, writeTasks.size());
+        assertEquals(0, countSegmentFiles(directory));
+
+        writeTasks.forEach(Runnable::run);
+        assertEquals(1, countSegmentFiles(directory));
+
+        final MqttOutbox reloadedOutbox = new MqttOutbox(directory, writeExecutor);
+        reloadedOutbox.load();
+        assertEquals(10, reloadedOutbox.getQueuedCount());
+        assertEquals(outbox.getQueuedBytes(), reloadedOutbox.getQueuedBytes());
+    }
+
+    private static int countSegmentFiles(File directory)
+    {
+        int count = 0;
+        final File[] topicDirectories = directory.listFiles(File::isDirectory);
+        if (topicDirectories == null) return 0;
+
+        for (File topicDirectory : topicDirectories)
+        {
+            final File[] segmentFiles = topicDirectory.listFiles((dir, name) -> name.endsWith(".seg"));
+            if (segmentFiles != null) count += segmentFiles.length;
+        }
+        return count;
+    }
+
+    private static WifiBeaconRecordData getData(Message message)
+    {
+        return WifiBeaconRecord.newBuilder().mergeFrom(message).build().getData();
+    }
+
+    private static Function<String, Descriptors.Descriptor> createDescriptorResolver()
+    {
+        final Map<String, Descriptors.Descriptor> descriptors = new HashMap<>();
+        descriptors.put(WifiBeaconRecord.getDescriptor().getFullName(), WifiBeaconRecord.getDescriptor());
+        descriptors.put(BluetoothRecord.getDescriptor().getFullName(), BluetoothRecord.getDescriptor());
+        return descriptors::get;
+    }
+
+    private static SurveyRecordEnvelope<WifiBeaconRecord> createWifiRecord(int index)
+    {
+        return new SurveyRecordEnvelope<>(WifiBeaconRecord.newBuilder()
+                .setMessageType("WifiBeaconRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(WifiBeaconRecordData.newBuilder()
+                        .setDeviceSerialNumber("353456789012345")
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setMissionId("NS 2022-11-08T15:40:00")
+                        .setRecordNumber(index)
+                        .setBssid("6c:55:e8:00:00:01")
+                        .setSsid("Survey-Net"))
+                .build());
+    }
+
+    private static SurveyRecordEnvelope<BluetoothRecord> createBluetoothRecord(int index)
+    {
+        return new SurveyRecordEnvelope<>(BluetoothRecord.newBuilder()
+                .setMessageType("BluetoothRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(BluetoothRecordData.newBuilder()
+                        .setDeviceSerialNumber("353456789012345")
+                        .setRecordNumber(index)
+                        .setSourceAddress("AA:BB:CC:DD:EE:FF"))
+                .build());
+    }
+}
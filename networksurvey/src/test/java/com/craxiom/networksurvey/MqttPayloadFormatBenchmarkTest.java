@@ -0,0 +1,243 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.BluetoothRecord;
+import com.craxiom.messaging.BluetoothRecordData;
+import com.craxiom.messaging.GnssRecord;
+import com.craxiom.messaging.GnssRecordData;
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.messaging.WifiBeaconRecordData;
+import com.craxiom.messaging.gnss.Constellation;
+import com.craxiom.messaging.wifi.EncryptionType;
+import com.craxiom.networksurvey.constants.BluetoothMessageConstants;
+import com.craxiom.networksurvey.constants.GnssMessageConstants;
+import com.craxiom.networksurvey.constants.WifiBeaconMessageConstants;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.UInt32Value;
+import com.google.protobuf.UInt64Value;
+import com.google.protobuf.util.JsonFormat;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntFunction;
+
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the MQTT payload formats by reporting the payload bytes and the serialization CPU time for each record type.
+ * <p>
+ * The JSON cost is reported twice: once with a new printer for each record (which is what building the printer on each
+ * publish costs), and once with the shared printer that {@link MqttPayloadFormat#JSON} uses. The report only runs when
+ * the benchmarks are asked for (see {@link Benchmarks}).
+ *
+ * @since 1.10.0
+ */
+public class MqttPayloadFormatBenchmarkTest
+{
+    private static final int RECORD_COUNT = 2_000;
+    private static final int WARM_UP_ITERATIONS = 3;
+
+    @Test
+    public void protobufPayloadsUseTheParallelTopics()
+    {
+        assertEquals("gsm_message", MqttPayloadFormat.JSON.getTopic("gsm_message"));
+        assertEquals("gsm_message_protobuf", MqttPayloadFormat.PROTOBUF.getTopic("gsm_message"));
+
+        // The topic names are cached so the same instance should come back each time
+        assertSame(MqttPayloadFormat.PROTOBUF.getTopic("80211_beacon_message"), MqttPayloadFormat.PROTOBUF.getTopic("80211_beacon_message"));
+    }
+
+    @Test
+    public void unknownPreferenceValuesFallBackToJson()
+    {
+        assertEquals(MqttPayloadFormat.PROTOBUF, MqttPayloadFormat.fromPreferenceValue("protobuf"));
+        assertEquals(MqttPayloadFormat.PROTOBUF, MqttPayloadFormat.fromPreferenceValue("PROTOBUF"));
+        assertEquals(MqttPayloadFormat.JSON, MqttPayloadFormat.fromPreferenceValue("json"));
+        assertEquals(MqttPayloadFormat.JSON, MqttPayloadFormat.fromPreferenceValue("xml"));
+        assertEquals(MqttPayloadFormat.JSON, MqttPayloadFormat.fromPreferenceValue(null));
+    }
+
+    @Test
+    public void payloadsDecodeToTheOriginalRecord() throws InvalidProtocolBufferException
+    {
+        final WifiBeaconRecord record = createWifiRecord(7);
+
+        assertEquals(record, WifiBeaconRecord.parseFrom(MqttPayloadFormat.PROTOBUF.serialize(new SurveyRecordEnvelope<>(record))));
+
+        final WifiBeaconRecord.Builder jsonBuilder = WifiBeaconRecord.newBuilder();
+        JsonFormat.parser().merge(new String(MqttPayloadFormat.JSON.serialize(new SurveyRecordEnvelope<>(record)), StandardCharsets.UTF_8), jsonBuilder);
+        assertEquals(record, jsonBuilder.build());
+    }
+
+    @Test
+    public void reportBytesAndCpuPerRecord() throws InvalidProtocolBufferException
+    {
+        Benchmarks.assumeEnabled();
+
+        for (IntFunction<Message> recordFactory : Arrays.<IntFunction<Message>>asList(
+                MqttPayloadFormatBenchmarkTest::createWifiRecord,
+                MqttPayloadFormatBenchmarkTest::createBluetoothRecord,
+                MqttPayloadFormatBenchmarkTest::createGnssRecord))
+        {
+            final List<Message> records = new ArrayList<>(RECORD_COUNT);
+            for (int i = 0; i < RECORD_COUNT; i++) records.add(recordFactory.apply(i));
+            final String recordType = records.get(0).getClass().getSimpleName();
+
+            final PayloadStats jsonNewPrinter = measure(records, null);
+            final PayloadStats json = measure(records, MqttPayloadFormat.JSON);
+            final PayloadStats protobuf = measure(records, MqttPayloadFormat.PROTOBUF);
+
+            Timber.i("%s: json (new printer)=%s, json=%s, protobuf=%s", recordType, jsonNewPrinter, json, protobuf);
+
+            assertEquals(jsonNewPrinter.bytesPerRecord, json.bytesPerRecord, 0.0);
+            assertTrue("Protobuf payloads should be smaller than JSON", protobuf.bytesPerRecord < json.bytesPerRecord);
+        }
+    }
+
+    /**
+     * Serializes each record in the provided format and returns the payload bytes and CPU time per record.
+     *
+     * @param format The format to serialize in, or null to print JSON with a new printer for each record.
+     */
+    private static PayloadStats measure(List<Message> records, MqttPayloadFormat format) throws InvalidProtocolBufferException
+    {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        long totalBytes = 0;
+        long cpuNs = 0;
+        for (int iteration = 0; iteration <= WARM_UP_ITERATIONS; iteration++)
+        {
+            final long startCpuNs = threadMXBean.getCurrentThreadCpuTime();
+
+            long bytes = 0;
+            for (Message record : records)
+            {
+                if (format == null)
+                {
+                    bytes += JsonFormat.printer().preservingProtoFieldNames().omittingInsignificantWhitespace()
+                            .print(record).getBytes(StandardCharsets.UTF_8).length;
+                } else
+                {
+                    bytes += format.serialize(new SurveyRecordEnvelope<>(record)).length;
+                }
+            }
+
+            cpuNs = threadMXBean.getCurrentThreadCpuTime() - startCpuNs;
+            totalBytes = bytes;
+        }
+
+        return new PayloadStats((double) totalBytes / records.size(), (double) cpuNs / records.size());
+    }
+
+    private static WifiBeaconRecord createWifiRecord(int index)
+    {
+        final WifiBeaconRecordData.Builder dataBuilder = WifiBeaconRecordData.newBuilder()
+                .setDeviceSerialNumber("353456789012345")
+                .setDeviceName("Survey Pixel")
+                .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                .setLatitude(39.0 + index * 0.00001)
+                .setLongitude(-77.0 - index * 0.00001)
+                .setAltitude(120.5f)
+                .setAccuracy(4)
+                .setMissionId("NS 2022-11-08T15:40:00")
+                .setRecordNumber(index)
+                .setBssid(String.format(Locale.US, "6c:55:e8:%02x:%02x:%02x", index >> 16 & 0xFF, index >> 8 & 0xFF, index & 0xFF))
+                .setSsid("Survey-Net-" + (index % 50))
+                .setSignalStrength(FloatValue.newBuilder().setValue(-40 - index % 50))
+                .setChannel(Int32Value.newBuilder().setValue(1 + index % 11))
+                .setFrequencyMhz(Int32Value.newBuilder().setValue(2412 + 5 * (index % 11)))
+                .setEncryptionType(EncryptionType.WPA2)
+                .setWps(BoolValue.newBuilder().setValue(index % 3 == 0));
+
+        return WifiBeaconRecord.newBuilder()
+                .setMessageType(WifiBeaconMessageConstants.WIFI_BEACON_RECORD_MESSAGE_TYPE)
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(dataBuilder)
+                .build();
+    }
+
+    private static BluetoothRecord createBluetoothRecord(int index)
+    {
+        final BluetoothRecordData.Builder dataBuilder = BluetoothRecordData.newBuilder()
+                .setDeviceSerialNumber("353456789012345")
+                .setDeviceName("Survey Pixel")
+                .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                .setLatitude(39.0 + index * 0.00001)
+                .setLongitude(-77.0 - index * 0.00001)
+                .setAltitude(120.5f)
+                .setAccuracy(4)
+                .setMissionId("NS 2022-11-08T15:40:00")
+                .setRecordNumber(index)
+                .setSourceAddress(String.format(Locale.US, "AA:BB:CC:%02X:%02X:%02X", index >> 16 & 0xFF, index >> 8 & 0xFF, index & 0xFF))
+                .setSignalStrength(FloatValue.newBuilder().setValue(-60 - index % 30))
+                .setTxPower(FloatValue.newBuilder().setValue(-12))
+                .setOtaDeviceName("Headset " + (index % 20));
+
+        return BluetoothRecord.newBuilder()
+                .setMessageType(BluetoothMessageConstants.BLUETOOTH_RECORD_MESSAGE_TYPE)
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(dataBuilder)
+                .build();
+    }
+
+    private static GnssRecord createGnssRecord(int index)
+    {
+        final GnssRecordData.Builder dataBuilder = GnssRecordData.newBuilder()
+                .setDeviceSerialNumber("353456789012345")
+                .setDeviceName("Survey Pixel")
+                .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                .setLatitude(39.0 + index * 0.00001)
+                .setLongitude(-77.0 - index * 0.00001)
+                .setAltitude(120.5f)
+                .setAccuracy(4)
+                .setMissionId("NS 2022-11-08T15:40:00")
+                .setRecordNumber(index)
+                .setGroupNumber(index / 30)
+                .setDeviceModel("Pixel 6")
+                .setConstellation(Constellation.GPS)
+                .setSpaceVehicleId(UInt32Value.newBuilder().setValue(1 + index % 32))
+                .setCarrierFreqHz(UInt64Value.newBuilder().setValue(1_575_420_000L))
+                .setAgcDb(FloatValue.newBuilder().setValue(3.5f))
+                .setCn0DbHz(FloatValue.newBuilder().setValue(20 + index % 25));
+
+        return GnssRecord.newBuilder()
+                .setMessageType(GnssMessageConstants.GNSS_RECORD_MESSAGE_TYPE)
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(dataBuilder)
+                .build();
+    }
+
+    private static final class PayloadStats
+    {
+        private final double bytesPerRecord;
+        private final double cpuNsPerRecord;
+
+        private PayloadStats(double bytesPerRecord, double cpuNsPerRecord)
+        {
+            this.bytesPerRecord = bytesPerRecord;
+            this.cpuNsPerRecord = cpuNsPerRecord;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "%.1f bytes/record, %.0f ns/record", bytesPerRecord, cpuNsPerRecord);
+        }
+    }
+}
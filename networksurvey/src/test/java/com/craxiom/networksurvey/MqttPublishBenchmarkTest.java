@@ -0,0 +1,533 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.BluetoothRecord;
+import com.craxiom.messaging.BluetoothRecordData;
+import com.craxiom.messaging.CdmaRecord;
+import com.craxiom.messaging.CdmaRecordData;
+import com.craxiom.messaging.DeviceStatus;
+import com.craxiom.messaging.DeviceStatusData;
+import com.craxiom.messaging.GnssRecord;
+import com.craxiom.messaging.GnssRecordData;
+import com.craxiom.messaging.GsmRecord;
+import com.craxiom.messaging.GsmRecordData;
+import com.craxiom.messaging.LteRecord;
+import com.craxiom.messaging.LteRecordData;
+import com.craxiom.messaging.NrRecord;
+import com.craxiom.messaging.NrRecordData;
+import com.craxiom.messaging.PhoneState;
+import com.craxiom.messaging.PhoneStateData;
+import com.craxiom.messaging.UmtsRecord;
+import com.craxiom.messaging.UmtsRecordData;
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.messaging.WifiBeaconRecordData;
+import com.craxiom.mqttlibrary.connection.ConnectionState;
+import com.craxiom.networksurvey.model.WifiRecordWrapper;
+import com.craxiom.networksurvey.mqtt.MqttConnection;
+import com.craxiom.networksurvey.mqtt.MqttConnectionInfo;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
+import com.craxiom.networksurvey.util.ExecutorRegistry;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.Int32Value;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A publish throughput benchmark for the {@link MqttConnection}. It connects a real MQTT connection to a
+ * {@link LoopbackMqttBroker} and pushes a synthetic survey for every topic (cellular, Wi-Fi, Bluetooth, GNSS, and device
+ * status) through the same listener methods that the survey record processor calls.
+ * <p>
+ * Each scenario reports the record publish rate, the latency from when a record is handed to the connection until the
+ * broker has read it, and how much the client heap grew while publishing. The per-record and batched publish modes are
+ * both measured so that a regression in either one shows up before a field deployment. The scenarios take several
+ * seconds each, so they only run when the benchmarks are asked for (see {@link Benchmarks}).
+ *
+ * @since 1.10.0
+ */
+public class MqttPublishBenchmarkTest
+{
+    private static final String DEVICE_NAME = "BenchmarkDevice";
+    private static final long CONNECT_TIMEOUT_MS = 10_000;
+    private static final long DRAIN_TIMEOUT_MS = 20_000;
+
+    private static final int SCAN_ROUNDS = 200;
+    private static final int WIFI_RECORDS_PER_SCAN = 20;
+    private static final int BLUETOOTH_RECORDS_PER_SCAN = 20;
+
+    /**
+     * {@link android.os.Process} is not available on the JVM, so the connection's threads keep the default Java
+     * priority.
+     */
+    private static final ExecutorRegistry EXECUTOR_REGISTRY = new ExecutorRegistry(priority -> {
+    });
+
+    /**
+     * The time each record was handed to the connection, keyed by the device serial number, which is unique per record.
+     */
+    private final Map<String, Long> sentNanos = new ConcurrentHashMap<>();
+    private final Map<String, Long> latencyNanos = new ConcurrentHashMap<>();
+    private final AtomicLong lastReceivedNanos = new AtomicLong();
+
+    private LoopbackMqttBroker broker;
+
+    @BeforeClass
+    public static void setUpBenchmark()
+    {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Before
+    public void startBroker() throws IOException
+    {
+        broker = new LoopbackMqttBroker(this::onBrokerReceived);
+    }
+
+    @After
+    public void stopBroker() throws IOException
+    {
+        broker.close();
+    }
+
+    @Test
+    public void perRecordPublishing() throws InterruptedException
+    {
+        final PublishStats stats = runScenario("Per-record", false, 0);
+
+        assertEquals(stats.records, stats.delivered);
+        assertEquals(stats.records, stats.messages);
+    }
+
+    @Test
+    public void batchedPublishing() throws InterruptedException
+    {
+        final PublishStats stats = runScenario("Batched per scan", true, 0);
+
+        assertEquals(stats.records, stats.delivered);
+        assertTrue("Batching should publish fewer messages than records", stats.messages < stats.records);
+    }
+
+    @Test
+    public void batchWindowPublishing() throws InterruptedException
+    {
+        final PublishStats stats = runScenario("Batched 250 ms window", true, 250);
+
+        assertEquals(stats.records, stats.delivered);
+        assertTrue("Batching should publish fewer messages than records", stats.messages < stats.records);
+    }
+
+    /**
+     * Connects to the loopback broker, publishes {@link #SCAN_ROUNDS} rounds of records for every topic, and waits for
+     * the broker to receive all of them.
+     */
+    private PublishStats runScenario(String name, boolean batchPublishEnabled, int batchWindowMs) throws InterruptedException
+    {
+        final MqttConnection connection = new MqttConnection(null, EXECUTOR_REGISTRY);
+        connection.connect(null, new MqttConnectionInfo(broker.getHost(), broker.getPort(), false, DEVICE_NAME, null, null,
+                true, true, true, true, true, batchPublishEnabled, batchWindowMs, MqttPayloadFormat.JSON));
+        waitForConnection(connection);
+
+        final MemorySampler memorySampler = new MemorySampler();
+        final long startMessages = broker.getPublishCount();
+        final long startBytes = broker.getPayloadBytes();
+        final long startNanos = System.nanoTime();
+
+        int records = 0;
+        for (int round = 0; round < SCAN_ROUNDS; round++)
+        {
+            records += publishScanRound(connection, round);
+        }
+        final long publishedNanos = System.nanoTime();
+
+        // Wait for everything to reach the broker, including any records that are waiting on the batch window
+        final long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (latencyNanos.size() < records && System.currentTimeMillis() < drainDeadline)
+        {
+            Thread.sleep(10);
+        }
+        memorySampler.stop();
+        connection.disconnect();
+
+        final PublishStats stats = new PublishStats(records, latencyNanos.size(), broker.getPublishCount() - startMessages,
+                broker.getPayloadBytes() - startBytes, records * 1_000_000_000d / Math.max(1, publishedNanos - startNanos),
+                latencyNanos.size() * 1_000_000_000d / Math.max(1, lastReceivedNanos.get() - startNanos),
+                latencyPercentilesMs(50, 95, 99), memorySampler.getPeakGrowthBytes());
+        Timber.i("%s: %s", name, stats);
+        return stats;
+    }
+
+    /**
+     * Publishes one scan's worth of records for every topic, the same way the survey record processor hands them to
+     * the connection.
+     *
+     * @return The number of records that were published.
+     */
+    private int publishScanRound(MqttConnection connection, int round)
+    {
+        connection.onGsmSurveyRecord(createGsmRecord(nextSerial("gsm", round, 0), round));
+        connection.onCdmaSurveyRecord(createCdmaRecord(nextSerial("cdma", round, 0), round));
+        connection.onUmtsSurveyRecord(createUmtsRecord(nextSerial("umts", round, 0), round));
+        connection.onLteSurveyRecord(createLteRecord(nextSerial("lte", round, 0), round));
+        connection.onNrSurveyRecord(createNrRecord(nextSerial("nr", round, 0), round));
+
+        final List<WifiRecordWrapper> wifiRecords = new ArrayList<>(WIFI_RECORDS_PER_SCAN);
+        for (int i = 0; i < WIFI_RECORDS_PER_SCAN; i++)
+        {
+            wifiRecords.add(new WifiRecordWrapper(createWifiRecord(nextSerial("wifi", round, i), i), "[WPA2-PSK-CCMP][ESS]"));
+        }
+        connection.onWifiBeaconSurveyRecords(wifiRecords);
+
+        final List<BluetoothRecord> bluetoothRecords = new ArrayList<>(BLUETOOTH_RECORDS_PER_SCAN);
+        for (int i = 0; i < BLUETOOTH_RECORDS_PER_SCAN; i++)
+        {
+            bluetoothRecords.add(createBluetoothRecord(nextSerial("bluetooth", round, i), i));
+        }
+        connection.onBluetoothSurveyRecords(bluetoothRecords);
+
+        connection.onGnssSurveyRecord(createGnssRecord(nextSerial("gnss", round, 0), round));
+        connection.onDeviceStatus(createDeviceStatus(nextSerial("status", round, 0)));
+        connection.onPhoneState(createPhoneState(nextSerial("phone", round, 0), round));
+
+        return 5 + WIFI_RECORDS_PER_SCAN + BLUETOOTH_RECORDS_PER_SCAN + 3;
+    }
+
+    /**
+     * Creates a unique device serial number for a record and notes the time it was handed to the connection.
+     */
+    private String nextSerial(String recordType, int round, int index)
+    {
+        final String serial = recordType + "-" + round + "-" + index;
+        sentNanos.put(serial, System.nanoTime());
+        return serial;
+    }
+
+    /**
+     * Records the latency for every record in the message. A batch message holds many records, so the whole JSON tree
+     * is searched for the device serial numbers.
+     */
+    private void onBrokerReceived(String topic, byte[] payload, long receivedNanos)
+    {
+        final List<String> serials = new ArrayList<>();
+        collectSerials(JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)), serials);
+
+        for (String serial : serials)
+        {
+            final Long sent = sentNanos.get(serial);
+            if (sent != null) latencyNanos.put(serial, receivedNanos - sent);
+        }
+        lastReceivedNanos.set(receivedNanos);
+    }
+
+    private static void collectSerials(JsonElement element, List<String> serials)
+    {
+        if (element.isJsonArray())
+        {
+            element.getAsJsonArray().forEach(child -> collectSerials(child, serials));
+        } else if (element.isJsonObject())
+        {
+            final JsonObject object = element.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> entry : object.entrySet())
+            {
+                if (entry.getKey().equals("device_serial_number"))
+                {
+                    serials.add(entry.getValue().getAsString());
+                } else
+                {
+                    collectSerials(entry.getValue(), serials);
+                }
+            }
+        }
+    }
+
+    private double[] latencyPercentilesMs(int... percentiles)
+    {
+        final long[] sorted = latencyNanos.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        final double[] results = new double[percentiles.length];
+        if (sorted.length == 0) return results;
+
+        for (int i = 0; i < percentiles.length; i++)
+        {
+            final int index = (int) Math.ceil(percentiles[i] / 100d * sorted.length) - 1;
+            results[i] = sorted[Math.max(0, index)] / 1_000_000d;
+        }
+        return results;
+    }
+
+    private static void waitForConnection(MqttConnection connection) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (connection.getConnectionState() != ConnectionState.CONNECTED)
+        {
+            assertTrue("Timed out connecting to the loopback MQTT broker", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static GsmRecord createGsmRecord(String serial, int sequence)
+    {
+        return GsmRecord.newBuilder()
+                .setMessageType("GsmRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(GsmRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setMcc(Int32Value.of(310))
+                        .setMnc(Int32Value.of(260))
+                        .setLac(Int32Value.of(1234))
+                        .setCi(Int32Value.of(5678 + sequence))
+                        .setArfcn(Int32Value.of(128))
+                        .setBsic(Int32Value.of(12)))
+                .build();
+    }
+
+    private static CdmaRecord createCdmaRecord(String serial, int sequence)
+    {
+        return CdmaRecord.newBuilder()
+                .setMessageType("CdmaRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(CdmaRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setSid(Int32Value.of(4))
+                        .setNid(Int32Value.of(5))
+                        .setBsid(Int32Value.of(100 + sequence))
+                        .setSignalStrength(FloatValue.of(-80)))
+                .build();
+    }
+
+    private static UmtsRecord createUmtsRecord(String serial, int sequence)
+    {
+        return UmtsRecord.newBuilder()
+                .setMessageType("UmtsRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(UmtsRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setMcc(Int32Value.of(310))
+                        .setMnc(Int32Value.of(410))
+                        .setLac(Int32Value.of(1234))
+                        .setCid(Int32Value.of(5678 + sequence))
+                        .setEcno(FloatValue.of(-9)))
+                .build();
+    }
+
+    private static LteRecord createLteRecord(String serial, int sequence)
+    {
+        return LteRecord.newBuilder()
+                .setMessageType("LteRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(LteRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setMcc(Int32Value.of(310))
+                        .setMnc(Int32Value.of(410))
+                        .setTac(Int32Value.of(1234))
+                        .setEci(Int32Value.of(5678 + sequence))
+                        .setEarfcn(Int32Value.of(5110))
+                        .setPci(Int32Value.of(sequence % 504))
+                        .setRsrp(FloatValue.of(-95)))
+                .build();
+    }
+
+    private static NrRecord createNrRecord(String serial, int sequence)
+    {
+        return NrRecord.newBuilder()
+                .setMessageType("NrRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(NrRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setMcc(Int32Value.of(310))
+                        .setMnc(Int32Value.of(260))
+                        .setNarfcn(Int32Value.of(632628))
+                        .setPci(Int32Value.of(sequence % 1008)))
+                .build();
+    }
+
+    private static WifiBeaconRecord createWifiRecord(String serial, int sequence)
+    {
+        return WifiBeaconRecord.newBuilder()
+                .setMessageType("WifiBeaconRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(WifiBeaconRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setSourceAddress(String.format(Locale.US, "6c:55:e8:00:00:%02x", sequence & 0xFF))
+                        .setSsid("Survey-Net-" + sequence)
+                        .setSignalStrength(FloatValue.of(-40 - sequence % 50)))
+                .build();
+    }
+
+    private static BluetoothRecord createBluetoothRecord(String serial, int sequence)
+    {
+        return BluetoothRecord.newBuilder()
+                .setMessageType("BluetoothRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(BluetoothRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setSourceAddress(String.format(Locale.US, "AA:BB:CC:DD:EE:%02X", sequence & 0xFF))
+                        .setSignalStrength(FloatValue.of(-60 - sequence % 30)))
+                .build();
+    }
+
+    private static GnssRecord createGnssRecord(String serial, int sequence)
+    {
+        return GnssRecord.newBuilder()
+                .setMessageType("GnssRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(GnssRecordData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence)
+                        .setLatitude(51.4779)
+                        .setLongitude(-0.0015))
+                .build();
+    }
+
+    private static DeviceStatus createDeviceStatus(String serial)
+    {
+        return DeviceStatus.newBuilder()
+                .setMessageType("DeviceStatus")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(DeviceStatusData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00"))
+                .build();
+    }
+
+    private static PhoneState createPhoneState(String serial, int sequence)
+    {
+        return PhoneState.newBuilder()
+                .setMessageType("PhoneState")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(PhoneStateData.newBuilder()
+                        .setDeviceSerialNumber(serial)
+                        .setDeviceName(DEVICE_NAME)
+                        .setDeviceTime("2022-11-08T15:42:19.123-05:00")
+                        .setRecordNumber(sequence))
+                .build();
+    }
+
+    /**
+     * Samples the used heap in the background so that the peak growth while publishing can be reported.
+     */
+    private static final class MemorySampler
+    {
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicLong peakUsedBytes = new AtomicLong();
+        private final long baselineUsedBytes;
+        private final Thread thread;
+
+        private MemorySampler()
+        {
+            System.gc();
+            baselineUsedBytes = usedBytes();
+            peakUsedBytes.set(baselineUsedBytes);
+
+            thread = new Thread(() -> {
+                while (running.get())
+                {
+                    peakUsedBytes.accumulateAndGet(usedBytes(), Math::max);
+                    try
+                    {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }, "MQTT Benchmark Memory Sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException
+        {
+            running.set(false);
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        }
+
+        long getPeakGrowthBytes()
+        {
+            return Math.max(0, peakUsedBytes.get() - baselineUsedBytes);
+        }
+
+        private static long usedBytes()
+        {
+            final Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    private static final class PublishStats
+    {
+        private final int records;
+        private final int delivered;
+        private final long messages;
+        private final long payloadBytes;
+        private final double publishRecordsPerSecond;
+        private final double deliveredRecordsPerSecond;
+        private final double[] latencyPercentilesMs;
+        private final long peakHeapGrowthBytes;
+
+        private PublishStats(int records, int delivered, long messages, long payloadBytes, double publishRecordsPerSecond,
+                             double deliveredRecordsPerSecond, double[] latencyPercentilesMs, long peakHeapGrowthBytes)
+        {
+            this.records = records;
+            this.delivered = delivered;
+            this.messages = messages;
+            this.payloadBytes = payloadBytes;
+            this.publishRecordsPerSecond = publishRecordsPerSecond;
+            this.deliveredRecordsPerSecond = deliveredRecordsPerSecond;
+            this.latencyPercentilesMs = latencyPercentilesMs;
+            this.peakHeapGrowthBytes = peakHeapGrowthBytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "records=%d, delivered=%d, messages=%d, payload=%d KiB, publish=%.0f records/s, "
+                            + "delivered=%.0f records/s, broker latency p50/p95/p99=%s ms, peak heap growth=%.1f MiB",
+                    records, delivered, messages, payloadBytes / 1024, publishRecordsPerSecond, deliveredRecordsPerSecond,
+                    Arrays.toString(latencyPercentilesMs), peakHeapGrowthBytes / (1024d * 1024d));
+        }
+    }
+}
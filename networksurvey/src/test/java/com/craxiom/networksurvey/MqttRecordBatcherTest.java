@@ -0,0 +1,120 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.messaging.WifiBeaconRecordData;
+import com.craxiom.networksurvey.mqtt.MqttRecordBatcher;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link MqttRecordBatcher} class.
+ *
+ * @since 1.10.0
+ */
+public class MqttRecordBatcherTest
+{
+    private static final JsonFormat.Printer JSON_PRINTER = JsonFormat.printer().preservingProtoFieldNames().omittingInsignificantWhitespace();
+
+    @Test
+    public void batchJsonWrapsTheRecordJson() throws InvalidProtocolBufferException
+    {
+        final MqttRecordBatcher<WifiBeaconRecord> batcher = new MqttRecordBatcher<>(WifiBeaconRecord.getDescriptor(), "WifiBeaconRecordBatch");
+        final List<WifiBeaconRecord> records = createWifiRecords(3);
+
+        final List<DynamicMessage> batchMessages = batcher.createBatchMessages(records);
+        assertEquals(1, batchMessages.size());
+
+        final JsonObject batchJson = JsonParser.parseString(JSON_PRINTER.print(batchMessages.get(0))).getAsJsonObject();
+        assertEquals("WifiBeaconRecordBatch", batchJson.get("message_type").getAsString());
+        assertEquals(BuildConfig.MESSAGING_API_VERSION, batchJson.get("version").getAsString());
+
+        final JsonArray recordsJson = batchJson.getAsJsonArray("records");
+        assertEquals(records.size(), recordsJson.size());
+        for (int i = 0; i < records.size(); i++)
+        {
+            // Each record in the batch should look exactly like the record published on the per-record topic
+            assertEquals(JsonParser.parseString(JSON_PRINTER.print(records.get(i))), recordsJson.get(i));
+        }
+    }
+
+    @Test
+    public void deviceNameIsSetOnceOnTheBatch() throws InvalidProtocolBufferException
+    {
+        final MqttRecordBatcher<WifiBeaconRecord> batcher = new MqttRecordBatcher<>(WifiBeaconRecord.getDescriptor(), "WifiBeaconRecordBatch");
+        batcher.setDeviceName("Survey Phone");
+        final List<WifiBeaconRecord> records = createWifiRecords(2);
+
+        final JsonObject batchJson = JsonParser.parseString(JSON_PRINTER.print(batcher.createBatchMessages(records).get(0))).getAsJsonObject();
+
+        assertEquals("Survey Phone", batchJson.get("device_name").getAsString());
+        // The records are added as they are, without the connection's device name
+        assertEquals(JsonParser.parseString(JSON_PRINTER.print(records.get(0))), batchJson.getAsJsonArray("records").get(0));
+    }
+
+    @Test
+    public void largeBatchesAreSplit()
+    {
+        final MqttRecordBatcher<WifiBeaconRecord> batcher = new MqttRecordBatcher<>(WifiBeaconRecord.getDescriptor(), "WifiBeaconRecordBatch");
+
+        final List<DynamicMessage> batchMessages = batcher.createBatchMessages(createWifiRecords(1_200));
+
+        assertEquals(3, batchMessages.size());
+        final int recordsFieldNumber = 3;
+        int totalRecords = 0;
+        for (DynamicMessage batchMessage : batchMessages)
+        {
+            totalRecords += batchMessage.getRepeatedFieldCount(batchMessage.getDescriptorForType().findFieldByNumber(recordsFieldNumber));
+        }
+        assertEquals(1_200, totalRecords);
+    }
+
+    @Test
+    public void drainPublishesThePendingRecordsOnce()
+    {
+        final MqttRecordBatcher<WifiBeaconRecord> batcher = new MqttRecordBatcher<>(WifiBeaconRecord.getDescriptor(), "WifiBeaconRecordBatch");
+
+        assertTrue(batcher.drain().isEmpty());
+
+        batcher.addAll(createWifiRecords(2));
+        batcher.addAll(Collections.singletonList(createWifiRecords(1).get(0)));
+
+        final List<DynamicMessage> batchMessages = batcher.drain();
+        assertEquals(1, batchMessages.size());
+        assertEquals(3, batchMessages.get(0).getRepeatedFieldCount(batchMessages.get(0).getDescriptorForType().findFieldByName("records")));
+
+        assertTrue(batcher.drain().isEmpty());
+    }
+
+    private static List<WifiBeaconRecord> createWifiRecords(int count)
+    {
+        final List<WifiBeaconRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            records.add(WifiBeaconRecord.newBuilder()
+                    .setMessageType("WifiBeaconRecord")
+                    .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                    .setData(WifiBeaconRecordData.newBuilder()
+                            .setDeviceSerialNumber("353456789012345")
+                            .setDeviceName("Pixel")
+                            .setRecordNumber(i)
+                            .setBssid("6c:55:e8:00:00:" + String.format("%02x", i & 0xFF))
+                            .setSsid("Survey-Net"))
+                    .build());
+        }
+
+        return records;
+    }
+}
@@ -0,0 +1,192 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.BluetoothRecord;
+import com.craxiom.messaging.BluetoothRecordData;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.craxiom.networksurvey.mqtt.MqttTopicRateLimit;
+import com.craxiom.networksurvey.mqtt.MqttTopicRateLimiter;
+import com.google.protobuf.FloatValue;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link MqttTopicRateLimiter} and {@link MqttTopicRateLimit} classes.
+ *
+ * @since 1.10.0
+ */
+public class MqttTopicRateLimiterTest
+{
+    private static final String TOPIC = "bluetooth_message";
+
+    private final AtomicLong clockNanos = new AtomicLong(0);
+
+    @Test
+    public void parseRateLimits()
+    {
+        final List<MqttTopicRateLimit> limits = MqttTopicRateLimit.parse(
+                "bluetooth_message:20:newest, 80211_beacon_message:50:strongest:100;gnss_message:2.5,bad_entry,lte_message:5:fastest");
+
+        assertEquals(3, limits.size());
+
+        assertEquals("bluetooth_message", limits.get(0).getTopic());
+        assertEquals(20, limits.get(0).getRatePerSecond(), 0.0);
+        assertEquals(20, limits.get(0).getBurst());
+        assertEquals(MqttTopicRateLimit.SamplingStrategy.NEWEST_PER_IDENTIFIER, limits.get(0).getSamplingStrategy());
+
+        assertEquals(100, limits.get(1).getBurst());
+        assertEquals(MqttTopicRateLimit.SamplingStrategy.STRONGEST_SIGNAL, limits.get(1).getSamplingStrategy());
+
+        assertEquals(3, limits.get(2).getBurst());
+        assertEquals(MqttTopicRateLimit.SamplingStrategy.NEWEST_PER_IDENTIFIER, limits.get(2).getSamplingStrategy());
+
+        assertTrue(MqttTopicRateLimit.parse("").isEmpty());
+        assertTrue(MqttTopicRateLimit.parse(null).isEmpty());
+    }
+
+    @Test
+    public void tokenBucketAllowsTheBurstThenTheRate()
+    {
+        final MqttTopicRateLimiter limiter = createLimiter(10, 5, MqttTopicRateLimit.SamplingStrategy.UNIFORM);
+
+        for (int i = 0; i < 8; i++) limiter.add(createRecord(i, -50));
+        assertEquals(5, limiter.drain().size());
+        assertTrue(limiter.drain().isEmpty());
+
+        // 10 per second is one token every 100 ms, and the records that were not picked are kept for the next drain
+        advanceMs(100);
+        assertEquals(1, limiter.drain().size());
+
+        // The bucket never holds more than the burst, and the records held for too long are dropped
+        advanceMs(MqttTopicRateLimiter.MAX_HOLD_MS + 1);
+        assertTrue(limiter.drain().isEmpty());
+        for (int i = 0; i < 8; i++) limiter.add(createRecord(i, -50));
+        assertEquals(5, limiter.drain().size());
+
+        assertEquals(11, limiter.getPublishedCount());
+        assertEquals(2, limiter.getDroppedCount());
+    }
+
+    @Test
+    public void newestPerIdentifierKeepsTheLatestRecordForEachDevice()
+    {
+        final MqttTopicRateLimiter limiter = createLimiter(4, 1, MqttTopicRateLimit.SamplingStrategy.NEWEST_PER_IDENTIFIER);
+
+        // Three devices, each seen four times
+        for (int round = 0; round < 4; round++)
+        {
+            for (int device = 0; device < 3; device++)
+            {
+                limiter.add(createRecord(device, -50 - round));
+            }
+        }
+
+        // Only one token is available (the burst), so the device that was updated last is published
+        final List<SurveyRecordEnvelope<?>> sampled = limiter.drain();
+        assertEquals(1, sampled.size());
+        assertEquals(getAddress(2), ((BluetoothRecord) sampled.get(0).getRecord()).getData().getSourceAddress());
+        assertEquals(-53f, ((BluetoothRecord) sampled.get(0).getRecord()).getData().getSignalStrength().getValue(), 0f);
+        assertEquals(9, limiter.getDroppedCount());
+
+        // The other devices are still held for the next drains
+        advanceMs(250);
+        final List<SurveyRecordEnvelope<?>> nextSampled = limiter.drain();
+        assertEquals(1, nextSampled.size());
+        assertEquals(getAddress(1), ((BluetoothRecord) nextSampled.get(0).getRecord()).getData().getSourceAddress());
+
+        advanceMs(250);
+        assertEquals(getAddress(0), ((BluetoothRecord) limiter.drain().get(0).getRecord()).getData().getSourceAddress());
+        assertEquals(3, limiter.getPublishedCount());
+    }
+
+    @Test
+    public void strongestSignalKeepsTheStrongestRecords()
+    {
+        final MqttTopicRateLimiter limiter = createLimiter(3, 3, MqttTopicRateLimit.SamplingStrategy.STRONGEST_SIGNAL);
+
+        // The weak records that arrive first don't get the burst ahead of the strong records that arrive later
+        for (int i = 0; i < 20; i++) limiter.add(createRecord(100 + i, -90 + i));
+        for (int i = 0; i < 3; i++) limiter.add(createRecord(200 + i, -50));
+
+        final List<SurveyRecordEnvelope<?>> sampled = limiter.drain();
+        assertEquals(3, sampled.size());
+        for (SurveyRecordEnvelope<?> envelope : sampled)
+        {
+            assertEquals(-50f, ((BluetoothRecord) envelope.getRecord()).getData().getSignalStrength().getValue(), 0f);
+        }
+
+        advanceMs(1_000);
+        final List<SurveyRecordEnvelope<?>> nextSampled = limiter.drain();
+        assertEquals(3, nextSampled.size());
+        // Published in the order they arrived
+        assertEquals(-73f, ((BluetoothRecord) nextSampled.get(0).getRecord()).getData().getSignalStrength().getValue(), 0f);
+        assertEquals(-72f, ((BluetoothRecord) nextSampled.get(1).getRecord()).getData().getSignalStrength().getValue(), 0f);
+        assertEquals(-71f, ((BluetoothRecord) nextSampled.get(2).getRecord()).getData().getSignalStrength().getValue(), 0f);
+        assertEquals(0, limiter.getDroppedCount());
+
+        // The records that are never picked are dropped once they have been held for too long
+        advanceMs(MqttTopicRateLimiter.MAX_HOLD_MS);
+        assertTrue(limiter.drain().isEmpty());
+        assertEquals(17, limiter.getDroppedCount());
+    }
+
+    @Test
+    public void uniformSamplingPicksFromAllTheRecords()
+    {
+        final MqttTopicRateLimiter limiter = createLimiter(10, 10, MqttTopicRateLimit.SamplingStrategy.UNIFORM);
+
+        final Set<Integer> sampledRecordNumbers = new HashSet<>();
+        for (int window = 0; window < 200; window++)
+        {
+            for (int recordNumber = 0; recordNumber < 100; recordNumber++) limiter.add(createRecord(recordNumber, -50));
+
+            advanceMs(1_000);
+            for (SurveyRecordEnvelope<?> envelope : limiter.drain())
+            {
+                sampledRecordNumbers.add(((BluetoothRecord) envelope.getRecord()).getData().getRecordNumber());
+            }
+            advanceMs(1_000);
+        }
+
+        // Over many windows every position in the window should have been sampled at some point
+        assertTrue("Only sampled " + sampledRecordNumbers.size() + " record positions", sampledRecordNumbers.size() > 90);
+        assertEquals(2_000, limiter.getPublishedCount());
+    }
+
+    private MqttTopicRateLimiter createLimiter(double ratePerSecond, int burst, MqttTopicRateLimit.SamplingStrategy strategy)
+    {
+        return new MqttTopicRateLimiter(new MqttTopicRateLimit(TOPIC, ratePerSecond, burst, strategy), clockNanos::get, new Random(42));
+    }
+
+    private void advanceMs(long milliseconds)
+    {
+        clockNanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(milliseconds));
+    }
+
+    private static String getAddress(int device)
+    {
+        return String.format("AA:BB:CC:DD:EE:%02X", device);
+    }
+
+    private static SurveyRecordEnvelope<BluetoothRecord> createRecord(int index, float signalStrength)
+    {
+        return new SurveyRecordEnvelope<>(BluetoothRecord.newBuilder()
+                .setMessageType("BluetoothRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(BluetoothRecordData.newBuilder()
+                        .setDeviceSerialNumber("353456789012345")
+                        .setRecordNumber(index)
+                        .setSourceAddress(getAddress(index % 256))
+                        .setSignalStrength(FloatValue.newBuilder().setValue(signalStrength)))
+                .build());
+    }
+}
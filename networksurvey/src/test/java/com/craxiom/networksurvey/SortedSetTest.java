@@ -15,6 +15,7 @@ import org.junit.Test;
 
 import java.lang.reflect.Field;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 
 /**
  * Test for the custom {@link com.craxiom.networksurvey.model.SortedSet} class.
@@ -77,6 +78,53 @@ public class SortedSetTest
         Assert.assertEquals(4, bluetoothRecordSortedSet.size());
     }
 
+    @Test
+    public void validateBatchAddReplacesMatchingItems()
+    {
+        final SortedSet<BluetoothRecord> bluetoothRecordSortedSet = getBluetoothRecordSortedSet();
+
+        bluetoothRecordSortedSet.add(getFakeBluetoothRecord("E1:A1:19:A9:68:B0", -71f));
+        bluetoothRecordSortedSet.add(getFakeBluetoothRecord("E1:A1:19:A9:68:B1", -72f));
+
+        // The batch updates B0, adds B2 and B3, and has two records for B3 where the last one should win
+        bluetoothRecordSortedSet.addAll(Arrays.asList(
+                getFakeBluetoothRecord("E1:A1:19:A9:68:B0", -90f),
+                getFakeBluetoothRecord("E1:A1:19:A9:68:B2", -60f),
+                getFakeBluetoothRecord("E1:A1:19:A9:68:B3", -50f),
+                getFakeBluetoothRecord("E1:A1:19:A9:68:B3", -80f)));
+
+        Assert.assertEquals(4, bluetoothRecordSortedSet.size());
+        Assert.assertEquals("E1:A1:19:A9:68:B2", bluetoothRecordSortedSet.get(0).getData().getSourceAddress());
+        Assert.assertEquals("E1:A1:19:A9:68:B1", bluetoothRecordSortedSet.get(1).getData().getSourceAddress());
+        Assert.assertEquals(-80f, bluetoothRecordSortedSet.get(2).getData().getSignalStrength().getValue(), FLOAT_TOLERANCE);
+        Assert.assertEquals(-90f, bluetoothRecordSortedSet.get(3).getData().getSignalStrength().getValue(), FLOAT_TOLERANCE);
+
+        // A removed record can be added again
+        Assert.assertTrue(bluetoothRecordSortedSet.remove(bluetoothRecordSortedSet.get(0)));
+        bluetoothRecordSortedSet.add(getFakeBluetoothRecord("E1:A1:19:A9:68:B2", -55f));
+        bluetoothRecordSortedSet.add(getFakeBluetoothRecord("E1:A1:19:A9:68:B2", -58f));
+        Assert.assertEquals(4, bluetoothRecordSortedSet.size());
+        Assert.assertEquals(-58f, bluetoothRecordSortedSet.get(0).getData().getSignalStrength().getValue(), FLOAT_TOLERANCE);
+    }
+
+    /**
+     * @return The sorted set from a new Bluetooth fragment so that the set uses the same callback and key as the UI.
+     */
+    @SuppressWarnings("unchecked")
+    private SortedSet<BluetoothRecord> getBluetoothRecordSortedSet()
+    {
+        try
+        {
+            final BluetoothFragment bluetoothFragment = new BluetoothFragment();
+            Field bluetoothRecordSortedSetField = BluetoothFragment.class.getDeclaredField("bluetoothRecordSortedSet");
+            bluetoothRecordSortedSetField.setAccessible(true);
+            return (SortedSet<BluetoothRecord>) bluetoothRecordSortedSetField.get(bluetoothFragment);
+        } catch (NoSuchFieldException | IllegalAccessException e)
+        {
+            throw new AssertionError("Could not get the bluetoothRecordSortedSet field from the BluetoothFragment class", e);
+        }
+    }
+
     /**
      * Create a fake BluetoothRecord that can be used for testing.
      * <p>
@@ -0,0 +1,163 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.messaging.WifiBeaconRecord;
+import com.craxiom.messaging.WifiBeaconRecordData;
+import com.craxiom.messaging.grpc.WifiBeaconSurveyResponse;
+import com.craxiom.messaging.grpc.WirelessSurveyGrpc;
+import com.craxiom.networksurvey.model.SurveyRecordEnvelope;
+import com.craxiom.networksurvey.mqtt.MqttPayloadFormat;
+import com.craxiom.networksurvey.services.CachedBytesMarshaller;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.util.JsonFormat;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link SurveyRecordEnvelope} and the {@link CachedBytesMarshaller} that the gRPC streams use to send the
+ * cached bytes.
+ *
+ * @since 1.10.0
+ */
+public class SurveyRecordEnvelopeTest
+{
+    @Test
+    public void serializedBytesMatchTheRecord() throws Exception
+    {
+        final WifiBeaconRecord record = createRecord(1);
+        final SurveyRecordEnvelope<WifiBeaconRecord> envelope = new SurveyRecordEnvelope<>(record);
+
+        assertArrayEquals(record.toByteArray(), envelope.getProtobufBytes());
+        final String json = JsonFormat.printer().preservingProtoFieldNames().omittingInsignificantWhitespace().print(record);
+        assertArrayEquals(json.getBytes(StandardCharsets.UTF_8), envelope.getJsonBytes());
+    }
+
+    @Test
+    public void sinksShareTheSerializedBytes() throws Exception
+    {
+        final SurveyRecordEnvelope<WifiBeaconRecord> envelope = new SurveyRecordEnvelope<>(createRecord(2));
+
+        final byte[] protobufBytes = MqttPayloadFormat.PROTOBUF.serialize(envelope);
+        assertSame(protobufBytes, envelope.getProtobufBytes());
+        assertSame(MqttPayloadFormat.JSON.serialize(envelope), envelope.getJsonBytes());
+
+        // A different envelope for an equal record has its own bytes
+        final SurveyRecordEnvelope<WifiBeaconRecord> equalEnvelope = new SurveyRecordEnvelope<>(createRecord(2));
+        assertEquals(envelope.getRecord(), equalEnvelope.getRecord());
+        assertArrayEquals(protobufBytes, equalEnvelope.getProtobufBytes());
+        assertNotSame(protobufBytes, equalEnvelope.getProtobufBytes());
+    }
+
+    @Test
+    public void cachedBytesMarshallerSendsTheRecords() throws Exception
+    {
+        final List<WifiBeaconRecord> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        final String serverName = InProcessServerBuilder.generateName();
+        final Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new WirelessSurveyGrpc.WirelessSurveyImplBase()
+                {
+                    @Override
+                    public StreamObserver<WifiBeaconRecord> streamWifiBeaconSurvey(StreamObserver<WifiBeaconSurveyResponse> responseObserver)
+                    {
+                        return new StreamObserver<WifiBeaconRecord>()
+                        {
+                            @Override
+                            public void onNext(WifiBeaconRecord value)
+                            {
+                                received.add(value);
+                            }
+
+                            @Override
+                            public void onError(Throwable t)
+                            {
+                            }
+
+                            @Override
+                            public void onCompleted()
+                            {
+                                responseObserver.onNext(WifiBeaconSurveyResponse.getDefaultInstance());
+                                responseObserver.onCompleted();
+                            }
+                        };
+                    }
+                })
+                .directExecutor()
+                .build()
+                .start();
+        final ManagedChannel channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+
+        try
+        {
+            final StreamObserver<SurveyRecordEnvelope<WifiBeaconRecord>> requestObserver = CachedBytesMarshaller.clientStreamingCall(
+                    WirelessSurveyGrpc.newStub(channel), WirelessSurveyGrpc.getStreamWifiBeaconSurveyMethod())
+                    .apply(new StreamObserver<WifiBeaconSurveyResponse>()
+                    {
+                        @Override
+                        public void onNext(WifiBeaconSurveyResponse value)
+                        {
+                        }
+
+                        @Override
+                        public void onError(Throwable t)
+                        {
+                            completed.countDown();
+                        }
+
+                        @Override
+                        public void onCompleted()
+                        {
+                            completed.countDown();
+                        }
+                    });
+
+            final SurveyRecordEnvelope<WifiBeaconRecord> envelope = new SurveyRecordEnvelope<>(createRecord(3));
+            // Serialize the record before it is sent so that the stream has to use the cached bytes
+            envelope.getProtobufBytes();
+            requestObserver.onNext(envelope);
+            requestObserver.onNext(new SurveyRecordEnvelope<>(createRecord(4)));
+            requestObserver.onCompleted();
+
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+            assertEquals(2, received.size());
+            assertEquals(envelope.getRecord(), received.get(0));
+            assertEquals(createRecord(4), received.get(1));
+        } finally
+        {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    private static WifiBeaconRecord createRecord(int recordNumber)
+    {
+        return WifiBeaconRecord.newBuilder()
+                .setMessageType("WifiBeaconRecord")
+                .setVersion(BuildConfig.MESSAGING_API_VERSION)
+                .setData(WifiBeaconRecordData.newBuilder()
+                        .setDeviceSerialNumber("353456789012345")
+                        .setRecordNumber(recordNumber)
+                        .setSourceAddress("AA:BB:CC:DD:EE:FF")
+                        .setSsid("Network Survey")
+                        .setSignalStrength(FloatValue.newBuilder().setValue(-62f)))
+                .build();
+    }
+}
@@ -0,0 +1,81 @@
+package com.craxiom.networksurvey;
+
+import com.craxiom.networksurvey.util.TripleBuffer;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the {@link TripleBuffer} that hands GNSS status snapshots from the GNSS status thread to the main thread.
+ *
+ * @since 1.10.0
+ */
+public class TripleBufferTest
+{
+    @Test
+    public void acquireReturnsLatestPublished()
+    {
+        final TripleBuffer<int[]> buffer = new TripleBuffer<>(new int[1], new int[1], new int[1]);
+
+        buffer.getWriteBuffer()[0] = 1;
+        buffer.publish();
+        buffer.getWriteBuffer()[0] = 2;
+        buffer.publish();
+
+        final int[] latest = buffer.acquireLatest();
+        assertEquals(2, latest[0]);
+
+        // Nothing new was published, so the reader keeps the same instance
+        assertSame(latest, buffer.acquireLatest());
+
+        // The writer never gets the instance the reader is using
+        for (int i = 3; i < 10; i++)
+        {
+            assertNotSame(latest, buffer.getWriteBuffer());
+            buffer.getWriteBuffer()[0] = i;
+            buffer.publish();
+        }
+        assertEquals(2, latest[0]);
+        assertEquals(9, buffer.acquireLatest()[0]);
+    }
+
+    @Test
+    public void readerNeverSeesPartialWrite() throws InterruptedException
+    {
+        final int rounds = 200_000;
+        final TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[2], new long[2], new long[2]);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        final Thread writer = new Thread(() -> {
+            for (long i = 1; i <= rounds; i++)
+            {
+                final long[] values = buffer.getWriteBuffer();
+                values[0] = i;
+                values[1] = -i;
+                buffer.publish();
+            }
+        });
+        writer.start();
+
+        long lastSeen = 0;
+        while (lastSeen < rounds && failure.get() == null)
+        {
+            final long[] values = buffer.acquireLatest();
+            final long first = values[0];
+            final long second = values[1];
+            if (first != -second) failure.set("Torn read: " + first + ", " + second);
+            if (first < lastSeen) failure.set("Went backwards from " + lastSeen + " to " + first);
+            lastSeen = first;
+        }
+
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(rounds, lastSeen);
+    }
+}
@@ -0,0 +1,42 @@
+package com.craxiom.networksurvey.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the speed based scan interval in {@link AdaptiveScanRate}.
+ *
+ * @since 1.10.0
+ */
+public class AdaptiveScanRateTest
+{
+    @Test
+    public void intervalTargetsSpacing()
+    {
+        // 20 m at 10 m/s is one scan every 2 seconds
+        assertEquals(2_000, AdaptiveScanRate.getIntervalMs(5_000, 10f, 20, 1_000, 60_000));
+        assertEquals(4_000, AdaptiveScanRate.getIntervalMs(5_000, 5f, 20, 1_000, 60_000));
+    }
+
+    @Test
+    public void intervalIsClamped()
+    {
+        // Highway speed is limited by the floor
+        assertEquals(2_000, AdaptiveScanRate.getIntervalMs(5_000, 35f, 20, 2_000, 60_000));
+
+        // Stationary and walking speeds are limited by the ceiling
+        assertEquals(60_000, AdaptiveScanRate.getIntervalMs(5_000, 0f, 20, 2_000, 60_000));
+        assertEquals(60_000, AdaptiveScanRate.getIntervalMs(5_000, 0.1f, 20, 2_000, 60_000));
+
+        // A floor above the ceiling wins
+        assertEquals(10_000, AdaptiveScanRate.getIntervalMs(5_000, 0f, 20, 10_000, 5_000));
+    }
+
+    @Test
+    public void fixedIntervalWhenDisabledOrSpeedUnknown()
+    {
+        assertEquals(5_000, AdaptiveScanRate.getIntervalMs(5_000, 10f, 0, 1_000, 60_000));
+        assertEquals(5_000, AdaptiveScanRate.getIntervalMs(5_000, Float.NaN, 20, 1_000, 60_000));
+    }
+}
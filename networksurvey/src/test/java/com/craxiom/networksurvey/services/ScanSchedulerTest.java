@@ -0,0 +1,59 @@
+package com.craxiom.networksurvey.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the fixed rate scheduling math in {@link ScanScheduler}.
+ *
+ * @since 1.10.0
+ */
+public class ScanSchedulerTest
+{
+    @Test
+    public void nextRunTimeDoesNotDrift()
+    {
+        // The task ran 300 ms late, but the next run is still based on the intended run time
+        assertEquals(20_000, ScanScheduler.getNextRunTime(10_000, 10_000, 10_300, 0));
+        assertEquals(20_000, ScanScheduler.getNextRunTime(10_000, 10_000, 10_300, 1_000));
+    }
+
+    @Test
+    public void missedRunsAreSkipped()
+    {
+        final long nextRunTime = ScanScheduler.getNextRunTime(10_000, 2_000, 17_500, 0);
+        assertEquals(18_000, nextRunTime);
+        assertEquals(3, ScanScheduler.getSkippedRuns(10_000, nextRunTime, 2_000));
+
+        assertEquals(0, ScanScheduler.getSkippedRuns(10_000, 12_000, 2_000));
+    }
+
+    @Test
+    public void runTimesAreAligned()
+    {
+        assertEquals(5_000, ScanScheduler.align(4_001, 1_000));
+        assertEquals(5_000, ScanScheduler.align(5_000, 1_000));
+        assertEquals(4_001, ScanScheduler.align(4_001, 0));
+
+        // A first run that was not aligned is pulled onto the alignment for the following runs
+        assertEquals(9_000, ScanScheduler.getNextRunTime(4_001, 4_000, 4_100, 1_000));
+    }
+
+    @Test
+    public void intervalStatsTrackError()
+    {
+        final ScanScheduler.IntervalStats stats = new ScanScheduler.IntervalStats();
+        stats.onRun(1_000, 1_000);
+        stats.onRun(2_010, 1_000);
+        stats.onRun(2_990, 1_000);
+        stats.onSkippedRuns(2);
+
+        assertEquals(3, stats.getRunCount());
+        assertEquals(2, stats.getSkippedRuns());
+        assertEquals(1_000, stats.getAverageIntendedIntervalMs(), 0.001);
+        assertEquals(995, stats.getAverageActualIntervalMs(), 0.001);
+        assertEquals(15, stats.getAverageAbsoluteErrorMs(), 0.001);
+        assertEquals(20, stats.getMaxAbsoluteErrorMs());
+    }
+}
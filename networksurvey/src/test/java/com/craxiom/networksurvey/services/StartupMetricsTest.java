@@ -0,0 +1,35 @@
+package com.craxiom.networksurvey.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the time to first record measurement in {@link StartupMetrics}.
+ *
+ * @since 1.10.0
+ */
+public class StartupMetricsTest
+{
+    @Test
+    public void onlyTheFirstRecordOfEachTypeIsMeasured()
+    {
+        final AtomicLong clock = new AtomicLong(10_000);
+        final StartupMetrics metrics = new StartupMetrics(clock::get);
+
+        clock.set(10_250);
+        assertEquals(250, metrics.getElapsedMs());
+
+        assertTrue(metrics.onRecord("GNSS"));
+        assertFalse(metrics.onRecord("GNSS"));
+
+        clock.set(11_000);
+        assertTrue(metrics.onRecord("Wi-Fi"));
+        assertFalse(metrics.onRecord("Wi-Fi"));
+        assertFalse(metrics.onRecord("GNSS"));
+    }
+}
@@ -0,0 +1,73 @@
+package com.craxiom.networksurvey.services;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the {@link WifiScanBudget} keeps the Wi-Fi scans within the Android scan throttle.
+ *
+ * @since 1.10.0
+ */
+public class WifiScanBudgetTest
+{
+    @Test
+    public void scansStayWithinTheWindow()
+    {
+        final WifiScanBudget budget = new WifiScanBudget();
+        assertFalse("Throttling is not known until it is set", budget.isThrottled());
+        budget.setThrottled(true);
+
+        // Scanning every 5 seconds uses up the 4 scans in the first 15 seconds
+        for (long now = 0; now <= 15_000; now += 5_000)
+        {
+            assertTrue(budget.tryAcquire(now, 5_000));
+        }
+        assertFalse(budget.tryAcquire(20_000, 5_000));
+        assertEquals(100_000, budget.getDelayUntilAvailableMs(20_000));
+
+        // The first scan ages out of the window
+        assertTrue(budget.tryAcquire(120_000, 5_000));
+        assertEquals(5_000, budget.getDelayUntilAvailableMs(120_000));
+
+        assertEquals(5, budget.getActiveScans());
+        assertEquals(1, budget.getScansSkippedForBudget());
+    }
+
+    @Test
+    public void noLimitWhenNotThrottled()
+    {
+        final WifiScanBudget budget = new WifiScanBudget();
+        budget.setThrottled(false);
+
+        for (long now = 0; now < 60_000; now += 5_000)
+        {
+            assertTrue(budget.tryAcquire(now, 5_000));
+            budget.onScanResults(now + 2_000, true);
+        }
+        assertEquals(0, budget.getDelayUntilAvailableMs(60_000));
+        assertEquals(0, budget.getPassiveResults());
+    }
+
+    @Test
+    public void recentPassiveResultsSkipTheScan()
+    {
+        final WifiScanBudget budget = new WifiScanBudget();
+
+        // Another app's scan completed, which was not requested by us
+        budget.onScanResults(10_000, true);
+        assertFalse(budget.tryAcquire(11_000, 5_000));
+        assertEquals(1, budget.getScansSkippedForPassiveResults());
+
+        // Once the passive results are older than half the interval, scan again
+        assertTrue(budget.tryAcquire(13_000, 5_000));
+
+        // The results from our own scan are not passive, and a failed scan's results don't count as fresh
+        budget.onScanResults(15_000, true);
+        budget.onScanResults(16_000, false);
+        assertTrue(budget.tryAcquire(16_500, 5_000));
+        assertEquals(2, budget.getPassiveResults());
+    }
+}
@@ -0,0 +1,112 @@
+package com.craxiom.networksurvey.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the queue depth and task latency stats from {@link MonitoredExecutor}.
+ *
+ * @since 1.10.0
+ */
+public class MonitoredExecutorTest
+{
+    private final MonitoredExecutor executor = new MonitoredExecutor("test", 1, Thread::new);
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void tasksWaitingForTheBusyThreadAreCounted() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final Future<?> waiting = executor.submit(() -> {
+        });
+        executor.submit(() -> {
+        });
+        // A task scheduled for later is not waiting for a thread yet
+        executor.schedule(() -> {
+        }, 1, TimeUnit.HOURS);
+
+        final MonitoredExecutor.Stats busyStats = executor.takeStats();
+        assertEquals(1, busyStats.activeCount);
+        assertEquals(2, busyStats.queueDepth);
+
+        Thread.sleep(50);
+        release.countDown();
+        waiting.get(5, TimeUnit.SECONDS);
+        awaitIdle();
+
+        final MonitoredExecutor.Stats stats = executor.takeStats();
+        assertEquals(3, stats.taskCount);
+        assertTrue("The queued tasks waited for the busy thread", stats.maxQueueLatencyMicros >= 40_000);
+        assertTrue(stats.maxRunTimeMicros >= 40_000);
+    }
+
+    @Test
+    public void statsAreResetAfterEachSnapshot() throws Exception
+    {
+        executor.submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+        awaitIdle();
+
+        assertEquals(1, executor.takeStats().taskCount);
+
+        final MonitoredExecutor.Stats stats = executor.takeStats();
+        assertEquals(0, stats.taskCount);
+        assertEquals(0, stats.maxQueueLatencyMicros);
+        assertEquals(0, stats.meanRunTimeMicros);
+    }
+
+    @Test
+    public void failingTaskDoesNotStopThePool() throws Exception
+    {
+        executor.execute(() -> {
+            throw new IllegalStateException("Expected failure");
+        });
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The future completes before the pool's after execute hook runs, so wait for the pool to record the task.
+     */
+    private void awaitIdle() throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (executor.getActiveCount() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.craxiom.networksurvey.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the strongest plus reservoir sample selection in {@link RecordSampler}.
+ *
+ * @since 1.10.0
+ */
+public class RecordSamplerTest
+{
+    @Test
+    public void underTheLimitKeepsEverything()
+    {
+        final RecordSampler sampler = new RecordSampler(new Random(1));
+        final List<Integer> rssis = createRssis(10);
+
+        assertSame(rssis, sampler.select(rssis, 10, rssi -> rssi));
+        assertSame(rssis, sampler.select(rssis, 0, rssi -> rssi));
+    }
+
+    @Test
+    public void keepsTheStrongestAndASampleOfTheRest()
+    {
+        final RecordSampler sampler = new RecordSampler(new Random(1));
+
+        // RSSIs from -1 (strongest) down to -500
+        final List<Integer> rssis = createRssis(500);
+        final List<Integer> selected = sampler.select(rssis, 100, rssi -> rssi);
+
+        assertEquals(100, selected.size());
+
+        // The 50 strongest are always kept, and they come first because the order is preserved
+        for (int i = 0; i < 50; i++) assertEquals(Integer.valueOf(-1 - i), selected.get(i));
+
+        // The rest are a sample of the weaker records
+        for (int i = 50; i < 100; i++)
+        {
+            assertTrue(selected.get(i) < -50);
+            if (i > 50) assertTrue(selected.get(i) < selected.get(i - 1));
+        }
+    }
+
+    @Test
+    public void sampleIsUniform()
+    {
+        final RecordSampler sampler = new RecordSampler(new Random(42));
+        final List<Integer> rssis = createRssis(20);
+
+        // Keep the 2 strongest plus 2 of the other 18, so each of those should be picked about 1/9th of the time
+        final int rounds = 90_000;
+        final int[] picked = new int[20];
+        for (int round = 0; round < rounds; round++)
+        {
+            for (int rssi : sampler.select(rssis, 4, value -> value)) picked[-rssi - 1]++;
+        }
+
+        assertEquals(rounds, picked[0]);
+        assertEquals(rounds, picked[1]);
+        for (int i = 2; i < 20; i++) assertEquals(rounds * 2 / 18.0, picked[i], rounds * 0.01);
+    }
+
+    private static List<Integer> createRssis(int count)
+    {
+        final List<Integer> rssis = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) rssis.add(-i);
+        return rssis;
+    }
+}